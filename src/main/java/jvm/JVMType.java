@@ -1,7 +1,14 @@
 package jvm;
 
 public enum JVMType {
-    N, Z, C, F, D, B, S, I, J, A
+    N, Z, C, F, D, B, S, I, J, A;
+
+    /**
+     * Long and double values take two slots of the stack and two elements of the field values of an object.
+     */
+    public boolean isWide() {
+        return this == J || this == D;
+    }
 }
 
 // N - does not have any type
@@ -2,12 +2,10 @@ package jvm;
 
 import jvm.engine.ExecutionEngine;
 import jvm.engine.StackFrame;
+import jvm.garbage_collector.CollectorKind;
 import jvm.garbage_collector.GarbageCollector;
-import jvm.garbage_collector.MarkAndSweep;
 import jvm.heap.*;
 import jvm.heap.api.Heap;
-import jvm.heap.concurrent.HeapVolImpl;
-import jvm.heap.sequential.HeapImpl;
 import jvm.monitor.HeapMonitor;
 
 import javax.annotation.Nonnull;
@@ -23,11 +21,45 @@ public class VirtualMachine {
     private final boolean heapMonitor;
 
     public VirtualMachine(int instancesSize, int klassesSize, int stackSize, boolean heapMonitor) {
+        this(HeapSizingPolicy.fixed(instancesSize), klassesSize, stackSize,
+                heapMonitor ? HeapKind.MONITORED : HeapKind.SEQUENTIAL);
+    }
+
+    /**
+     * @param sizingPolicy the initial and the maximum number of objects on the heap, the heap grows and shrinks
+     *                     between them after collections
+     * @param klassesSize  the initial size of the klass table, it grows with the loaded klasses
+     */
+    public VirtualMachine(@Nonnull HeapSizingPolicy sizingPolicy, int klassesSize, int stackSize, @Nonnull HeapKind heapKind) {
+        this(sizingPolicy, klassesSize, stackSize, heapKind, false, CollectorKind.MARK_AND_SWEEP);
+    }
+
+    /**
+     * @param directHandles use the indexes of the objects on the heap as their references, there is no reference
+     *                      table then; the arena heap moves its objects and can not use them
+     * @param collectorKind the generational collector can not be used with the Heap Monitor, the concurrent one
+     *                      needs its heap and the mark compact one the sequential heap
+     */
+    public VirtualMachine(@Nonnull HeapSizingPolicy sizingPolicy,
+                          int klassesSize,
+                          int stackSize,
+                          @Nonnull HeapKind heapKind,
+                          boolean directHandles,
+                          @Nonnull CollectorKind collectorKind) {
+        boolean heapMonitor = heapKind == HeapKind.MONITORED;
+        if (heapMonitor && collectorKind == CollectorKind.GENERATIONAL) {
+            throw new IllegalArgumentException("the generational collector can not be used with the Heap Monitor");
+        }
+        if (!heapMonitor && collectorKind == CollectorKind.CONCURRENT_MARK) {
+            throw new IllegalArgumentException("the concurrent collector reads the objects of the Heap Monitor heap only");
+        }
+        if (heapKind != HeapKind.SEQUENTIAL && collectorKind == CollectorKind.MARK_COMPACT) {
+            throw new IllegalArgumentException("the mark compact collector moves the objects of the sequential heap only");
+        }
         this.stackFrame = new StackFrame(stackSize);
-        this.collector = new MarkAndSweep(stackFrame);
+        this.collector = collectorKind.create(stackFrame);
         this.heapMonitor = heapMonitor;
-        this.heap = heapMonitor ? new HeapVolImpl(collector, instancesSize, klassesSize) :
-                new HeapImpl(collector, instancesSize, klassesSize);
+        this.heap = heapKind.create(collector, sizingPolicy, klassesSize, directHandles);
         InstanceFactory.setHeapMonitor(heapMonitor);
         this.collector.setHeap(heap);
         this.engine = new ExecutionEngine(heap, stackFrame);
@@ -2,6 +2,9 @@ package jvm.engine;
 
 import jvm.JVMType;
 import jvm.Utils;
+import jvm.engine.jit.CompiledMethod;
+import jvm.engine.jit.TemplateCompiler;
+import jvm.garbage_collector.GarbageCollector;
 import jvm.heap.api.Heap;
 import jvm.heap.api.InstanceKlass;
 import jvm.heap.api.InstanceObject;
@@ -9,14 +12,17 @@ import jvm.lang.*;
 import jvm.parser.Method;
 import jvm.parser.Klass;
 import jvm.parser.ConstantPoolEntry;
+import jvm.parser.ConstantPoolType;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.*;
 import java.net.Socket;
 import java.util.*;
 import java.util.function.*;
 
 import static jvm.engine.Opcode.*;
+import static jvm.engine.ThreadedCode.*;
 import static jvm.heap.InstanceFactory.getInstanceObject;
 import static jvm.heap.KlassLoader.*;
 
@@ -43,51 +49,127 @@ public final class ExecutionEngine {
     private final static String RANDOM_NEXT_INT = "java/util/Random.nextInt:(I)I";
     private final static String STRING_INTERN = "java/lang/String.intern:()Ljava/lang/String;";
 
-    private final Opcode[] table = new Opcode[256];
+    private static final Opcode[] table = new Opcode[256];
     @Nonnull
     private final Heap heap;
     @Nonnull
-    private final StackFrame stack;
+    private final GarbageCollector collector;
     @Nonnull
-    private final Method[] stackMethod;
+    private final StackFrame stack;
     private int stackMethodPointer = 0;
     private byte[] byteCode;
+    @Nullable
+    private int[] threadedCode;
+    @Nullable
+    private NodeCode.Node[] nodes;
     @Nonnull
     private String klassName = "java/lang/Object";
     private int programCounter;
     @Nonnull
     private Opcode currentOpcode;
-    @Nonnull
-    private static final Map<Integer, Object> nativeObjects = new HashMap<>();
 
     // VM Options
     private boolean exceptionDebugMode;
 
     private boolean symbolicRefResolution = true;
 
+    private boolean threadedDispatch;
+
+    private boolean nodeExecution;
+
+    private boolean verification = true;
+
+    private boolean jitCompilation;
+
+    private int jitThreshold = 1000;
+
+    @Nullable
+    private TemplateCompiler compiler;
+
+    private final long[] superinstructionCounts = new long[SUPERINSTRUCTIONS];
+
+    private long result;
+
+    // the current method was verified, so its stack and local variable accesses are not checked
+    private boolean verified;
+
+    // whether the method of every frame was verified, the caller gets its own back when an invoked method returns
+    @Nonnull
+    private boolean[] verifiedMethods = new boolean[16];
+
+    private long inlineCacheHits;
+
+    private long inlineCacheMisses;
+
+    // runs a class initializer or a finalizer in the middle of an instruction of another engine
+    private final boolean auxiliary;
 
     public ExecutionEngine(@Nonnull Heap heap, @Nonnull StackFrame stackFrame) {
+        this(heap, stackFrame, false);
+    }
+
+    private ExecutionEngine(@Nonnull Heap heap, @Nonnull StackFrame stackFrame, boolean auxiliary) {
         this.heap = heap;
+        this.collector = heap.getCollector();
         this.stack = stackFrame;
-        this.stackMethod = new Method[100];
         this.currentOpcode = NOP;
+        this.auxiliary = auxiliary;
+    }
+
+    /**
+     * Invokes a class initializer or a finalizer on a stack of the {@link StackFramePool}, the arguments go to
+     * the first local variables. The stack is a root of the collector while the method runs. The engine below
+     * waits in the middle of an instruction with references outside of its frames, so the allocations of the
+     * method are never safepoints.
+     */
+    public static void invokeAuxiliary(@Nonnull Heap heap, @Nonnull Method method, long... arguments) {
+        StackFrame stackFrame = StackFramePool.acquire();
+        GarbageCollector collector = heap.getCollector();
+        collector.addStackFrame(stackFrame);
+        try {
+            stackFrame.init(method.getVarSize(), method.getOperandSize());
+            for (int i = 0; i < arguments.length; i++) {
+                stackFrame.setLocalVar(i, arguments[i]);
+            }
+            new ExecutionEngine(heap, stackFrame, true).invoke(method);
+        } finally {
+            collector.removeStackFrame(stackFrame);
+            StackFramePool.release(stackFrame);
+        }
+    }
+
+    static {
         for (Opcode op : values()) {
             table[op.getOpcode()] = op;
         }
     }
 
     private void init(@Nonnull Method method) {
-        this.stackMethod[0] = method;
+        this.stackMethodPointer = 0;
+        this.stack.methods[0] = method;
         this.byteCode = method.getBytecode();
+        this.threadedCode = threadedDispatch ? getThreadedCode(method) : null;
+        this.nodes = nodeExecution ? getNodes(method) : null;
         this.klassName = method.getClassName();
         this.stack.init(method.getVarSize(), method.getOperandSize());
+        this.verified = isVerified(method);
+        this.verifiedMethods[0] = verified;
+        if (jitCompilation) {
+            method.incrementInvocationCount();
+        }
         this.programCounter = 0;
         this.currentOpcode = NOP;
     }
 
     public long invoke(@Nonnull Method method) {
-
         init(method);
+        if (nodeExecution) {
+            return executeNodes();
+        }
+        return threadedDispatch ? executeThreaded() : execute();
+    }
+
+    private long execute() {
         while (true) {
             byte b = readByte();
             currentOpcode = table[b & 0xff];
@@ -195,135 +277,131 @@ public final class ExecutionEngine {
                         break;
                     case DUP:
                         //Duplicate the top operand stack value
-                        stack.dup();
+                        if (verified) {
+                            long value = stack.popUnchecked();
+                            stack.pushUnchecked(value);
+                            stack.pushUnchecked(value);
+                        } else {
+                            stack.dup();
+                        }
                         break;
                     case DUP_X1:
-                        stack.dupX1();
-                        break;
-                    case GETFIELD:
-                        pushFieldOntoStackFromInstanceObject(false);
-                        break;
-                    case GETFIELD_QUICK:
-                        pushFieldOntoStackFromInstanceObject(true);
-                        break;
-                    case GETSTATIC:
-                        pushStaticFieldOntoStackFromInstanceObject(false);
-                        break;
-                    case GETSTATIC_QUICK:
-                        pushStaticFieldOntoStackFromInstanceObject(true);
-                        break;
-                    case PUTFIELD:
-                        putFieldToInstanceObjectFromStack(false);
-                        break;
-                    case PUTFIELD_QUICK:
-                        putFieldToInstanceObjectFromStack(true);
-                        break;
-                    case PUTSTATIC:
-                        putStaticFieldToInstanceObjectFromStack(false);
-                        break;
-                    case PUTSTATIC_QUICK:
-                        putStaticFieldToInstanceObjectFromStack(true);
-                        break;
-                    case CHECKCAST:
-                        checkCast(false);
-                        break;
-                    case CHECKCAST_QUICK:
-                        checkCast(true);
+                        if (verified) {
+                            long value1 = stack.popUnchecked();
+                            long value2 = stack.popUnchecked();
+                            stack.pushUnchecked(value1);
+                            stack.pushUnchecked(value2);
+                            stack.pushUnchecked(value1);
+                        } else {
+                            stack.dupX1();
+                        }
                         break;
                     case GOTO:
                         programCounter += (byteCode[programCounter] << 8) + (byteCode[programCounter + 1] & 0xff) - 1;
                         break;
-                    case INSTANCEOF:
-                        checkInstanceOf(false);
-                        break;
-                    case INSTANCEOF_QUICK:
-                        checkInstanceOf(true);
-                        break;
                     case IADD:
-                        evaluateIntValueAndPushBackOntoStack(Integer::sum);
+                        pushIntValueOntoStack(popIntValue() + popIntValue());
                         break;
                     case IAND:
-                        evaluateIntValueAndPushBackOntoStack((firstVal, secondVal) -> secondVal & firstVal);
+                        pushIntValueOntoStack(popIntValue() & popIntValue());
                         break;
-                    case ISHL:
-                        evaluateIntValueAndPushBackOntoStack((firstVal, secondVal) -> secondVal << firstVal);
+                    case ISHL: {
+                        int value2 = popIntValue();
+                        pushIntValueOntoStack(popIntValue() << value2);
                         break;
-                    case ISHR:
-                        evaluateIntValueAndPushBackOntoStack((firstVal, secondVal) -> secondVal >> firstVal);
+                    }
+                    case ISHR: {
+                        int value2 = popIntValue();
+                        pushIntValueOntoStack(popIntValue() >> value2);
                         break;
-                    case IUSHR:
-                        evaluateIntValueAndPushBackOntoStack((firstVal, secondVal) -> secondVal >>> firstVal);
+                    }
+                    case IUSHR: {
+                        int value2 = popIntValue();
+                        pushIntValueOntoStack(popIntValue() >>> value2);
                         break;
+                    }
                     case IXOR:
-                        evaluateIntValueAndPushBackOntoStack((firstVal, secondVal) -> ~secondVal);
+                        pushIntValueOntoStack(popIntValue() ^ popIntValue());
                         break;
-                    case IDIV:
-                        evaluateIntValueAndPushBackOntoStack((firstVal, secondVal) -> {
-                            if (firstVal == 0) {
-                                throw new ArithmeticException("cannot divide 0");
-                            }
-                            return secondVal / firstVal;
-                        });
+                    case IDIV: {
+                        int value2 = popIntValue();
+                        if (value2 == 0) {
+                            throw new ArithmeticException("cannot divide 0");
+                        }
+                        pushIntValueOntoStack(popIntValue() / value2);
                         break;
+                    }
                     case IMUL:
-                        evaluateIntValueAndPushBackOntoStack((firstVal, secondVal) -> firstVal * secondVal);
+                        pushIntValueOntoStack(popIntValue() * popIntValue());
                         break;
-                    case ISUB:
-                        evaluateIntValueAndPushBackOntoStack((firstVal, secondVal) -> secondVal - firstVal);
+                    case ISUB: {
+                        int value2 = popIntValue();
+                        pushIntValueOntoStack(popIntValue() - value2);
                         break;
+                    }
                     case IOR:
-                        evaluateIntValueAndPushBackOntoStack((firstVal, secondVal) -> firstVal | secondVal);
+                        pushIntValueOntoStack(popIntValue() | popIntValue());
                         break;
-                    case IREM:
-                        evaluateIntValueAndPushBackOntoStack((firstVal, secondVal) -> secondVal % firstVal);
+                    case IREM: {
+                        int value2 = popIntValue();
+                        pushIntValueOntoStack(popIntValue() % value2);
                         break;
+                    }
                     case IF_ACMPNE:
-                        compareValuesFromStack((firstVal, secondVal) -> !Objects.equals(secondVal, firstVal), JVMType.A);
+                        jumpIf(popRefValue() != popRefValue());
                         break;
                     case IF_ACMPEQ:
-                        compareValuesFromStack((firstVal, secondVal) -> Objects.equals(secondVal, firstVal), JVMType.A);
+                        jumpIf(popRefValue() == popRefValue());
                         break;
                     case IF_ICMPEQ:
-                        compareValuesFromStack((firstVal, secondVal) -> Objects.equals(secondVal, firstVal), JVMType.I);
+                        jumpIf(popIntValue() == popIntValue());
                         break;
                     case IF_ICMPNE:
-                        compareValuesFromStack((firstVal, secondVal) -> !Objects.equals(secondVal, firstVal), JVMType.I);
+                        jumpIf(popIntValue() != popIntValue());
                         break;
-                    case IF_ICMPLT:
-                        compareValuesFromStack((firstVal, secondVal) -> secondVal < firstVal, JVMType.I);
+                    case IF_ICMPLT: {
+                        int value2 = popIntValue();
+                        jumpIf(popIntValue() < value2);
                         break;
-                    case IF_ICMPGT:
-                        compareValuesFromStack((firstVal, secondVal) -> secondVal > firstVal, JVMType.I);
+                    }
+                    case IF_ICMPGT: {
+                        int value2 = popIntValue();
+                        jumpIf(popIntValue() > value2);
                         break;
-                    case IF_ICMPGE:
-                        compareValuesFromStack((firstVal, secondVal) -> secondVal >= firstVal, JVMType.I);
+                    }
+                    case IF_ICMPGE: {
+                        int value2 = popIntValue();
+                        jumpIf(popIntValue() >= value2);
                         break;
-                    case IF_ICMPLE:
-                        compareValuesFromStack((firstVal, secondVal) -> secondVal <= firstVal, JVMType.I);
+                    }
+                    case IF_ICMPLE: {
+                        int value2 = popIntValue();
+                        jumpIf(popIntValue() <= value2);
                         break;
+                    }
                     case IFEQ:
-                        compareValuesFromStack(val -> val == 0, JVMType.I);
+                        jumpIf(popIntValue() == 0);
                         break;
                     case IFGE:
-                        compareValuesFromStack(val -> val >= 0, JVMType.I);
+                        jumpIf(popIntValue() >= 0);
                         break;
                     case IFGT:
-                        compareValuesFromStack(val -> val > 0, JVMType.I);
+                        jumpIf(popIntValue() > 0);
                         break;
                     case IFLE:
-                        compareValuesFromStack(val -> val <= 0, JVMType.I);
+                        jumpIf(popIntValue() <= 0);
                         break;
                     case IFLT:
-                        compareValuesFromStack(val -> val < 0, JVMType.I);
+                        jumpIf(popIntValue() < 0);
                         break;
                     case IFNE:
-                        compareValuesFromStack(val -> val != 0, JVMType.I);
+                        jumpIf(popIntValue() != 0);
                         break;
                     case IFNONNULL:
-                        compareValuesFromStack(val -> val != 0, JVMType.A);
+                        jumpIf(popRefValue() != 0);
                         break;
                     case IFNULL:
-                        compareValuesFromStack(val -> val == 0, JVMType.A);
+                        jumpIf(popRefValue() == 0);
                         break;
                     case IINC:
                         /*
@@ -332,217 +410,1086 @@ public final class ExecutionEngine {
                          * The value const is first sign-extended to an int, and then the local variable at index is incremented by that amount.
                          * */
                         int index = readByte();
-                        stack.setLocalVar(index, setIntValueType(getIntValue(stack.getLocalVar(index)) + readByte()));
-                        break;
-                    case I2C:
-                        stack.push(checkValueType(stack.pop(), JVMType.I));
+                        if (verified) {
+                            stack.setLocalVarUnchecked(index, setIntValueType((int) stack.getLocalVarUnchecked(index) + readByte()));
+                        } else {
+                            stack.setLocalVar(index, setIntValueType(getIntValue(stack.getLocalVar(index)) + readByte()));
+                        }
                         break;
                     case INEG:
-                        pushIntValueOntoStack(-getIntValue(stack.pop()));
-                        break;
-                    case INVOKESPECIAL:
-                        invokeNonVirtualMethod(false, false);
-                        break;
-                    case INVOKESPECIAL_QUICK:
-                        invokeNonVirtualMethod(true, false);
-                        break;
-                    case INVOKESTATIC:
-                        invokeNonVirtualMethod(false, true);
-                        break;
-                    case INVOKESTATIC_QUICK:
-                        invokeNonVirtualMethod(true, true);
-                        break;
-                    case INVOKEVIRTUAL:
-                        invokeVirtualMethod(false);
-                        break;
-                    case INVOKEVIRTUAL_QUICK:
-                        invokeVirtualMethod(true);
+                        pushIntValueOntoStack(-popIntValue());
                         break;
                     case ARETURN:
                         if (stack.invokeCount == 0) {
                             return getRefValue(stack.pop());
                         }
-                        destroyCurrentMethod(true);
+                        destroyCurrentMethod(1);
                         break;
                     case IRETURN:
-                        //return type boolean, byte, short, char, or int.
+                    case FRETURN:
+                        //return type boolean, byte, short, char, int or the bits of a float.
                         if (stack.invokeCount == 0) {
                             return getPureValue(stack.pop());
                         }
-                        destroyCurrentMethod(true);
+                        destroyCurrentMethod(1);
+                        break;
+                    case LRETURN:
+                    case DRETURN:
+                        // the whole 64 bits of a long or double
+                        if (stack.invokeCount == 0) {
+                            long low = stack.pop();
+                            return getWideValue(stack.pop(), low);
+                        }
+                        destroyCurrentMethod(2);
                         break;
                     case RETURN:
                         if (stackMethodPointer == 0) {
                             return 0;
                         }
-                        destroyCurrentMethod(false);
-                        break;
-                    case NEW:
-                        pushRefValueOntoStack(allocateInstanceObjectAndGetReference(false));
-                        break;
-                    case NEW_QUICK:
-                        pushRefValueOntoStack(allocateInstanceObjectAndGetReference(true));
-                        break;
-                    case NEWARRAY:
-                        int atype = readByte();
-                    /*  Array Type	atype
-                        T_BOOLEAN	4
-                        T_CHAR	    5
-                        T_FLOAT	    6
-                        T_DOUBLE	7
-                        T_BYTE	    8
-                        T_SHORT	    9
-                        T_INT	    10
-                        T_LONG	    11
-                        */
-                        pushRefValueOntoStack(allocateArray("[" + JVMType.values()[atype - 3].name(),
-                                JVMType.values()[atype - 3].name(),
-                                getIntValue(stack.pop())));
-                        break;
-                    case ANEWARRAY:
-                        pushRefValueOntoStack(allocateReferenceArray(false));
-                        break;
-                    case ANEWARRAY_QUICK:
-                        pushRefValueOntoStack(allocateReferenceArray(true));
-                        break;
-                    case MULTIANEWARRAY:
-                        newMultiArray(false);
-                        break;
-                    case MULTIANEWARRAY_QUICK:
-                        newMultiArray(true);
-                        break;
-                    case ARRAYLENGTH:
-                        pushIntValueOntoStack(checkArrayObject(getInstanceObjectByValue(stack.pop())).size());
-                        break;
-                    case AALOAD:
-                        pushOntoStackFromArray(val -> checkValueType(val, JVMType.A));
-                        break;
-                    case IALOAD:
-                        pushOntoStackFromArray(val -> checkValueType(val, JVMType.I));
-                        break;
-                    case BALOAD:
-                        /*
-                         * The arrayref must be of type reference and must refer to an array whose components are of type byte or of type boolean.
-                         * The index must be of type int. Both arrayref and index are popped from the operand stack.
-                         * The byte value in the component of the array at index is retrieved, sign-extended to an int value, and pushed onto the top of the operand stack.
-                         */
-                        pushOntoStackFromArray(val -> setIntValueType(getPureValue(checkByteOrBooleanValueType(val))));
-                        break;
-                    case CALOAD:
-                        /*
-                         * The arrayref must be of type reference and must refer to an array whose components are of type char.
-                         * The index must be of type int. Both arrayref and index are popped from the operand stack.
-                         * The component of the array at index is retrieved and zero-extended to an int value. That value is pushed onto the operand stack.
-                         */
-                        pushOntoStackFromArray(val -> setIntValueType(getPureValue(checkValueType(val, JVMType.C))));
-                        break;
-                    case AASTORE:
-                        /*
-                         * The arrayref must be of type reference and must refer to an array whose components are of type reference.
-                         * The index must be of type int and value must be of type reference. The arrayref, index, and value are popped from the operand stack.
-                         * The reference value is stored as the component of the array at index.
-                         */
-                        storeToArrayFromStack((val, obj) -> val, JVMType.A);
-                        break;
-                    case IASTORE:
-                        /*
-                         * Store into int array
-                         * Both index and value must be of type int. The arrayref, index, and value are popped from the operand stack.
-                         * The int value is stored as the component of the array indexed by index.
-                         */
-                        storeToArrayFromStack((val, obj) -> val, JVMType.I);
-                        break;
-                    case BASTORE:
-                        /*
-                         * Store into byte or boolean array
-                         * The index and the value must both be of type int. The arrayref, index, and value are popped from the operand stack.
-                         * The int value is truncated to a byte and stored as the component of the array indexed by index.
-                         */
-                        storeToArrayFromStack((val, obj) -> {
-                            JVMType type = obj.getValueType();
-                            if (type == JVMType.Z || type == JVMType.B) {
-                                return setValueType(getPureValue(val), type);
-                            } else {
-                                throw new RuntimeException("Wrong type of array\n" + getStackTrace(false));
-                            }
-                        }, JVMType.I);
-                        break;
-                    case CASTORE:
-                        /*
-                         * The arrayref must be of type reference and must refer to an array whose components are of type char.
-                         * The index and the value must both be of type int. The arrayref, index, and value are popped from the operand stack.
-                         * The int value is truncated to a char and stored as the component of the array indexed by index.
-                         */
-                        storeToArrayFromStack((val, obj) -> setCharValueType(getIntValue(val)), JVMType.I);
+                        destroyCurrentMethod(0);
                         break;
                     case POP:
-                        stack.pop();
+                        pop();
                         break;
-                    case RET:
-                        throw new IllegalArgumentException("Illegal opcode byte: " + (b & 0xff) + " encountered at position " + (programCounter - 1) + ". Stopping.");
                     case SIPUSH:
                         pushIntValueOntoStack(readTwoBytes());
                         break;
                     case SWAP:
-                        long firstVal = stack.pop();
-                        long secondVal = stack.pop();
-                        stack.push(firstVal);
-                        stack.push(secondVal);
-                        break;
-                    case LDC:
-                        ConstantPoolEntry entry = getSourceKlass().getCPItem(readByte() - 1);
-                        switch (entry.getType()) {
-                            case INTEGER:
-                                pushIntValueOntoStack((Integer) entry.getNum());
-                                break;
-                            case STRING:
-                                createStringInstance(entry.getStr(), true);
-                                break;
-                        }
+                        long firstVal = pop();
+                        long secondVal = pop();
+                        push(firstVal);
+                        push(secondVal);
                         break;
-                    case NOP:
-                    case POP2:
-                    case MONITORENTER:
-                    case MONITOREXIT:
-                        break;
-                    case BREAKPOINT:
-                    case IMPDEP1:
-                    case IMPDEP2:
-                    case JSR:
-                    case JSR_W:
                     default:
-                        System.err.println("Saw " + currentOpcode + " - that can't happen. Stopping.");
-                        System.err.println(getStackTrace(true));
-                        System.exit(1);
+                        executeInstruction(currentOpcode);
+                        break;
                 }
             } catch (RuntimeExceptionJVM e) {
-                if (exceptionDebugMode) {
-                    if (e instanceof ClassCastExceptionJVM) {
-                        throw new ClassCastExceptionJVM(e.getLocalizedMessage() + "\n" + getStackTrace(false));
-                    } else if (e instanceof NullPointerExceptionJVM) {
-                        throw new NullPointerExceptionJVM("\n" + getStackTrace(false));
-                    } else if (e instanceof OutOfMemoryErrorJVM) {
-                        throw new OutOfMemoryErrorJVM("\n" + getStackTrace(false));
-                    } else if (e instanceof ClassNotFoundExceptionJVM) {
-                        throw new ClassNotFoundExceptionJVM(e.getLocalizedMessage() + "\n" + getStackTrace(false));
-                    } else {
-                        throw e;
+                throw reportException(e);
+            } catch (Exception e) {
+                throw new RuntimeException("\n" + getStackTrace(false) + "\n\n" + e);
+            }
+        }
+    }
+
+    /**
+     * Dispatches on the pre-decoded {@link ThreadedCode} of the current method. The program counter, the stack
+     * pointer and the bounds of the current frame are kept in locals and are written back to the engine and
+     * to the {@link StackFrame} only before an instruction is delegated to {@link #executeInstruction(Opcode)}
+     * or the frame is changed.
+     */
+    private long executeThreaded() {
+        dispatch:
+        while (true) {
+            if (jitCompilation) {
+                runCompiledCode();
+            }
+            int[] code = threadedCode;
+            long[] slots = stack.stack;
+            int pc = programCounter;
+            int sp = stack.stackPointer;
+            int lv = stack.localVariable;
+            int varSize = stack.varSize;
+            int bottom = stack.getOperandStackBottom();
+            int top = bottom + stack.operandSize;
+            boolean delegated = false;
+            try {
+                while (true) {
+                    int instruction = code[pc];
+                    switch (instruction & 0xff) {
+                        case OP_ACONST_NULL:
+                            checkPush(sp, top);
+                            slots[sp++] = setRefValueType(NULL);
+                            pc++;
+                            break;
+                        case OP_ICONST_M1:
+                        case OP_ICONST_0:
+                        case OP_ICONST_1:
+                        case OP_ICONST_2:
+                        case OP_ICONST_3:
+                        case OP_ICONST_4:
+                        case OP_ICONST_5:
+                            checkPush(sp, top);
+                            slots[sp++] = setIntValueType(instruction >> 8);
+                            pc++;
+                            break;
+                        case OP_BIPUSH:
+                            checkPush(sp, top);
+                            slots[sp++] = setIntValueType(instruction >> 8);
+                            pc += 2;
+                            break;
+                        case OP_SIPUSH:
+                            checkPush(sp, top);
+                            slots[sp++] = setIntValueType(instruction >> 8);
+                            pc += 3;
+                            break;
+                        case OP_ILOAD_0:
+                        case OP_ILOAD_1:
+                        case OP_ILOAD_2:
+                        case OP_ILOAD_3:
+                            checkPush(sp, top);
+                            slots[sp++] = checkIntValue(slots[lv + checkLocalVarIndex(instruction >>> 8, varSize)]);
+                            pc++;
+                            break;
+                        case OP_ILOAD:
+                            checkPush(sp, top);
+                            slots[sp++] = checkIntValue(slots[lv + checkLocalVarIndex(instruction >>> 8, varSize)]);
+                            pc += 2;
+                            break;
+                        case OP_ALOAD_0:
+                        case OP_ALOAD_1:
+                        case OP_ALOAD_2:
+                        case OP_ALOAD_3:
+                            checkPush(sp, top);
+                            slots[sp++] = checkRefValue(slots[lv + checkLocalVarIndex(instruction >>> 8, varSize)]);
+                            pc++;
+                            break;
+                        case OP_ALOAD:
+                            checkPush(sp, top);
+                            slots[sp++] = checkRefValue(slots[lv + checkLocalVarIndex(instruction >>> 8, varSize)]);
+                            pc += 2;
+                            break;
+                        case OP_ISTORE_0:
+                        case OP_ISTORE_1:
+                        case OP_ISTORE_2:
+                        case OP_ISTORE_3:
+                            checkPop(sp, bottom, 1);
+                            slots[lv + checkLocalVarIndex(instruction >>> 8, varSize)] = checkIntValue(slots[--sp]);
+                            pc++;
+                            break;
+                        case OP_ISTORE:
+                            checkPop(sp, bottom, 1);
+                            slots[lv + checkLocalVarIndex(instruction >>> 8, varSize)] = checkIntValue(slots[--sp]);
+                            pc += 2;
+                            break;
+                        case OP_ASTORE_0:
+                        case OP_ASTORE_1:
+                        case OP_ASTORE_2:
+                        case OP_ASTORE_3:
+                            checkPop(sp, bottom, 1);
+                            slots[lv + checkLocalVarIndex(instruction >>> 8, varSize)] = checkRefValue(slots[--sp]);
+                            pc++;
+                            break;
+                        case OP_ASTORE:
+                            checkPop(sp, bottom, 1);
+                            slots[lv + checkLocalVarIndex(instruction >>> 8, varSize)] = checkRefValue(slots[--sp]);
+                            pc += 2;
+                            break;
+                        case OP_POP:
+                            checkPop(sp, bottom, 1);
+                            sp--;
+                            pc++;
+                            break;
+                        case OP_DUP:
+                            checkPop(sp, bottom, 1);
+                            checkPush(sp, top);
+                            slots[sp] = slots[sp - 1];
+                            sp++;
+                            pc++;
+                            break;
+                        case OP_DUP_X1: {
+                            checkPop(sp, bottom, 2);
+                            checkPush(sp, top);
+                            long first = slots[sp - 1];
+                            slots[sp - 1] = slots[sp - 2];
+                            slots[sp - 2] = first;
+                            slots[sp++] = first;
+                            pc++;
+                            break;
+                        }
+                        case OP_SWAP: {
+                            checkPop(sp, bottom, 2);
+                            long first = slots[sp - 1];
+                            slots[sp - 1] = slots[sp - 2];
+                            slots[sp - 2] = first;
+                            pc++;
+                            break;
+                        }
+                        case OP_IADD:
+                            checkPop(sp, bottom, 2);
+                            sp--;
+                            slots[sp - 1] = setIntValueType(getIntValue(slots[sp - 1]) + getIntValue(slots[sp]));
+                            pc++;
+                            break;
+                        case OP_ISUB:
+                            checkPop(sp, bottom, 2);
+                            sp--;
+                            slots[sp - 1] = setIntValueType(getIntValue(slots[sp - 1]) - getIntValue(slots[sp]));
+                            pc++;
+                            break;
+                        case OP_IMUL:
+                            checkPop(sp, bottom, 2);
+                            sp--;
+                            slots[sp - 1] = setIntValueType(getIntValue(slots[sp - 1]) * getIntValue(slots[sp]));
+                            pc++;
+                            break;
+                        case OP_IDIV: {
+                            checkPop(sp, bottom, 2);
+                            int divisor = getIntValue(slots[sp - 1]);
+                            if (divisor == 0) {
+                                throw new ArithmeticException("cannot divide 0");
+                            }
+                            sp--;
+                            slots[sp - 1] = setIntValueType(getIntValue(slots[sp - 1]) / divisor);
+                            pc++;
+                            break;
+                        }
+                        case OP_IREM:
+                            checkPop(sp, bottom, 2);
+                            sp--;
+                            slots[sp - 1] = setIntValueType(getIntValue(slots[sp - 1]) % getIntValue(slots[sp]));
+                            pc++;
+                            break;
+                        case OP_IAND:
+                            checkPop(sp, bottom, 2);
+                            sp--;
+                            slots[sp - 1] = setIntValueType(getIntValue(slots[sp - 1]) & getIntValue(slots[sp]));
+                            pc++;
+                            break;
+                        case OP_IOR:
+                            checkPop(sp, bottom, 2);
+                            sp--;
+                            slots[sp - 1] = setIntValueType(getIntValue(slots[sp - 1]) | getIntValue(slots[sp]));
+                            pc++;
+                            break;
+                        case OP_IXOR:
+                            checkPop(sp, bottom, 2);
+                            sp--;
+                            slots[sp - 1] = setIntValueType(getIntValue(slots[sp - 1]) ^ getIntValue(slots[sp]));
+                            pc++;
+                            break;
+                        case OP_ISHL:
+                            checkPop(sp, bottom, 2);
+                            sp--;
+                            slots[sp - 1] = setIntValueType(getIntValue(slots[sp - 1]) << getIntValue(slots[sp]));
+                            pc++;
+                            break;
+                        case OP_ISHR:
+                            checkPop(sp, bottom, 2);
+                            sp--;
+                            slots[sp - 1] = setIntValueType(getIntValue(slots[sp - 1]) >> getIntValue(slots[sp]));
+                            pc++;
+                            break;
+                        case OP_IUSHR:
+                            checkPop(sp, bottom, 2);
+                            sp--;
+                            slots[sp - 1] = setIntValueType(getIntValue(slots[sp - 1]) >>> getIntValue(slots[sp]));
+                            pc++;
+                            break;
+                        case OP_INEG:
+                            checkPop(sp, bottom, 1);
+                            slots[sp - 1] = setIntValueType(-getIntValue(slots[sp - 1]));
+                            pc++;
+                            break;
+                        case OP_IINC: {
+                            int index = lv + checkLocalVarIndex((instruction >>> 8) & 0xff, varSize);
+                            slots[index] = setIntValueType(getIntValue(slots[index]) + (instruction >> 24));
+                            pc += 3;
+                            break;
+                        }
+                        case OP_GOTO:
+                            if (jitCompilation && instruction >>> 8 <= pc) {
+                                stack.stackPointer = sp;
+                                programCounter = instruction >>> 8;
+                                getCurrentMethod().incrementBackEdgeCount();
+                                continue dispatch;
+                            }
+                            pc = instruction >>> 8;
+                            break;
+                        case OP_IFEQ:
+                            checkPop(sp, bottom, 1);
+                            pc = getIntValue(slots[--sp]) == 0 ? instruction >>> 8 : pc + 3;
+                            break;
+                        case OP_IFNE:
+                            checkPop(sp, bottom, 1);
+                            pc = getIntValue(slots[--sp]) != 0 ? instruction >>> 8 : pc + 3;
+                            break;
+                        case OP_IFLT:
+                            checkPop(sp, bottom, 1);
+                            pc = getIntValue(slots[--sp]) < 0 ? instruction >>> 8 : pc + 3;
+                            break;
+                        case OP_IFGE:
+                            checkPop(sp, bottom, 1);
+                            pc = getIntValue(slots[--sp]) >= 0 ? instruction >>> 8 : pc + 3;
+                            break;
+                        case OP_IFGT:
+                            checkPop(sp, bottom, 1);
+                            pc = getIntValue(slots[--sp]) > 0 ? instruction >>> 8 : pc + 3;
+                            break;
+                        case OP_IFLE:
+                            checkPop(sp, bottom, 1);
+                            pc = getIntValue(slots[--sp]) <= 0 ? instruction >>> 8 : pc + 3;
+                            break;
+                        case OP_IFNULL:
+                            checkPop(sp, bottom, 1);
+                            pc = getRefValue(slots[--sp]) == NULL ? instruction >>> 8 : pc + 3;
+                            break;
+                        case OP_IFNONNULL:
+                            checkPop(sp, bottom, 1);
+                            pc = getRefValue(slots[--sp]) != NULL ? instruction >>> 8 : pc + 3;
+                            break;
+                        case OP_IF_ICMPEQ:
+                            checkPop(sp, bottom, 2);
+                            sp -= 2;
+                            pc = getIntValue(slots[sp]) == getIntValue(slots[sp + 1]) ? instruction >>> 8 : pc + 3;
+                            break;
+                        case OP_IF_ICMPNE:
+                            checkPop(sp, bottom, 2);
+                            sp -= 2;
+                            pc = getIntValue(slots[sp]) != getIntValue(slots[sp + 1]) ? instruction >>> 8 : pc + 3;
+                            break;
+                        case OP_IF_ICMPLT:
+                            checkPop(sp, bottom, 2);
+                            sp -= 2;
+                            pc = getIntValue(slots[sp]) < getIntValue(slots[sp + 1]) ? instruction >>> 8 : pc + 3;
+                            break;
+                        case OP_IF_ICMPGE:
+                            checkPop(sp, bottom, 2);
+                            sp -= 2;
+                            pc = getIntValue(slots[sp]) >= getIntValue(slots[sp + 1]) ? instruction >>> 8 : pc + 3;
+                            break;
+                        case OP_IF_ICMPGT:
+                            checkPop(sp, bottom, 2);
+                            sp -= 2;
+                            pc = getIntValue(slots[sp]) > getIntValue(slots[sp + 1]) ? instruction >>> 8 : pc + 3;
+                            break;
+                        case OP_IF_ICMPLE:
+                            checkPop(sp, bottom, 2);
+                            sp -= 2;
+                            pc = getIntValue(slots[sp]) <= getIntValue(slots[sp + 1]) ? instruction >>> 8 : pc + 3;
+                            break;
+                        case OP_IF_ACMPEQ:
+                            checkPop(sp, bottom, 2);
+                            sp -= 2;
+                            pc = getRefValue(slots[sp]) == getRefValue(slots[sp + 1]) ? instruction >>> 8 : pc + 3;
+                            break;
+                        case OP_IF_ACMPNE:
+                            checkPop(sp, bottom, 2);
+                            sp -= 2;
+                            pc = getRefValue(slots[sp]) != getRefValue(slots[sp + 1]) ? instruction >>> 8 : pc + 3;
+                            break;
+                        case OP_GETFIELD_QUICK:
+                            checkPop(sp, bottom, 1);
+                            slots[sp - 1] = getInstanceObjectByValue(slots[sp - 1]).getValue(instruction >>> 8);
+                            pc += 3;
+                            break;
+                        case OP_PUTFIELD_QUICK:
+                            checkPop(sp, bottom, 2);
+                            sp -= 2;
+                            getInstanceObjectByValue(slots[sp]).setValue(instruction >>> 8, slots[sp + 1]);
+                            collector.writeBarrier(getRefValue(slots[sp]), slots[sp + 1]);
+                            pc += 3;
+                            break;
+                        case OP_ALOAD_GETFIELD_QUICK: {
+                            superinstructionCounts[OP_ALOAD_GETFIELD_QUICK - FIRST_SUPERINSTRUCTION]++;
+                            checkPush(sp, top);
+                            long objectRef = checkRefValue(slots[lv + checkLocalVarIndex(instruction >>> 8 & 0xff, varSize)]);
+                            pc += instruction >>> 16;
+                            slots[sp++] = getInstanceObjectByValue(objectRef).getValue(code[pc] >>> 8);
+                            pc += 3;
+                            break;
+                        }
+                        case OP_ILOAD_ILOAD_IADD_ISTORE: {
+                            superinstructionCounts[OP_ILOAD_ILOAD_IADD_ISTORE - FIRST_SUPERINSTRUCTION]++;
+                            checkPush(sp + 1, top);
+                            int first = getIntValue(slots[lv + checkLocalVarIndex(instruction >>> 8 & 0xff, varSize)]);
+                            pc += instruction >>> 16 & 0xf;
+                            int second = getIntValue(slots[lv + checkLocalVarIndex(code[pc] >>> 8, varSize)]);
+                            pc += (instruction >>> 20 & 0xf) + 1;
+                            slots[lv + checkLocalVarIndex(code[pc] >>> 8, varSize)] = setIntValueType(first + second);
+                            pc += instruction >>> 24;
+                            break;
+                        }
+                        case OP_ILOAD_BIPUSH_IF_ICMPGE: {
+                            superinstructionCounts[OP_ILOAD_BIPUSH_IF_ICMPGE - FIRST_SUPERINSTRUCTION]++;
+                            checkPush(sp + 1, top);
+                            int value = getIntValue(slots[lv + checkLocalVarIndex(instruction >>> 8 & 0xff, varSize)]);
+                            pc += (instruction >>> 24) + 2;
+                            pc = value >= instruction << 8 >> 24 ? code[pc] >>> 8 : pc + 3;
+                            break;
+                        }
+                        case OP_IINC_GOTO: {
+                            superinstructionCounts[OP_IINC_GOTO - FIRST_SUPERINSTRUCTION]++;
+                            int index = lv + checkLocalVarIndex((instruction >>> 8) & 0xff, varSize);
+                            slots[index] = setIntValueType(getIntValue(slots[index]) + (instruction >> 24));
+                            if (jitCompilation && code[pc + 3] >>> 8 <= pc) {
+                                stack.stackPointer = sp;
+                                programCounter = code[pc + 3] >>> 8;
+                                getCurrentMethod().incrementBackEdgeCount();
+                                continue dispatch;
+                            }
+                            pc = code[pc + 3] >>> 8;
+                            break;
+                        }
+                        case OP_IRETURN:
+                        case OP_FRETURN:
+                            checkPop(sp, bottom, 1);
+                            if (stack.invokeCount == 0) {
+                                return getPureValue(slots[sp - 1]);
+                            }
+                            stack.stackPointer = sp;
+                            destroyCurrentMethod(1);
+                            continue dispatch;
+                        case OP_LRETURN:
+                        case OP_DRETURN:
+                            checkPop(sp, bottom, 2);
+                            if (stack.invokeCount == 0) {
+                                return getWideValue(slots[sp - 2], slots[sp - 1]);
+                            }
+                            stack.stackPointer = sp;
+                            destroyCurrentMethod(2);
+                            continue dispatch;
+                        case OP_ARETURN:
+                            checkPop(sp, bottom, 1);
+                            if (stack.invokeCount == 0) {
+                                return getRefValue(slots[sp - 1]);
+                            }
+                            stack.stackPointer = sp;
+                            destroyCurrentMethod(1);
+                            continue dispatch;
+                        case OP_RETURN:
+                            if (stackMethodPointer == 0) {
+                                return 0;
+                            }
+                            stack.stackPointer = sp;
+                            destroyCurrentMethod(0);
+                            continue dispatch;
+                        default:
+                            stack.stackPointer = sp;
+                            programCounter = pc + 1;
+                            delegated = true;
+                            currentOpcode = getOpcode(pc);
+                            executeInstruction(currentOpcode);
+                            continue dispatch;
                     }
-                } else {
-                    System.out.println(Utils.changeJVMKlassNameToSystemKlassName(e.toString()) + "\n" + getStackTrace(false));
-                    System.exit(-1);
                 }
+            } catch (RuntimeExceptionJVM e) {
+                if (!delegated) {
+                    currentOpcode = getOpcode(pc);
+                }
+                throw reportException(e);
             } catch (Exception e) {
+                if (!delegated) {
+                    currentOpcode = getOpcode(pc);
+                }
                 throw new RuntimeException("\n" + getStackTrace(false) + "\n\n" + e);
             }
         }
     }
 
+    /**
+     * Walks the {@link NodeCode} of the current method. Every node returns the program counter of the next one,
+     * so the loop does not decode anything; it only reloads the nodes when the current method changes.
+     */
+    private long executeNodes() {
+        while (true) {
+            NodeCode.Node[] code = nodes;
+            int pc = programCounter;
+            try {
+                do {
+                    pc = code[pc].execute(this, stack);
+                } while (pc >= 0);
+            } catch (RuntimeExceptionJVM e) {
+                setOpcodeOfNode(code, pc);
+                throw reportException(e);
+            } catch (Exception e) {
+                setOpcodeOfNode(code, pc);
+                throw new RuntimeException("\n" + getStackTrace(false) + "\n\n" + e);
+            }
+            if (pc == NodeCode.EXIT) {
+                return result;
+            }
+        }
+    }
+
+    private void setOpcodeOfNode(@Nonnull NodeCode.Node[] code, int pc) {
+        // a delegated instruction has already set its opcode and may have been quickened since
+        if (code == nodes && !(code[pc] instanceof NodeCode.DelegateNode)) {
+            currentOpcode = getOpcode(pc);
+        }
+    }
+
+    /**
+     * Executes the instruction at {@code pc} with the regular handlers on behalf of a node and rebuilds the node
+     * if the instruction was quickened.
+     *
+     * @return the program counter of the next node or {@link NodeCode#FRAME_CHANGED}
+     */
+    int executeDelegated(int pc) {
+        Method method = getCurrentMethod();
+        int methodPointer = stackMethodPointer;
+        byte opcode = byteCode[pc];
+        programCounter = pc + 1;
+        currentOpcode = getOpcode(pc);
+        executeInstruction(currentOpcode);
+        if (method.getBytecode()[pc] != opcode) {
+            getNodeCode(method).quicken(method, heap, pc);
+        }
+        return methodPointer == stackMethodPointer ? programCounter : NodeCode.FRAME_CHANGED;
+    }
+
+    /**
+     * Invokes the method on behalf of a node. A method that is not native returns to {@code next}.
+     *
+     * @return the program counter of the next node or {@link NodeCode#FRAME_CHANGED}
+     */
+    int invoke(@Nonnull Method method, boolean staticMethod, int next) {
+        programCounter = next;
+        handleMethod(method, staticMethod);
+        return method.isNative() ? next : NodeCode.FRAME_CHANGED;
+    }
+
+    /**
+     * Completes the method invoked by the engine with the result.
+     */
+    int exit(long result) {
+        this.result = result;
+        return NodeCode.EXIT;
+    }
+
+    /**
+     * Runs the compiled code of the current method from the current program counter, compiling the method
+     * first if it has become hot. The instruction at which the compiled code stops is left to the interpreter.
+     */
+    private void runCompiledCode() {
+        Method method = getCurrentMethod();
+        CompiledMethod compiledMethod = method.getCompiledMethod();
+        if (compiledMethod == null) {
+            if (!method.isCompilable() || method.getInvocationCount() + method.getBackEdgeCount() < jitThreshold) {
+                return;
+            }
+            if (compiler == null) {
+                compiler = new TemplateCompiler(heap);
+            }
+            compiledMethod = compiler.compile(method);
+            if (compiledMethod == null) {
+                method.setCompilable(false);
+                return;
+            }
+            method.setCompiledMethod(compiledMethod);
+        }
+        long state;
+        try {
+            state = compiledMethod.run(stack.stack, stack.localVariable, stack.getOperandStackBottom(), stack.stackPointer, programCounter);
+        } catch (RuntimeException e) {
+            throw new RuntimeException("\n" + getStackTrace(false) + "\n\n" + e);
+        }
+        programCounter = (int) (state >>> 32);
+        stack.stackPointer = (int) state;
+    }
+
+    @Nonnull
+    private Opcode getOpcode(int pc) {
+        Opcode opcode = table[byteCode[pc] & 0xff];
+        if (opcode == null) {
+            throw new RuntimeException("Unrecognised opcode byte: "
+                    + (byteCode[pc] & 0xff)
+                    + " encountered at position "
+                    + pc
+                    + "\n"
+                    + "\n"
+                    + getStackTrace(true));
+        }
+        return opcode;
+    }
+
+    @Nonnull
+    private RuntimeException reportException(@Nonnull RuntimeExceptionJVM e) {
+        if (exceptionDebugMode) {
+            if (e instanceof ClassCastExceptionJVM) {
+                return new ClassCastExceptionJVM(e.getLocalizedMessage() + "\n" + getStackTrace(false));
+            } else if (e instanceof NullPointerExceptionJVM) {
+                return new NullPointerExceptionJVM("\n" + getStackTrace(false));
+            } else if (e instanceof OutOfMemoryErrorJVM) {
+                return new OutOfMemoryErrorJVM("\n" + getStackTrace(false));
+            } else if (e instanceof ClassNotFoundExceptionJVM) {
+                return new ClassNotFoundExceptionJVM(e.getLocalizedMessage() + "\n" + getStackTrace(false));
+            } else {
+                return e;
+            }
+        } else {
+            System.out.println(Utils.changeJVMKlassNameToSystemKlassName(e.toString()) + "\n" + getStackTrace(false));
+            System.exit(-1);
+            return e;
+        }
+    }
+
+    private static void checkPush(int stackPointer, int top) {
+        if (stackPointer >= top) {
+            throw new IndexOutOfBoundsException("wrong PUSH operation on the operand stack");
+        }
+    }
+
+    private static void checkPop(int stackPointer, int bottom, int count) {
+        if (stackPointer - count < bottom) {
+            throw new IndexOutOfBoundsException("wrong POP operation on the operand stack");
+        }
+    }
+
+    private static int checkLocalVarIndex(int index, int varSize) {
+        if (index >= varSize) {
+            throw new IndexOutOfBoundsException("wrong index for local variables stack");
+        }
+        return index;
+    }
+
+    private void executeInstruction(@Nonnull Opcode opcode) {
+        switch (opcode) {
+            case GETFIELD:
+                pushFieldOntoStackFromInstanceObject(false);
+                break;
+            case GETFIELD_QUICK:
+                pushFieldOntoStackFromInstanceObject(true);
+                break;
+            case GETSTATIC:
+                pushStaticFieldOntoStackFromInstanceObject(false);
+                break;
+            case GETSTATIC_QUICK:
+                pushStaticFieldOntoStackFromInstanceObject(true);
+                break;
+            case PUTFIELD:
+                putFieldToInstanceObjectFromStack(false);
+                break;
+            case PUTFIELD_QUICK:
+                putFieldToInstanceObjectFromStack(true);
+                break;
+            case PUTSTATIC:
+                putStaticFieldToInstanceObjectFromStack(false);
+                break;
+            case PUTSTATIC_QUICK:
+                putStaticFieldToInstanceObjectFromStack(true);
+                break;
+            case CHECKCAST:
+                checkCast(false);
+                break;
+            case CHECKCAST_QUICK:
+                checkCast(true);
+                break;
+            case INSTANCEOF:
+                checkInstanceOf(false);
+                break;
+            case INSTANCEOF_QUICK:
+                checkInstanceOf(true);
+                break;
+            case I2C:
+                stack.push(checkValueType(stack.pop(), JVMType.I));
+                break;
+            case I2B:
+                pushIntValueOntoStack((byte) popIntValue());
+                break;
+            case I2S:
+                pushIntValueOntoStack((short) popIntValue());
+                break;
+            case I2L:
+                pushLongValueOntoStack(popIntValue());
+                break;
+            case I2F:
+                pushFloatValueOntoStack(popIntValue());
+                break;
+            case I2D:
+                pushDoubleValueOntoStack(popIntValue());
+                break;
+            case L2I:
+                pushIntValueOntoStack((int) popLongValue());
+                break;
+            case L2F:
+                pushFloatValueOntoStack(popLongValue());
+                break;
+            case L2D:
+                pushDoubleValueOntoStack(popLongValue());
+                break;
+            case F2I:
+                pushIntValueOntoStack((int) popFloatValue());
+                break;
+            case F2L:
+                pushLongValueOntoStack((long) popFloatValue());
+                break;
+            case F2D:
+                pushDoubleValueOntoStack(popFloatValue());
+                break;
+            case D2I:
+                pushIntValueOntoStack((int) popDoubleValue());
+                break;
+            case D2L:
+                pushLongValueOntoStack((long) popDoubleValue());
+                break;
+            case D2F:
+                pushFloatValueOntoStack((float) popDoubleValue());
+                break;
+            case LCONST_0:
+            case LCONST_1:
+                pushLongValueOntoStack(opcode.getOpcode() - LCONST_0.getOpcode());
+                break;
+            case FCONST_0:
+            case FCONST_1:
+            case FCONST_2:
+                pushFloatValueOntoStack(opcode.getOpcode() - FCONST_0.getOpcode());
+                break;
+            case DCONST_0:
+            case DCONST_1:
+                pushDoubleValueOntoStack(opcode.getOpcode() - DCONST_0.getOpcode());
+                break;
+            case LLOAD:
+                pushWideValueOntoStackFromLocalVar(readByte() & 0xff, JVMType.J);
+                break;
+            case LLOAD_0:
+            case LLOAD_1:
+            case LLOAD_2:
+            case LLOAD_3:
+                pushWideValueOntoStackFromLocalVar(opcode.getOpcode() - LLOAD_0.getOpcode(), JVMType.J);
+                break;
+            case DLOAD:
+                pushWideValueOntoStackFromLocalVar(readByte() & 0xff, JVMType.D);
+                break;
+            case DLOAD_0:
+            case DLOAD_1:
+            case DLOAD_2:
+            case DLOAD_3:
+                pushWideValueOntoStackFromLocalVar(opcode.getOpcode() - DLOAD_0.getOpcode(), JVMType.D);
+                break;
+            case FLOAD:
+                stack.push(checkValueType(stack.getLocalVar(readByte() & 0xff), JVMType.F));
+                break;
+            case FLOAD_0:
+            case FLOAD_1:
+            case FLOAD_2:
+            case FLOAD_3:
+                stack.push(checkValueType(stack.getLocalVar(opcode.getOpcode() - FLOAD_0.getOpcode()), JVMType.F));
+                break;
+            case LSTORE:
+                setLocalWideValueFromStack(readByte() & 0xff, JVMType.J);
+                break;
+            case LSTORE_0:
+            case LSTORE_1:
+            case LSTORE_2:
+            case LSTORE_3:
+                setLocalWideValueFromStack(opcode.getOpcode() - LSTORE_0.getOpcode(), JVMType.J);
+                break;
+            case DSTORE:
+                setLocalWideValueFromStack(readByte() & 0xff, JVMType.D);
+                break;
+            case DSTORE_0:
+            case DSTORE_1:
+            case DSTORE_2:
+            case DSTORE_3:
+                setLocalWideValueFromStack(opcode.getOpcode() - DSTORE_0.getOpcode(), JVMType.D);
+                break;
+            case FSTORE:
+                stack.setLocalVar(readByte() & 0xff, checkValueType(stack.pop(), JVMType.F));
+                break;
+            case FSTORE_0:
+            case FSTORE_1:
+            case FSTORE_2:
+            case FSTORE_3:
+                stack.setLocalVar(opcode.getOpcode() - FSTORE_0.getOpcode(), checkValueType(stack.pop(), JVMType.F));
+                break;
+            case LADD:
+                pushLongValueOntoStack(popLongValue() + popLongValue());
+                break;
+            case LSUB: {
+                long value2 = popLongValue();
+                pushLongValueOntoStack(popLongValue() - value2);
+                break;
+            }
+            case LMUL:
+                pushLongValueOntoStack(popLongValue() * popLongValue());
+                break;
+            case LDIV: {
+                long value2 = popLongValue();
+                if (value2 == 0) {
+                    throw new ArithmeticException("cannot divide 0");
+                }
+                pushLongValueOntoStack(popLongValue() / value2);
+                break;
+            }
+            case LREM: {
+                long value2 = popLongValue();
+                if (value2 == 0) {
+                    throw new ArithmeticException("cannot divide 0");
+                }
+                pushLongValueOntoStack(popLongValue() % value2);
+                break;
+            }
+            case LNEG:
+                pushLongValueOntoStack(-popLongValue());
+                break;
+            case LAND:
+                pushLongValueOntoStack(popLongValue() & popLongValue());
+                break;
+            case LOR:
+                pushLongValueOntoStack(popLongValue() | popLongValue());
+                break;
+            case LXOR:
+                pushLongValueOntoStack(popLongValue() ^ popLongValue());
+                break;
+            case LSHL: {
+                int value2 = popIntValue();
+                pushLongValueOntoStack(popLongValue() << value2);
+                break;
+            }
+            case LSHR: {
+                int value2 = popIntValue();
+                pushLongValueOntoStack(popLongValue() >> value2);
+                break;
+            }
+            case LUSHR: {
+                int value2 = popIntValue();
+                pushLongValueOntoStack(popLongValue() >>> value2);
+                break;
+            }
+            case LCMP: {
+                long value2 = popLongValue();
+                pushIntValueOntoStack(Long.compare(popLongValue(), value2));
+                break;
+            }
+            case FADD:
+                pushFloatValueOntoStack(popFloatValue() + popFloatValue());
+                break;
+            case FSUB: {
+                float value2 = popFloatValue();
+                pushFloatValueOntoStack(popFloatValue() - value2);
+                break;
+            }
+            case FMUL:
+                pushFloatValueOntoStack(popFloatValue() * popFloatValue());
+                break;
+            case FDIV: {
+                float value2 = popFloatValue();
+                pushFloatValueOntoStack(popFloatValue() / value2);
+                break;
+            }
+            case FREM: {
+                float value2 = popFloatValue();
+                pushFloatValueOntoStack(popFloatValue() % value2);
+                break;
+            }
+            case FNEG:
+                pushFloatValueOntoStack(-popFloatValue());
+                break;
+            case FCMPL:
+            case FCMPG: {
+                float value2 = popFloatValue();
+                float value1 = popFloatValue();
+                pushIntValueOntoStack(compare(value1, value2, opcode == FCMPG));
+                break;
+            }
+            case DADD:
+                pushDoubleValueOntoStack(popDoubleValue() + popDoubleValue());
+                break;
+            case DSUB: {
+                double value2 = popDoubleValue();
+                pushDoubleValueOntoStack(popDoubleValue() - value2);
+                break;
+            }
+            case DMUL:
+                pushDoubleValueOntoStack(popDoubleValue() * popDoubleValue());
+                break;
+            case DDIV: {
+                double value2 = popDoubleValue();
+                pushDoubleValueOntoStack(popDoubleValue() / value2);
+                break;
+            }
+            case DREM: {
+                double value2 = popDoubleValue();
+                pushDoubleValueOntoStack(popDoubleValue() % value2);
+                break;
+            }
+            case DNEG:
+                pushDoubleValueOntoStack(-popDoubleValue());
+                break;
+            case DCMPL:
+            case DCMPG: {
+                double value2 = popDoubleValue();
+                double value1 = popDoubleValue();
+                pushIntValueOntoStack(compare(value1, value2, opcode == DCMPG));
+                break;
+            }
+            case POP2:
+                stack.pop();
+                stack.pop();
+                break;
+            case DUP_X2:
+                stack.dup(1, 2);
+                break;
+            case DUP2:
+                stack.dup(2, 0);
+                break;
+            case DUP2_X1:
+                stack.dup(2, 1);
+                break;
+            case DUP2_X2:
+                stack.dup(2, 2);
+                break;
+            case INVOKESPECIAL:
+                invokeNonVirtualMethod(false, false);
+                break;
+            case INVOKESPECIAL_QUICK:
+                invokeNonVirtualMethod(true, false);
+                break;
+            case INVOKESTATIC:
+                invokeNonVirtualMethod(false, true);
+                break;
+            case INVOKESTATIC_QUICK:
+                invokeNonVirtualMethod(true, true);
+                break;
+            case INVOKEVIRTUAL:
+                invokeVirtualMethod(false);
+                break;
+            case INVOKEVIRTUAL_QUICK:
+                invokeVirtualMethod(true);
+                break;
+            case NEW:
+                pushRefValueOntoStack(allocateInstanceObjectAndGetReference(false));
+                break;
+            case NEW_QUICK:
+                pushRefValueOntoStack(allocateInstanceObjectAndGetReference(true));
+                break;
+            case NEWARRAY:
+                int atype = readByte();
+            /*  Array Type	atype
+                T_BOOLEAN	4
+                T_CHAR	    5
+                T_FLOAT	    6
+                T_DOUBLE	7
+                T_BYTE	    8
+                T_SHORT	    9
+                T_INT	    10
+                T_LONG	    11
+                */
+                String valueType = JVMType.values()[atype - 3].name();
+                pushRefValueOntoStack(getInstanceObjectReferenceAtSafepoint(
+                        getInstanceObject(heap, "[" + valueType, valueType, getIntValue(stack.pop()), -1)));
+                break;
+            case ANEWARRAY:
+                pushRefValueOntoStack(allocateReferenceArray(false));
+                break;
+            case ANEWARRAY_QUICK:
+                pushRefValueOntoStack(allocateReferenceArray(true));
+                break;
+            case MULTIANEWARRAY:
+                newMultiArray(false);
+                break;
+            case MULTIANEWARRAY_QUICK:
+                newMultiArray(true);
+                break;
+            case ARRAYLENGTH:
+                pushIntValueOntoStack(checkArrayObject(getInstanceObjectByValue(stack.pop())).size());
+                break;
+            case AALOAD:
+                stack.push(checkRefValue(loadFromArray()));
+                break;
+            case IALOAD:
+                pushIntValueOntoStack(loadFromIntArray(JVMType.I));
+                break;
+            case SALOAD:
+                pushIntValueOntoStack(loadFromIntArray(JVMType.S));
+                break;
+            case FALOAD:
+                push(setValueType(loadFromIntArray(JVMType.F), JVMType.F));
+                break;
+            case LALOAD:
+                pushLongValueOntoStack(loadFromWideArray(JVMType.J));
+                break;
+            case DALOAD:
+                pushWideValueOntoStack(loadFromWideArray(JVMType.D), JVMType.D);
+                break;
+            case BALOAD:
+                /*
+                 * The arrayref must be of type reference and must refer to an array whose components are of type byte or of type boolean.
+                 * The index must be of type int. Both arrayref and index are popped from the operand stack.
+                 * The byte value in the component of the array at index is retrieved, sign-extended to an int value, and pushed onto the top of the operand stack.
+                 */
+                pushIntValueOntoStack(loadFromByteOrBooleanArray());
+                break;
+            case CALOAD:
+                /*
+                 * The arrayref must be of type reference and must refer to an array whose components are of type char.
+                 * The index must be of type int. Both arrayref and index are popped from the operand stack.
+                 * The component of the array at index is retrieved and zero-extended to an int value. That value is pushed onto the operand stack.
+                 */
+                pushIntValueOntoStack(loadFromIntArray(JVMType.C));
+                break;
+            case AASTORE:
+                /*
+                 * The arrayref must be of type reference and must refer to an array whose components are of type reference.
+                 * The index must be of type int and value must be of type reference. The arrayref, index, and value are popped from the operand stack.
+                 * The reference value is stored as the component of the array at index.
+                 */
+                storeToArray(checkRefValue(stack.pop()));
+                break;
+            case IASTORE:
+                /*
+                 * Store into int array
+                 * Both index and value must be of type int. The arrayref, index, and value are popped from the operand stack.
+                 * The int value is stored as the component of the array indexed by index.
+                 */
+                storeToIntArray(popIntValue(), JVMType.I);
+                break;
+            case BASTORE:
+                /*
+                 * Store into byte or boolean array
+                 * The index and the value must both be of type int. The arrayref, index, and value are popped from the operand stack.
+                 * The int value is truncated to a byte and stored as the component of the array indexed by index.
+                 */
+                storeByteOrBooleanToArray(popIntValue());
+                break;
+            case CASTORE:
+                /*
+                 * The arrayref must be of type reference and must refer to an array whose components are of type char.
+                 * The index and the value must both be of type int. The arrayref, index, and value are popped from the operand stack.
+                 * The int value is truncated to a char and stored as the component of the array indexed by index.
+                 */
+                storeToIntArray((char) popIntValue(), JVMType.C);
+                break;
+            case SASTORE:
+                storeToIntArray((short) popIntValue(), JVMType.S);
+                break;
+            case FASTORE:
+                storeToIntArray(getValue(pop(), JVMType.F), JVMType.F);
+                break;
+            case LASTORE:
+                storeToWideArray(popLongValue(), JVMType.J);
+                break;
+            case DASTORE:
+                storeToWideArray(popWideValue(JVMType.D), JVMType.D);
+                break;
+            case RET:
+                throw new IllegalArgumentException("Illegal opcode byte: " + opcode.getOpcode() + " encountered at position " + (programCounter - 1) + ". Stopping.");
+            case LDC:
+                pushConstantOntoStack(getSourceKlass().getCPItem((readByte() & 0xff) - 1));
+                break;
+            case LDC_W:
+                pushConstantOntoStack(getSourceKlass().getCPItem((readTwoBytes() & 0xffff) - 1));
+                break;
+            case LDC2_W:
+                ConstantPoolEntry entry = getSourceKlass().getCPItem((readTwoBytes() & 0xffff) - 1);
+                if (entry.getType() == ConstantPoolType.LONG) {
+                    pushLongValueOntoStack(entry.getNum().longValue());
+                } else {
+                    pushDoubleValueOntoStack(entry.getNum().doubleValue());
+                }
+                break;
+            case NOP:
+            case MONITORENTER:
+            case MONITOREXIT:
+                break;
+            case BREAKPOINT:
+            case IMPDEP1:
+            case IMPDEP2:
+            case JSR:
+            case JSR_W:
+            default:
+                System.err.println("Saw " + opcode + " - that can't happen. Stopping.");
+                System.err.println(getStackTrace(true));
+                System.exit(1);
+        }
+    }
+
     @Nonnull
     private String getStackTrace(boolean showMnemonics) {
         StringBuilder stackTrace = new StringBuilder();
         for (int i = stackMethodPointer; i >= 0; i--) {
-            Method method = stackMethod[i];
+            Method method = stack.methods[i];
             stackTrace.append("\tat ")
                     .append(method.getClassName())
                     .append(".")
@@ -614,7 +1561,7 @@ public final class ExecutionEngine {
                 int port = getIntValue(stack.getLocalVar(2));
                 String ipAddress = getString(stringObjRef);
                 try {
-                    nativeObjects.put(socketObjRef, new Socket(ipAddress, port));
+                    heap.putNativeObject(socketObjRef, new Socket(ipAddress, port));
                 } catch (IOException e) {
                     throw new RuntimeException(e);
                 }
@@ -625,9 +1572,9 @@ public final class ExecutionEngine {
                 int streamObjRef = allocateInstanceObjectAndGetReference(INPUT_STREAM);
                 int socketObjRef = getRefValue(stack.pop());
                 pushRefValueOntoStack(streamObjRef);
-                Socket socket = (Socket) nativeObjects.get(socketObjRef);
+                Socket socket = (Socket) heap.getNativeObject(socketObjRef);
                 try {
-                    nativeObjects.put(streamObjRef, GET_INPUT_STREAM.equals(methodName) ? socket.getInputStream() : socket.getOutputStream());
+                    heap.putNativeObject(streamObjRef, GET_INPUT_STREAM.equals(methodName) ? socket.getInputStream() : socket.getOutputStream());
                 } catch (IOException e) {
                     throw new RuntimeException(e);
                 }
@@ -636,36 +1583,36 @@ public final class ExecutionEngine {
             case INIT_INPUT_STREAM_READER: {
                 int inputStreamObjRef = getRefValue(stack.pop());
                 int inputStreamReaderObjRef = getRefValue(stack.pop());
-                InputStream inputStream = (InputStream) nativeObjects.get(inputStreamObjRef);
-                nativeObjects.put(inputStreamReaderObjRef, new InputStreamReader(inputStream));
+                InputStream inputStream = (InputStream) heap.getNativeObject(inputStreamObjRef);
+                heap.putNativeObject(inputStreamReaderObjRef, new InputStreamReader(inputStream));
                 break;
             }
             case INIT_BUFFERED_READER: {
                 int inputStreamReaderObjRef = getRefValue(stack.pop());
                 int bufferedReaderObjRef = getRefValue(stack.pop());
-                Reader inputStreamReader = (Reader) nativeObjects.get(inputStreamReaderObjRef);
-                nativeObjects.put(bufferedReaderObjRef, new BufferedReader(inputStreamReader));
+                Reader inputStreamReader = (Reader) heap.getNativeObject(inputStreamReaderObjRef);
+                heap.putNativeObject(bufferedReaderObjRef, new BufferedReader(inputStreamReader));
                 break;
             }
             case INIT_PRINT_WRITER: {
                 int bool = getIntValue(stack.pop());
                 int outputStreamObjRef = getRefValue(stack.pop());
                 int printWriterObjRef = getRefValue(stack.pop());
-                OutputStream outputStream = (OutputStream) nativeObjects.get(outputStreamObjRef);
-                nativeObjects.put(printWriterObjRef, new PrintWriter(outputStream, bool == 1));
+                OutputStream outputStream = (OutputStream) heap.getNativeObject(outputStreamObjRef);
+                heap.putNativeObject(printWriterObjRef, new PrintWriter(outputStream, bool == 1));
                 break;
             }
             case PRINT_WRITER_PRINTLN: {
                 int stringObjRef = getRefValue(stack.pop());
                 String message = getString(stringObjRef);
                 int printWriterObjRef = getRefValue(stack.pop());
-                PrintWriter printWriter = (PrintWriter) nativeObjects.get(printWriterObjRef);
+                PrintWriter printWriter = (PrintWriter) heap.getNativeObject(printWriterObjRef);
                 printWriter.println(message);
                 break;
             }
             case READ_LINE: {
                 int bufferedReaderObjRef = getRefValue(stack.pop());
-                BufferedReader bufferedReader = (BufferedReader) nativeObjects.get(bufferedReaderObjRef);
+                BufferedReader bufferedReader = (BufferedReader) heap.getNativeObject(bufferedReaderObjRef);
                 try {
                     String message = bufferedReader.readLine();
                     createStringInstance(message, false);
@@ -706,15 +1653,19 @@ public final class ExecutionEngine {
         return String.valueOf(buf);
     }
 
-    private void createMultiArray(int indexDim, int[] dimensions, InstanceObject object, String type) {
+    private void createMultiArray(int indexDim, int[] dimensions, int objectRef, String type) {
+        InstanceObject object = getInstanceObjectByRef(objectRef);
         String arrayType = type.substring(type.indexOf('[') + 1);
         for (int i = 0; i < object.size(); i++) {
             if (indexDim == dimensions.length - 1) {
-                object.setValue(i, setRefValueType(allocateArray(arrayType, arrayType.substring(1), dimensions[indexDim])));
+                long value = setRefValueType(allocateArray(arrayType, arrayType.substring(1), dimensions[indexDim]));
+                object.setValue(i, value);
+                collector.writeBarrier(objectRef, value);
             } else {
-                InstanceObject newObject = createReferenceArray(arrayType, dimensions[indexDim], -1);
-                object.setValue(i, setRefValueType(getInstanceObjectReference(newObject)));
-                createMultiArray(indexDim + 1, dimensions, newObject, arrayType);
+                int newObjectRef = getInstanceObjectReference(createReferenceArray(arrayType, dimensions[indexDim], -1));
+                object.setValue(i, setRefValueType(newObjectRef));
+                collector.writeBarrier(objectRef, setRefValueType(newObjectRef));
+                createMultiArray(indexDim + 1, dimensions, newObjectRef, arrayType);
             }
         }
     }
@@ -736,13 +1687,6 @@ public final class ExecutionEngine {
         return value;
     }
 
-    private long checkByteOrBooleanValueType(long value) {
-        if (getValueType(value) == JVMType.Z.ordinal() || getValueType(value) == JVMType.B.ordinal()) {
-            return value;
-        }
-        throw new RuntimeException("Wrong types: " + JVMType.values()[getValueType(value)] + " is not equal " + "byte or boolean");
-    }
-
     @Nonnull
     private InstanceObject checkArrayObject(@Nonnull InstanceObject object) {
         if (!object.isArray()) {
@@ -751,6 +1695,14 @@ public final class ExecutionEngine {
         return object;
     }
 
+    @Nonnull
+    private InstanceObject checkArrayObject(@Nonnull InstanceObject object, @Nonnull JVMType type) {
+        if (checkArrayObject(object).getValueType() != type) {
+            throw new RuntimeException("Wrong type of array\n" + getStackTrace(false));
+        }
+        return object;
+    }
+
     private int getValueType(long value) {
         int type = (int) (value >> 32);
         return type >>> 31 == 1 ? ~type : type; // if 'type >>> 31 == 1' (negative sign) type was inverted
@@ -761,47 +1713,160 @@ public final class ExecutionEngine {
         return getSourceKlass().getKlassNameByCPIndex((short) cpIndex);
     }
 
-    private long setIntValueType(int value) {
+    static long setIntValueType(int value) {
         return setValueType(JVMType.I.ordinal()) ^ value;
     }
 
     private void pushIntValueOntoStack(int value) {
-        stack.push(setIntValueType(value));
+        push(setIntValueType(value));
     }
 
-    private long setCharValueType(int value) {
+    private static long setCharValueType(int value) {
         return setValueType(JVMType.C.ordinal()) ^ value;
     }
 
-    private long setValueType(int value, @Nonnull JVMType type) {
+    private static long setValueType(int value, @Nonnull JVMType type) {
         return setValueType(type.ordinal()) ^ value;
     }
 
-    private long setRefValueType(int value) {
+    static long setRefValueType(int value) {
         return setValueType(JVMType.A.ordinal()) ^ value;
     }
 
     private void pushRefValueOntoStack(int value) {
-        stack.push(setRefValueType(value));
+        push(setRefValueType(value));
+    }
+
+    /*
+     * A long or a double takes two slots of the stack or of the local variables, as the JVM specification
+     * counts them: the high half in the first slot and the low half in the second one. Both halves are tagged
+     * with the type of the value, so the tag checks and the garbage collector treat them as any other slot.
+     */
+    static long getWideValue(long high, long low) {
+        return ((long) (int) high << 32) | (low & 0xffffffffL);
+    }
+
+    private void pushWideValueOntoStack(long value, @Nonnull JVMType type) {
+        push(setValueType((int) (value >>> 32), type));
+        push(setValueType((int) value, type));
+    }
+
+    private long popWideValue(@Nonnull JVMType type) {
+        long low = checkValueType(pop(), type);
+        return getWideValue(checkValueType(pop(), type), low);
+    }
+
+    private void pushLongValueOntoStack(long value) {
+        pushWideValueOntoStack(value, JVMType.J);
+    }
+
+    private long popLongValue() {
+        return popWideValue(JVMType.J);
+    }
+
+    private void pushDoubleValueOntoStack(double value) {
+        pushWideValueOntoStack(Double.doubleToRawLongBits(value), JVMType.D);
+    }
+
+    private double popDoubleValue() {
+        return Double.longBitsToDouble(popWideValue(JVMType.D));
+    }
+
+    private void pushFloatValueOntoStack(float value) {
+        push(setValueType(Float.floatToRawIntBits(value), JVMType.F));
+    }
+
+    private float popFloatValue() {
+        return Float.intBitsToFloat(getValue(pop(), JVMType.F));
+    }
+
+    private void pushWideValueOntoStackFromLocalVar(int index, @Nonnull JVMType type) {
+        stack.push(checkValueType(stack.getLocalVar(index), type));
+        stack.push(checkValueType(stack.getLocalVar(index + 1), type));
+    }
+
+    private void setLocalWideValueFromStack(int index, @Nonnull JVMType type) {
+        stack.setLocalVar(index + 1, checkValueType(stack.pop(), type));
+        stack.setLocalVar(index, checkValueType(stack.pop(), type));
+    }
+
+    /**
+     * Compares the values as FCMPG and DCMPG do when {@code greater} is set, or as FCMPL and DCMPL otherwise:
+     * the instructions differ only in the result for NaN.
+     */
+    private static int compare(double value1, double value2, boolean greater) {
+        if (value1 > value2) {
+            return 1;
+        } else if (value1 < value2) {
+            return -1;
+        } else if (value1 == value2) {
+            return 0;
+        }
+        return greater ? 1 : -1;
+    }
+
+    private void pushConstantOntoStack(@Nonnull ConstantPoolEntry entry) {
+        switch (entry.getType()) {
+            case INTEGER:
+                pushIntValueOntoStack((Integer) entry.getNum());
+                break;
+            case FLOAT:
+                pushFloatValueOntoStack((Float) entry.getNum());
+                break;
+            case STRING:
+                createStringInstance(entry.getStr(), true);
+                break;
+        }
     }
 
     private void pushRefValueOntoStackFromLocalVar(int index) {
-        stack.push(checkValueType(stack.getLocalVar(index), JVMType.A));
+        if (verified) {
+            stack.pushUnchecked(stack.getLocalVarUnchecked(index));
+        } else {
+            stack.push(checkValueType(stack.getLocalVar(index), JVMType.A));
+        }
     }
 
     private void pushIntValueOntoStackFromLocalVar(int index) {
-        stack.push(checkValueType(stack.getLocalVar(index), JVMType.I));
+        if (verified) {
+            stack.pushUnchecked(stack.getLocalVarUnchecked(index));
+        } else {
+            stack.push(checkValueType(stack.getLocalVar(index), JVMType.I));
+        }
     }
 
     private void setLocalRefValueFromStack(int index) {
-        stack.setLocalVar(index, checkValueType(stack.pop(), JVMType.A));
+        if (verified) {
+            stack.setLocalVarUnchecked(index, stack.popUnchecked());
+        } else {
+            stack.setLocalVar(index, checkValueType(stack.pop(), JVMType.A));
+        }
     }
 
     private void setLocalIntValueFromStack(int index) {
-        stack.setLocalVar(index, checkValueType(stack.pop(), JVMType.I));
+        if (verified) {
+            stack.setLocalVarUnchecked(index, stack.popUnchecked());
+        } else {
+            stack.setLocalVar(index, checkValueType(stack.pop(), JVMType.I));
+        }
+    }
+
+    /**
+     * Pushes onto the operand stack of the current method, without the bounds check if the method is verified.
+     */
+    private void push(long value) {
+        if (verified) {
+            stack.pushUnchecked(value);
+        } else {
+            stack.push(value);
+        }
     }
 
-    private long setValueType(int type) {
+    private long pop() {
+        return verified ? stack.popUnchecked() : stack.pop();
+    }
+
+    private static long setValueType(int type) {
         return ((long) type << 32);
     }
 
@@ -809,12 +1874,27 @@ public final class ExecutionEngine {
         return (int) value;
     }
 
-    private int getIntValue(long value) {
-        return getValue(value, JVMType.I);
+    int getIntValue(long value) {
+        return getPureValue(checkIntValue(value));
+    }
+
+    int getRefValue(long value) {
+        return getPureValue(checkRefValue(value));
     }
 
-    private int getRefValue(long value) {
-        return getValue(value, JVMType.A);
+    long checkIntValue(long value) {
+        int type = getValueType(value);
+        if (type != JVMType.I.ordinal() && type != JVMType.Z.ordinal()) {
+            checkValueType(value, JVMType.I);
+        }
+        return value;
+    }
+
+    long checkRefValue(long value) {
+        if (getValueType(value) != JVMType.A.ordinal()) {
+            checkValueType(value, JVMType.A);
+        }
+        return value;
     }
 
     private int getValue(long value, JVMType type) {
@@ -852,13 +1932,21 @@ public final class ExecutionEngine {
         return heap.getInstanceKlass(instKlassIndex);
     }
 
+    /**
+     * Tells the collector that the value was stored into the object, generational collectors remember the old
+     * objects that refer to young ones.
+     */
+    void writeBarrier(int objectRef, long value) {
+        collector.writeBarrier(objectRef, value);
+    }
+
     @Nonnull
-    private InstanceObject getInstanceObjectByValue(long value) {
+    InstanceObject getInstanceObjectByValue(long value) {
         return getInstanceObjectByRef(getRefValue(value));
     }
 
     @Nonnull
-    private InstanceObject getInstanceObjectByRef(int objectRef) {
+    InstanceObject getInstanceObjectByRef(int objectRef) {
         return heap.getInstanceObject(checkNotNull(objectRef));
     }
 
@@ -936,8 +2024,7 @@ public final class ExecutionEngine {
         /*----------------------------------*/
         // before second allocation, we have to push the first object reference on the stack,
         // or that first object can be cleared by GC
-        InstanceObject stringObj = allocateInstanceObject(STRING);
-        objRef = getInstanceObjectReference(stringObj);
+        objRef = getInstanceObjectReference(allocateInstanceObject(STRING));
         pushRefValueOntoStack(objRef);
         int charArrayRef = allocateArray("[" + JVMType.C.name(), JVMType.C.name(), str.length());
         /*----------------------------------*/
@@ -945,15 +2032,31 @@ public final class ExecutionEngine {
         for (int i = 0; i < str.length(); i++) {
             charArrayObj.setValue(i, setCharValueType(str.charAt(i)));
         }
+        InstanceObject stringObj = getInstanceObjectByRef(objRef);
         stringObj.setValue(stringObj.getIndexByFieldName("value:[C"), setRefValueType(charArrayRef));
+        collector.writeBarrier(objRef, setRefValueType(charArrayRef));
 
         if (heap.isEnabledCacheString() && toPoolOfStrings) {
             heap.putStringRefToPool(str, objRef, charArrayRef);
         }
     }
 
+    /**
+     * The quick form keeps the index of the klass, the new object is a copy of the default values of its layout.
+     */
     private int allocateInstanceObjectAndGetReference(boolean quick) {
-        return allocateInstanceObjectAndGetReference(getResolvedString(quick, readTwoBytes(), NEW_QUICK));
+        int klassIndex;
+        if (quick) {
+            klassIndex = getDirectRef(readTwoBytes()).getFirstIndex();
+        } else {
+            String klassName = getKlassName(readTwoBytes());
+            klassIndex = getInstanceKlassIndexByKlassName(klassName);
+            preserveIfNeeded(method -> method.builder()
+                    .addString(klassName)
+                    .addFirstIndex(klassIndex)
+                    .buildDirectRefIndex(), NEW_QUICK);
+        }
+        return allocateInstanceObjectAndGetReference(klassIndex);
     }
 
     @Nonnull
@@ -968,30 +2071,38 @@ public final class ExecutionEngine {
         return result;
     }
 
-    private int allocateInstanceObjectAndGetReference(@Nonnull String klassName) {
+    int allocateInstanceObjectAndGetReference(@Nonnull String klassName) {
         return getInstanceObjectReference(allocateInstanceObject(klassName));
     }
 
+    /**
+     * Allocates the object of NEW, the engine holds no references outside the stack frame then, so the collector
+     * may move the objects.
+     */
+    int allocateInstanceObjectAndGetReference(int klassIndex) {
+        return getInstanceObjectReferenceAtSafepoint(allocateInstanceObject(klassIndex));
+    }
+
     private int getInstanceObjectReference(@Nonnull InstanceObject object) {
         return heap.getObjectRef(object);
     }
 
+    /**
+     * Adds the object of an instruction that holds no references outside the stack frame while it allocates.
+     */
+    private int getInstanceObjectReferenceAtSafepoint(@Nonnull InstanceObject object) {
+        return auxiliary ? heap.getObjectRef(object) : heap.getObjectRefAtSafepoint(object);
+    }
+
     @Nonnull
     private InstanceObject allocateInstanceObject(@Nonnull String klassName) {
-        Klass destKlass = getKlass(klassName);
-        List<Klass> klasses = new ArrayList<>();
-        Klass current = destKlass;
-        klasses.add(current);
-        while (!ABSENCE.equals(current.getParent())) {
-            current = getKlass(current.getParent());
-            klasses.add(current);
-        }
-        List<String> fields = new ArrayList<>();
-        for (int i = klasses.size() - 1; i >= 0; i--) {
-            fields.addAll(klasses.get(i).getObjectFieldNames());
-        }
+        return allocateInstanceObject(getInstanceKlassIndexByKlassName(klassName));
+    }
 
-        return getInstanceObject(heap, fields, getInstanceKlassIndexByKlassName(klassName));
+    @Nonnull
+    private InstanceObject allocateInstanceObject(int klassIndex) {
+        InstanceObject object = heap.takeRecycledObject(klassIndex);
+        return object != null ? object : getInstanceObject(heap, heap.getInstanceKlass(klassIndex).getLayout(), klassIndex);
     }
 
 
@@ -1019,7 +2130,7 @@ public final class ExecutionEngine {
                     .addFirstIndex(klassIndex)
                     .buildDirectRefIndex(), ANEWARRAY_QUICK);
         }
-        return getInstanceObjectReference(createReferenceArray("[L" + klassName + ";", getIntValue(stack.pop()), klassIndex));
+        return getInstanceObjectReferenceAtSafepoint(createReferenceArray("[L" + klassName + ";", getIntValue(stack.pop()), klassIndex));
     }
 
     private InstanceObject createReferenceArray(String arrayType, int count, int klassIndex) {
@@ -1032,17 +2143,143 @@ public final class ExecutionEngine {
         for (int i = dimensions.length - 1; i >= 0; i--) {
             dimensions[i] = getIntValue(stack.pop());
         }
-        InstanceObject object = createReferenceArray(arrayType, dimensions[0], -1);
-        pushRefValueOntoStack(getInstanceObjectReference(object));
-        createMultiArray(1, dimensions, object, arrayType);
+        // the heap may keep a copy of the array, so the elements are set through the object of the heap
+        int objectRef = getInstanceObjectReference(createReferenceArray(arrayType, dimensions[0], -1));
+        pushRefValueOntoStack(objectRef);
+        createMultiArray(1, dimensions, objectRef, arrayType);
     }
 
     public void setExceptionDebugMode(boolean exceptionDebugMode) {
         this.exceptionDebugMode = exceptionDebugMode;
     }
 
+    public void setThreadedDispatch(boolean threadedDispatch) {
+        this.threadedDispatch = threadedDispatch;
+    }
+
+    /**
+     * Runs the methods proven by the {@link Verifier} without the checks of the operand stack bounds,
+     * the local variable indexes and the value types. Enabled by default.
+     */
+    public void setVerification(boolean verification) {
+        this.verification = verification;
+    }
+
+    /**
+     * Executes methods by walking their {@link NodeCode} instead of dispatching on the bytecode.
+     */
+    public void setNodeExecution(boolean nodeExecution) {
+        this.nodeExecution = nodeExecution;
+    }
+
+    /**
+     * Compiles methods that have become hot to host classes. Compiled code is entered from the threaded loop,
+     * so this also enables threaded dispatch.
+     */
+    public void setJitCompilation(boolean jitCompilation) {
+        this.jitCompilation = jitCompilation;
+        if (jitCompilation) {
+            this.threadedDispatch = true;
+        }
+    }
+
+    /**
+     * Sets the number of invocations and back-edges after which a method is compiled.
+     */
+    public void setJitThreshold(int jitThreshold) {
+        this.jitThreshold = jitThreshold;
+    }
+
+    /**
+     * Returns how many times each superinstruction was executed by the threaded loop of this engine.
+     */
+    @Nonnull
+    public Map<String, Long> getSuperinstructionHistogram() {
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < superinstructionCounts.length; i++) {
+            histogram.put(getSuperinstructionName(i), superinstructionCounts[i]);
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns how many virtual calls of this engine were dispatched by the inline cache of their call site.
+     */
+    public long getInlineCacheHits() {
+        return inlineCacheHits;
+    }
+
+    /**
+     * Returns how many virtual calls of this engine were resolved through the virtual table, either because
+     * the receiver klass was new for the call site or because the site is megamorphic.
+     */
+    public long getInlineCacheMisses() {
+        return inlineCacheMisses;
+    }
+
+    @Nonnull
+    private int[] getThreadedCode(@Nonnull Method method) {
+        int[] code = method.getThreadedCode();
+        if (code == null) {
+            code = ThreadedCode.decode(method.getBytecode());
+            method.setThreadedCode(code);
+        }
+        return code;
+    }
+
+    /**
+     * Verifies the method on its first invocation and checks that the arguments it reads have the types
+     * the verifier has assumed. The arguments are tagged by the caller, so a method whose arguments
+     * do not match runs with all the checks.
+     */
+    private boolean isVerified(@Nonnull Method method) {
+        if (!verification) {
+            return false;
+        }
+        if (!method.isVerificationDone()) {
+            // methods that are not declared by a loaded klass have no constant pool
+            Integer klassIndex = heap.getKlassLoader().getInstanceKlassIndexByName(method.getClassName(), false);
+            method.setVerifiedArgumentTypes(Verifier.verify(method,
+                    klassIndex != null ? heap.getInstanceKlass(klassIndex).getCpKlass() : null));
+        }
+        byte[] argumentTypes = method.getVerifiedArgumentTypes();
+        if (argumentTypes == null) {
+            return false;
+        }
+        for (int i = 0; i < argumentTypes.length; i++) {
+            int type = getValueType(stack.stack[stack.localVariable + i]);
+            if (argumentTypes[i] == Verifier.INT && type != JVMType.I.ordinal() && type != JVMType.Z.ordinal()
+                    || argumentTypes[i] == Verifier.REF && type != JVMType.A.ordinal()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nonnull
+    private NodeCode getNodeCode(@Nonnull Method method) {
+        NodeCode nodeCode = method.getNodeCode();
+        if (nodeCode == null) {
+            nodeCode = NodeCode.build(method, heap);
+            method.setNodeCode(nodeCode);
+        }
+        return nodeCode;
+    }
+
+    @Nonnull
+    private NodeCode.Node[] getNodes(@Nonnull Method method) {
+        return getNodeCode(method).nodes;
+    }
+
     private void preserveDirectRefIndex(int index, @Nonnull Opcode opcode) {
         int counter = programCounter - 3;
+        if (threadedCode != null) {
+            ThreadedCode.quicken(threadedCode, counter, opcode, index);
+        }
+        if (opcode == GETFIELD_QUICK || opcode == PUTFIELD_QUICK) {
+            // compiled code exits at the unquickened instruction, so it is compiled again with the quick one
+            getCurrentMethod().setCompiledMethod(null);
+        }
         byteCode[counter++] = opcode.b();
         byteCode[counter++] = (byte) (index >> 8);
         byteCode[counter] = (byte) index;
@@ -1062,34 +2299,70 @@ public final class ExecutionEngine {
 
     private void invokeVirtualMethod(boolean quick) {
         int index = readTwoBytes();
-        int argSize;
         if (quick) {
-            Method.DirectRef directRef = getDirectRef(index);
-            index = directRef.getSecondIndex();
-            argSize = directRef.getFirstIndex();
-        } else {
-            argSize = getArgSize(index);
+            handleMethod(getVirtualMethod(getDirectRef(index)), false);
+            return;
         }
-        long reference = stack.getObjectRefBeforeInvoke(argSize);
-        int klassIndex = getInstanceObjectByValue(reference).getKlassIndex();
-        int virtualMethodIndex;
-        if (quick) {
-            virtualMethodIndex = index;
-        } else {
-            virtualMethodIndex = getVirtualMethodIndex(index, klassIndex);
-            preserveDirectRefIfNeeded(argSize, virtualMethodIndex, INVOKEVIRTUAL_QUICK);
+        int argSize = getArgSize(index);
+        int klassIndex = getReceiverKlassIndex(argSize);
+        int virtualMethodIndex = getVirtualMethodIndex(index, klassIndex);
+        preserveDirectRefIfNeeded(argSize, virtualMethodIndex, INVOKEVIRTUAL_QUICK);
+        handleMethod(getVirtualMethod(klassIndex, virtualMethodIndex), false);
+    }
+
+    /**
+     * Selects the method invoked through a quickened call site, the inline cache of the site is looked up
+     * before the virtual table of the klass of the receiver.
+     */
+    @Nonnull
+    Method getVirtualMethod(@Nonnull Method.DirectRef directRef) {
+        int klassIndex = getReceiverKlassIndex(directRef.getFirstIndex());
+        Method.InlineCache inlineCache = directRef.getInlineCache();
+        Method method = inlineCache.lookup(klassIndex);
+        if (method != null) {
+            inlineCacheHits++;
+            return method;
         }
+        inlineCacheMisses++;
+        method = getVirtualMethod(klassIndex, directRef.getSecondIndex());
+        inlineCache.add(klassIndex, method);
+        return method;
+    }
+
+    @Nonnull
+    private Method getVirtualMethod(int klassIndex, int virtualMethodIndex) {
         int methodIndex = getInstanceKlassByIndex(klassIndex).getMethodIndex(virtualMethodIndex);
-        Method method = heap.getMethodRepo().getMethod(methodIndex);
-        handleMethod(method, false);
+        return heap.getMethodRepo().getMethod(methodIndex);
+    }
+
+    private int getReceiverKlassIndex(int argSize) {
+        return getInstanceObjectByValue(stack.getObjectRefBeforeInvoke(argSize)).getKlassIndex();
     }
 
+    /*
+     * A long or double field takes two field values, like its two slots on the stack. Such accesses are not
+     * quickened: the quick instructions, their superinstructions and the compiled code move a single slot.
+     */
     private void pushStaticFieldOntoStackFromInstanceObject(boolean quick) {
-        handleStaticField((objRef, fieldValInd) -> stack.push(getInstanceObjectByRef(objRef).getValue(fieldValInd)), GETSTATIC_QUICK, quick);
+        int size = getFieldSize(quick);
+        handleStaticField((objRef, fieldValInd) -> {
+            InstanceObject object = getInstanceObjectByRef(objRef);
+            for (int i = 0; i < size; i++) {
+                stack.push(object.getValue(fieldValInd + i));
+            }
+        }, GETSTATIC_QUICK, quick);
     }
 
     private void putStaticFieldToInstanceObjectFromStack(boolean quick) {
-        handleStaticField((objRef, fieldValInd) -> getInstanceObjectByRef(objRef).setValue(fieldValInd, stack.pop()), PUTSTATIC_QUICK, quick);
+        int size = getFieldSize(quick);
+        handleStaticField((objRef, fieldValInd) -> {
+            InstanceObject object = getInstanceObjectByRef(objRef);
+            for (int i = size - 1; i >= 0; i--) {
+                long value = stack.pop();
+                object.setValue(fieldValInd + i, value);
+                collector.writeBarrier(objRef, value);
+            }
+        }, PUTSTATIC_QUICK, quick);
     }
 
     private void handleStaticField(BiConsumer<Integer, Integer> consumer, @Nonnull Opcode opcode, boolean quick) {
@@ -1104,18 +2377,36 @@ public final class ExecutionEngine {
             InstanceKlass instanceKlass = getInstanceKlassByName(getKlassName(klassFieldName));
             objectRef = instanceKlass.getObjectRef();
             fieldValueIndex = instanceKlass.getIndexByFieldName(getFieldName(klassFieldName));
-            preserveDirectRefIfNeeded(objectRef, fieldValueIndex, opcode);
+            if (!isWideField(klassFieldName)) {
+                preserveDirectRefIfNeeded(objectRef, fieldValueIndex, opcode);
+            }
         }
         consumer.accept(objectRef, fieldValueIndex);
     }
 
     private void putFieldToInstanceObjectFromStack(boolean quick) {
         long value = stack.pop();
-        handleField((object, fieldValueIndex) -> object.setValue(fieldValueIndex, value), PUTFIELD_QUICK, quick);
+        if (getFieldSize(quick) == 2) {
+            long high = stack.pop();
+            handleField((object, fieldValueIndex) -> {
+                object.setValue(fieldValueIndex, high);
+                object.setValue(fieldValueIndex + 1, value);
+            }, PUTFIELD_QUICK, quick);
+        } else {
+            // the object is on the top of the stack, under the operand of the instruction
+            int objectRef = getRefValue(stack.getObjectRefBeforeInvoke(0));
+            handleField((object, fieldValueIndex) -> object.setValue(fieldValueIndex, value), PUTFIELD_QUICK, quick);
+            collector.writeBarrier(objectRef, value);
+        }
     }
 
     private void pushFieldOntoStackFromInstanceObject(boolean quick) {
-        handleField((object, fieldValueIndex) -> stack.push(object.getValue(fieldValueIndex)), GETFIELD_QUICK, quick);
+        int size = getFieldSize(quick);
+        handleField((object, fieldValueIndex) -> {
+            for (int i = 0; i < size; i++) {
+                stack.push(object.getValue(fieldValueIndex + i));
+            }
+        }, GETFIELD_QUICK, quick);
     }
 
     private void handleField(BiConsumer<InstanceObject, Integer> consumer, @Nonnull Opcode opcode, boolean quick) {
@@ -1125,46 +2416,106 @@ public final class ExecutionEngine {
         if (quick) {
             fieldValueIndex = index;
         } else {
-            fieldValueIndex = object.getIndexByFieldName(getFieldName(getKlassFieldName(index)));
-            preserveIndexIfNeeded(fieldValueIndex, opcode);
+            String klassFieldName = getKlassFieldName(index);
+            fieldValueIndex = object.getIndexByFieldName(getFieldName(klassFieldName));
+            if (!isWideField(klassFieldName)) {
+                preserveIndexIfNeeded(fieldValueIndex, opcode);
+            }
         }
         consumer.accept(object, fieldValueIndex);
     }
 
-    private void evaluateIntValueAndPushBackOntoStack(@Nonnull BiFunction<Integer, Integer, Integer> operation) {
-        int first = getIntValue(stack.pop());
-        int second = getIntValue(stack.pop());
-        pushIntValueOntoStack(operation.apply(first, second));
+    /**
+     * Returns the number of slots of the field of the current field instruction, before its operand is read.
+     */
+    private int getFieldSize(boolean quick) {
+        if (quick) {
+            return 1;
+        }
+        int cpIndex = (byteCode[programCounter] << 8) + (byteCode[programCounter + 1] & 0xff);
+        return isWideField(getKlassFieldName(cpIndex)) ? 2 : 1;
     }
 
-    private void compareValuesFromStack(@Nonnull Predicate<Integer> predicate, @Nonnull JVMType type) {
-        int jumpTo = readTwoBytes();
-        int first = getValue(stack.pop(), type);
-        if (predicate.test(first)) {
-            programCounter += jumpTo - 3;
-        }
+    private static boolean isWideField(@Nonnull String klassFieldName) {
+        char type = klassFieldName.charAt(klassFieldName.indexOf(':') + 1);
+        return type == 'J' || type == 'D';
     }
 
-    private void compareValuesFromStack(@Nonnull BiPredicate<Integer, Integer> predicate, @Nonnull JVMType type) {
+    private int popIntValue() {
+        return verified ? (int) stack.popUnchecked() : getIntValue(stack.pop());
+    }
+
+    private int popRefValue() {
+        return verified ? (int) stack.popUnchecked() : getRefValue(stack.pop());
+    }
+
+    /**
+     * Completes a conditional branch whose condition was already evaluated from the operand stack.
+     */
+    private void jumpIf(boolean condition) {
         int jumpTo = readTwoBytes();
-        int first = getValue(stack.pop(), type);
-        int second = getValue(stack.pop(), type);
-        if (predicate.test(first, second)) {
+        if (condition) {
             programCounter += jumpTo - 3;
         }
     }
 
-    private void pushOntoStackFromArray(@Nonnull Function<Long, Long> function) {
-        int index = getIntValue(stack.pop());
-        InstanceObject object = checkArrayObject(getInstanceObjectByValue(stack.pop()));
-        stack.push(function.apply(object.getValue(index)));
+    private long loadFromArray() {
+        int index = popIntValue();
+        return checkArrayObject(getInstanceObjectByValue(stack.pop())).getValue(index);
+    }
+
+    /**
+     * Loads from a long or double array, whose elements hold the whole value without a tag.
+     */
+    private long loadFromWideArray(@Nonnull JVMType type) {
+        int index = popIntValue();
+        return checkArrayObject(getInstanceObjectByValue(stack.pop()), type).getValue(index);
+    }
+
+    private void storeToWideArray(long value, @Nonnull JVMType type) {
+        int index = popIntValue();
+        checkArrayObject(getInstanceObjectByValue(stack.pop()), type).setValue(index, value);
+    }
+
+    private void storeToArray(long value) {
+        int index = popIntValue();
+        int arrayRef = getRefValue(stack.pop());
+        checkArrayObject(getInstanceObjectByRef(arrayRef)).setValue(index, value);
+        collector.writeBarrier(arrayRef, value);
+    }
+
+    /**
+     * Loads from an array of int, short, float or char values, the type of the array is checked instead of
+     * the type of the element.
+     */
+    private int loadFromIntArray(@Nonnull JVMType type) {
+        int index = popIntValue();
+        return checkArrayObject(getInstanceObjectByValue(stack.pop()), type).getIntValue(index);
+    }
+
+    private void storeToIntArray(int value, @Nonnull JVMType type) {
+        int index = popIntValue();
+        checkArrayObject(getInstanceObjectByValue(stack.pop()), type).setIntValue(index, value);
+    }
+
+    private int loadFromByteOrBooleanArray() {
+        int index = popIntValue();
+        return checkByteOrBooleanArrayObject(getInstanceObjectByValue(stack.pop())).getIntValue(index);
+    }
+
+    private void storeByteOrBooleanToArray(int value) {
+        int index = popIntValue();
+        InstanceObject object = checkByteOrBooleanArrayObject(getInstanceObjectByValue(stack.pop()));
+        object.setIntValue(index, object.getValueType() == JVMType.Z ? value & 1 : (byte) value);
     }
 
-    private void storeToArrayFromStack(@Nonnull BiFunction<Long, InstanceObject, Long> function, @Nonnull JVMType type) {
-        long value = checkValueType(stack.pop(), type);
-        int index = getIntValue(stack.pop());
-        InstanceObject object = checkArrayObject(getInstanceObjectByValue(stack.pop()));
-        object.setValue(index, function.apply(value, object));
+    @Nonnull
+    private InstanceObject checkByteOrBooleanArrayObject(@Nonnull InstanceObject object) {
+        JVMType type = checkArrayObject(object).getValueType();
+        if (type != JVMType.Z && type != JVMType.B) {
+            throw new RuntimeException("Wrong type of array\n" + getStackTrace(false));
+        }
+        return object;
     }
 
     private void preserveDirectRefIfNeeded(int first, int second, @Nonnull Opcode opcode) {
@@ -1193,7 +2544,7 @@ public final class ExecutionEngine {
 
     @Nonnull
     private Method getCurrentMethod() {
-        return stackMethod[stackMethodPointer];
+        return stack.methods[stackMethodPointer];
     }
 
     @Nonnull
@@ -1210,50 +2561,70 @@ public final class ExecutionEngine {
     }
 
     private void initNewMethod(@Nonnull Method method, boolean staticMethod) {
-        byteCode = method.getBytecode();
-        klassName = method.getClassName();
-        stackMethod[++stackMethodPointer] = method;
         stack.programCounter = programCounter;
-        programCounter = 0;
         stack.initNewMethodStack(method.getArgSize() + (staticMethod ? 0 : 1), method.getVarSize(), method.getOperandSize());
+        programCounter = 0;
+        byteCode = method.getBytecode();
+        threadedCode = threadedDispatch ? getThreadedCode(method) : null;
+        nodes = nodeExecution ? getNodes(method) : null;
+        klassName = method.getClassName();
+        if (++stackMethodPointer == stack.methods.length) {
+            stack.methods = Arrays.copyOf(stack.methods, stack.methods.length * 2);
+        }
+        if (stackMethodPointer == verifiedMethods.length) {
+            verifiedMethods = Arrays.copyOf(verifiedMethods, verifiedMethods.length * 2);
+        }
+        stack.methods[stackMethodPointer] = method;
+        verified = isVerified(method);
+        verifiedMethods[stackMethodPointer] = verified;
+        if (jitCompilation) {
+            method.incrementInvocationCount();
+        }
     }
 
-    private void destroyCurrentMethod(boolean returnValue) {
-        Method method = stackMethod[--stackMethodPointer];
-        stackMethod[stackMethodPointer + 1] = null;
+    /**
+     * @param returnSize the number of slots of the return value
+     */
+    void destroyCurrentMethod(int returnSize) {
+        Method method = stack.methods[--stackMethodPointer];
+        stack.methods[stackMethodPointer + 1] = null;
         byteCode = method.getBytecode();
+        threadedCode = threadedDispatch ? getThreadedCode(method) : null;
+        nodes = nodeExecution ? getNodes(method) : null;
         klassName = method.getClassName();
-        stack.destroyCurrentMethodStack(method.getVarSize(), method.getOperandSize(), returnValue);
+        stack.destroyCurrentMethodStack(method.getVarSize(), method.getOperandSize(), returnSize);
+        verified = verifiedMethods[stackMethodPointer];
         programCounter = stack.programCounter;
     }
 
     private void checkCast(boolean quick) {
         int index = readTwoBytes();
         int objectRef = getRefValue(stack.pop());
-        if (objectRef == NULL) {
-            pushRefValueOntoStack(NULL);
+        if (objectRef != NULL) {
+            checkCast(objectRef, getResolvedString(quick, index, CHECKCAST_QUICK));
+        }
+        pushRefValueOntoStack(objectRef);
+    }
+
+    /**
+     * Throws {@link ClassCastExceptionJVM} if the object cannot be cast to the klass.
+     */
+    void checkCast(int objectRef, @Nonnull String castKlassName) {
+        InstanceObject object = getInstanceObjectByRef(objectRef);
+        if (object.isArray()) {
+            if (!castKlassName.equals(object.getArrayType())) {
+                throw new ClassCastExceptionJVM(
+                        Objects.requireNonNull(object.getArrayType()).replace("/", ".")
+                                + " cannot be cast to "
+                                + castKlassName.replace("/", "."));
+            }
         } else {
-            String castKlassName = getResolvedString(quick, index, CHECKCAST_QUICK);
-            InstanceObject object = getInstanceObjectByRef(objectRef);
-            if (object.isArray()) {
-                if (castKlassName.equals(object.getArrayType())) {
-                    pushRefValueOntoStack(objectRef);
-                } else {
-                    throw new ClassCastExceptionJVM(
-                            Objects.requireNonNull(object.getArrayType()).replace("/", ".")
-                                    + " cannot be cast to "
-                                    + castKlassName.replace("/", "."));
-                }
-            } else {
-                Klass klass = getKlass(getNameFromInstanceKlassByIndex(object.getKlassIndex()));
-                if (checkCast(klass, castKlassName)) {
-                    pushRefValueOntoStack(objectRef);
-                } else {
-                    throw new ClassCastExceptionJVM(
-                            klass.getKlassName().replace("/", ".")
-                                    + " cannot be cast to "
-                                    + castKlassName.replace("/", "."));
-                }
+            Klass klass = getKlass(getNameFromInstanceKlassByIndex(object.getKlassIndex()));
+            if (!checkCast(klass, castKlassName)) {
+                throw new ClassCastExceptionJVM(
+                        klass.getKlassName().replace("/", ".")
+                                + " cannot be cast to "
+                                + castKlassName.replace("/", "."));
             }
         }
     }
@@ -1265,15 +2636,16 @@ public final class ExecutionEngine {
             pushIntValueOntoStack(NULL);
             return;
         }
+        pushIntValueOntoStack(isInstanceOf(objectRef, className) ? 1 : 0);
+    }
+
+    boolean isInstanceOf(int objectRef, @Nonnull String className) {
         InstanceObject object = getInstanceObjectByRef(objectRef);
-        boolean instanceOf;
         if (object.isArray()) {
-            instanceOf = className.equals(object.getArrayType());
-        } else {
-            Klass currentKlass = getKlass(getNameFromInstanceKlassByIndex(object.getKlassIndex()));
-            instanceOf = checkCast(currentKlass, className);
+            return className.equals(object.getArrayType());
         }
-        pushIntValueOntoStack(instanceOf ? 1 : 0);
+        Klass currentKlass = getKlass(getNameFromInstanceKlassByIndex(object.getKlassIndex()));
+        return checkCast(currentKlass, className);
     }
 
     private int checkNotNull(int objectRef) {
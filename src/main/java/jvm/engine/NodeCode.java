@@ -0,0 +1,859 @@
+package jvm.engine;
+
+import jvm.heap.api.Heap;
+import jvm.heap.api.InstanceObject;
+import jvm.parser.Method;
+
+import javax.annotation.Nonnull;
+
+import static jvm.engine.Opcode.*;
+import static jvm.engine.ThreadedCode.*;
+
+/**
+ * Pre-bound form of a method's bytecode used by the node interpreter loop.
+ * <p>
+ * Every instruction head is converted into a node object that already holds its decoded operands and the
+ * program counters of its successors. Quick instructions also hold their resolved references: field indexes,
+ * objects of static fields, invoked methods and klass names. The loop only calls the node at the current
+ * program counter, so nothing is decoded from the bytecode at runtime.
+ * <p>
+ * Instructions without a node of their own are delegated to the regular handlers. When such an instruction
+ * rewrites itself to a quick form, its node is rebuilt with the resolved reference bound.
+ */
+public final class NodeCode {
+
+    /**
+     * Returned by a node that has invoked or returned from a method, the program counter of the engine
+     * already belongs to the new current method.
+     */
+    static final int FRAME_CHANGED = -1;
+    /**
+     * Returned by a node that has returned from the method invoked by the engine.
+     */
+    static final int EXIT = -2;
+
+    @Nonnull
+    final Node[] nodes;
+
+    private NodeCode(@Nonnull Node[] nodes) {
+        this.nodes = nodes;
+    }
+
+    @Nonnull
+    static NodeCode build(@Nonnull Method method, @Nonnull Heap heap) {
+        byte[] byteCode = method.getBytecode();
+        Node[] nodes = new Node[byteCode.length];
+        int pc = 0;
+        while (pc < byteCode.length) {
+            int length = getLength(byteCode[pc] & 0xff);
+            nodes[pc] = createNode(method, heap, pc);
+            if (length == 0) {
+                // unknown opcode, it will be reported by the regular handlers
+                break;
+            }
+            pc += length;
+        }
+        return new NodeCode(nodes);
+    }
+
+    /**
+     * Rebuilds the node at {@code pc} after its bytecode was rewritten to a quick form.
+     */
+    void quicken(@Nonnull Method method, @Nonnull Heap heap, int pc) {
+        nodes[pc] = createNode(method, heap, pc);
+    }
+
+    @Nonnull
+    private static Node createNode(@Nonnull Method method, @Nonnull Heap heap, int pc) {
+        byte[] byteCode = method.getBytecode();
+        int opcode = byteCode[pc] & 0xff;
+        int next = pc + getLength(opcode);
+        switch (opcode) {
+            case OP_ACONST_NULL:
+                return new RefConstNode(next, ExecutionEngine.NULL);
+            case OP_ICONST_M1:
+            case OP_ICONST_0:
+            case OP_ICONST_1:
+            case OP_ICONST_2:
+            case OP_ICONST_3:
+            case OP_ICONST_4:
+            case OP_ICONST_5:
+                return new IntConstNode(next, opcode - OP_ICONST_0);
+            case OP_BIPUSH:
+                return new IntConstNode(next, byteCode[pc + 1]);
+            case OP_SIPUSH:
+                return new IntConstNode(next, readTwoBytes(byteCode, pc + 1));
+            case OP_ILOAD_0:
+            case OP_ILOAD_1:
+            case OP_ILOAD_2:
+            case OP_ILOAD_3:
+                return new IntLoadNode(next, opcode - OP_ILOAD_0);
+            case OP_ILOAD:
+                return new IntLoadNode(next, byteCode[pc + 1] & 0xff);
+            case OP_ALOAD_0:
+            case OP_ALOAD_1:
+            case OP_ALOAD_2:
+            case OP_ALOAD_3:
+                return new RefLoadNode(next, opcode - OP_ALOAD_0);
+            case OP_ALOAD:
+                return new RefLoadNode(next, byteCode[pc + 1] & 0xff);
+            case OP_ISTORE_0:
+            case OP_ISTORE_1:
+            case OP_ISTORE_2:
+            case OP_ISTORE_3:
+                return new IntStoreNode(next, opcode - OP_ISTORE_0);
+            case OP_ISTORE:
+                return new IntStoreNode(next, byteCode[pc + 1] & 0xff);
+            case OP_ASTORE_0:
+            case OP_ASTORE_1:
+            case OP_ASTORE_2:
+            case OP_ASTORE_3:
+                return new RefStoreNode(next, opcode - OP_ASTORE_0);
+            case OP_ASTORE:
+                return new RefStoreNode(next, byteCode[pc + 1] & 0xff);
+            case OP_POP:
+                return new PopNode(next);
+            case OP_DUP:
+                return new DupNode(next);
+            case OP_DUP_X1:
+                return new DupX1Node(next);
+            case OP_SWAP:
+                return new SwapNode(next);
+            case OP_IADD:
+                return new IntBinaryNode(next) {
+                    @Override
+                    int apply(int value1, int value2) {
+                        return value1 + value2;
+                    }
+                };
+            case OP_ISUB:
+                return new IntBinaryNode(next) {
+                    @Override
+                    int apply(int value1, int value2) {
+                        return value1 - value2;
+                    }
+                };
+            case OP_IMUL:
+                return new IntBinaryNode(next) {
+                    @Override
+                    int apply(int value1, int value2) {
+                        return value1 * value2;
+                    }
+                };
+            case OP_IDIV:
+                return new IntBinaryNode(next) {
+                    @Override
+                    int apply(int value1, int value2) {
+                        if (value2 == 0) {
+                            throw new ArithmeticException("cannot divide 0");
+                        }
+                        return value1 / value2;
+                    }
+                };
+            case OP_IREM:
+                return new IntBinaryNode(next) {
+                    @Override
+                    int apply(int value1, int value2) {
+                        return value1 % value2;
+                    }
+                };
+            case OP_ISHL:
+                return new IntBinaryNode(next) {
+                    @Override
+                    int apply(int value1, int value2) {
+                        return value1 << value2;
+                    }
+                };
+            case OP_ISHR:
+                return new IntBinaryNode(next) {
+                    @Override
+                    int apply(int value1, int value2) {
+                        return value1 >> value2;
+                    }
+                };
+            case OP_IUSHR:
+                return new IntBinaryNode(next) {
+                    @Override
+                    int apply(int value1, int value2) {
+                        return value1 >>> value2;
+                    }
+                };
+            case OP_IAND:
+                return new IntBinaryNode(next) {
+                    @Override
+                    int apply(int value1, int value2) {
+                        return value1 & value2;
+                    }
+                };
+            case OP_IOR:
+                return new IntBinaryNode(next) {
+                    @Override
+                    int apply(int value1, int value2) {
+                        return value1 | value2;
+                    }
+                };
+            case OP_IXOR:
+                return new IntBinaryNode(next) {
+                    @Override
+                    int apply(int value1, int value2) {
+                        return value1 ^ value2;
+                    }
+                };
+            case OP_INEG:
+                return new IntNegNode(next);
+            case OP_IINC:
+                return new IntIncNode(next, byteCode[pc + 1] & 0xff, byteCode[pc + 2]);
+            case OP_GOTO:
+                return new GotoNode(pc + readTwoBytes(byteCode, pc + 1));
+            case OP_IFEQ:
+            case OP_IFNE:
+            case OP_IFLT:
+            case OP_IFGE:
+            case OP_IFGT:
+            case OP_IFLE:
+                return createIntBranchNode(opcode, next, pc + readTwoBytes(byteCode, pc + 1));
+            case OP_IF_ICMPEQ:
+            case OP_IF_ICMPNE:
+            case OP_IF_ICMPLT:
+            case OP_IF_ICMPGE:
+            case OP_IF_ICMPGT:
+            case OP_IF_ICMPLE:
+                return createIntCompareNode(opcode, next, pc + readTwoBytes(byteCode, pc + 1));
+            case OP_IF_ACMPEQ:
+            case OP_IF_ACMPNE:
+            case OP_IFNULL:
+            case OP_IFNONNULL:
+                return new RefCompareNode(next, pc + readTwoBytes(byteCode, pc + 1),
+                        opcode == OP_IF_ACMPEQ || opcode == OP_IF_ACMPNE,
+                        opcode == OP_IF_ACMPEQ || opcode == OP_IFNULL);
+            case OP_IRETURN:
+            case OP_FRETURN:
+                return new ReturnNode(1, false);
+            case OP_LRETURN:
+            case OP_DRETURN:
+                return new ReturnNode(2, false);
+            case OP_ARETURN:
+                return new ReturnNode(1, true);
+            case OP_RETURN:
+                return new ReturnNode(0, false);
+            case OP_GETFIELD_QUICK:
+                return new GetFieldNode(next, readIndex(byteCode, pc));
+            case OP_PUTFIELD_QUICK:
+                return new PutFieldNode(next, readIndex(byteCode, pc));
+        }
+        if (opcode == GETSTATIC_QUICK.getOpcode()) {
+            Method.DirectRef directRef = method.getDirectRef(readIndex(byteCode, pc));
+            return new GetStaticNode(next, directRef.getFirstIndex(), directRef.getSecondIndex());
+        } else if (opcode == PUTSTATIC_QUICK.getOpcode()) {
+            Method.DirectRef directRef = method.getDirectRef(readIndex(byteCode, pc));
+            return new PutStaticNode(next, directRef.getFirstIndex(), directRef.getSecondIndex());
+        } else if (opcode == INVOKESTATIC_QUICK.getOpcode() || opcode == INVOKESPECIAL_QUICK.getOpcode()) {
+            return new InvokeNode(next, heap.getMethodRepo().getMethod(readIndex(byteCode, pc)),
+                    opcode == INVOKESTATIC_QUICK.getOpcode());
+        } else if (opcode == INVOKEVIRTUAL_QUICK.getOpcode()) {
+            return new InvokeVirtualNode(next, method.getDirectRef(readIndex(byteCode, pc)));
+        } else if (opcode == NEW_QUICK.getOpcode()) {
+            return new NewNode(next, method.getDirectRef(readIndex(byteCode, pc)).getFirstIndex());
+        } else if (opcode == CHECKCAST_QUICK.getOpcode()) {
+            return new CheckCastNode(next, method.getDirectRef(readIndex(byteCode, pc)).getString());
+        } else if (opcode == INSTANCEOF_QUICK.getOpcode()) {
+            return new InstanceOfNode(next, method.getDirectRef(readIndex(byteCode, pc)).getString());
+        }
+        return new DelegateNode(pc);
+    }
+
+    @Nonnull
+    private static Node createIntBranchNode(int opcode, int next, int target) {
+        switch (opcode) {
+            case OP_IFEQ:
+                return new IntBranchNode(next, target) {
+                    @Override
+                    boolean test(int value) {
+                        return value == 0;
+                    }
+                };
+            case OP_IFNE:
+                return new IntBranchNode(next, target) {
+                    @Override
+                    boolean test(int value) {
+                        return value != 0;
+                    }
+                };
+            case OP_IFLT:
+                return new IntBranchNode(next, target) {
+                    @Override
+                    boolean test(int value) {
+                        return value < 0;
+                    }
+                };
+            case OP_IFGE:
+                return new IntBranchNode(next, target) {
+                    @Override
+                    boolean test(int value) {
+                        return value >= 0;
+                    }
+                };
+            case OP_IFGT:
+                return new IntBranchNode(next, target) {
+                    @Override
+                    boolean test(int value) {
+                        return value > 0;
+                    }
+                };
+            default:
+                return new IntBranchNode(next, target) {
+                    @Override
+                    boolean test(int value) {
+                        return value <= 0;
+                    }
+                };
+        }
+    }
+
+    @Nonnull
+    private static Node createIntCompareNode(int opcode, int next, int target) {
+        switch (opcode) {
+            case OP_IF_ICMPEQ:
+                return new IntCompareNode(next, target) {
+                    @Override
+                    boolean test(int value1, int value2) {
+                        return value1 == value2;
+                    }
+                };
+            case OP_IF_ICMPNE:
+                return new IntCompareNode(next, target) {
+                    @Override
+                    boolean test(int value1, int value2) {
+                        return value1 != value2;
+                    }
+                };
+            case OP_IF_ICMPLT:
+                return new IntCompareNode(next, target) {
+                    @Override
+                    boolean test(int value1, int value2) {
+                        return value1 < value2;
+                    }
+                };
+            case OP_IF_ICMPGE:
+                return new IntCompareNode(next, target) {
+                    @Override
+                    boolean test(int value1, int value2) {
+                        return value1 >= value2;
+                    }
+                };
+            case OP_IF_ICMPGT:
+                return new IntCompareNode(next, target) {
+                    @Override
+                    boolean test(int value1, int value2) {
+                        return value1 > value2;
+                    }
+                };
+            default:
+                return new IntCompareNode(next, target) {
+                    @Override
+                    boolean test(int value1, int value2) {
+                        return value1 <= value2;
+                    }
+                };
+        }
+    }
+
+    private static int readIndex(@Nonnull byte[] byteCode, int pc) {
+        return readTwoBytes(byteCode, pc + 1) & 0xffff;
+    }
+
+    private static int readTwoBytes(@Nonnull byte[] byteCode, int pc) {
+        return (byteCode[pc] << 8) + (byteCode[pc + 1] & 0xff);
+    }
+
+    /**
+     * A single instruction with its operands bound.
+     */
+    abstract static class Node {
+        /**
+         * @return the program counter of the next node, {@link #FRAME_CHANGED} or {@link #EXIT}
+         */
+        abstract int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack);
+    }
+
+    static final class DelegateNode extends Node {
+        private final int pc;
+
+        DelegateNode(int pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            return engine.executeDelegated(pc);
+        }
+    }
+
+    private static final class IntConstNode extends Node {
+        private final int next;
+        private final long value;
+
+        IntConstNode(int next, int value) {
+            this.next = next;
+            this.value = ExecutionEngine.setIntValueType(value);
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            stack.push(value);
+            return next;
+        }
+    }
+
+    private static final class RefConstNode extends Node {
+        private final int next;
+        private final long value;
+
+        RefConstNode(int next, int value) {
+            this.next = next;
+            this.value = ExecutionEngine.setRefValueType(value);
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            stack.push(value);
+            return next;
+        }
+    }
+
+    private static final class IntLoadNode extends Node {
+        private final int next;
+        private final int index;
+
+        IntLoadNode(int next, int index) {
+            this.next = next;
+            this.index = index;
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            stack.push(engine.checkIntValue(stack.getLocalVar(index)));
+            return next;
+        }
+    }
+
+    private static final class RefLoadNode extends Node {
+        private final int next;
+        private final int index;
+
+        RefLoadNode(int next, int index) {
+            this.next = next;
+            this.index = index;
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            stack.push(engine.checkRefValue(stack.getLocalVar(index)));
+            return next;
+        }
+    }
+
+    private static final class IntStoreNode extends Node {
+        private final int next;
+        private final int index;
+
+        IntStoreNode(int next, int index) {
+            this.next = next;
+            this.index = index;
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            stack.setLocalVar(index, engine.checkIntValue(stack.pop()));
+            return next;
+        }
+    }
+
+    private static final class RefStoreNode extends Node {
+        private final int next;
+        private final int index;
+
+        RefStoreNode(int next, int index) {
+            this.next = next;
+            this.index = index;
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            stack.setLocalVar(index, engine.checkRefValue(stack.pop()));
+            return next;
+        }
+    }
+
+    private static final class PopNode extends Node {
+        private final int next;
+
+        PopNode(int next) {
+            this.next = next;
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            stack.pop();
+            return next;
+        }
+    }
+
+    private static final class DupNode extends Node {
+        private final int next;
+
+        DupNode(int next) {
+            this.next = next;
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            stack.dup();
+            return next;
+        }
+    }
+
+    private static final class DupX1Node extends Node {
+        private final int next;
+
+        DupX1Node(int next) {
+            this.next = next;
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            stack.dupX1();
+            return next;
+        }
+    }
+
+    private static final class SwapNode extends Node {
+        private final int next;
+
+        SwapNode(int next) {
+            this.next = next;
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            long first = stack.pop();
+            long second = stack.pop();
+            stack.push(first);
+            stack.push(second);
+            return next;
+        }
+    }
+
+    private abstract static class IntBinaryNode extends Node {
+        private final int next;
+
+        IntBinaryNode(int next) {
+            this.next = next;
+        }
+
+        abstract int apply(int value1, int value2);
+
+        @Override
+        final int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            int value2 = engine.getIntValue(stack.pop());
+            int value1 = engine.getIntValue(stack.pop());
+            stack.push(ExecutionEngine.setIntValueType(apply(value1, value2)));
+            return next;
+        }
+    }
+
+    private static final class IntNegNode extends Node {
+        private final int next;
+
+        IntNegNode(int next) {
+            this.next = next;
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            stack.push(ExecutionEngine.setIntValueType(-engine.getIntValue(stack.pop())));
+            return next;
+        }
+    }
+
+    private static final class IntIncNode extends Node {
+        private final int next;
+        private final int index;
+        private final int value;
+
+        IntIncNode(int next, int index, int value) {
+            this.next = next;
+            this.index = index;
+            this.value = value;
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            stack.setLocalVar(index, ExecutionEngine.setIntValueType(engine.getIntValue(stack.getLocalVar(index)) + value));
+            return next;
+        }
+    }
+
+    private static final class GotoNode extends Node {
+        private final int target;
+
+        GotoNode(int target) {
+            this.target = target;
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            return target;
+        }
+    }
+
+    private abstract static class IntBranchNode extends Node {
+        private final int next;
+        private final int target;
+
+        IntBranchNode(int next, int target) {
+            this.next = next;
+            this.target = target;
+        }
+
+        abstract boolean test(int value);
+
+        @Override
+        final int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            return test(engine.getIntValue(stack.pop())) ? target : next;
+        }
+    }
+
+    private abstract static class IntCompareNode extends Node {
+        private final int next;
+        private final int target;
+
+        IntCompareNode(int next, int target) {
+            this.next = next;
+            this.target = target;
+        }
+
+        abstract boolean test(int value1, int value2);
+
+        @Override
+        final int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            int value2 = engine.getIntValue(stack.pop());
+            return test(engine.getIntValue(stack.pop()), value2) ? target : next;
+        }
+    }
+
+    /**
+     * IF_ACMPEQ, IF_ACMPNE, IFNULL and IFNONNULL, the last two compare with the null reference.
+     */
+    private static final class RefCompareNode extends Node {
+        private final int next;
+        private final int target;
+        private final boolean twoOperands;
+        private final boolean equal;
+
+        RefCompareNode(int next, int target, boolean twoOperands, boolean equal) {
+            this.next = next;
+            this.target = target;
+            this.twoOperands = twoOperands;
+            this.equal = equal;
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            int value2 = engine.getRefValue(stack.pop());
+            int value1 = twoOperands ? engine.getRefValue(stack.pop()) : ExecutionEngine.NULL;
+            return (value1 == value2) == equal ? target : next;
+        }
+    }
+
+    private static final class ReturnNode extends Node {
+        private final int returnSize;
+        private final boolean refValue;
+
+        ReturnNode(int returnSize, boolean refValue) {
+            this.returnSize = returnSize;
+            this.refValue = refValue;
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            if (stack.invokeCount == 0) {
+                if (returnSize == 0) {
+                    return engine.exit(0);
+                }
+                long value = stack.pop();
+                if (returnSize == 2) {
+                    return engine.exit(ExecutionEngine.getWideValue(stack.pop(), value));
+                }
+                return engine.exit(refValue ? engine.getRefValue(value) : (int) value);
+            }
+            engine.destroyCurrentMethod(returnSize);
+            return FRAME_CHANGED;
+        }
+    }
+
+    private static final class GetFieldNode extends Node {
+        private final int next;
+        private final int fieldValueIndex;
+
+        GetFieldNode(int next, int fieldValueIndex) {
+            this.next = next;
+            this.fieldValueIndex = fieldValueIndex;
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            stack.push(engine.getInstanceObjectByValue(stack.pop()).getValue(fieldValueIndex));
+            return next;
+        }
+    }
+
+    private static final class PutFieldNode extends Node {
+        private final int next;
+        private final int fieldValueIndex;
+
+        PutFieldNode(int next, int fieldValueIndex) {
+            this.next = next;
+            this.fieldValueIndex = fieldValueIndex;
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            long value = stack.pop();
+            long objectRef = stack.pop();
+            engine.getInstanceObjectByValue(objectRef).setValue(fieldValueIndex, value);
+            engine.writeBarrier(engine.getRefValue(objectRef), value);
+            return next;
+        }
+    }
+
+    private static final class GetStaticNode extends Node {
+        private final int next;
+        private final int objectRef;
+        private final int fieldValueIndex;
+
+        GetStaticNode(int next, int objectRef, int fieldValueIndex) {
+            this.next = next;
+            this.objectRef = objectRef;
+            this.fieldValueIndex = fieldValueIndex;
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            stack.push(engine.getInstanceObjectByRef(objectRef).getValue(fieldValueIndex));
+            return next;
+        }
+    }
+
+    private static final class PutStaticNode extends Node {
+        private final int next;
+        private final int objectRef;
+        private final int fieldValueIndex;
+
+        PutStaticNode(int next, int objectRef, int fieldValueIndex) {
+            this.next = next;
+            this.objectRef = objectRef;
+            this.fieldValueIndex = fieldValueIndex;
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            InstanceObject object = engine.getInstanceObjectByRef(objectRef);
+            long value = stack.pop();
+            object.setValue(fieldValueIndex, value);
+            engine.writeBarrier(objectRef, value);
+            return next;
+        }
+    }
+
+    private static final class InvokeNode extends Node {
+        private final int next;
+        @Nonnull
+        private final Method method;
+        private final boolean staticMethod;
+
+        InvokeNode(int next, @Nonnull Method method, boolean staticMethod) {
+            this.next = next;
+            this.method = method;
+            this.staticMethod = staticMethod;
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            return engine.invoke(method, staticMethod, next);
+        }
+    }
+
+    private static final class InvokeVirtualNode extends Node {
+        private final int next;
+        @Nonnull
+        private final Method.DirectRef directRef;
+
+        InvokeVirtualNode(int next, @Nonnull Method.DirectRef directRef) {
+            this.next = next;
+            this.directRef = directRef;
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            return engine.invoke(engine.getVirtualMethod(directRef), false, next);
+        }
+    }
+
+    private static final class NewNode extends Node {
+        private final int next;
+        private final int klassIndex;
+
+        NewNode(int next, int klassIndex) {
+            this.next = next;
+            this.klassIndex = klassIndex;
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            stack.push(ExecutionEngine.setRefValueType(engine.allocateInstanceObjectAndGetReference(klassIndex)));
+            return next;
+        }
+    }
+
+    private static final class CheckCastNode extends Node {
+        private final int next;
+        @Nonnull
+        private final String klassName;
+
+        CheckCastNode(int next, @Nonnull String klassName) {
+            this.next = next;
+            this.klassName = klassName;
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            int objectRef = engine.getRefValue(stack.pop());
+            if (objectRef != ExecutionEngine.NULL) {
+                engine.checkCast(objectRef, klassName);
+            }
+            stack.push(ExecutionEngine.setRefValueType(objectRef));
+            return next;
+        }
+    }
+
+    private static final class InstanceOfNode extends Node {
+        private final int next;
+        @Nonnull
+        private final String klassName;
+
+        InstanceOfNode(int next, @Nonnull String klassName) {
+            this.next = next;
+            this.klassName = klassName;
+        }
+
+        @Override
+        int execute(@Nonnull ExecutionEngine engine, @Nonnull StackFrame stack) {
+            int objectRef = engine.getRefValue(stack.pop());
+            boolean instanceOf = objectRef != ExecutionEngine.NULL && engine.isInstanceOf(objectRef, klassName);
+            stack.push(ExecutionEngine.setIntValueType(instanceOf ? 1 : 0));
+            return next;
+        }
+    }
+
+}
@@ -8,7 +8,7 @@ public enum Opcode {
     ALOAD_2(0x2c),
     ALOAD_3(0x2d),
     ARETURN(0xb0),
-    ASTORE(0x3a),
+    ASTORE(0x3a, 1),
     ASTORE_0(0x4b),
     ASTORE_1(0x4c),
     ASTORE_2(0x4d),
@@ -16,13 +16,21 @@ public enum Opcode {
     BIPUSH(0x10, 1),
     BREAKPOINT(0xca),
     DADD(0x63),
+    DALOAD(0x31),
+    DASTORE(0x52),
+    DCMPG(0x98),
+    DCMPL(0x97),
     DCONST_0(0x0e),
     DCONST_1(0x0f),
+    DDIV(0x6f),
     DLOAD(0x18, 1),
     DLOAD_0(0x26),
     DLOAD_1(0x27),
     DLOAD_2(0x28),
     DLOAD_3(0x29),
+    DMUL(0x6b),
+    DNEG(0x77),
+    DREM(0x73),
     DRETURN(0xaf),
     DSTORE(0x39, 1),
     DSTORE_0(0x47),
@@ -32,14 +40,52 @@ public enum Opcode {
     DSUB(0x67),
     DUP(0x59),
     DUP_X1(0x5a),
+    DUP_X2(0x5b),
+    DUP2(0x5c),
+    DUP2_X1(0x5d),
+    DUP2_X2(0x5e),
+    D2F(0x90),
+    D2I(0x8e),
+    D2L(0x8f),
+    FADD(0x62),
+    FALOAD(0x30),
+    FASTORE(0x51),
+    FCMPG(0x96),
+    FCMPL(0x95),
+    FCONST_0(0x0b),
+    FCONST_1(0x0c),
+    FCONST_2(0x0d),
+    FDIV(0x6e),
+    FLOAD(0x17, 1),
+    FLOAD_0(0x22),
+    FLOAD_1(0x23),
+    FLOAD_2(0x24),
+    FLOAD_3(0x25),
+    FMUL(0x6a),
+    FNEG(0x76),
+    FREM(0x72),
+    FRETURN(0xae),
+    FSTORE(0x38, 1),
+    FSTORE_0(0x43),
+    FSTORE_1(0x44),
+    FSTORE_2(0x45),
+    FSTORE_3(0x46),
+    FSUB(0x66),
+    F2D(0x8d),
+    F2I(0x8b),
+    F2L(0x8c),
     GETFIELD(0xb4, 2),
     GETSTATIC(0xb2, 2),
     GOTO(0xa7, 2),
     I2D(0x87),
+    I2B(0x91),
+    I2F(0x86),
+    I2L(0x85),
+    I2S(0x93),
     I2C(0x92),
     IADD(0x60),
     IAND(0x7e),
-    INSTANCEOF(0xc1),
+    INSTANCEOF(0xc1, 2),
     ISHL(0x78),
     ISHR(0x7a),
     IUSHR(0x7c),
@@ -94,10 +140,10 @@ public enum Opcode {
     MONITORENTER(0xc2),
     MONITOREXIT(0xc3),
     NEW(0xbb, 2),
-    NEWARRAY(0xbc, 2),
+    NEWARRAY(0xbc, 1),
     ANEWARRAY(0xbd, 2),
-    MULTIANEWARRAY(0xc5, 2),
-    ARRAYLENGTH(0xbe, 2),
+    MULTIANEWARRAY(0xc5, 3),
+    ARRAYLENGTH(0xbe),
     AALOAD(0x32, 0), //ref array
     BALOAD(0x33, 0), // byte or boolean array
     CALOAD(0x34, 0), // char array
@@ -111,8 +157,39 @@ public enum Opcode {
     SASTORE(0x56, 0), //short or boolean array
     IASTORE(0x4f, 0), //int or boolean array
     JSR(0xa8, 2),
-    JSR_W(0xc9, 2),
+    JSR_W(0xc9, 4),
     LDC(0x12, 1),
+    LDC_W(0x13, 2),
+    LDC2_W(0x14, 2),
+    LADD(0x61),
+    LAND(0x7f),
+    LCMP(0x94),
+    LCONST_0(0x09),
+    LCONST_1(0x0a),
+    LDIV(0x6d),
+    LLOAD(0x16, 1),
+    LLOAD_0(0x1e),
+    LLOAD_1(0x1f),
+    LLOAD_2(0x20),
+    LLOAD_3(0x21),
+    LMUL(0x69),
+    LNEG(0x75),
+    LOR(0x81),
+    LREM(0x71),
+    LRETURN(0xad),
+    LSHL(0x79),
+    LSHR(0x7b),
+    LSTORE(0x37, 1),
+    LSTORE_0(0x3f),
+    LSTORE_1(0x40),
+    LSTORE_2(0x41),
+    LSTORE_3(0x42),
+    LSUB(0x65),
+    LUSHR(0x7d),
+    LXOR(0x83),
+    L2D(0x8a),
+    L2F(0x89),
+    L2I(0x88),
     NOP(0x00),
     POP(0x57),
     POP2(0x58),
@@ -124,16 +201,16 @@ public enum Opcode {
     SWAP(0x5f),
     GETFIELD_QUICK(0xce, 2),
     PUTFIELD_QUICK(0xcf, 2),
-    GETSTATIC_QUICK(0xd2, 6),
-    PUTSTATIC_QUICK(0xd3),
+    GETSTATIC_QUICK(0xd2, 2),
+    PUTSTATIC_QUICK(0xd3, 2),
     INVOKEVIRTUAL_QUICK(0xd6, 2),
     INVOKESPECIAL_QUICK(0xd7, 2),
-    INVOKESTATIC_QUICK(0xd9),
-    NEW_QUICK(0xdd),
-    ANEWARRAY_QUICK(0xde),
-    MULTIANEWARRAY_QUICK(0xdf),
-    CHECKCAST_QUICK(0xe0),
-    INSTANCEOF_QUICK(0xe1);
+    INVOKESTATIC_QUICK(0xd9, 2),
+    NEW_QUICK(0xdd, 2),
+    ANEWARRAY_QUICK(0xde, 2),
+    MULTIANEWARRAY_QUICK(0xdf, 3),
+    CHECKCAST_QUICK(0xe0, 2),
+    INSTANCEOF_QUICK(0xe1, 2);
 
     public byte getNumParams() {
         return numParams;
@@ -0,0 +1,652 @@
+package jvm.engine;
+
+import jvm.parser.ConstantPoolEntry;
+import jvm.parser.ConstantPoolType;
+import jvm.parser.Klass;
+import jvm.parser.Method;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import static jvm.engine.Opcode.*;
+import static jvm.engine.ThreadedCode.getLength;
+
+/**
+ * Stack map of the slots of a method that hold references while the method waits for a method it has invoked.
+ * <p>
+ * The map is computed from the bytecode before it is quickened, by interpreting the method over the kinds
+ * of its local variables and operand stack slots with the same stack effects as the engine. For every
+ * invocation it records the local variables and the operand stack slots below the arguments that hold a
+ * reference on all paths, keyed by the return address that the frame of the invoked method keeps. Slots
+ * whose kind differs between paths are dead, so they are never reported.
+ */
+public final class ReferenceMap {
+
+    private static final byte TOP = 0;
+    private static final byte VALUE = 1;
+    private static final byte REF = 2;
+
+    private static final Opcode[] OPCODES = new Opcode[256];
+
+    static {
+        for (Opcode op : values()) {
+            OPCODES[op.getOpcode()] = op;
+        }
+    }
+
+    private final int[] returnAddresses;
+    // local variables followed by the operand stack slots below the arguments
+    private final boolean[][] references;
+
+    private ReferenceMap(@Nonnull int[] returnAddresses, @Nonnull boolean[][] references) {
+        this.returnAddresses = returnAddresses;
+        this.references = references;
+    }
+
+    /**
+     * Returns the reference slots of a frame that waits at the return address: the local variables first,
+     * then the operand stack from its bottom, or null if the address is not the one after an invocation.
+     */
+    @Nullable
+    public boolean[] getReferences(int returnAddress) {
+        int index = Arrays.binarySearch(returnAddresses, returnAddress);
+        return index >= 0 ? references[index] : null;
+    }
+
+    /**
+     * Computes the map of the method.
+     *
+     * @param klass the klass that declares the method, for the descriptors of fields and invoked methods
+     * @return the map, or null if the method uses an instruction whose stack effect is not modelled
+     */
+    @Nullable
+    public static ReferenceMap compute(@Nonnull Method method, @Nonnull Klass klass) {
+        byte[] code = method.getBytecode();
+        if (code == null || method.isNative() || method.getOperandSize() < 0 || method.getVarSize() < 0) {
+            return null;
+        }
+        Analyzer analyzer = new Analyzer(code, klass, method.getOperandSize(), method.getVarSize());
+        byte[] entry = new byte[method.getVarSize() + method.getOperandSize()];
+        int slot = 0;
+        if (!method.isStatic() && slot < method.getVarSize()) {
+            entry[slot++] = REF;
+        }
+        for (byte kind : getArgumentKinds(method.getSignature())) {
+            if (slot < method.getVarSize()) {
+                entry[slot++] = kind;
+            }
+        }
+        return analyzer.run(entry) ? analyzer.getReferenceMap() : null;
+    }
+
+    @Nonnull
+    private static byte[] getArgumentKinds(@Nullable String descriptor) {
+        if (descriptor == null || !descriptor.startsWith("(")) {
+            return new byte[0];
+        }
+        byte[] kinds = new byte[descriptor.length()];
+        int count = 0;
+        for (int i = 1; i < descriptor.length() && descriptor.charAt(i) != ')'; i++) {
+            char c = descriptor.charAt(i);
+            if (c == 'L' || c == '[') {
+                while (descriptor.charAt(i) == '[') {
+                    i++;
+                }
+                if (descriptor.charAt(i) == 'L') {
+                    i = descriptor.indexOf(';', i);
+                }
+                kinds[count++] = REF;
+            } else {
+                kinds[count++] = VALUE;
+                if (c == 'J' || c == 'D') {
+                    kinds[count++] = VALUE;
+                }
+            }
+        }
+        return Arrays.copyOf(kinds, count);
+    }
+
+    private static byte getKind(char type) {
+        return type == 'L' || type == '[' ? REF : VALUE;
+    }
+
+    private static int getSize(char type) {
+        return type == 'J' || type == 'D' ? 2 : 1;
+    }
+
+    private static final class Analyzer {
+
+        private final byte[] code;
+        @Nonnull
+        private final Klass klass;
+        private final int maxStack;
+        private final int maxLocals;
+        private final boolean[] heads;
+        // locals followed by the operand stack, null for an instruction that is not reached yet
+        private final byte[][] frames;
+        private final int[] depths;
+        // the number of operand stack slots that an invocation passes to the invoked method
+        private final int[] arguments;
+        private final Deque<Integer> worklist = new ArrayDeque<>();
+
+        private Analyzer(@Nonnull byte[] code, @Nonnull Klass klass, int maxStack, int maxLocals) {
+            this.code = code;
+            this.klass = klass;
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+            this.heads = new boolean[code.length];
+            this.frames = new byte[code.length][];
+            this.depths = new int[code.length];
+            this.arguments = new int[code.length];
+        }
+
+        private boolean run(@Nonnull byte[] entry) {
+            for (int pc = 0; pc < code.length; ) {
+                int length = getLength(code[pc] & 0xff);
+                if (length == 0) {
+                    return false;
+                }
+                heads[pc] = true;
+                pc += length;
+            }
+            if (!merge(0, entry, 0)) {
+                return false;
+            }
+            byte[] frame = new byte[entry.length];
+            while (!worklist.isEmpty()) {
+                int pc = worklist.poll();
+                System.arraycopy(frames[pc], 0, frame, 0, frame.length);
+                if (!execute(pc, frame, depths[pc])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Nonnull
+        private ReferenceMap getReferenceMap() {
+            int count = 0;
+            for (int pc = 0; pc < code.length; pc++) {
+                if (frames[pc] != null && isInvocation(pc)) {
+                    count++;
+                }
+            }
+            int[] returnAddresses = new int[count];
+            boolean[][] references = new boolean[count][];
+            int index = 0;
+            for (int pc = 0; pc < code.length; pc++) {
+                if (frames[pc] != null && isInvocation(pc)) {
+                    byte[] frame = frames[pc];
+                    boolean[] slots = new boolean[maxLocals + depths[pc] - arguments[pc]];
+                    for (int i = 0; i < slots.length; i++) {
+                        slots[i] = frame[i] == REF;
+                    }
+                    returnAddresses[index] = pc + getLength(code[pc] & 0xff);
+                    references[index++] = slots;
+                }
+            }
+            return new ReferenceMap(returnAddresses, references);
+        }
+
+        private boolean isInvocation(int pc) {
+            Opcode opcode = OPCODES[code[pc] & 0xff];
+            return opcode == INVOKEVIRTUAL || opcode == INVOKESPECIAL || opcode == INVOKESTATIC;
+        }
+
+        /**
+         * Interprets the instruction at {@code pc} and merges the resulting frame into its successors.
+         */
+        private boolean execute(int pc, @Nonnull byte[] frame, int depth) {
+            Opcode opcode = OPCODES[code[pc] & 0xff];
+            int next = pc + getLength(code[pc] & 0xff);
+            int sp = maxLocals + depth;
+            switch (opcode) {
+                case NOP:
+                case MONITORENTER:
+                case MONITOREXIT:
+                    // the engine leaves the operand stack as it is
+                    return merge(next, frame, depth);
+                case ACONST_NULL:
+                case NEW:
+                    return push(frame, sp, REF) && merge(next, frame, depth + 1);
+                case ICONST_M1:
+                case ICONST_0:
+                case ICONST_1:
+                case ICONST_2:
+                case ICONST_3:
+                case ICONST_4:
+                case ICONST_5:
+                case BIPUSH:
+                case SIPUSH:
+                    return push(frame, sp, VALUE) && merge(next, frame, depth + 1);
+                case LDC:
+                case LDC_W:
+                    int cpIndex = opcode == LDC ? code[pc + 1] & 0xff : readTwoBytes(pc + 1) & 0xffff;
+                    ConstantPoolEntry entry = klass.getCPItem(cpIndex - 1);
+                    if (entry == null) {
+                        return false;
+                    } else if (entry.getType() == ConstantPoolType.INTEGER || entry.getType() == ConstantPoolType.FLOAT) {
+                        return push(frame, sp, VALUE) && merge(next, frame, depth + 1);
+                    } else if (entry.getType() == ConstantPoolType.STRING) {
+                        return push(frame, sp, REF) && merge(next, frame, depth + 1);
+                    }
+                    return false;
+                case FCONST_0:
+                case FCONST_1:
+                case FCONST_2:
+                    return values(frame, sp, depth, 0, 1) && merge(next, frame, depth + 1);
+                case LCONST_0:
+                case LCONST_1:
+                case DCONST_0:
+                case DCONST_1:
+                case LDC2_W:
+                    return values(frame, sp, depth, 0, 2) && merge(next, frame, depth + 2);
+                case FLOAD:
+                case FLOAD_0:
+                case FLOAD_1:
+                case FLOAD_2:
+                case FLOAD_3:
+                    return index(getLocalIndex(opcode, pc, FLOAD, FLOAD_0))
+                            && values(frame, sp, depth, 0, 1) && merge(next, frame, depth + 1);
+                case LLOAD:
+                case LLOAD_0:
+                case LLOAD_1:
+                case LLOAD_2:
+                case LLOAD_3:
+                    return index(getLocalIndex(opcode, pc, LLOAD, LLOAD_0) + 1)
+                            && values(frame, sp, depth, 0, 2) && merge(next, frame, depth + 2);
+                case DLOAD:
+                case DLOAD_0:
+                case DLOAD_1:
+                case DLOAD_2:
+                case DLOAD_3:
+                    return index(getLocalIndex(opcode, pc, DLOAD, DLOAD_0) + 1)
+                            && values(frame, sp, depth, 0, 2) && merge(next, frame, depth + 2);
+                case FSTORE:
+                case FSTORE_0:
+                case FSTORE_1:
+                case FSTORE_2:
+                case FSTORE_3:
+                    return storeValues(frame, depth, getLocalIndex(opcode, pc, FSTORE, FSTORE_0), 1)
+                            && merge(next, frame, depth - 1);
+                case LSTORE:
+                case LSTORE_0:
+                case LSTORE_1:
+                case LSTORE_2:
+                case LSTORE_3:
+                    return storeValues(frame, depth, getLocalIndex(opcode, pc, LSTORE, LSTORE_0), 2)
+                            && merge(next, frame, depth - 2);
+                case DSTORE:
+                case DSTORE_0:
+                case DSTORE_1:
+                case DSTORE_2:
+                case DSTORE_3:
+                    return storeValues(frame, depth, getLocalIndex(opcode, pc, DSTORE, DSTORE_0), 2)
+                            && merge(next, frame, depth - 2);
+                case FADD:
+                case FSUB:
+                case FMUL:
+                case FDIV:
+                case FREM:
+                case FCMPL:
+                case FCMPG:
+                case L2I:
+                case L2F:
+                case D2I:
+                case D2F:
+                case FALOAD:
+                case SALOAD:
+                    return values(frame, sp, depth, 2, 1) && merge(next, frame, depth - 1);
+                case LADD:
+                case LSUB:
+                case LMUL:
+                case LDIV:
+                case LREM:
+                case LAND:
+                case LOR:
+                case LXOR:
+                case DADD:
+                case DSUB:
+                case DMUL:
+                case DDIV:
+                case DREM:
+                    return values(frame, sp, depth, 4, 2) && merge(next, frame, depth - 2);
+                case LCMP:
+                case DCMPL:
+                case DCMPG:
+                    return values(frame, sp, depth, 4, 1) && merge(next, frame, depth - 3);
+                case LSHL:
+                case LSHR:
+                case LUSHR:
+                    return values(frame, sp, depth, 3, 2) && merge(next, frame, depth - 1);
+                case I2L:
+                case I2D:
+                case F2L:
+                case F2D:
+                    return values(frame, sp, depth, 1, 2) && merge(next, frame, depth + 1);
+                case LNEG:
+                case DNEG:
+                case L2D:
+                case D2L:
+                case LALOAD:
+                case DALOAD:
+                    return values(frame, sp, depth, 2, 2) && merge(next, frame, depth);
+                case FNEG:
+                case I2F:
+                case F2I:
+                case I2B:
+                case I2S:
+                    return values(frame, sp, depth, 1, 1) && merge(next, frame, depth);
+                case POP2:
+                    return depth >= 2 && merge(next, frame, depth - 2);
+                case DUP_X2:
+                    return dup(frame, sp, depth, 1, 2) && merge(next, frame, depth + 1);
+                case DUP2:
+                    return dup(frame, sp, depth, 2, 0) && merge(next, frame, depth + 2);
+                case DUP2_X1:
+                    return dup(frame, sp, depth, 2, 1) && merge(next, frame, depth + 2);
+                case DUP2_X2:
+                    return dup(frame, sp, depth, 2, 2) && merge(next, frame, depth + 2);
+                case FASTORE:
+                case SASTORE:
+                    return depth >= 3 && merge(next, frame, depth - 3);
+                case LASTORE:
+                case DASTORE:
+                    return depth >= 4 && merge(next, frame, depth - 4);
+                case FRETURN:
+                    return depth >= 1;
+                case LRETURN:
+                case DRETURN:
+                    return depth >= 2;
+                case ILOAD:
+                case ILOAD_0:
+                case ILOAD_1:
+                case ILOAD_2:
+                case ILOAD_3:
+                    return load(frame, sp, getLocalIndex(opcode, pc, ILOAD, ILOAD_0)) && merge(next, frame, depth + 1);
+                case ALOAD:
+                case ALOAD_0:
+                case ALOAD_1:
+                case ALOAD_2:
+                case ALOAD_3:
+                    return load(frame, sp, getLocalIndex(opcode, pc, ALOAD, ALOAD_0)) && merge(next, frame, depth + 1);
+                case ISTORE:
+                case ISTORE_0:
+                case ISTORE_1:
+                case ISTORE_2:
+                case ISTORE_3:
+                    return store(frame, sp, getLocalIndex(opcode, pc, ISTORE, ISTORE_0)) && merge(next, frame, depth - 1);
+                case ASTORE:
+                case ASTORE_0:
+                case ASTORE_1:
+                case ASTORE_2:
+                case ASTORE_3:
+                    return store(frame, sp, getLocalIndex(opcode, pc, ASTORE, ASTORE_0)) && merge(next, frame, depth - 1);
+                case POP:
+                    return depth >= 1 && merge(next, frame, depth - 1);
+                case DUP:
+                    return depth >= 1 && push(frame, sp, frame[sp - 1]) && merge(next, frame, depth + 1);
+                case DUP_X1:
+                    if (depth < 2 || depth >= maxStack) {
+                        return false;
+                    }
+                    byte first = frame[sp - 1];
+                    frame[sp] = first;
+                    frame[sp - 1] = frame[sp - 2];
+                    frame[sp - 2] = first;
+                    return merge(next, frame, depth + 1);
+                case SWAP:
+                    if (depth < 2) {
+                        return false;
+                    }
+                    byte top = frame[sp - 1];
+                    frame[sp - 1] = frame[sp - 2];
+                    frame[sp - 2] = top;
+                    return merge(next, frame, depth);
+                case IADD:
+                case ISUB:
+                case IMUL:
+                case IDIV:
+                case IREM:
+                case ISHL:
+                case ISHR:
+                case IUSHR:
+                case IAND:
+                case IOR:
+                case IXOR:
+                case IALOAD:
+                case BALOAD:
+                case CALOAD:
+                    return replace(frame, sp, depth, 2, VALUE) && merge(next, frame, depth - 1);
+                case AALOAD:
+                    return replace(frame, sp, depth, 2, REF) && merge(next, frame, depth - 1);
+                case INEG:
+                case I2C:
+                case ARRAYLENGTH:
+                case INSTANCEOF:
+                    return replace(frame, sp, depth, 1, VALUE) && merge(next, frame, depth);
+                case NEWARRAY:
+                case ANEWARRAY:
+                case CHECKCAST:
+                    return replace(frame, sp, depth, 1, REF) && merge(next, frame, depth);
+                case MULTIANEWARRAY:
+                    int dimensions = code[pc + 3] & 0xff;
+                    return dimensions >= 1 && replace(frame, sp, depth, dimensions, REF)
+                            && merge(next, frame, depth - dimensions + 1);
+                case IINC:
+                    return index(code[pc + 1] & 0xff) && replace(frame, code[pc + 1] & 0xff, VALUE) && merge(next, frame, depth);
+                case IFEQ:
+                case IFNE:
+                case IFLT:
+                case IFGE:
+                case IFGT:
+                case IFLE:
+                case IFNULL:
+                case IFNONNULL:
+                    return depth >= 1 && branch(pc, next, frame, depth - 1);
+                case IF_ICMPEQ:
+                case IF_ICMPNE:
+                case IF_ICMPLT:
+                case IF_ICMPGE:
+                case IF_ICMPGT:
+                case IF_ICMPLE:
+                case IF_ACMPEQ:
+                case IF_ACMPNE:
+                    return depth >= 2 && branch(pc, next, frame, depth - 2);
+                case GOTO:
+                    return merge(pc + readTwoBytes(pc + 1), frame, depth);
+                case IRETURN:
+                case ARETURN:
+                    return depth >= 1;
+                case RETURN:
+                    return true;
+                case IASTORE:
+                case BASTORE:
+                case CASTORE:
+                case AASTORE:
+                    return depth >= 3 && merge(next, frame, depth - 3);
+                case GETSTATIC: {
+                    String field = klass.getFieldByCPIndex((short) readTwoBytes(pc + 1));
+                    if (field == null) {
+                        return false;
+                    }
+                    char type = getFieldType(field);
+                    return (getSize(type) == 2 ? values(frame, sp, depth, 0, 2) : push(frame, sp, getKind(type)))
+                            && merge(next, frame, depth + getSize(type));
+                }
+                case PUTSTATIC: {
+                    String field = klass.getFieldByCPIndex((short) readTwoBytes(pc + 1));
+                    int size = field != null ? getSize(getFieldType(field)) : 0;
+                    return field != null && depth >= size && merge(next, frame, depth - size);
+                }
+                case GETFIELD: {
+                    String field = klass.getFieldByCPIndex((short) readTwoBytes(pc + 1));
+                    if (field == null) {
+                        return false;
+                    }
+                    char type = getFieldType(field);
+                    return (getSize(type) == 2 ? values(frame, sp, depth, 1, 2) : replace(frame, sp, depth, 1, getKind(type)))
+                            && merge(next, frame, depth + getSize(type) - 1);
+                }
+                case PUTFIELD: {
+                    String field = klass.getFieldByCPIndex((short) readTwoBytes(pc + 1));
+                    int size = field != null ? getSize(getFieldType(field)) + 1 : 0;
+                    return field != null && depth >= size && merge(next, frame, depth - size);
+                }
+                case INVOKEVIRTUAL:
+                case INVOKESPECIAL:
+                case INVOKESTATIC:
+                    return invoke(pc, next, frame, depth, opcode != INVOKESTATIC);
+                default:
+                    return false;
+            }
+        }
+
+        private boolean invoke(int pc, int next, @Nonnull byte[] frame, int depth, boolean receiver) {
+            String name = klass.getMethodNameByCPIndex((short) readTwoBytes(pc + 1));
+            if (name == null) {
+                return false;
+            }
+            String descriptor = name.substring(name.indexOf('('));
+            int argumentSize = getArgumentKinds(descriptor).length + (receiver ? 1 : 0);
+            if (depth < argumentSize) {
+                return false;
+            }
+            arguments[pc] = argumentSize;
+            int returnDepth = depth - argumentSize;
+            char returnType = descriptor.charAt(descriptor.indexOf(')') + 1);
+            if (returnType == 'V') {
+                return merge(next, frame, returnDepth);
+            } else if (getSize(returnType) == 2) {
+                return values(frame, maxLocals + returnDepth, returnDepth, 0, 2) && merge(next, frame, returnDepth + 2);
+            }
+            return push(frame, maxLocals + returnDepth, getKind(returnType)) && merge(next, frame, returnDepth + 1);
+        }
+
+        private char getFieldType(@Nonnull String field) {
+            return field.charAt(field.indexOf(':') + 1);
+        }
+
+        private int getLocalIndex(@Nonnull Opcode opcode, int pc, @Nonnull Opcode longForm, @Nonnull Opcode firstShortForm) {
+            return opcode == longForm ? code[pc + 1] & 0xff : opcode.getOpcode() - firstShortForm.getOpcode();
+        }
+
+        private boolean index(int index) {
+            return index < maxLocals;
+        }
+
+        private boolean push(@Nonnull byte[] frame, int sp, byte kind) {
+            if (sp - maxLocals >= maxStack) {
+                return false;
+            }
+            frame[sp] = kind;
+            return true;
+        }
+
+        /**
+         * Replaces the topmost {@code count} operand stack slots with a single slot of the kind.
+         */
+        private boolean replace(@Nonnull byte[] frame, int sp, int depth, int count, byte kind) {
+            if (depth < count) {
+                return false;
+            }
+            frame[sp - count] = kind;
+            return true;
+        }
+
+        /**
+         * Replaces the topmost {@code pops} operand stack slots with {@code pushes} slots of primitive values.
+         */
+        private boolean values(@Nonnull byte[] frame, int sp, int depth, int pops, int pushes) {
+            if (depth < pops || depth - pops + pushes > maxStack) {
+                return false;
+            }
+            Arrays.fill(frame, sp - pops, sp - pops + pushes, VALUE);
+            return true;
+        }
+
+        /**
+         * Copies the topmost {@code count} operand stack slots below the {@code skip} slots under them.
+         */
+        private boolean dup(@Nonnull byte[] frame, int sp, int depth, int count, int skip) {
+            if (depth < count + skip || depth + count > maxStack) {
+                return false;
+            }
+            int to = sp - count - skip;
+            System.arraycopy(frame, to, frame, to + count, count + skip);
+            System.arraycopy(frame, sp, frame, to, count);
+            return true;
+        }
+
+        /**
+         * Stores the topmost {@code size} operand stack slots of a primitive value into the local variables.
+         */
+        private boolean storeValues(@Nonnull byte[] frame, int depth, int index, int size) {
+            if (!index(index + size - 1) || depth < size) {
+                return false;
+            }
+            Arrays.fill(frame, index, index + size, VALUE);
+            return true;
+        }
+
+        private boolean replace(@Nonnull byte[] frame, int slot, byte kind) {
+            frame[slot] = kind;
+            return true;
+        }
+
+        private boolean load(@Nonnull byte[] frame, int sp, int index) {
+            return index(index) && push(frame, sp, frame[index]);
+        }
+
+        private boolean store(@Nonnull byte[] frame, int sp, int index) {
+            if (!index(index) || sp == maxLocals) {
+                return false;
+            }
+            frame[index] = frame[sp - 1];
+            return true;
+        }
+
+        private boolean branch(int pc, int next, @Nonnull byte[] frame, int depth) {
+            return merge(pc + readTwoBytes(pc + 1), frame, depth) && merge(next, frame, depth);
+        }
+
+        /**
+         * Merges the frame into the one of the instruction at {@code pc} and schedules the instruction
+         * if its frame has changed.
+         */
+        private boolean merge(int pc, @Nonnull byte[] frame, int depth) {
+            if (pc < 0 || pc >= code.length || !heads[pc]) {
+                return false;
+            }
+            byte[] current = frames[pc];
+            if (current == null) {
+                frames[pc] = Arrays.copyOf(frame, frame.length);
+                depths[pc] = depth;
+                worklist.add(pc);
+                return true;
+            }
+            if (depths[pc] != depth) {
+                return false;
+            }
+            boolean changed = false;
+            for (int i = 0; i < maxLocals + depth; i++) {
+                if (current[i] != TOP && current[i] != frame[i]) {
+                    current[i] = TOP;
+                    changed = true;
+                }
+            }
+            if (changed) {
+                worklist.add(pc);
+            }
+            return true;
+        }
+
+        private int readTwoBytes(int pc) {
+            return (code[pc] << 8) + (code[pc + 1] & 0xff);
+        }
+    }
+
+}
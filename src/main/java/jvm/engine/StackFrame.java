@@ -1,9 +1,35 @@
 package jvm.engine;
 
+import jvm.JVMType;
 import jvm.Utils;
+import jvm.lang.StackOverflowErrorJVM;
+import jvm.parser.Method;
 
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
+
+import static java.util.Objects.requireNonNull;
+import static jvm.engine.ExecutionEngine.NULL;
+
+/**
+ * Interpreter stack shared by all frames of an engine. The backing array starts with one chunk and grows by
+ * whole chunks when a new frame does not fit, up to the maximum size, and shrinks again when the frames that
+ * needed the extra chunks return. Frames are addressed by their absolute index, so the array is only
+ * replaced on method invocation and return.
+ */
 public class StackFrame {
+    static final int CHUNK_SIZE = 1024;
+
+    private static final int DEFAULT_MAX_SIZE = 1000;
+
+    private final int maxSize;
     long[] stack;
+    // the method of every frame, filled in by the engine
+    @Nonnull
+    Method[] methods = new Method[16];
     int localVariable;
     public int programCounter;
     int stackPointer;
@@ -13,18 +39,29 @@ public class StackFrame {
     int invokeCount;
 
     public StackFrame(int varSize, int operandSize) {
+        this(DEFAULT_MAX_SIZE);
         init(varSize, operandSize);
-        stack = new long[1000];
     }
 
-    public StackFrame(int size) {
-        stack = new long[size];
+    /**
+     * @param maxSize the maximum number of slots the stack may grow to
+     */
+    public StackFrame(int maxSize) {
+        this.maxSize = maxSize;
+        this.stack = new long[Math.min(CHUNK_SIZE, maxSize)];
     }
 
+    /**
+     * Starts a new invocation from the bottom of the stack, dropping the frames an aborted invocation may
+     * have left behind.
+     */
     public final void init(int varSize, int operandSize) {
         this.varSize = varSize;
         this.operandSize = operandSize;
         this.stackPointer = varSize;
+        this.localVariable = 0;
+        this.invokeCount = 0;
+        ensureCapacity(varSize + operandSize);
     }
 
     public final long getObjectRefBeforeInvoke(int argSize) {
@@ -36,6 +73,7 @@ public class StackFrame {
         this.operandSize = operandSize;
         int newLocalVariable = stackPointer - argSize;
         int addressPC = newLocalVariable + varSize;
+        ensureCapacity(addressPC + 2 + operandSize);
         stack[addressPC] = programCounter;
         stack[addressPC + 1] = localVariable;
         localVariable = newLocalVariable;
@@ -44,21 +82,132 @@ public class StackFrame {
     }
 
     public final void destroyCurrentMethodStack(int varSize, int operandSize, boolean returnValue) {
+        destroyCurrentMethodStack(varSize, operandSize, returnValue ? 1 : 0);
+    }
+
+    /**
+     * @param returnSize the number of slots of the return value: 0 for void, 2 for long and double
+     */
+    public final void destroyCurrentMethodStack(int varSize, int operandSize, int returnSize) {
         int addressPC = localVariable + this.varSize;
         programCounter = (int) stack[addressPC];
         int oldLocalVariable = localVariable;
         localVariable = (int) stack[addressPC + 1];
-        restoreReturnValueAndSP(oldLocalVariable, returnValue);
+        restoreReturnValueAndSP(oldLocalVariable, returnSize);
         this.varSize = varSize;
         this.operandSize = operandSize;
         invokeCount--;
+        shrink();
+    }
+
+    private void ensureCapacity(int size) {
+        // the slot after the top of the stack stays addressable for the scan of the garbage collector
+        if (size >= stack.length) {
+            if (size >= maxSize) {
+                throw new StackOverflowErrorJVM("stack size " + maxSize + " exceeded");
+            }
+            int capacity = (size / CHUNK_SIZE + 1) * CHUNK_SIZE;
+            stack = Arrays.copyOf(stack, Math.min(capacity, maxSize));
+        }
+    }
+
+    private void shrink() {
+        int length = stack.length;
+        if (length > CHUNK_SIZE && getSize() < length / 4) {
+            stack = Arrays.copyOf(stack, length / 2);
+        }
     }
 
-    private void restoreReturnValueAndSP(int oldLocalVariable, boolean returnValue) {
-        if (returnValue) {
-            stack[oldLocalVariable] = stack[stackPointer - 1]; // restore return value to new operand stack
+    /**
+     * Releases the chunks of an idle stack, so that a pooled stack does not keep the memory of its deepest
+     * invocation.
+     */
+    final void reset() {
+        localVariable = 0;
+        stackPointer = 0;
+        varSize = 0;
+        operandSize = 0;
+        invokeCount = 0;
+        if (stack.length > CHUNK_SIZE) {
+            stack = new long[CHUNK_SIZE];
         }
-        stackPointer = returnValue ? oldLocalVariable + 1 : oldLocalVariable;
+        Arrays.fill(methods, null);
+    }
+
+    /**
+     * Reports the references held by the frames of the stack.
+     * <p>
+     * A frame that waits for an invoked method reports the slots of the reference map of its method at the
+     * return address. The current frame, which may be stopped in the middle of an instruction, and the frames
+     * of methods without a map report every slot whose value is tagged as a reference.
+     */
+    public final void forEachReference(@Nonnull IntConsumer consumer) {
+        visitReferences(consumer, null);
+    }
+
+    /**
+     * Replaces the references of the frames, found like by {@link #forEachReference(IntConsumer)}, with the new
+     * ones after the heap has moved the objects of direct handles. The slots keep their tags.
+     */
+    public final void forwardReferences(@Nonnull IntUnaryOperator forward) {
+        visitReferences(null, forward);
+    }
+
+    private void visitReferences(@Nullable IntConsumer consumer, @Nullable IntUnaryOperator forward) {
+        long[] stack = this.stack;
+        int localVariable = this.localVariable;
+        int varSize = this.varSize;
+        // the stack may have been replaced by a smaller one since the frame was read
+        int top = Math.min(getSize(), stack.length);
+        boolean[] references = null;
+        for (int frame = invokeCount; frame >= 0; frame--) {
+            int bottom = localVariable + varSize + (frame > 0 ? 2 : 0);
+            if (references != null) {
+                for (int i = 0; i < references.length; i++) {
+                    int slot = i < varSize ? localVariable + i : bottom + i - varSize;
+                    if (references[i] && slot < top && (int) stack[slot] != NULL) {
+                        visitReference(stack, slot, consumer, forward);
+                    }
+                }
+            } else {
+                for (int slot = localVariable; slot < top; slot++) {
+                    long value = stack[slot];
+                    if (Utils.getValueType(value) == JVMType.A.ordinal() && (int) value != NULL) {
+                        visitReference(stack, slot, consumer, forward);
+                    }
+                }
+            }
+            if (frame > 0) {
+                int addressPC = localVariable + varSize;
+                int returnAddress = (int) stack[addressPC];
+                top = localVariable;
+                localVariable = (int) stack[addressPC + 1];
+                Method caller = methods[frame - 1];
+                varSize = caller.getVarSize();
+                ReferenceMap referenceMap = caller.getReferenceMap();
+                references = referenceMap != null ? referenceMap.getReferences(returnAddress) : null;
+            }
+        }
+    }
+
+    private static void visitReference(@Nonnull long[] stack, int slot, @Nullable IntConsumer consumer,
+                                       @Nullable IntUnaryOperator forward) {
+        if (forward != null) {
+            // a reference is not negative, so its tag is the upper half of the slot
+            stack[slot] = stack[slot] & 0xffffffff00000000L | forward.applyAsInt((int) stack[slot]);
+        } else {
+            requireNonNull(consumer).accept((int) stack[slot]);
+        }
+    }
+
+    public int getCapacity() {
+        return stack.length;
+    }
+
+    private void restoreReturnValueAndSP(int oldLocalVariable, int returnSize) {
+        // restore return value to new operand stack
+        System.arraycopy(stack, stackPointer - returnSize, stack, oldLocalVariable, returnSize);
+        stackPointer = oldLocalVariable + returnSize;
     }
 
     public final long getLocalVar(int index) {
@@ -72,14 +221,14 @@ public class StackFrame {
     }
 
     public final long pop() {
-        if (stackPointer <= localVariable + varSize + (invokeCount > 0 ? 2 : 0)) {
+        if (stackPointer <= getOperandStackBottom()) {
             throw new IndexOutOfBoundsException("wrong POP operation on the operand stack");
         }
         return stack[--stackPointer];
     }
 
     public final void push(long value) {
-        if (stackPointer - (localVariable + varSize + (invokeCount > 0 ? 2 : 0)) >= operandSize) {
+        if (stackPointer - getOperandStackBottom() >= operandSize) {
             throw new IndexOutOfBoundsException("wrong PUSH operation on the operand stack");
         }
         stack[stackPointer++] = value;
@@ -97,6 +246,44 @@ public class StackFrame {
         push(first);
     }
 
+    /**
+     * Duplicates the topmost {@code count} slots and inserts the copies below the {@code skip} slots under them,
+     * which covers the DUP2 and the _X2 forms of the instruction for any mix of one and two slot values.
+     */
+    public final void dup(int count, int skip) {
+        if (stackPointer - count - skip < getOperandStackBottom()) {
+            throw new IndexOutOfBoundsException("wrong POP operation on the operand stack");
+        }
+        if (stackPointer + count - getOperandStackBottom() > operandSize) {
+            throw new IndexOutOfBoundsException("wrong PUSH operation on the operand stack");
+        }
+        int from = stackPointer - count;
+        int to = from - skip;
+        System.arraycopy(stack, to, stack, to + count, count + skip);
+        System.arraycopy(stack, stackPointer, stack, to, count);
+        stackPointer += count;
+    }
+
+    /*
+     * Accessors without bounds checks for methods whose stack depth and local variable indexes were proven
+     * by the Verifier.
+     */
+    final long popUnchecked() {
+        return stack[--stackPointer];
+    }
+
+    final void pushUnchecked(long value) {
+        stack[stackPointer++] = value;
+    }
+
+    final long getLocalVarUnchecked(int index) {
+        return stack[index + localVariable];
+    }
+
+    final void setLocalVarUnchecked(int index, long value) {
+        stack[index + localVariable] = value;
+    }
+
     private void checkLocalVarBounds(int index) {
         if (index < 0 || index >= varSize) {
             throw new IndexOutOfBoundsException("wrong index for local variables stack");
@@ -108,7 +295,11 @@ public class StackFrame {
     }
 
     public int getSize() {
-        return localVariable + varSize + (invokeCount > 0 ? 2 : 0) + operandSize;
+        return getOperandStackBottom() + operandSize;
+    }
+
+    final int getOperandStackBottom() {
+        return localVariable + varSize + (invokeCount > 0 ? 2 : 0);
     }
 
     @Override
@@ -0,0 +1,41 @@
+package jvm.engine;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Stacks for the short invocations that run outside of the main engine, the class initializers and the
+ * finalizers. Both may nest, a class initializer can load another klass and a finalizer can trigger a
+ * collection, so every invocation takes its own stack and returns it when it completes.
+ */
+public final class StackFramePool {
+
+    private static final int MAX_STACK_SIZE = 10000;
+
+    private static final int MAX_POOLED_STACKS = 4;
+
+    @Nonnull
+    private static final Deque<StackFrame> stacks = new ArrayDeque<>();
+
+    private StackFramePool() {
+    }
+
+    @Nonnull
+    public static synchronized StackFrame acquire() {
+        StackFrame stackFrame = stacks.poll();
+        return stackFrame != null ? stackFrame : new StackFrame(MAX_STACK_SIZE);
+    }
+
+    public static synchronized void release(@Nonnull StackFrame stackFrame) {
+        if (stacks.size() < MAX_POOLED_STACKS) {
+            stackFrame.reset();
+            stacks.push(stackFrame);
+        }
+    }
+
+    static synchronized int size() {
+        return stacks.size();
+    }
+
+}
@@ -0,0 +1,308 @@
+package jvm.engine;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+
+import static jvm.engine.Opcode.values;
+
+/**
+ * Pre-decoded form of a method's bytecode used by the threaded interpreter loop.
+ * <p>
+ * The decoded stream has the same length as the bytecode, so a program counter is valid in both of them.
+ * Every instruction head holds a single int: the opcode in the lowest byte and its already decoded operand
+ * in the upper 24 bits (local variable index, sign-extended constant or absolute branch target).
+ * Instructions that are not executed by the threaded loop itself keep only the raw opcode and are
+ * delegated to the regular handlers, which still read their operands from the bytecode.
+ * <p>
+ * After decoding, frequent instruction sequences are fused into superinstructions, so the threaded loop
+ * dispatches once per sequence instead of once per instruction.
+ */
+public final class ThreadedCode {
+
+    static final int OP_NOP = 0x00;
+    static final int OP_ACONST_NULL = 0x01;
+    static final int OP_ICONST_M1 = 0x02;
+    static final int OP_ICONST_0 = 0x03;
+    static final int OP_ICONST_1 = 0x04;
+    static final int OP_ICONST_2 = 0x05;
+    static final int OP_ICONST_3 = 0x06;
+    static final int OP_ICONST_4 = 0x07;
+    static final int OP_ICONST_5 = 0x08;
+    static final int OP_BIPUSH = 0x10;
+    static final int OP_SIPUSH = 0x11;
+    static final int OP_ILOAD = 0x15;
+    static final int OP_ALOAD = 0x19;
+    static final int OP_ILOAD_0 = 0x1a;
+    static final int OP_ILOAD_1 = 0x1b;
+    static final int OP_ILOAD_2 = 0x1c;
+    static final int OP_ILOAD_3 = 0x1d;
+    static final int OP_ALOAD_0 = 0x2a;
+    static final int OP_ALOAD_1 = 0x2b;
+    static final int OP_ALOAD_2 = 0x2c;
+    static final int OP_ALOAD_3 = 0x2d;
+    static final int OP_ISTORE = 0x36;
+    static final int OP_ASTORE = 0x3a;
+    static final int OP_ISTORE_0 = 0x3b;
+    static final int OP_ISTORE_1 = 0x3c;
+    static final int OP_ISTORE_2 = 0x3d;
+    static final int OP_ISTORE_3 = 0x3e;
+    static final int OP_ASTORE_0 = 0x4b;
+    static final int OP_ASTORE_1 = 0x4c;
+    static final int OP_ASTORE_2 = 0x4d;
+    static final int OP_ASTORE_3 = 0x4e;
+    static final int OP_POP = 0x57;
+    static final int OP_DUP = 0x59;
+    static final int OP_DUP_X1 = 0x5a;
+    static final int OP_SWAP = 0x5f;
+    static final int OP_IADD = 0x60;
+    static final int OP_ISUB = 0x64;
+    static final int OP_IMUL = 0x68;
+    static final int OP_IDIV = 0x6c;
+    static final int OP_IREM = 0x70;
+    static final int OP_INEG = 0x74;
+    static final int OP_ISHL = 0x78;
+    static final int OP_ISHR = 0x7a;
+    static final int OP_IUSHR = 0x7c;
+    static final int OP_IAND = 0x7e;
+    static final int OP_IOR = 0x80;
+    static final int OP_IXOR = 0x82;
+    static final int OP_IINC = 0x84;
+    static final int OP_IFEQ = 0x99;
+    static final int OP_IFNE = 0x9a;
+    static final int OP_IFLT = 0x9b;
+    static final int OP_IFGE = 0x9c;
+    static final int OP_IFGT = 0x9d;
+    static final int OP_IFLE = 0x9e;
+    static final int OP_IF_ICMPEQ = 0x9f;
+    static final int OP_IF_ICMPNE = 0xa0;
+    static final int OP_IF_ICMPLT = 0xa1;
+    static final int OP_IF_ICMPGE = 0xa2;
+    static final int OP_IF_ICMPGT = 0xa3;
+    static final int OP_IF_ICMPLE = 0xa4;
+    static final int OP_IF_ACMPEQ = 0xa5;
+    static final int OP_IF_ACMPNE = 0xa6;
+    static final int OP_GOTO = 0xa7;
+    static final int OP_IRETURN = 0xac;
+    static final int OP_LRETURN = 0xad;
+    static final int OP_FRETURN = 0xae;
+    static final int OP_DRETURN = 0xaf;
+    static final int OP_ARETURN = 0xb0;
+    static final int OP_RETURN = 0xb1;
+    static final int OP_IFNULL = 0xc6;
+    static final int OP_IFNONNULL = 0xc7;
+    static final int OP_GETFIELD_QUICK = 0xce;
+    static final int OP_PUTFIELD_QUICK = 0xcf;
+
+    /*
+     * Superinstructions, taken from the opcode space that is not used by the bytecode.
+     * A fused word replaces only the head of the first instruction of its sequence. The heads of the other
+     * instructions stay intact, so a branch into the middle of a sequence still executes it unfused, and
+     * operands that do not fit into the fused word are read from those heads.
+     */
+    // ALOAD_n/ALOAD, GETFIELD_QUICK: local index, length of the load
+    static final int OP_ALOAD_GETFIELD_QUICK = 0xe2;
+    // ILOAD a, ILOAD b, IADD, ISTORE c: a, length of the first load, length of the second load, length of the store
+    static final int OP_ILOAD_ILOAD_IADD_ISTORE = 0xe3;
+    // ILOAD, BIPUSH, IF_ICMPGE: local index, signed constant, length of the load
+    static final int OP_ILOAD_BIPUSH_IF_ICMPGE = 0xe4;
+    // IINC, GOTO: the same layout as IINC
+    static final int OP_IINC_GOTO = 0xe5;
+
+    static final int FIRST_SUPERINSTRUCTION = OP_ALOAD_GETFIELD_QUICK;
+    private static final String[] SUPERINSTRUCTION_NAMES = {
+            "ALOAD+GETFIELD_QUICK",
+            "ILOAD+ILOAD+IADD+ISTORE",
+            "ILOAD+BIPUSH+IF_ICMPGE",
+            "IINC+GOTO"
+    };
+    static final int SUPERINSTRUCTIONS = SUPERINSTRUCTION_NAMES.length;
+
+    /**
+     * Filler for operand bytes and for the tail of a method that could not be decoded.
+     * It is never handled by the threaded loop itself, so it always falls back to the bytecode.
+     */
+    static final int UNDECODED = 0xff;
+
+    private static final byte[] LENGTHS = new byte[256];
+
+    static {
+        for (Opcode op : values()) {
+            LENGTHS[op.getOpcode()] = (byte) (op.getNumParams() + 1);
+        }
+    }
+
+    private ThreadedCode() {
+    }
+
+    @Nonnull
+    public static int[] decode(@Nonnull byte[] byteCode) {
+        int[] code = new int[byteCode.length];
+        Arrays.fill(code, UNDECODED);
+        int pc = 0;
+        while (pc < byteCode.length) {
+            int opcode = byteCode[pc] & 0xff;
+            int length = LENGTHS[opcode];
+            if (length == 0) {
+                // unknown opcode, the rest of the method will be reported by the regular handlers
+                code[pc] = opcode;
+                break;
+            }
+            code[pc] = encode(opcode, byteCode, pc);
+            pc += length;
+        }
+        for (pc = 0; pc < byteCode.length && LENGTHS[byteCode[pc] & 0xff] != 0; pc += LENGTHS[byteCode[pc] & 0xff]) {
+            fuse(code, pc);
+        }
+        return code;
+    }
+
+    /**
+     * Returns the length of the instruction with the opcode, or 0 if the opcode is unknown.
+     */
+    static int getLength(int opcode) {
+        return LENGTHS[opcode];
+    }
+
+    @Nonnull
+    static String getSuperinstructionName(int index) {
+        return SUPERINSTRUCTION_NAMES[index];
+    }
+
+    /**
+     * Re-encodes the instruction at {@code pc} after its bytecode was rewritten to a quick form.
+     */
+    static void quicken(@Nonnull int[] code, int pc, @Nonnull Opcode opcode, int index) {
+        int op = opcode.getOpcode();
+        code[pc] = op == OP_GETFIELD_QUICK || op == OP_PUTFIELD_QUICK ? op | index << 8 : op;
+        if (op == OP_GETFIELD_QUICK) {
+            // the preceding load can be fused only now
+            if (pc >= 1 && isLoad(code[pc - 1], OP_ALOAD_0)) {
+                fuse(code, pc - 1);
+            } else if (pc >= 2 && opcode(code[pc - 2]) == OP_ALOAD && code[pc - 1] == UNDECODED) {
+                fuse(code, pc - 2);
+            }
+        }
+    }
+
+    /**
+     * Replaces the head at {@code pc} with a superinstruction if a known sequence starts there.
+     */
+    private static void fuse(@Nonnull int[] code, int pc) {
+        int instruction = code[pc];
+        int op = opcode(instruction);
+        if (isLoad(instruction, OP_ALOAD_0) || op == OP_ALOAD) {
+            int length = op == OP_ALOAD ? 2 : 1;
+            if (opcode(code, pc + length) == OP_GETFIELD_QUICK) {
+                code[pc] = OP_ALOAD_GETFIELD_QUICK | (instruction >>> 8) << 8 | length << 16;
+            }
+        } else if (isLoad(instruction, OP_ILOAD_0) || op == OP_ILOAD) {
+            int length = op == OP_ILOAD ? 2 : 1;
+            int next = code.length > pc + length ? code[pc + length] : UNDECODED;
+            if (opcode(next) == OP_BIPUSH && opcode(code, pc + length + 2) == OP_IF_ICMPGE) {
+                code[pc] = OP_ILOAD_BIPUSH_IF_ICMPGE | (instruction >>> 8) << 8 | (next >> 8 & 0xff) << 16 | length << 24;
+            } else if (isLoad(next, OP_ILOAD_0) || opcode(next) == OP_ILOAD) {
+                int secondLength = opcode(next) == OP_ILOAD ? 2 : 1;
+                int add = pc + length + secondLength;
+                int store = code.length > add + 1 ? code[add + 1] : UNDECODED;
+                if (opcode(code, add) == OP_IADD && (isStore(store) || opcode(store) == OP_ISTORE)) {
+                    int storeLength = opcode(store) == OP_ISTORE ? 2 : 1;
+                    code[pc] = OP_ILOAD_ILOAD_IADD_ISTORE | (instruction >>> 8) << 8
+                            | length << 16 | secondLength << 20 | storeLength << 24;
+                }
+            }
+        } else if (op == OP_IINC && opcode(code, pc + 3) == OP_GOTO) {
+            code[pc] = OP_IINC_GOTO | instruction & ~0xff;
+        }
+    }
+
+    private static int opcode(int instruction) {
+        return instruction & 0xff;
+    }
+
+    private static int opcode(@Nonnull int[] code, int pc) {
+        return pc < code.length ? opcode(code[pc]) : UNDECODED;
+    }
+
+    private static boolean isLoad(int instruction, int firstShortForm) {
+        int op = opcode(instruction);
+        return op >= firstShortForm && op <= firstShortForm + 3;
+    }
+
+    private static boolean isStore(int instruction) {
+        int op = opcode(instruction);
+        return op >= OP_ISTORE_0 && op <= OP_ISTORE_3;
+    }
+
+    private static int encode(int opcode, @Nonnull byte[] byteCode, int pc) {
+        switch (opcode) {
+            case OP_ICONST_M1:
+            case OP_ICONST_0:
+            case OP_ICONST_1:
+            case OP_ICONST_2:
+            case OP_ICONST_3:
+            case OP_ICONST_4:
+            case OP_ICONST_5:
+                return opcode | (opcode - OP_ICONST_0) << 8;
+            case OP_ILOAD_0:
+            case OP_ILOAD_1:
+            case OP_ILOAD_2:
+            case OP_ILOAD_3:
+                return opcode | (opcode - OP_ILOAD_0) << 8;
+            case OP_ALOAD_0:
+            case OP_ALOAD_1:
+            case OP_ALOAD_2:
+            case OP_ALOAD_3:
+                return opcode | (opcode - OP_ALOAD_0) << 8;
+            case OP_ISTORE_0:
+            case OP_ISTORE_1:
+            case OP_ISTORE_2:
+            case OP_ISTORE_3:
+                return opcode | (opcode - OP_ISTORE_0) << 8;
+            case OP_ASTORE_0:
+            case OP_ASTORE_1:
+            case OP_ASTORE_2:
+            case OP_ASTORE_3:
+                return opcode | (opcode - OP_ASTORE_0) << 8;
+            case OP_ILOAD:
+            case OP_ALOAD:
+            case OP_ISTORE:
+            case OP_ASTORE:
+                return opcode | (byteCode[pc + 1] & 0xff) << 8;
+            case OP_BIPUSH:
+                return opcode | byteCode[pc + 1] << 8;
+            case OP_SIPUSH:
+                return opcode | readTwoBytes(byteCode, pc + 1) << 8;
+            case OP_IINC:
+                // index is unsigned, constant is signed and kept in the highest byte
+                return opcode | (byteCode[pc + 1] & 0xff) << 8 | byteCode[pc + 2] << 24;
+            case OP_IFEQ:
+            case OP_IFNE:
+            case OP_IFLT:
+            case OP_IFGE:
+            case OP_IFGT:
+            case OP_IFLE:
+            case OP_IF_ICMPEQ:
+            case OP_IF_ICMPNE:
+            case OP_IF_ICMPLT:
+            case OP_IF_ICMPGE:
+            case OP_IF_ICMPGT:
+            case OP_IF_ICMPLE:
+            case OP_IF_ACMPEQ:
+            case OP_IF_ACMPNE:
+            case OP_GOTO:
+            case OP_IFNULL:
+            case OP_IFNONNULL:
+                return opcode | (pc + readTwoBytes(byteCode, pc + 1)) << 8;
+            case OP_GETFIELD_QUICK:
+            case OP_PUTFIELD_QUICK:
+                return opcode | (readTwoBytes(byteCode, pc + 1) & 0xffff) << 8;
+            default:
+                return opcode;
+        }
+    }
+
+    private static int readTwoBytes(@Nonnull byte[] byteCode, int pc) {
+        return (byteCode[pc] << 8) + (byteCode[pc + 1] & 0xff);
+    }
+
+}
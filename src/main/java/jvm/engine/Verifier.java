@@ -0,0 +1,501 @@
+package jvm.engine;
+
+import jvm.parser.Klass;
+import jvm.parser.Method;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import static jvm.engine.Opcode.*;
+import static jvm.engine.ThreadedCode.getLength;
+
+/**
+ * Data-flow verifier of the int and reference subset of the bytecode.
+ * <p>
+ * The verifier interprets a method over the types of its local variables and operand stack slots and proves
+ * that every instruction finds the types it expects, that the operand stack never under- or overflows
+ * {@code maxStack} and that every local variable index is below {@code maxLocal}. Methods that use any
+ * other instruction are not verified and keep running with all the checks of {@link StackFrame} and of
+ * the engine.
+ * <p>
+ * Invocations and instance field accesses take the types of their operands and results from the descriptors
+ * in the constant pool of the klass of the method. Only int-like and reference values are modelled, so a method
+ * that passes, returns or reads a long, float or double value this way is not verified.
+ * <p>
+ * The types of the arguments come from the method descriptor, but the values passed at runtime are tagged
+ * by the caller, so the engine checks the argument slots that the method reads once on entry.
+ */
+public final class Verifier {
+
+    static final byte TOP = 0;
+    static final byte INT = 1;
+    static final byte REF = 2;
+    // set on the type of a local variable that may still hold the value of an argument
+    private static final byte ARGUMENT = 4;
+
+    private static final Opcode[] OPCODES = new Opcode[256];
+
+    static {
+        for (Opcode op : values()) {
+            OPCODES[op.getOpcode()] = op;
+        }
+    }
+
+    private final byte[] code;
+    @Nullable
+    private final Klass klass;
+    private final int maxStack;
+    private final int maxLocals;
+    private final boolean[] heads;
+    // locals followed by the operand stack, null for an instruction that is not reached yet
+    private final byte[][] frames;
+    private final int[] depths;
+    private final Deque<Integer> worklist = new ArrayDeque<>();
+
+    private Verifier(@Nonnull byte[] code, @Nullable Klass klass, int maxStack, int maxLocals) {
+        this.code = code;
+        this.klass = klass;
+        this.maxStack = maxStack;
+        this.maxLocals = maxLocals;
+        this.heads = new boolean[code.length];
+        this.frames = new byte[code.length][];
+        this.depths = new int[code.length];
+    }
+
+    /**
+     * Verifies the method without a constant pool, so a method that invokes methods or accesses fields
+     * is not verified.
+     *
+     * @return the types that the verified code expects in the argument slots, {@link #TOP} for a slot that is
+     * never read, or null if the method cannot be verified
+     */
+    @Nullable
+    public static byte[] verify(@Nonnull Method method) {
+        return verify(method, null);
+    }
+
+    /**
+     * Verifies the method.
+     *
+     * @param klass the klass that declares the method, for the descriptors of fields and invoked methods
+     * @return the types that the verified code expects in the argument slots, {@link #TOP} for a slot that is
+     * never read, or null if the method cannot be verified
+     */
+    @Nullable
+    public static byte[] verify(@Nonnull Method method, @Nullable Klass klass) {
+        byte[] code = method.getBytecode();
+        if (code == null || method.isNative() || method.getOperandSize() < 0 || method.getVarSize() < 0) {
+            return null;
+        }
+        byte[] arguments = getArgumentTypes(method);
+        if (arguments == null) {
+            return null;
+        }
+        // slots that do not fit into the local variables cannot be read
+        arguments = Arrays.copyOf(arguments, Math.min(arguments.length, method.getVarSize()));
+        Verifier verifier = new Verifier(code, klass, method.getOperandSize(), method.getVarSize());
+        byte[] entry = new byte[method.getVarSize() + method.getOperandSize()];
+        for (int i = 0; i < arguments.length; i++) {
+            entry[i] = arguments[i] == TOP ? TOP : (byte) (arguments[i] | ARGUMENT);
+        }
+        boolean[] readArguments = new boolean[arguments.length];
+        if (!verifier.run(entry, readArguments)) {
+            return null;
+        }
+        for (int i = 0; i < arguments.length; i++) {
+            if (!readArguments[i]) {
+                arguments[i] = TOP;
+            }
+        }
+        return arguments;
+    }
+
+    /**
+     * Returns the types of the argument slots by the descriptor, {@link #TOP} for the types that this
+     * verifier does not track, or null if the descriptor is malformed.
+     */
+    @Nullable
+    private static byte[] getArgumentTypes(@Nonnull Method method) {
+        String signature = method.getSignature();
+        int receiver = method.isStatic() ? 0 : 1;
+        byte[] types = new byte[method.getArgSize() + receiver];
+        if (receiver == 1) {
+            types[0] = REF;
+        }
+        if (signature == null || !signature.startsWith("(")) {
+            return types.length == receiver ? types : null;
+        }
+        int slot = receiver;
+        for (int i = 1; i < signature.length() && signature.charAt(i) != ')'; i++) {
+            char c = signature.charAt(i);
+            if (c == 'I' || c == 'Z') {
+                types[slot++] = INT;
+            } else if (c == 'L' || c == '[') {
+                while (signature.charAt(i) == '[') {
+                    i++;
+                }
+                if (signature.charAt(i) == 'L') {
+                    i = signature.indexOf(';', i);
+                }
+                types[slot++] = REF;
+            } else {
+                // byte, char, short, long, float and double values keep their own tags
+                types[slot++] = TOP;
+                if (c == 'J' || c == 'D') {
+                    types[slot++] = TOP;
+                }
+            }
+        }
+        return types;
+    }
+
+    private boolean run(@Nonnull byte[] entry, @Nonnull boolean[] readArguments) {
+        for (int pc = 0; pc < code.length; ) {
+            int length = getLength(code[pc] & 0xff);
+            if (length == 0) {
+                return false;
+            }
+            heads[pc] = true;
+            pc += length;
+        }
+        if (!merge(0, entry, 0)) {
+            return false;
+        }
+        byte[] frame = new byte[entry.length];
+        while (!worklist.isEmpty()) {
+            int pc = worklist.poll();
+            System.arraycopy(frames[pc], 0, frame, 0, frame.length);
+            if (!execute(pc, frame, depths[pc], readArguments)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Interprets the instruction at {@code pc} and merges the resulting frame into its successors.
+     */
+    private boolean execute(int pc, @Nonnull byte[] frame, int depth, @Nonnull boolean[] readArguments) {
+        Opcode opcode = OPCODES[code[pc] & 0xff];
+        int next = pc + getLength(code[pc] & 0xff);
+        int sp = maxLocals + depth;
+        int stackBottom = maxLocals;
+        switch (opcode) {
+            case NOP:
+                break;
+            case ACONST_NULL:
+                return push(frame, sp, REF) && merge(next, frame, depth + 1);
+            case ICONST_M1:
+            case ICONST_0:
+            case ICONST_1:
+            case ICONST_2:
+            case ICONST_3:
+            case ICONST_4:
+            case ICONST_5:
+            case BIPUSH:
+            case SIPUSH:
+                return push(frame, sp, INT) && merge(next, frame, depth + 1);
+            case ILOAD:
+            case ILOAD_0:
+            case ILOAD_1:
+            case ILOAD_2:
+            case ILOAD_3:
+                return load(frame, getLocalIndex(opcode, pc, ILOAD, ILOAD_0), INT, readArguments)
+                        && push(frame, sp, INT) && merge(next, frame, depth + 1);
+            case ALOAD:
+            case ALOAD_0:
+            case ALOAD_1:
+            case ALOAD_2:
+            case ALOAD_3:
+                return load(frame, getLocalIndex(opcode, pc, ALOAD, ALOAD_0), REF, readArguments)
+                        && push(frame, sp, REF) && merge(next, frame, depth + 1);
+            case ISTORE:
+            case ISTORE_0:
+            case ISTORE_1:
+            case ISTORE_2:
+            case ISTORE_3:
+                return store(frame, sp, stackBottom, getLocalIndex(opcode, pc, ISTORE, ISTORE_0), INT)
+                        && merge(next, frame, depth - 1);
+            case ASTORE:
+            case ASTORE_0:
+            case ASTORE_1:
+            case ASTORE_2:
+            case ASTORE_3:
+                return store(frame, sp, stackBottom, getLocalIndex(opcode, pc, ASTORE, ASTORE_0), REF)
+                        && merge(next, frame, depth - 1);
+            case POP:
+                return depth >= 1 && merge(next, frame, depth - 1);
+            case DUP:
+                return depth >= 1 && push(frame, sp, frame[sp - 1]) && merge(next, frame, depth + 1);
+            case DUP_X1:
+                if (depth < 2 || depth >= maxStack) {
+                    return false;
+                }
+                byte first = frame[sp - 1];
+                frame[sp] = first;
+                frame[sp - 1] = frame[sp - 2];
+                frame[sp - 2] = first;
+                return merge(next, frame, depth + 1);
+            case SWAP:
+                if (depth < 2) {
+                    return false;
+                }
+                byte top = frame[sp - 1];
+                frame[sp - 1] = frame[sp - 2];
+                frame[sp - 2] = top;
+                return merge(next, frame, depth);
+            case IADD:
+            case ISUB:
+            case IMUL:
+            case IDIV:
+            case IREM:
+            case ISHL:
+            case ISHR:
+            case IUSHR:
+            case IAND:
+            case IOR:
+            case IXOR:
+                return pop(frame, sp, stackBottom, INT, INT) && merge(next, frame, depth - 1);
+            case INEG:
+                return pop(frame, sp, stackBottom, INT) && merge(next, frame, depth);
+            case IINC:
+                return load(frame, code[pc + 1] & 0xff, INT, readArguments)
+                        && replace(frame, code[pc + 1] & 0xff, INT) && merge(next, frame, depth);
+            case IFEQ:
+            case IFNE:
+            case IFLT:
+            case IFGE:
+            case IFGT:
+            case IFLE:
+                return pop(frame, sp, stackBottom, INT) && branch(pc, next, frame, depth - 1);
+            case IFNULL:
+            case IFNONNULL:
+                return pop(frame, sp, stackBottom, REF) && branch(pc, next, frame, depth - 1);
+            case IF_ICMPEQ:
+            case IF_ICMPNE:
+            case IF_ICMPLT:
+            case IF_ICMPGE:
+            case IF_ICMPGT:
+            case IF_ICMPLE:
+                return pop(frame, sp, stackBottom, INT, INT) && branch(pc, next, frame, depth - 2);
+            case IF_ACMPEQ:
+            case IF_ACMPNE:
+                return pop(frame, sp, stackBottom, REF, REF) && branch(pc, next, frame, depth - 2);
+            case GOTO:
+                return merge(pc + readTwoBytes(pc + 1), frame, depth);
+            case IRETURN:
+                return pop(frame, sp, stackBottom, INT);
+            case ARETURN:
+                return pop(frame, sp, stackBottom, REF);
+            case RETURN:
+                return true;
+            case NEWARRAY:
+                return pop(frame, sp, stackBottom, INT) && replace(frame, sp - 1, REF) && merge(next, frame, depth);
+            case ARRAYLENGTH:
+                return pop(frame, sp, stackBottom, REF) && replace(frame, sp - 1, INT) && merge(next, frame, depth);
+            case IALOAD:
+            case BALOAD:
+            case CALOAD:
+                return pop(frame, sp, stackBottom, REF, INT) && replace(frame, sp - 2, INT) && merge(next, frame, depth - 1);
+            case AALOAD:
+                return pop(frame, sp, stackBottom, REF, INT) && replace(frame, sp - 2, REF) && merge(next, frame, depth - 1);
+            case IASTORE:
+            case BASTORE:
+            case CASTORE:
+                return pop(frame, sp, stackBottom, REF, INT, INT) && merge(next, frame, depth - 3);
+            case AASTORE:
+                return pop(frame, sp, stackBottom, REF, INT, REF) && merge(next, frame, depth - 3);
+            case GETFIELD: {
+                byte type = getFieldType(pc);
+                return type != TOP && pop(frame, sp, stackBottom, REF) && replace(frame, sp - 1, type)
+                        && merge(next, frame, depth);
+            }
+            case PUTFIELD: {
+                byte type = getFieldType(pc);
+                return type != TOP && pop(frame, sp, stackBottom, REF, type) && merge(next, frame, depth - 2);
+            }
+            case INVOKEVIRTUAL:
+            case INVOKESPECIAL:
+            case INVOKESTATIC:
+                return invoke(pc, next, frame, depth, opcode != INVOKESTATIC);
+            default:
+                return false;
+        }
+        return merge(next, frame, depth);
+    }
+
+    /**
+     * Pops the arguments of the invoked method by the types of its descriptor and pushes its result.
+     */
+    private boolean invoke(int pc, int next, @Nonnull byte[] frame, int depth, boolean receiver) {
+        String name = klass != null ? klass.getMethodNameByCPIndex((short) readTwoBytes(pc + 1)) : null;
+        if (name == null) {
+            return false;
+        }
+        String descriptor = name.substring(name.indexOf('('));
+        byte[] types = new byte[descriptor.length()];
+        int count = 0;
+        if (receiver) {
+            types[count++] = REF;
+        }
+        int end = descriptor.indexOf(')');
+        for (int i = 1; i < end; i++) {
+            char c = descriptor.charAt(i);
+            if (c == '[') {
+                while (descriptor.charAt(i) == '[') {
+                    i++;
+                }
+                c = '[';
+            }
+            if (descriptor.charAt(i) == 'L') {
+                i = descriptor.indexOf(';', i);
+            }
+            byte type = getType(c);
+            if (type == TOP) {
+                return false;
+            }
+            types[count++] = type;
+        }
+        int sp = maxLocals + depth;
+        if (!pop(frame, sp, maxLocals, Arrays.copyOf(types, count))) {
+            return false;
+        }
+        char returnType = descriptor.charAt(end + 1);
+        if (returnType == 'V') {
+            return merge(next, frame, depth - count);
+        }
+        byte type = getType(returnType);
+        return type != TOP && push(frame, sp - count, type) && merge(next, frame, depth - count + 1);
+    }
+
+    /**
+     * Returns the type of the field of the instruction at {@code pc} by its descriptor, {@link #TOP} if it is
+     * not known.
+     */
+    private byte getFieldType(int pc) {
+        String field = klass != null ? klass.getFieldByCPIndex((short) readTwoBytes(pc + 1)) : null;
+        return field != null ? getType(field.charAt(field.indexOf(':') + 1)) : TOP;
+    }
+
+    /**
+     * Returns the type of the value of a descriptor on the operand stack, {@link #TOP} for the long, float
+     * and double values that this verifier does not track.
+     */
+    private static byte getType(char type) {
+        switch (type) {
+            case 'I':
+            case 'Z':
+            case 'B':
+            case 'C':
+            case 'S':
+                return INT;
+            case 'L':
+            case '[':
+                return REF;
+            default:
+                return TOP;
+        }
+    }
+
+    private int getLocalIndex(@Nonnull Opcode opcode, int pc, @Nonnull Opcode longForm, @Nonnull Opcode firstShortForm) {
+        return opcode == longForm ? code[pc + 1] & 0xff : opcode.getOpcode() - firstShortForm.getOpcode();
+    }
+
+    private boolean push(@Nonnull byte[] frame, int sp, byte type) {
+        if (sp - maxLocals >= maxStack) {
+            return false;
+        }
+        frame[sp] = type;
+        return true;
+    }
+
+    /**
+     * Checks the types of the topmost slots of the operand stack, the last type is the one on the top.
+     */
+    private boolean pop(@Nonnull byte[] frame, int sp, int stackBottom, byte... types) {
+        if (sp - types.length < stackBottom) {
+            return false;
+        }
+        for (int i = 0; i < types.length; i++) {
+            if (frame[sp - types.length + i] != types[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean replace(@Nonnull byte[] frame, int slot, byte type) {
+        frame[slot] = type;
+        return true;
+    }
+
+    private boolean load(@Nonnull byte[] frame, int index, byte type, @Nonnull boolean[] readArguments) {
+        if (index >= maxLocals || (frame[index] & ~ARGUMENT) != type) {
+            return false;
+        }
+        if ((frame[index] & ARGUMENT) != 0) {
+            readArguments[index] = true;
+        }
+        return true;
+    }
+
+    private boolean store(@Nonnull byte[] frame, int sp, int stackBottom, int index, byte type) {
+        if (index >= maxLocals || !pop(frame, sp, stackBottom, type)) {
+            return false;
+        }
+        frame[index] = type;
+        return true;
+    }
+
+    private boolean branch(int pc, int next, @Nonnull byte[] frame, int depth) {
+        return merge(pc + readTwoBytes(pc + 1), frame, depth) && merge(next, frame, depth);
+    }
+
+    /**
+     * Merges the frame into the one of the instruction at {@code pc} and schedules the instruction
+     * if its frame has changed.
+     */
+    private boolean merge(int pc, @Nonnull byte[] frame, int depth) {
+        if (pc < 0 || pc >= code.length || !heads[pc]) {
+            return false;
+        }
+        byte[] current = frames[pc];
+        if (current == null) {
+            frames[pc] = Arrays.copyOf(frame, frame.length);
+            depths[pc] = depth;
+            worklist.add(pc);
+            return true;
+        }
+        if (depths[pc] != depth) {
+            return false;
+        }
+        boolean changed = false;
+        for (int i = 0; i < maxLocals; i++) {
+            if (current[i] != TOP && current[i] != frame[i]) {
+                // the same type with and without an argument value may still be the argument
+                byte merged = (current[i] & ~ARGUMENT) == (frame[i] & ~ARGUMENT) ? (byte) (current[i] | ARGUMENT) : TOP;
+                if (merged != current[i]) {
+                    current[i] = merged;
+                    changed = true;
+                }
+            }
+        }
+        for (int i = maxLocals; i < maxLocals + depth; i++) {
+            if (current[i] != frame[i]) {
+                return false;
+            }
+        }
+        if (changed) {
+            worklist.add(pc);
+        }
+        return true;
+    }
+
+    private int readTwoBytes(int pc) {
+        return (code[pc] << 8) + (code[pc + 1] & 0xff);
+    }
+
+}
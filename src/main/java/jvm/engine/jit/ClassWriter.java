@@ -0,0 +1,199 @@
+package jvm.engine.jit;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minimal writer of a class file with a constant pool, no fields and a list of methods.
+ * <p>
+ * Classes are written with version 49, so their methods do not need a StackMapTable and
+ * are checked by the type inferencing verifier.
+ */
+final class ClassWriter {
+
+    private static final int VERSION = 49;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private final ByteArrayOutputStream constantPoolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream constantPool = new DataOutputStream(constantPoolBytes);
+    private final Map<String, Integer> constants = new HashMap<>();
+    private int constantPoolCount = 1;
+
+    private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+    private final DataOutputStream methods = new DataOutputStream(methodBytes);
+    private int methodCount;
+
+    private final int thisKlass;
+    private final int superKlass;
+    private final int codeAttribute;
+
+    ClassWriter(@Nonnull String name, @Nonnull String superName) {
+        this.thisKlass = klass(name);
+        this.superKlass = klass(superName);
+        this.codeAttribute = utf8("Code");
+    }
+
+    int utf8(@Nonnull String value) {
+        Integer index = constants.get("U" + value);
+        if (index == null) {
+            index = addConstant("U" + value, 1, out -> {
+                out.writeByte(CONSTANT_UTF8);
+                out.writeUTF(value);
+            });
+        }
+        return index;
+    }
+
+    int klass(@Nonnull String name) {
+        int nameIndex = utf8(name);
+        Integer index = constants.get("C" + name);
+        if (index == null) {
+            index = addConstant("C" + name, 1, out -> {
+                out.writeByte(CONSTANT_CLASS);
+                out.writeShort(nameIndex);
+            });
+        }
+        return index;
+    }
+
+    int integer(int value) {
+        Integer index = constants.get("I" + value);
+        if (index == null) {
+            index = addConstant("I" + value, 1, out -> {
+                out.writeByte(CONSTANT_INTEGER);
+                out.writeInt(value);
+            });
+        }
+        return index;
+    }
+
+    int longValue(long value) {
+        Integer index = constants.get("J" + value);
+        if (index == null) {
+            // long constants take two entries of the constant pool
+            index = addConstant("J" + value, 2, out -> {
+                out.writeByte(CONSTANT_LONG);
+                out.writeLong(value);
+            });
+        }
+        return index;
+    }
+
+    int methodRef(@Nonnull String owner, @Nonnull String name, @Nonnull String descriptor) {
+        return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    int fieldRef(@Nonnull String owner, @Nonnull String name, @Nonnull String descriptor) {
+        return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, @Nonnull String owner, @Nonnull String name, @Nonnull String descriptor) {
+        String key = tag + owner + "." + name + ":" + descriptor;
+        Integer index = constants.get(key);
+        if (index == null) {
+            int klassIndex = klass(owner);
+            int nameAndType = nameAndType(name, descriptor);
+            index = addConstant(key, 1, out -> {
+                out.writeByte(tag);
+                out.writeShort(klassIndex);
+                out.writeShort(nameAndType);
+            });
+        }
+        return index;
+    }
+
+    private int nameAndType(@Nonnull String name, @Nonnull String descriptor) {
+        String key = "N" + name + ":" + descriptor;
+        Integer index = constants.get(key);
+        if (index == null) {
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            index = addConstant(key, 1, out -> {
+                out.writeByte(CONSTANT_NAME_AND_TYPE);
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+            });
+        }
+        return index;
+    }
+
+    private int addConstant(@Nonnull String key, int size, @Nonnull ConstantWriter writer) {
+        try {
+            writer.write(constantPool);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int index = constantPoolCount;
+        constantPoolCount += size;
+        constants.put(key, index);
+        return index;
+    }
+
+    void addMethod(int access, @Nonnull String name, @Nonnull String descriptor, @Nonnull CodeWriter code) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        byte[] bytes = code.toByteArray();
+        try {
+            methods.writeShort(access);
+            methods.writeShort(nameIndex);
+            methods.writeShort(descriptorIndex);
+            methods.writeShort(1);
+            methods.writeShort(codeAttribute);
+            methods.writeInt(12 + bytes.length);
+            methods.writeShort(code.getMaxStack());
+            methods.writeShort(code.getMaxLocals());
+            methods.writeInt(bytes.length);
+            methods.write(bytes);
+            methods.writeShort(0); // exception table
+            methods.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        methodCount++;
+    }
+
+    @Nonnull
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(constantPoolCount);
+            constantPoolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisKlass);
+            out.writeShort(superKlass);
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // fields
+            out.writeShort(methodCount);
+            methodBytes.writeTo(out);
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private interface ConstantWriter {
+        void write(@Nonnull DataOutputStream out) throws IOException;
+    }
+
+}
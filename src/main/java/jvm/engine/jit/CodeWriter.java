@@ -0,0 +1,210 @@
+package jvm.engine.jit;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Assembler of the code of a single host method. Branches are written against {@link Label}s,
+ * which are resolved when they are bound.
+ */
+final class CodeWriter {
+
+    static final int ICONST_0 = 0x03;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int ILOAD = 0x15;
+    static final int LLOAD = 0x16;
+    static final int ALOAD = 0x19;
+    static final int LALOAD = 0x2f;
+    static final int ISTORE = 0x36;
+    static final int LSTORE = 0x37;
+    static final int LASTORE = 0x50;
+    static final int IADD = 0x60;
+    static final int ISUB = 0x64;
+    static final int IMUL = 0x68;
+    static final int IDIV = 0x6c;
+    static final int IREM = 0x70;
+    static final int INEG = 0x74;
+    static final int LSHL = 0x79;
+    static final int ISHL = 0x78;
+    static final int ISHR = 0x7a;
+    static final int IUSHR = 0x7c;
+    static final int IAND = 0x7e;
+    static final int IOR = 0x80;
+    static final int LOR = 0x81;
+    static final int IXOR = 0x82;
+    static final int IINC = 0x84;
+    static final int I2L = 0x85;
+    static final int L2I = 0x88;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int IFLE = 0x9e;
+    static final int IF_ICMPEQ = 0x9f;
+    static final int IF_ICMPNE = 0xa0;
+    static final int IF_ICMPLT = 0xa1;
+    static final int IF_ICMPGE = 0xa2;
+    static final int IF_ICMPGT = 0xa3;
+    static final int IF_ICMPLE = 0xa4;
+    static final int GOTO = 0xa7;
+    static final int TABLESWITCH = 0xaa;
+    static final int LRETURN = 0xad;
+    static final int RETURN = 0xb1;
+    static final int GETFIELD = 0xb4;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+
+    private final int maxStack;
+    private final int maxLocals;
+    private byte[] code = new byte[256];
+    private int length;
+
+    CodeWriter(int maxStack, int maxLocals) {
+        this.maxStack = maxStack;
+        this.maxLocals = maxLocals;
+    }
+
+    int getMaxStack() {
+        return maxStack;
+    }
+
+    int getMaxLocals() {
+        return maxLocals;
+    }
+
+    int size() {
+        return length;
+    }
+
+    void op(int opcode) {
+        putByte(opcode);
+    }
+
+    void op(int opcode, int index) {
+        putByte(opcode);
+        putShort(index);
+    }
+
+    void load(int opcode, int local) {
+        putByte(opcode);
+        putByte(local);
+    }
+
+    void iinc(int local, int value) {
+        putByte(IINC);
+        putByte(local);
+        putByte(value);
+    }
+
+    void iconst(@Nonnull ClassWriter classWriter, int value) {
+        if (value >= -1 && value <= 5) {
+            putByte(ICONST_0 + value);
+        } else if (value == (byte) value) {
+            putByte(BIPUSH);
+            putByte(value);
+        } else if (value == (short) value) {
+            putByte(SIPUSH);
+            putShort(value);
+        } else {
+            op(LDC_W, classWriter.integer(value));
+        }
+    }
+
+    void jump(int opcode, @Nonnull Label label) {
+        int position = length;
+        putByte(opcode);
+        putShort(0);
+        label.addReference(position, position + 1, false);
+    }
+
+    /**
+     * Writes a tableswitch over the keys {@code 0..targets.length - 1}.
+     */
+    void tableSwitch(@Nonnull Label[] targets, @Nonnull Label defaultTarget) {
+        int position = length;
+        putByte(TABLESWITCH);
+        while (length % 4 != 0) {
+            putByte(0);
+        }
+        int defaultOffset = length;
+        putInt(0);
+        putInt(0);
+        putInt(targets.length - 1);
+        defaultTarget.addReference(position, defaultOffset, true);
+        for (Label target : targets) {
+            int offset = length;
+            putInt(0);
+            target.addReference(position, offset, true);
+        }
+    }
+
+    @Nonnull
+    Label newLabel() {
+        return new Label();
+    }
+
+    void bind(@Nonnull Label label) {
+        label.bind(length);
+    }
+
+    @Nonnull
+    byte[] toByteArray() {
+        return Arrays.copyOf(code, length);
+    }
+
+    private void putByte(int value) {
+        if (length == code.length) {
+            code = Arrays.copyOf(code, length * 2);
+        }
+        code[length++] = (byte) value;
+    }
+
+    private void putShort(int value) {
+        putByte(value >> 8);
+        putByte(value);
+    }
+
+    private void putInt(int value) {
+        putShort(value >> 16);
+        putShort(value);
+    }
+
+    private void patch(int position, int value, boolean wide) {
+        if (wide) {
+            code[position++] = (byte) (value >> 24);
+            code[position++] = (byte) (value >> 16);
+        } else if (value != (short) value) {
+            throw new IllegalStateException("Branch offset is out of range: " + value);
+        }
+        code[position++] = (byte) (value >> 8);
+        code[position] = (byte) value;
+    }
+
+    final class Label {
+        private int position = -1;
+        private final List<int[]> references = new ArrayList<>();
+
+        private void addReference(int instruction, int offset, boolean wide) {
+            if (position >= 0) {
+                patch(offset, position - instruction, wide);
+            } else {
+                references.add(new int[]{instruction, offset, wide ? 1 : 0});
+            }
+        }
+
+        private void bind(int position) {
+            this.position = position;
+            for (int[] reference : references) {
+                patch(reference[1], position - reference[0], reference[2] == 1);
+            }
+            references.clear();
+        }
+    }
+
+}
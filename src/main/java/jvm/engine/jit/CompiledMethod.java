@@ -0,0 +1,31 @@
+package jvm.engine.jit;
+
+import jvm.heap.api.Heap;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Host code generated for a single guest method by {@link TemplateCompiler}.
+ * <p>
+ * The compiled code works directly on the frame of the method in the long[] stack of the engine.
+ * It runs from the given program counter until it reaches an instruction that it does not handle,
+ * a value that fails a check, or a return, and leaves that instruction to the interpreter.
+ */
+public abstract class CompiledMethod {
+
+    @Nonnull
+    protected final Heap heap;
+
+    protected CompiledMethod(@Nonnull Heap heap) {
+        this.heap = heap;
+    }
+
+    /**
+     * Executes the method from {@code programCounter}.
+     *
+     * @return the program counter of the instruction left to the interpreter in the upper 32 bits
+     * and the stack pointer before that instruction in the lower 32 bits
+     */
+    public abstract long run(long[] stack, int localVariable, int operandStackBottom, int stackPointer, int programCounter);
+
+}
@@ -0,0 +1,45 @@
+package jvm.engine.jit;
+
+import jvm.JVMType;
+import jvm.heap.api.Heap;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Helpers called by compiled code. They are small enough to be inlined by the host JIT.
+ */
+public final class JitRuntime {
+
+    private static final long INT_TYPE = (long) JVMType.I.ordinal() << 32;
+
+    private JitRuntime() {
+    }
+
+    public static boolean isInt(long value) {
+        int type = getValueType(value);
+        return type == JVMType.I.ordinal() || type == JVMType.Z.ordinal();
+    }
+
+    public static boolean isRef(long value) {
+        return getValueType(value) == JVMType.A.ordinal();
+    }
+
+    public static long setIntValueType(int value) {
+        return INT_TYPE ^ value;
+    }
+
+    public static long getField(@Nonnull Heap heap, long objectRef, int fieldIndex) {
+        return heap.getInstanceObject((int) objectRef).getValue(fieldIndex);
+    }
+
+    public static void putField(@Nonnull Heap heap, long objectRef, int fieldIndex, long value) {
+        heap.getInstanceObject((int) objectRef).setValue(fieldIndex, value);
+        heap.getCollector().writeBarrier((int) objectRef, value);
+    }
+
+    private static int getValueType(long value) {
+        int type = (int) (value >> 32);
+        return type >>> 31 == 1 ? ~type : type; // if 'type >>> 31 == 1' (negative sign) type was inverted
+    }
+
+}
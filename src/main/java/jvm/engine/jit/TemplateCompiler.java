@@ -0,0 +1,582 @@
+package jvm.engine.jit;
+
+import jvm.JVMType;
+import jvm.engine.Opcode;
+import jvm.engine.jit.CodeWriter.Label;
+import jvm.heap.api.Heap;
+import jvm.parser.Method;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static jvm.engine.jit.CodeWriter.*;
+
+/**
+ * Translates the bytecode of a guest method into a host class, one fixed template per instruction.
+ * <p>
+ * Templates exist for constants, int and reference loads and stores, stack manipulation, int arithmetic,
+ * branches and quickened field access. Every other instruction, including returns and invocations,
+ * is compiled to an exit that hands it over to the interpreter. A template that finds a value of an
+ * unexpected type, a null reference or an operand stack overflow exits before changing anything, so the
+ * interpreter executes the instruction again and reports the error in the usual way.
+ * <p>
+ * The generated method can be entered at any instruction, which lets the interpreter come back to
+ * compiled code after a single interpreted instruction or at a back-edge.
+ */
+public final class TemplateCompiler {
+
+    // locals of the generated run method
+    private static final int STACK = 1;
+    private static final int LOCAL_VARIABLE = 2;
+    private static final int BOTTOM = 3;
+    private static final int SP = 4;
+    private static final int PC = 5;
+    private static final int TOP = 6;
+    private static final int FIRST = 7;
+    private static final int SECOND = 8;
+    private static final int VALUE = 9;
+    private static final int MAX_LOCALS = 11;
+    private static final int MAX_STACK = 8;
+
+    /**
+     * Methods larger than this are not compiled by the host JIT (HugeMethodLimit),
+     * so they would be slower than the interpreter.
+     */
+    private static final int MAX_CODE_SIZE = 8000;
+
+    private static final String SUPER_KLASS = "jvm/engine/jit/CompiledMethod";
+    private static final String RUNTIME_KLASS = "jvm/engine/jit/JitRuntime";
+    private static final String HEAP_DESCRIPTOR = "Ljvm/heap/api/Heap;";
+    private static final String RUN_DESCRIPTOR = "([JIIII)J";
+
+    private static final Opcode[] TABLE = new Opcode[256];
+
+    static {
+        for (Opcode op : Opcode.values()) {
+            TABLE[op.getOpcode()] = op;
+        }
+    }
+
+    private static final AtomicInteger counter = new AtomicInteger();
+
+    @Nonnull
+    private final Heap heap;
+
+    public TemplateCompiler(@Nonnull Heap heap) {
+        this.heap = heap;
+    }
+
+    /**
+     * @return compiled code of the method or null if the method is not worth compiling
+     */
+    @Nullable
+    public CompiledMethod compile(@Nonnull Method method) {
+        byte[] byteCode = method.getBytecode();
+        if (byteCode == null || byteCode.length == 0) {
+            return null;
+        }
+        String name = "jvm/engine/jit/Compiled" + counter.incrementAndGet();
+        ClassWriter classWriter = new ClassWriter(name, SUPER_KLASS);
+        MethodTranslator translator = new MethodTranslator(classWriter, method, byteCode);
+        if (!translator.translate() || translator.code.size() > MAX_CODE_SIZE) {
+            return null;
+        }
+        CodeWriter constructor = new CodeWriter(2, 2);
+        constructor.load(ALOAD, 0);
+        constructor.load(ALOAD, 1);
+        constructor.op(INVOKESPECIAL, classWriter.methodRef(SUPER_KLASS, "<init>", "(" + HEAP_DESCRIPTOR + ")V"));
+        constructor.op(RETURN);
+        classWriter.addMethod(ClassWriter.ACC_PUBLIC, "<init>", "(" + HEAP_DESCRIPTOR + ")V", constructor);
+        classWriter.addMethod(ClassWriter.ACC_PUBLIC | ClassWriter.ACC_FINAL, "run", RUN_DESCRIPTOR, translator.code);
+        try {
+            Class<?> klass = new Loader().define(name.replace('/', '.'), classWriter.toByteArray());
+            return (CompiledMethod) klass.getConstructor(Heap.class).newInstance(heap);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new IllegalStateException("Cannot load compiled code of " + method.getNameAndType(), e);
+        }
+    }
+
+    private static final class Loader extends ClassLoader {
+
+        private Loader() {
+            super(TemplateCompiler.class.getClassLoader());
+        }
+
+        @Nonnull
+        private Class<?> define(@Nonnull String name, @Nonnull byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    private static final class MethodTranslator {
+
+        @Nonnull
+        private final ClassWriter classWriter;
+        @Nonnull
+        private final CodeWriter code;
+        @Nonnull
+        private final byte[] byteCode;
+        private final int varSize;
+        private final int operandSize;
+        @Nonnull
+        private final Label[] heads;
+        @Nonnull
+        private final Label sharedExit;
+        @Nonnull
+        private final Label[] exits;
+
+        private MethodTranslator(@Nonnull ClassWriter classWriter, @Nonnull Method method, @Nonnull byte[] byteCode) {
+            this.classWriter = classWriter;
+            this.code = new CodeWriter(MAX_STACK, MAX_LOCALS);
+            this.byteCode = byteCode;
+            this.varSize = method.getVarSize();
+            this.operandSize = method.getOperandSize();
+            this.heads = new Label[byteCode.length];
+            this.exits = new Label[byteCode.length];
+            this.sharedExit = code.newLabel();
+        }
+
+        /**
+         * @return false if none of the instructions has a template
+         */
+        private boolean translate() {
+            int pc = 0;
+            while (pc < byteCode.length && TABLE[byteCode[pc] & 0xff] != null
+                    && pc + TABLE[byteCode[pc] & 0xff].getNumParams() < byteCode.length) {
+                heads[pc] = code.newLabel();
+                pc += TABLE[byteCode[pc] & 0xff].getNumParams() + 1;
+            }
+            int end = pc;
+
+            // prologue: compute the top of the operand stack and jump to the requested instruction
+            code.load(ILOAD, BOTTOM);
+            code.iconst(classWriter, operandSize);
+            code.op(IADD);
+            code.load(ISTORE, TOP);
+            code.load(ILOAD, PC);
+            Label[] targets = new Label[byteCode.length];
+            for (int i = 0; i < targets.length; i++) {
+                targets[i] = heads[i] != null ? heads[i] : sharedExit;
+            }
+            code.tableSwitch(targets, sharedExit);
+
+            boolean compiled = false;
+            for (pc = 0; pc < end; pc += TABLE[byteCode[pc] & 0xff].getNumParams() + 1) {
+                code.bind(heads[pc]);
+                if (translate(TABLE[byteCode[pc] & 0xff], pc)) {
+                    compiled = true;
+                } else {
+                    exit(pc);
+                }
+            }
+            // falling through the end of the method or into an unrecognised opcode
+            exit(end);
+
+            for (int i = 0; i < exits.length; i++) {
+                if (exits[i] != null) {
+                    code.bind(exits[i]);
+                    exit(i);
+                }
+            }
+            code.bind(sharedExit);
+            code.load(ILOAD, PC);
+            code.op(I2L);
+            code.iconst(classWriter, 32);
+            code.op(LSHL);
+            code.load(ILOAD, SP);
+            code.op(I2L);
+            code.op(LOR);
+            code.op(LRETURN);
+            return compiled;
+        }
+
+        /**
+         * Writes the template of the instruction at {@code pc}.
+         *
+         * @return false if there is no template for it
+         */
+        private boolean translate(@Nonnull Opcode opcode, int pc) {
+            switch (opcode) {
+                case NOP:
+                    return true;
+                case ACONST_NULL:
+                    pushConstant(pc, setValueType(0, JVMType.A));
+                    return true;
+                case ICONST_M1:
+                case ICONST_0:
+                case ICONST_1:
+                case ICONST_2:
+                case ICONST_3:
+                case ICONST_4:
+                case ICONST_5:
+                    pushConstant(pc, setValueType(opcode.getOpcode() - Opcode.ICONST_0.getOpcode(), JVMType.I));
+                    return true;
+                case BIPUSH:
+                    pushConstant(pc, setValueType(byteCode[pc + 1], JVMType.I));
+                    return true;
+                case SIPUSH:
+                    pushConstant(pc, setValueType(readTwoBytes(pc + 1), JVMType.I));
+                    return true;
+                case ILOAD:
+                    return load(pc, byteCode[pc + 1] & 0xff, "isInt");
+                case ILOAD_0:
+                case ILOAD_1:
+                case ILOAD_2:
+                case ILOAD_3:
+                    return load(pc, opcode.getOpcode() - Opcode.ILOAD_0.getOpcode(), "isInt");
+                case ALOAD:
+                    return load(pc, byteCode[pc + 1] & 0xff, "isRef");
+                case ALOAD_0:
+                case ALOAD_1:
+                case ALOAD_2:
+                case ALOAD_3:
+                    return load(pc, opcode.getOpcode() - Opcode.ALOAD_0.getOpcode(), "isRef");
+                case ISTORE:
+                    return store(pc, byteCode[pc + 1] & 0xff, "isInt");
+                case ISTORE_0:
+                case ISTORE_1:
+                case ISTORE_2:
+                case ISTORE_3:
+                    return store(pc, opcode.getOpcode() - Opcode.ISTORE_0.getOpcode(), "isInt");
+                case ASTORE:
+                    return store(pc, byteCode[pc + 1] & 0xff, "isRef");
+                case ASTORE_0:
+                case ASTORE_1:
+                case ASTORE_2:
+                case ASTORE_3:
+                    return store(pc, opcode.getOpcode() - Opcode.ASTORE_0.getOpcode(), "isRef");
+                case POP:
+                    checkPop(pc, 1);
+                    code.iinc(SP, -1);
+                    return true;
+                case DUP:
+                    checkPop(pc, 1);
+                    checkPush(pc);
+                    code.load(ALOAD, STACK);
+                    code.load(ILOAD, SP);
+                    loadSlot(SP, -1);
+                    code.op(LASTORE);
+                    code.iinc(SP, 1);
+                    return true;
+                case SWAP:
+                    checkPop(pc, 2);
+                    swap();
+                    return true;
+                case DUP_X1:
+                    checkPop(pc, 2);
+                    checkPush(pc);
+                    swap();
+                    code.load(ALOAD, STACK);
+                    code.load(ILOAD, SP);
+                    code.load(LLOAD, VALUE);
+                    code.op(LASTORE);
+                    code.iinc(SP, 1);
+                    return true;
+                case IADD:
+                    return arithmetic(pc, IADD);
+                case ISUB:
+                    return arithmetic(pc, ISUB);
+                case IMUL:
+                    return arithmetic(pc, IMUL);
+                case IDIV:
+                    return arithmetic(pc, IDIV);
+                case IREM:
+                    return arithmetic(pc, IREM);
+                case IAND:
+                    return arithmetic(pc, IAND);
+                case IOR:
+                    return arithmetic(pc, IOR);
+                case IXOR:
+                    return arithmetic(pc, IXOR);
+                case ISHL:
+                    return arithmetic(pc, ISHL);
+                case ISHR:
+                    return arithmetic(pc, ISHR);
+                case IUSHR:
+                    return arithmetic(pc, IUSHR);
+                case INEG:
+                    checkPop(pc, 1);
+                    loadInt(pc, SP, -1, FIRST);
+                    code.load(ALOAD, STACK);
+                    slotIndex(SP, -1);
+                    code.load(ILOAD, FIRST);
+                    code.op(INEG);
+                    setIntValueType();
+                    code.op(LASTORE);
+                    return true;
+                case IINC: {
+                    int index = byteCode[pc + 1] & 0xff;
+                    if (index >= varSize) {
+                        return false;
+                    }
+                    loadInt(pc, LOCAL_VARIABLE, index, FIRST);
+                    code.load(ALOAD, STACK);
+                    slotIndex(LOCAL_VARIABLE, index);
+                    code.load(ILOAD, FIRST);
+                    code.iconst(classWriter, byteCode[pc + 2]);
+                    code.op(IADD);
+                    setIntValueType();
+                    code.op(LASTORE);
+                    return true;
+                }
+                case GOTO: {
+                    Label target = getBranchTarget(pc);
+                    if (target == null) {
+                        return false;
+                    }
+                    code.jump(CodeWriter.GOTO, target);
+                    return true;
+                }
+                case IFEQ:
+                    return branch(pc, CodeWriter.IFEQ, "isInt");
+                case IFNE:
+                    return branch(pc, CodeWriter.IFNE, "isInt");
+                case IFLT:
+                    return branch(pc, CodeWriter.IFLT, "isInt");
+                case IFGE:
+                    return branch(pc, CodeWriter.IFGE, "isInt");
+                case IFGT:
+                    return branch(pc, CodeWriter.IFGT, "isInt");
+                case IFLE:
+                    return branch(pc, CodeWriter.IFLE, "isInt");
+                case IFNULL:
+                    return branch(pc, CodeWriter.IFEQ, "isRef");
+                case IFNONNULL:
+                    return branch(pc, CodeWriter.IFNE, "isRef");
+                case IF_ICMPEQ:
+                    return compareAndBranch(pc, CodeWriter.IF_ICMPEQ, "isInt");
+                case IF_ICMPNE:
+                    return compareAndBranch(pc, CodeWriter.IF_ICMPNE, "isInt");
+                case IF_ICMPLT:
+                    return compareAndBranch(pc, CodeWriter.IF_ICMPLT, "isInt");
+                case IF_ICMPGE:
+                    return compareAndBranch(pc, CodeWriter.IF_ICMPGE, "isInt");
+                case IF_ICMPGT:
+                    return compareAndBranch(pc, CodeWriter.IF_ICMPGT, "isInt");
+                case IF_ICMPLE:
+                    return compareAndBranch(pc, CodeWriter.IF_ICMPLE, "isInt");
+                case IF_ACMPEQ:
+                    return compareAndBranch(pc, CodeWriter.IF_ICMPEQ, "isRef");
+                case IF_ACMPNE:
+                    return compareAndBranch(pc, CodeWriter.IF_ICMPNE, "isRef");
+                case GETFIELD_QUICK:
+                    checkPop(pc, 1);
+                    loadObjectRef(pc, -1);
+                    code.load(ALOAD, STACK);
+                    slotIndex(SP, -1);
+                    code.load(ALOAD, 0);
+                    code.op(GETFIELD, classWriter.fieldRef(SUPER_KLASS, "heap", HEAP_DESCRIPTOR));
+                    code.load(LLOAD, VALUE);
+                    code.iconst(classWriter, readTwoBytes(pc + 1) & 0xffff);
+                    code.op(INVOKESTATIC, classWriter.methodRef(RUNTIME_KLASS, "getField", "(" + HEAP_DESCRIPTOR + "JI)J"));
+                    code.op(LASTORE);
+                    return true;
+                case PUTFIELD_QUICK:
+                    checkPop(pc, 2);
+                    loadObjectRef(pc, -2);
+                    code.load(ALOAD, 0);
+                    code.op(GETFIELD, classWriter.fieldRef(SUPER_KLASS, "heap", HEAP_DESCRIPTOR));
+                    code.load(LLOAD, VALUE);
+                    code.iconst(classWriter, readTwoBytes(pc + 1) & 0xffff);
+                    loadSlot(SP, -1);
+                    code.op(INVOKESTATIC, classWriter.methodRef(RUNTIME_KLASS, "putField", "(" + HEAP_DESCRIPTOR + "JIJ)V"));
+                    code.iinc(SP, -2);
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        private void pushConstant(int pc, long value) {
+            checkPush(pc);
+            code.load(ALOAD, STACK);
+            code.load(ILOAD, SP);
+            code.op(LDC2_W, classWriter.longValue(value));
+            code.op(LASTORE);
+            code.iinc(SP, 1);
+        }
+
+        private boolean load(int pc, int index, @Nonnull String check) {
+            if (index >= varSize) {
+                return false;
+            }
+            checkPush(pc);
+            loadChecked(pc, LOCAL_VARIABLE, index, check);
+            code.load(ALOAD, STACK);
+            code.load(ILOAD, SP);
+            code.load(LLOAD, VALUE);
+            code.op(LASTORE);
+            code.iinc(SP, 1);
+            return true;
+        }
+
+        private boolean store(int pc, int index, @Nonnull String check) {
+            if (index >= varSize) {
+                return false;
+            }
+            checkPop(pc, 1);
+            loadChecked(pc, SP, -1, check);
+            code.load(ALOAD, STACK);
+            slotIndex(LOCAL_VARIABLE, index);
+            code.load(LLOAD, VALUE);
+            code.op(LASTORE);
+            code.iinc(SP, -1);
+            return true;
+        }
+
+        private void swap() {
+            loadSlot(SP, -1);
+            code.load(LSTORE, VALUE);
+            code.load(ALOAD, STACK);
+            slotIndex(SP, -1);
+            loadSlot(SP, -2);
+            code.op(LASTORE);
+            code.load(ALOAD, STACK);
+            slotIndex(SP, -2);
+            code.load(LLOAD, VALUE);
+            code.op(LASTORE);
+        }
+
+        private boolean arithmetic(int pc, int operation) {
+            checkPop(pc, 2);
+            loadInt(pc, SP, -2, FIRST);
+            loadInt(pc, SP, -1, SECOND);
+            if (operation == IDIV) {
+                // division by zero is reported by the interpreter
+                code.load(ILOAD, SECOND);
+                code.jump(CodeWriter.IFEQ, getExit(pc));
+            }
+            code.load(ALOAD, STACK);
+            slotIndex(SP, -2);
+            code.load(ILOAD, FIRST);
+            code.load(ILOAD, SECOND);
+            code.op(operation);
+            setIntValueType();
+            code.op(LASTORE);
+            code.iinc(SP, -1);
+            return true;
+        }
+
+        private boolean branch(int pc, int condition, @Nonnull String check) {
+            Label target = getBranchTarget(pc);
+            if (target == null) {
+                return false;
+            }
+            checkPop(pc, 1);
+            loadInt(pc, SP, -1, FIRST, check);
+            code.iinc(SP, -1);
+            code.load(ILOAD, FIRST);
+            code.jump(condition, target);
+            return true;
+        }
+
+        private boolean compareAndBranch(int pc, int condition, @Nonnull String check) {
+            Label target = getBranchTarget(pc);
+            if (target == null) {
+                return false;
+            }
+            checkPop(pc, 2);
+            loadInt(pc, SP, -2, FIRST, check);
+            loadInt(pc, SP, -1, SECOND, check);
+            code.iinc(SP, -2);
+            code.load(ILOAD, FIRST);
+            code.load(ILOAD, SECOND);
+            code.jump(condition, target);
+            return true;
+        }
+
+        /**
+         * Loads the reference {@code delta} slots below the stack pointer into VALUE, exiting if it is null.
+         */
+        private void loadObjectRef(int pc, int delta) {
+            loadChecked(pc, SP, delta, "isRef");
+            code.load(LLOAD, VALUE);
+            code.op(L2I);
+            code.jump(CodeWriter.IFEQ, getExit(pc));
+        }
+
+        private void loadInt(int pc, int base, int delta, int local) {
+            loadInt(pc, base, delta, local, "isInt");
+        }
+
+        private void loadInt(int pc, int base, int delta, int local, @Nonnull String check) {
+            loadChecked(pc, base, delta, check);
+            code.load(LLOAD, VALUE);
+            code.op(L2I);
+            code.load(ISTORE, local);
+        }
+
+        /**
+         * Loads the slot at {@code base + delta} into VALUE, exiting if it fails the check.
+         */
+        private void loadChecked(int pc, int base, int delta, @Nonnull String check) {
+            loadSlot(base, delta);
+            code.load(LSTORE, VALUE);
+            code.load(LLOAD, VALUE);
+            code.op(INVOKESTATIC, classWriter.methodRef(RUNTIME_KLASS, check, "(J)Z"));
+            code.jump(CodeWriter.IFEQ, getExit(pc));
+        }
+
+        private void loadSlot(int base, int delta) {
+            code.load(ALOAD, STACK);
+            slotIndex(base, delta);
+            code.op(LALOAD);
+        }
+
+        private void slotIndex(int base, int delta) {
+            code.load(ILOAD, base);
+            if (delta != 0) {
+                code.iconst(classWriter, delta);
+                code.op(IADD);
+            }
+        }
+
+        private void checkPush(int pc) {
+            code.load(ILOAD, SP);
+            code.load(ILOAD, TOP);
+            code.jump(IF_ICMPGE, getExit(pc));
+        }
+
+        private void checkPop(int pc, int count) {
+            code.load(ILOAD, SP);
+            code.iconst(classWriter, count);
+            code.op(ISUB);
+            code.load(ILOAD, BOTTOM);
+            code.jump(IF_ICMPLT, getExit(pc));
+        }
+
+        private void setIntValueType() {
+            code.op(INVOKESTATIC, classWriter.methodRef(RUNTIME_KLASS, "setIntValueType", "(I)J"));
+        }
+
+        @Nullable
+        private Label getBranchTarget(int pc) {
+            int target = pc + readTwoBytes(pc + 1);
+            return target >= 0 && target < heads.length ? heads[target] : null;
+        }
+
+        @Nonnull
+        private Label getExit(int pc) {
+            if (exits[pc] == null) {
+                exits[pc] = code.newLabel();
+            }
+            return exits[pc];
+        }
+
+        private void exit(int pc) {
+            code.iconst(classWriter, pc);
+            code.load(ISTORE, PC);
+            code.jump(CodeWriter.GOTO, sharedExit);
+        }
+
+        private int readTwoBytes(int pc) {
+            return (byteCode[pc] << 8) + (byteCode[pc + 1] & 0xff);
+        }
+
+        private static long setValueType(int value, @Nonnull JVMType type) {
+            return ((long) type.ordinal() << 32) ^ value;
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+package jvm.garbage_collector;
+
+import jvm.heap.api.Heap;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bit for every reference of the heap, set when the object is found alive. The bits are set with a compare and
+ * swap, so the threads that mark the heap together share the bitmap and each object is traced by one of them.
+ */
+final class AtomicMarkBitmap {
+
+    @Nonnull
+    private final AtomicLongArray words;
+    private int capacity;
+
+    AtomicMarkBitmap(int capacity) {
+        this.words = new AtomicLongArray((capacity + 63) >>> 6);
+        this.capacity = capacity;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns true if the words of the bitmap have a bit for every reference below the capacity.
+     */
+    boolean fits(int capacity) {
+        return (long) words.length() << 6 >= capacity;
+    }
+
+    /**
+     * Clears the bits of the references below the new capacity for the next collection, the bitmap must
+     * {@link #fits(int) fit} it. The threads that mark with the bitmap must be started after it.
+     */
+    void clear(int capacity) {
+        int count = (capacity + 63) >>> 6;
+        for (int word = 0; word < count; word++) {
+            words.set(word, 0);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Marks the object of the reference if it is on the heap and returns true if this call marked it. The
+     * references beyond the capacity are objects allocated after the bitmap, they are never marked.
+     */
+    boolean tryMark(@Nonnull Heap heap, int objectRef) {
+        return objectRef >= 0 && objectRef < capacity && !isMarked(objectRef)
+                && heap.getObjectIndex(objectRef) != -1 && mark(objectRef);
+    }
+
+    /**
+     * Returns true if this call set the bit of the reference.
+     */
+    boolean mark(int objectRef) {
+        int word = objectRef >>> 6;
+        long bit = 1L << objectRef;
+        while (true) {
+            long value = words.get(word);
+            if ((value & bit) != 0) {
+                return false;
+            }
+            if (words.compareAndSet(word, value, value | bit)) {
+                return true;
+            }
+        }
+    }
+
+    boolean isMarked(int objectRef) {
+        return (words.get(objectRef >>> 6) & 1L << objectRef) != 0;
+    }
+
+    /**
+     * Returns the bits of the 64 references that start at {@code word << 6}.
+     */
+    long getWord(int word) {
+        return words.get(word);
+    }
+
+}
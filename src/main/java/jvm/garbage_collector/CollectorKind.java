@@ -0,0 +1,50 @@
+package jvm.garbage_collector;
+
+import jvm.engine.StackFrame;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The collectors a virtual machine can run, the roots of a collector are the klasses and the stack frames of the
+ * engine, the class initializers and the finalizers.
+ */
+public enum CollectorKind {
+
+    MARK_AND_SWEEP,
+    /**
+     * Collects the young objects on their own, its nursery and write barrier are used by a single thread.
+     */
+    GENERATIONAL,
+    /**
+     * Marks the heap in a thread of its own while the engine runs, it reads the objects of the Heap Monitor heap
+     * only, whose values are volatile.
+     */
+    CONCURRENT_MARK,
+    /**
+     * Marks and sweeps the heap with a thread for every processor while the engine waits.
+     */
+    PARALLEL_MARK_AND_SWEEP,
+    /**
+     * Slides the objects that survive a mark and sweep to the start of the sequential heap. With a reference
+     * table the objects move in every collection that freed slots and their references stay. With direct
+     * handles the references are rewritten in place, so the objects move only in the collections of the NEW
+     * and array allocations of the engine, the safepoints where it holds no references outside its frames.
+     */
+    MARK_COMPACT;
+
+    @Nonnull
+    public GarbageCollector create(@Nonnull StackFrame stackFrame) {
+        switch (this) {
+            case GENERATIONAL:
+                return new GenerationalCollector(stackFrame);
+            case CONCURRENT_MARK:
+                return new ConcurrentMarkCollector(stackFrame);
+            case PARALLEL_MARK_AND_SWEEP:
+                return new ParallelMarkAndSweep(stackFrame);
+            case MARK_COMPACT:
+                return new MarkCompact(stackFrame);
+            default:
+                return new MarkAndSweep(stackFrame);
+        }
+    }
+}
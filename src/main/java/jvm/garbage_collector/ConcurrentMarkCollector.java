@@ -0,0 +1,230 @@
+package jvm.garbage_collector;
+
+import jvm.JVMType;
+import jvm.Utils;
+import jvm.engine.StackFrame;
+import jvm.heap.api.Heap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.IntConsumer;
+
+import static java.util.Objects.requireNonNull;
+import static jvm.engine.ExecutionEngine.NULL;
+
+/**
+ * Marks the heap in a thread of its own while the engine runs. A cycle starts when the heap takes its share of
+ * the capacity: the objects of the klasses and the stack frames are marked in a short pause and the marker thread
+ * traces the objects from them. The engine keeps running meanwhile, and the write barrier marks every reference
+ * it stores, so the marker never misses an object that was moved behind an object it has already traced. The
+ * objects allocated during the cycle are marked at once.
+ * <p>
+ * The stores into the stack frames have no barrier, so the cycle ends with a pause that marks the roots again,
+ * traces the objects the barrier marked and sweeps the heap. The marker reads the objects of the Heap Monitor
+ * heap, whose values are volatile, and the roots are the stack frame of a single engine.
+ */
+public class ConcurrentMarkCollector extends MarkAndSweep {
+
+    public static final int DEFAULT_START_PERCENT = 50;
+
+    private final int startPercent;
+    // a bit for every reference of the heap when the cycle started, set by the marker and the engine
+    @Nonnull
+    private volatile AtomicMarkBitmap marks = new AtomicMarkBitmap(0);
+    // the objects that were marked by the write barrier, the marker traces their references
+    @Nonnull
+    private final ConcurrentLinkedQueue<Integer> shadedObjects = new ConcurrentLinkedQueue<>();
+    // the marked objects whose references are not traced yet, used by the marker and then by the final pause
+    @Nonnull
+    private int[] workStack = new int[0];
+    private int workStackSize;
+    @Nonnull
+    private final IntConsumer tracer = this::markAndPush;
+    // the objects are allocated marked from the start of a cycle to the end of its sweep
+    private volatile boolean cycleActive;
+    private volatile boolean marking;
+    private volatile boolean markerDone;
+    @Nullable
+    private volatile Throwable markerFailure;
+    @Nullable
+    private Thread marker;
+    private long cycles;
+    private long longestPause;
+
+    public ConcurrentMarkCollector(@Nonnull StackFrame stackFrame) {
+        this(stackFrame, DEFAULT_START_PERCENT);
+    }
+
+    /**
+     * @param startPercent the share of the capacity of the heap that the objects take when a cycle starts
+     */
+    public ConcurrentMarkCollector(@Nonnull StackFrame stackFrame, int startPercent) {
+        super(stackFrame);
+        if (startPercent <= 0 || startPercent > 70) {
+            throw new IllegalArgumentException("cycle must start when from 1 to 70 percent of the heap is taken");
+        }
+        this.startPercent = startPercent;
+    }
+
+    /**
+     * Starts a cycle when the heap takes its share, ends it when the marker is done or the heap is almost full.
+     */
+    @Override
+    public boolean isCollectionNeeded(int size, int capacity) {
+        if (!cycleActive) {
+            return size > (long) capacity * startPercent / 100;
+        }
+        return markerDone || isHeapFull(size, capacity);
+    }
+
+    @Override
+    public void objectAllocated(int objectRef) {
+        AtomicMarkBitmap marks = this.marks;
+        if (cycleActive && objectRef < marks.getCapacity()) {
+            marks.mark(objectRef);
+        }
+    }
+
+    @Override
+    public void writeBarrier(int objectRef, long value) {
+        if (marking && Utils.getValueType(value) == JVMType.A.ordinal() && (int) value != NULL
+                && marks.tryMark(requireNonNull(heap), (int) value)) {
+            shadedObjects.add((int) value);
+        }
+    }
+
+    @Override
+    protected void collect() {
+        long start = System.nanoTime();
+        Heap heap = requireNonNull(this.heap);
+        if (!cycleActive) {
+            startCycle(heap);
+            // a heap that is almost full can not wait for the marker
+            if (isHeapFull(heap.getInstanceObjectSize(), heap.getInstanceObjectCapacity())) {
+                finishCycle(heap);
+            }
+        } else {
+            finishCycle(heap);
+        }
+        longestPause = Math.max(longestPause, System.nanoTime() - start);
+    }
+
+    public long getCycles() {
+        return cycles;
+    }
+
+    /**
+     * Returns the longest time in nanoseconds the engine waited for the collector.
+     */
+    public long getLongestPause() {
+        return longestPause;
+    }
+
+    public boolean isCycleActive() {
+        return cycleActive;
+    }
+
+    private static boolean isHeapFull(int size, int capacity) {
+        return size > capacity / 10 * 7;
+    }
+
+    private void startCycle(@Nonnull Heap heap) {
+        int capacity = heap.getInstanceObjectCapacity();
+        marks = new AtomicMarkBitmap(capacity);
+        if (workStack.length < capacity) {
+            workStack = new int[capacity];
+        }
+        workStackSize = 0;
+        shadedObjects.clear();
+        markerFailure = null;
+        markerDone = false;
+        cycleActive = true;
+        marking = true;
+        markRoots(tracer);
+        Thread marker = new Thread(this::runMarker, "jJVM concurrent marker");
+        marker.setDaemon(true);
+        this.marker = marker;
+        marker.start();
+    }
+
+    private void runMarker() {
+        try {
+            trace(requireNonNull(heap));
+        } catch (Throwable e) {
+            markerFailure = e;
+        } finally {
+            markerDone = true;
+        }
+    }
+
+    /**
+     * Waits for the marker, marks the roots again with the objects the barrier marked since and sweeps the heap.
+     */
+    private void finishCycle(@Nonnull Heap heap) {
+        joinMarker();
+        if (markerFailure != null) {
+            // the marks can not be trusted, the whole heap is marked in this pause
+            marks = new AtomicMarkBitmap(marks.getCapacity());
+            workStackSize = 0;
+        }
+        markRoots(tracer);
+        trace(heap);
+        marking = false;
+        sweep(heap);
+        cycleActive = false;
+        cycles++;
+    }
+
+    private void joinMarker() {
+        Thread marker = this.marker;
+        boolean interrupted = false;
+        while (marker != null && marker.isAlive()) {
+            try {
+                marker.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        this.marker = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void trace(@Nonnull Heap heap) {
+        while (true) {
+            int objectRef;
+            if (workStackSize > 0) {
+                objectRef = workStack[--workStackSize];
+            } else {
+                Integer shaded = shadedObjects.poll();
+                if (shaded == null) {
+                    return;
+                }
+                objectRef = shaded;
+            }
+            forEachReference(heap.getInstanceObject(objectRef), tracer);
+        }
+    }
+
+    private void markAndPush(int objectRef) {
+        if (marks.tryMark(requireNonNull(heap), objectRef)) {
+            workStack[workStackSize++] = objectRef;
+        }
+    }
+
+    /**
+     * Removes the objects that were not marked, the objects that finalizers allocate meanwhile are marked.
+     */
+    private void sweep(@Nonnull Heap heap) {
+        AtomicMarkBitmap marks = this.marks;
+        int capacity = Math.min(marks.getCapacity(), heap.getInstanceObjectCapacity());
+        for (int objectRef = 0; objectRef < capacity; objectRef++) {
+            if (heap.getObjectIndex(objectRef) != -1 && !marks.isMarked(objectRef) && !heap.isCachedStringObjRef(objectRef)) {
+                removeObject(objectRef);
+            }
+        }
+    }
+
+}
@@ -1,5 +1,6 @@
 package jvm.garbage_collector;
 
+import jvm.engine.StackFrame;
 import jvm.heap.api.Heap;
 
 import javax.annotation.Nonnull;
@@ -11,4 +12,33 @@ public interface GarbageCollector {
     boolean isInProgress();
 
     void setHeap(@Nonnull Heap heap);
+
+    /**
+     * Returns true if the heap has to be collected before the next allocation.
+     */
+    default boolean isCollectionNeeded(int size, int capacity) {
+        return size > capacity / 10 * 7;
+    }
+
+    /**
+     * Is called by the heap for every new object.
+     */
+    default void objectAllocated(int objectRef) {
+    }
+
+    /**
+     * Is called by the engine after the value was stored into a field or an element of the object.
+     */
+    default void writeBarrier(int objectRef, long value) {
+    }
+
+    /**
+     * Is called before a class initializer or a finalizer runs on a stack of its own, the references of the
+     * stack are roots until {@link #removeStackFrame(StackFrame)}.
+     */
+    default void addStackFrame(@Nonnull StackFrame stackFrame) {
+    }
+
+    default void removeStackFrame(@Nonnull StackFrame stackFrame) {
+    }
 }
@@ -0,0 +1,261 @@
+package jvm.garbage_collector;
+
+import jvm.JVMType;
+import jvm.Utils;
+import jvm.engine.StackFrame;
+import jvm.heap.api.Heap;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Collects the young objects more often than the old ones. A new object is young until it survives
+ * {@code promotionAge} minor collections. A minor collection runs when the nursery takes its share of the heap:
+ * it marks the young objects that are reachable from the klasses, the stack frames and the remembered old
+ * objects and sweeps the nursery only. The engine calls the write barrier after every store into an object,
+ * the barrier remembers the old objects that got a reference to a young one.
+ * <p>
+ * When more than 70% of the heap is still taken after a minor collection, the whole heap is marked and swept
+ * and the objects that survived are promoted. The objects are not moved, the generations are sets of
+ * references. The collector is used by the thread of the engine only.
+ */
+public class GenerationalCollector extends MarkAndSweep {
+
+    public static final int DEFAULT_NURSERY_PERCENT = 25;
+    public static final int DEFAULT_PROMOTION_AGE = 2;
+
+    private final int nurseryPercent;
+    private final int promotionAge;
+    // a bit for every young reference and the number of minor collections the object survived
+    @Nonnull
+    private long[] young = new long[0];
+    @Nonnull
+    private byte[] ages = new byte[0];
+    // the young references and the buffer that the last minor collection swept
+    @Nonnull
+    private int[] nursery = new int[16];
+    private int nurserySize;
+    @Nonnull
+    private int[] sweptNursery = new int[16];
+    // a bit for every remembered old reference and the remembered references
+    @Nonnull
+    private long[] remembered = new long[0];
+    @Nonnull
+    private int[] rememberedRefs = new int[16];
+    private int rememberedSize;
+    // the references that the last minor collection promoted
+    @Nonnull
+    private int[] promoted = new int[16];
+    private int promotedSize;
+    private boolean minor;
+    private boolean youngReferenceFound;
+    @Nonnull
+    private final IntConsumer youngReferenceFinder = objectRef -> youngReferenceFound |= isYoung(objectRef);
+    private long minorCollections;
+    private long majorCollections;
+
+    public GenerationalCollector(@Nonnull StackFrame stackFrame) {
+        this(stackFrame, DEFAULT_NURSERY_PERCENT, DEFAULT_PROMOTION_AGE);
+    }
+
+    /**
+     * @param nurseryPercent the share of the capacity of the heap that the young objects take before a minor
+     *                       collection
+     * @param promotionAge   the number of minor collections a young object survives before it is promoted
+     */
+    public GenerationalCollector(@Nonnull StackFrame stackFrame, int nurseryPercent, int promotionAge) {
+        super(stackFrame);
+        if (nurseryPercent <= 0 || nurseryPercent > 100) {
+            throw new IllegalArgumentException("nursery must take from 1 to 100 percent of the heap");
+        }
+        if (promotionAge <= 0 || promotionAge > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("promotion age must be from 1 to " + Byte.MAX_VALUE);
+        }
+        this.nurseryPercent = nurseryPercent;
+        this.promotionAge = promotionAge;
+    }
+
+    @Override
+    public boolean isCollectionNeeded(int size, int capacity) {
+        return nurserySize > (long) capacity * nurseryPercent / 100 || isHeapFull(size, capacity);
+    }
+
+    @Override
+    public void objectAllocated(int objectRef) {
+        ensureCapacity(objectRef + 1);
+        young[objectRef >>> 6] |= 1L << objectRef;
+        ages[objectRef] = 0;
+        nursery = push(nursery, nurserySize++, objectRef);
+    }
+
+    @Override
+    public void writeBarrier(int objectRef, long value) {
+        if (isYoung((int) value) && Utils.getValueType(value) == JVMType.A.ordinal()
+                && !isYoung(objectRef) && !isRemembered(objectRef)) {
+            remember(objectRef);
+        }
+    }
+
+    @Override
+    protected void collect() {
+        Heap heap = requireNonNull(this.heap);
+        if (nurserySize > 0) {
+            collectNursery();
+        }
+        if (isHeapFull(heap.getInstanceObjectSize(), heap.getInstanceObjectCapacity())) {
+            super.collect();
+            promoteAll();
+            majorCollections++;
+        }
+    }
+
+    @Override
+    protected boolean isTraced(int objectRef) {
+        return !minor || isYoung(objectRef);
+    }
+
+    public long getMinorCollections() {
+        return minorCollections;
+    }
+
+    public long getMajorCollections() {
+        return majorCollections;
+    }
+
+    public int getNurserySize() {
+        return nurserySize;
+    }
+
+    /**
+     * Returns the number of old objects that refer to young ones.
+     */
+    public int getRememberedSize() {
+        return rememberedSize;
+    }
+
+    public boolean isYoung(int objectRef) {
+        return objectRef >= 0 && objectRef < ages.length && (young[objectRef >>> 6] & 1L << objectRef) != 0;
+    }
+
+    private static boolean isHeapFull(int size, int capacity) {
+        return size > capacity / 10 * 7;
+    }
+
+    private void collectNursery() {
+        Heap heap = requireNonNull(this.heap);
+        minor = true;
+        clearMarks();
+        markRoots();
+        for (int i = 0; i < rememberedSize; i++) {
+            markReferences(heap.getInstanceObject(rememberedRefs[i]));
+        }
+        findAliveObjects();
+        minor = false;
+        sweepNursery(heap);
+        updateRememberedSet();
+        minorCollections++;
+    }
+
+    /**
+     * Removes the young objects that were not marked and ages the others, the objects that finalizers allocate
+     * meanwhile join the new nursery.
+     */
+    private void sweepNursery(@Nonnull Heap heap) {
+        int[] swept = nursery;
+        int sweptSize = nurserySize;
+        nursery = sweptNursery;
+        nurserySize = 0;
+        sweptNursery = swept;
+        promotedSize = 0;
+        for (int i = 0; i < sweptSize; i++) {
+            int objectRef = swept[i];
+            if (heap.getObjectIndex(objectRef) == -1) {
+                clearYoung(objectRef);
+            } else if (!isMarked(objectRef) && !heap.isCachedStringObjRef(objectRef)) {
+                removeObject(objectRef);
+                clearYoung(objectRef);
+            } else if (++ages[objectRef] >= promotionAge) {
+                clearYoung(objectRef);
+                promoted = push(promoted, promotedSize++, objectRef);
+            } else {
+                nursery = push(nursery, nurserySize++, objectRef);
+            }
+        }
+    }
+
+    /**
+     * Keeps the old objects that still refer to young ones, the promoted objects among them too.
+     */
+    private void updateRememberedSet() {
+        int size = 0;
+        for (int i = 0; i < rememberedSize; i++) {
+            int objectRef = rememberedRefs[i];
+            if (hasYoungReferences(objectRef)) {
+                rememberedRefs[size++] = objectRef;
+            } else {
+                remembered[objectRef >>> 6] &= ~(1L << objectRef);
+            }
+        }
+        rememberedSize = size;
+        for (int i = 0; i < promotedSize; i++) {
+            int objectRef = promoted[i];
+            if (!isRemembered(objectRef) && hasYoungReferences(objectRef)) {
+                remember(objectRef);
+            }
+        }
+    }
+
+    private boolean hasYoungReferences(int objectRef) {
+        youngReferenceFound = false;
+        forEachReference(requireNonNull(heap).getInstanceObject(objectRef), youngReferenceFinder);
+        return youngReferenceFound;
+    }
+
+    /**
+     * Makes all the objects old after the whole heap was collected, no old object refers to a young one then.
+     */
+    private void promoteAll() {
+        for (int i = 0; i < nurserySize; i++) {
+            clearYoung(nursery[i]);
+        }
+        nurserySize = 0;
+        for (int i = 0; i < rememberedSize; i++) {
+            remembered[rememberedRefs[i] >>> 6] &= ~(1L << rememberedRefs[i]);
+        }
+        rememberedSize = 0;
+    }
+
+    private void remember(int objectRef) {
+        ensureCapacity(objectRef + 1);
+        remembered[objectRef >>> 6] |= 1L << objectRef;
+        rememberedRefs = push(rememberedRefs, rememberedSize++, objectRef);
+    }
+
+    private boolean isRemembered(int objectRef) {
+        return objectRef < ages.length && (remembered[objectRef >>> 6] & 1L << objectRef) != 0;
+    }
+
+    private void clearYoung(int objectRef) {
+        young[objectRef >>> 6] &= ~(1L << objectRef);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (ages.length < capacity) {
+            int length = Math.max(capacity, ages.length * 2);
+            ages = Arrays.copyOf(ages, length);
+            young = Arrays.copyOf(young, (length + 63) >>> 6);
+            remembered = Arrays.copyOf(remembered, (length + 63) >>> 6);
+        }
+    }
+
+    @Nonnull
+    private static int[] push(@Nonnull int[] refs, int size, int objectRef) {
+        int[] result = size < refs.length ? refs : Arrays.copyOf(refs, Math.max(16, refs.length * 2));
+        result[size] = objectRef;
+        return result;
+    }
+
+}
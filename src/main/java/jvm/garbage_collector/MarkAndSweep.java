@@ -6,24 +6,45 @@ import jvm.engine.StackFrame;
 import jvm.heap.api.Heap;
 import jvm.heap.api.InstanceKlass;
 import jvm.heap.api.InstanceObject;
-import jvm.heap.api.ReferenceTable;
 import jvm.parser.Method;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
 
+import static java.util.Objects.requireNonNull;
 import static jvm.engine.ExecutionEngine.NULL;
 
 public class MarkAndSweep implements GarbageCollector {
 
+    private static final String OBJECT = "java/lang/Object";
+
     @Nonnull
     private final StackFrame stackFrame;
+    // the stacks of the class initializers and the finalizers that are running
+    @Nonnull
+    private final List<StackFrame> auxiliaryFrames = new ArrayList<>();
     @Nullable
-    private Heap heap;
+    protected Heap heap;
     private int count;
     private boolean inProgress;
     private int startObjRef;
+    // the last sweep went over the whole heap, a long one stops and goes on in the next collection
+    private boolean swept;
+    // a bit for every reference of the heap, set when the object is found alive; reused by the next collections
+    @Nonnull
+    private long[] marks = new long[0];
+    // the references of the marked objects whose references are not collected yet
+    @Nonnull
+    private int[] workStack = new int[0];
+    private int workStackSize;
+    private int markedCapacity;
+    @Nonnull
+    private final IntConsumer marker = this::mark;
 
     public MarkAndSweep(@Nonnull StackFrame stackFrame) {
         this.stackFrame = stackFrame;
@@ -35,72 +56,145 @@ public class MarkAndSweep implements GarbageCollector {
     }
 
     @Override
-    public void run() {
-        inProgress = true;
-        HashSet<Integer> aliveObjects = new HashSet<>();
-        Queue<Integer> queue = new ArrayDeque<>();
+    public void addStackFrame(@Nonnull StackFrame stackFrame) {
+        auxiliaryFrames.add(stackFrame);
+    }
 
-        collectObjectsFromInstanceKlassess(queue);
-        collectObjectsFromStackFrame(queue);
+    @Override
+    public void removeStackFrame(@Nonnull StackFrame stackFrame) {
+        auxiliaryFrames.remove(stackFrame);
+    }
 
-        findAliveObjects(queue, aliveObjects);
-        removeDeadObjectsFromHeap(aliveObjects);
+    @Override
+    public void run() {
+        inProgress = true;
+        collect();
 //            System.out.println("GC completed " + count++);
         inProgress = false;
     }
 
-    private void removeDeadObjectsFromHeap(@Nonnull Set<Integer> aliveObjects) {
+    /**
+     * Marks the objects that are reachable from the klasses and the stack frames and removes all the others.
+     */
+    protected void collect() {
+        clearMarks();
+        markRoots();
+        findAliveObjects();
+        removeDeadObjectsFromHeap();
+    }
+
+    protected final void markRoots() {
+        markRoots(marker);
+    }
+
+    /**
+     * Passes the roots to the consumer: the objects of the klasses and the references of the stack frames of
+     * the engine, the class initializers and the finalizers.
+     */
+    protected final void markRoots(@Nonnull IntConsumer consumer) {
+        collectObjectsFromInstanceKlassess(consumer);
+        stackFrame.forEachReference(consumer);
+        for (StackFrame auxiliaryFrame : auxiliaryFrames) {
+            auxiliaryFrame.forEachReference(consumer);
+        }
+    }
+
+    /**
+     * Replaces the roots of {@link #markRoots(IntConsumer)} with their new references.
+     */
+    protected final void forwardRoots(@Nonnull IntUnaryOperator forward) {
+        Heap heap = requireNonNull(this.heap);
+        int klassesSize = heap.getInstanceKlassSize();
+        for (int klassIndex = 0; klassIndex < klassesSize; klassIndex++) {
+            InstanceKlass klass = heap.getInstanceKlass(klassIndex);
+            if (klass.getObjectRef() != -1) {
+                klass.setObjectRef(forward.applyAsInt(klass.getObjectRef()));
+            }
+        }
+        stackFrame.forwardReferences(forward);
+        for (StackFrame auxiliaryFrame : auxiliaryFrames) {
+            auxiliaryFrame.forwardReferences(forward);
+        }
+    }
+
+    /**
+     * Sizes the bitmap and the work stack by the capacity of the heap, they are allocated again only when
+     * the heap has grown.
+     */
+    protected final void clearMarks() {
+        markedCapacity = heap != null ? heap.getInstanceObjectCapacity() : 0;
+        int words = (markedCapacity + 63) >>> 6;
+        if (marks.length < words) {
+            marks = new long[words];
+        } else {
+            Arrays.fill(marks, 0, words, 0);
+        }
+        // an object is pushed once, when it is marked
+        if (workStack.length < markedCapacity) {
+            workStack = new int[markedCapacity];
+        }
+        workStackSize = 0;
+    }
+
+    private void removeDeadObjectsFromHeap() {
+        swept = false;
         if (heap != null) {
             long startTime = System.currentTimeMillis();
-            ReferenceTable refTable = heap.getReferenceTable();
-            int objRef = startObjRef;
-            for (int i = 0; i < refTable.size(); i++) {
-                int objIndex = refTable.getInstanceObjectIndex(objRef);
-                if (objIndex != -1 && !aliveObjects.contains(objRef) && !heap.isCachedStringObjRef(objRef)) {
-                    InstanceObject object = heap.getInstanceObject(objRef);
-                    int klassIndex = !object.isArray() ? object.getKlassIndex() : -1;
-                    if (klassIndex != -1) {
-                        InstanceKlass klass = heap.getInstanceKlass(klassIndex);
-                        Method method = heap.getMethodRepo().getMethod(
-                                klass.getMethodIndex(
-                                        klass.getIndexByVirtualMethodName("finalize:()V")));
-                        StackFrame stackFrame = new StackFrame(method.getVarSize(), method.getOperandSize());
-                        stackFrame.setLocalVar(0, setRefValueType(objRef));
-                        new ExecutionEngine(heap, stackFrame).invoke(method);
-                    }
-                    heap.clearInstanceObject(objIndex);
-                    heap.decrementInstanceObjectSize();
-                    refTable.clearObjectIndex(objRef);
+            int capacity = heap.getInstanceObjectCapacity();
+            // the heap may have shrunk since the last collection
+            int objRef = startObjRef < capacity ? startObjRef : 0;
+            for (int i = 0; i < capacity; i++) {
+                int objIndex = heap.getObjectIndex(objRef);
+                if (objIndex != -1 && !isMarked(objRef) && !heap.isCachedStringObjRef(objRef)) {
+                    removeObject(objRef);
                 }
                 if (System.currentTimeMillis() - startTime > 400) {
                     startObjRef = objRef;
                     return;
                 }
-                objRef = (objRef + 1) % heap.getInstanceObjectCapacity();
+                objRef = (objRef + 1) % capacity;
             }
             startObjRef = 0;
+            swept = true;
         }
     }
 
-    private void collectObjectsFromStackFrame(@Nonnull Queue<Integer> queue) {
-        long[] stack = stackFrame.getStack();
-        int stackSize = stackFrame.getSize();
-        for (int i = 0; i <= stackSize; i++) {
-            long value = stack[i];
-            if (getValueType(value) == JVMType.A.ordinal() && getPureValue(value) != NULL) {
-                queue.add(getPureValue(value));
+    /**
+     * Returns false if the last collection stopped its sweep before the end of the heap, the dead objects of the
+     * rest are still there.
+     */
+    protected final boolean isSwept() {
+        return swept;
+    }
+
+    /**
+     * Runs the finalizer of the dead object, unless it is the one of Object, and removes it from the heap.
+     */
+    protected final void removeObject(int objRef) {
+        Heap heap = requireNonNull(this.heap);
+        InstanceObject object = heap.getInstanceObject(objRef);
+        int klassIndex = !object.isArray() ? object.getKlassIndex() : -1;
+        if (klassIndex != -1) {
+            InstanceKlass klass = heap.getInstanceKlass(klassIndex);
+            Method method = heap.getMethodRepo().getMethod(
+                    klass.getMethodIndex(
+                            klass.getIndexByVirtualMethodName("finalize:()V")));
+            // the finalizer of Object does nothing, most klasses do not override it
+            if (!OBJECT.equals(method.getClassName())) {
+                ExecutionEngine.invokeAuxiliary(heap, method, setRefValueType(objRef));
             }
         }
+        heap.removeInstanceObject(objRef);
     }
 
-    private void collectObjectsFromInstanceKlassess(@Nonnull Queue<Integer> queue) {
+    private void collectObjectsFromInstanceKlassess(@Nonnull IntConsumer consumer) {
         if (heap != null) {
             int klassesSize = heap.getInstanceKlassSize();
             for (int klassIndex = 0; klassIndex < klassesSize; klassIndex++) {
                 InstanceKlass klass = heap.getInstanceKlass(klassIndex);
                 int objectRef = klass.getObjectRef();
                 if (objectRef != -1) {
-                    queue.add(objectRef);
+                    consumer.accept(objectRef);
                 }
             }
         }
@@ -111,27 +205,104 @@ public class MarkAndSweep implements GarbageCollector {
         return inProgress;
     }
 
-    private void findAliveObjects(@Nonnull Queue<Integer> queue, @Nonnull Set<Integer> visitedObjects) {
+    /**
+     * Marks the objects that are reachable from the marked ones.
+     */
+    protected final void findAliveObjects() {
         if (heap != null) {
-            ReferenceTable refTable = heap.getReferenceTable();
-            while (!queue.isEmpty()) {
-                int objectRef = queue.poll();
-                if (!visitedObjects.contains(objectRef)) {
-                    int objectIndex = refTable.getInstanceObjectIndex(objectRef);
-                    if (objectIndex != -1) {
-                        InstanceObject object = heap.getInstanceObject(objectRef);
-                        for (long value : object.getFieldValues()) {
-                            if (getValueType(value) == JVMType.A.ordinal() && getPureValue(value) != NULL) {
-                                queue.add(getPureValue(value));
-                            }
-                        }
-                        visitedObjects.add(objectRef);
-                    }
+            while (workStackSize > 0) {
+                forEachReference(heap.getInstanceObject(workStack[--workStackSize]), marker);
+            }
+        }
+    }
+
+    /**
+     * Marks the objects of the references of the object, they are traced by {@link #findAliveObjects()}.
+     */
+    protected final void markReferences(@Nonnull InstanceObject object) {
+        forEachReference(object, marker);
+    }
+
+    /**
+     * Marks the object of the reference and pushes it to the work stack if it is on the heap and was not marked
+     * before. The stack frames are scanned conservatively, so any reference is checked.
+     */
+    private void mark(int objectRef) {
+        if (objectRef >= 0 && objectRef < markedCapacity && !isMarked(objectRef) && isTraced(objectRef)
+                && requireNonNull(heap).getObjectIndex(objectRef) != -1) {
+            marks[objectRef >>> 6] |= 1L << objectRef;
+            workStack[workStackSize++] = objectRef;
+        }
+    }
+
+    /**
+     * Returns false for the objects that this collection neither marks nor removes.
+     */
+    protected boolean isTraced(int objectRef) {
+        return true;
+    }
+
+    protected final boolean isMarked(int objectRef) {
+        return (marks[objectRef >>> 6] & 1L << objectRef) != 0;
+    }
+
+    /**
+     * Passes the references of the object that are not null to the consumer. Reference arrays and instances
+     * of a klass are read by their types, only the static fields of klasses are told apart by the tags of
+     * their values.
+     */
+    protected final void forEachReference(@Nonnull InstanceObject object, @Nonnull IntConsumer consumer) {
+        visitReferences(object, consumer, null);
+    }
+
+    /**
+     * Replaces the references of the object, found like by {@link #forEachReference(InstanceObject, IntConsumer)},
+     * with the new ones after the heap has moved the objects of direct handles.
+     */
+    protected final void forwardReferences(@Nonnull InstanceObject object, @Nonnull IntUnaryOperator forward) {
+        visitReferences(object, null, forward);
+    }
+
+    private void visitReferences(@Nonnull InstanceObject object, @Nullable IntConsumer consumer,
+                                 @Nullable IntUnaryOperator forward) {
+        if (object.isArray()) {
+            if (object.getValueType() == JVMType.A) {
+                for (int i = 0; i < object.size(); i++) {
+                    visitReference(object, i, consumer, forward);
+                }
+            }
+            return;
+        }
+        boolean[] referenceFields = object.getKlassIndex() != -1 ?
+                requireNonNull(heap).getInstanceKlass(object.getKlassIndex()).getLayout().getReferenceFields() : null;
+        if (referenceFields != null && referenceFields.length == object.size()) {
+            for (int i = 0; i < referenceFields.length; i++) {
+                if (referenceFields[i]) {
+                    visitReference(object, i, consumer, forward);
+                }
+            }
+        } else {
+            int size = object.size();
+            for (int i = 0; i < size; i++) {
+                if (getValueType(object.getValue(i)) == JVMType.A.ordinal()) {
+                    visitReference(object, i, consumer, forward);
                 }
             }
         }
     }
 
+    private void visitReference(@Nonnull InstanceObject object, int index, @Nullable IntConsumer consumer,
+                                @Nullable IntUnaryOperator forward) {
+        int objectRef = getPureValue(object.getValue(index));
+        if (objectRef != NULL) {
+            if (forward != null) {
+                object.setValue(index, setRefValueType(forward.applyAsInt(objectRef)));
+            } else {
+                requireNonNull(consumer).accept(objectRef);
+            }
+        }
+    }
+
     private int getValueType(long value) {
         int type = (int) (value >> 32);
         return type >>> 31 == 1 ? ~type : type; // if 'type >>> 31 == 1' (negative sign) type was inverted
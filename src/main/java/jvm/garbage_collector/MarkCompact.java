@@ -0,0 +1,63 @@
+package jvm.garbage_collector;
+
+import jvm.engine.StackFrame;
+import jvm.heap.api.Heap;
+import jvm.heap.api.InstanceObject;
+
+import javax.annotation.Nonnull;
+import java.util.function.IntUnaryOperator;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Marks and sweeps the heap, then slides the objects that survived down to the start of the heap, so the free
+ * slots are all behind them and the next objects are allocated from a bump pointer in order.
+ * <p>
+ * With a reference table the references of the objects stay, the table points them to the new slots. Direct
+ * handles are the slots themselves, so the references of the objects, the klasses, the stack frames and the native
+ * objects are rewritten in place. The engine and the heap keep references in their locals while they allocate,
+ * so the objects of direct handles move only at the allocations the engine makes at a safepoint.
+ */
+public class MarkCompact extends MarkAndSweep {
+
+    private long compactions;
+
+    public MarkCompact(@Nonnull StackFrame stackFrame) {
+        super(stackFrame);
+    }
+
+    @Override
+    protected void collect() {
+        super.collect();
+        Heap heap = requireNonNull(this.heap);
+        // a sweep that stopped left dead objects behind, moving them is wasted
+        if (!isSwept() || heap.getReferenceTable() == null && !heap.isAtSafepoint()) {
+            return;
+        }
+        int capacity = heap.getInstanceObjectCapacity();
+        int[] newIndexes = heap.compactInstanceObjects();
+        if (newIndexes == null) {
+            return;
+        }
+        if (heap.getReferenceTable() == null) {
+            IntUnaryOperator forward = objectRef -> newIndexes[objectRef];
+            for (int objectIndex = 0; objectIndex < capacity; objectIndex++) {
+                InstanceObject object = heap.getInstanceObjectByObjInd(objectIndex);
+                if (object == null) {
+                    break;
+                }
+                forwardReferences(object, forward);
+            }
+            forwardRoots(forward);
+        }
+        compactions++;
+    }
+
+    /**
+     * Returns the number of collections that moved the objects.
+     */
+    public long getCompactions() {
+        return compactions;
+    }
+
+}
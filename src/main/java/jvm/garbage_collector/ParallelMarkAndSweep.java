@@ -0,0 +1,184 @@
+package jvm.garbage_collector;
+
+import jvm.engine.StackFrame;
+import jvm.heap.api.Heap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Marks and sweeps the heap with the threads of a fork join pool while the engine waits. The marking tasks trace
+ * the objects from stacks of their own and give half of a deep stack to an idle thread, the objects are marked in
+ * a shared atomic bitmap. The sweep tells the dead objects apart in disjoint ranges of the references in parallel,
+ * then this thread runs their finalizers and removes them, as the heap and the engine are used by one thread.
+ */
+public class ParallelMarkAndSweep extends MarkAndSweep {
+
+    // the references that a task traces before it gives half of them away
+    private static final int MIN_SPLIT_SIZE = 256;
+    // the references a sweep task checks, a multiple of 64
+    private static final int SWEEP_RANGE = 64 * 256;
+
+    private final int threads;
+    @Nullable
+    private ForkJoinPool pool;
+    @Nonnull
+    private AtomicMarkBitmap marks = new AtomicMarkBitmap(0);
+    // a bit for every dead object, every sweep task sets the words of its range
+    @Nonnull
+    private long[] deadObjects = new long[0];
+
+    public ParallelMarkAndSweep(@Nonnull StackFrame stackFrame) {
+        this(stackFrame, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads the number of threads that mark and sweep the heap
+     */
+    public ParallelMarkAndSweep(@Nonnull StackFrame stackFrame, int threads) {
+        super(stackFrame);
+        if (threads <= 0) {
+            throw new IllegalArgumentException("number of threads must be positive");
+        }
+        this.threads = threads;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    @Override
+    protected void collect() {
+        Heap heap = requireNonNull(this.heap);
+        ForkJoinPool pool = this.pool;
+        if (pool == null) {
+            // the threads of the pool are daemons, they end when they are idle for a while
+            pool = new ForkJoinPool(threads);
+            this.pool = pool;
+        }
+        int capacity = heap.getInstanceObjectCapacity();
+        if (marks.fits(capacity)) {
+            marks.clear(capacity);
+        } else {
+            marks = new AtomicMarkBitmap(capacity);
+        }
+        int words = (marks.getCapacity() + 63) >>> 6;
+        if (deadObjects.length < words) {
+            deadObjects = new long[words];
+        }
+        MarkTask roots = new MarkTask(new int[MIN_SPLIT_SIZE * 2], 0);
+        markRoots(roots);
+        pool.invoke(roots);
+        pool.invoke(new SweepTask(0, words));
+        removeDeadObjects(words);
+    }
+
+    /**
+     * Runs the finalizers of the dead objects and removes them, the objects that finalizers allocate were free
+     * references when the heap was swept and stay.
+     */
+    private void removeDeadObjects(int words) {
+        for (int word = 0; word < words; word++) {
+            long bits = deadObjects[word];
+            while (bits != 0) {
+                removeObject(word << 6 | Long.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    /**
+     * Traces the objects from its stack, the objects on the stack are marked.
+     */
+    private final class MarkTask extends RecursiveAction implements IntConsumer {
+        @Nonnull
+        private int[] stack;
+        private int size;
+
+        MarkTask(@Nonnull int[] stack, int size) {
+            this.stack = stack;
+            this.size = size;
+        }
+
+        @Override
+        public void accept(int objectRef) {
+            if (marks.tryMark(requireNonNull(heap), objectRef)) {
+                if (size == stack.length) {
+                    stack = Arrays.copyOf(stack, size * 2);
+                }
+                stack[size++] = objectRef;
+            }
+        }
+
+        @Override
+        protected void compute() {
+            Heap heap = requireNonNull(ParallelMarkAndSweep.this.heap);
+            List<MarkTask> forked = null;
+            while (size > 0) {
+                if (size >= MIN_SPLIT_SIZE && getSurplusQueuedTaskCount() < 2) {
+                    int half = size / 2;
+                    int[] taken = new int[half * 2];
+                    System.arraycopy(stack, size - half, taken, 0, half);
+                    MarkTask task = new MarkTask(taken, half);
+                    size -= half;
+                    task.fork();
+                    if (forked == null) {
+                        forked = new ArrayList<>();
+                    }
+                    forked.add(task);
+                }
+                forEachReference(heap.getInstanceObject(stack[--size]), this);
+            }
+            if (forked != null) {
+                for (MarkTask task : forked) {
+                    task.join();
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the dead objects of the words of the references from {@code from} to {@code to}.
+     */
+    private final class SweepTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+
+        SweepTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if ((to - from) * 64 > SWEEP_RANGE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SweepTask(from, middle), new SweepTask(middle, to));
+                return;
+            }
+            Heap heap = requireNonNull(ParallelMarkAndSweep.this.heap);
+            for (int word = from; word < to; word++) {
+                long marked = marks.getWord(word);
+                long dead = 0;
+                int end = Math.min(64, marks.getCapacity() - (word << 6));
+                for (int bit = 0; bit < end; bit++) {
+                    int objectRef = word << 6 | bit;
+                    if ((marked & 1L << bit) == 0 && heap.getObjectIndex(objectRef) != -1
+                            && !heap.isCachedStringObjRef(objectRef)) {
+                        dead |= 1L << bit;
+                    }
+                }
+                deadObjects[word] = dead;
+            }
+        }
+    }
+
+}
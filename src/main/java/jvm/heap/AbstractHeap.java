@@ -6,6 +6,7 @@ import jvm.heap.api.InstanceObject;
 import jvm.heap.api.ReferenceTable;
 import jvm.heap.concurrent.ReferenceTableVolImpl;
 import jvm.heap.sequential.ReferenceTableImpl;
+import jvm.lang.OutOfMemoryErrorJVM;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -14,21 +15,46 @@ import java.util.*;
 public abstract class AbstractHeap implements Heap {
     @Nonnull
     private final KlassLoader klassLoader;
-    @Nonnull
+    // null when the references are direct handles: the reference of an object is its index
+    @Nullable
     private final ReferenceTable refTable;
     @Nonnull
     private final MethodRepo methodRepo;
     @Nonnull
+    private final HeapSizingPolicy sizingPolicy;
+    @Nonnull
     public final GarbageCollector collector;
     @Nonnull
     private final Map<String, Integer> poolOfStrings; // str -> objRef
     @Nonnull
     private final Set<Integer> cachedStringRefs; // objRef from pool of Strings
+    @Nonnull
+    private final Map<Integer, Object> nativeObjects = new HashMap<>(); // objRef -> socket or stream
     private boolean enabledCacheString = true;
+    @Nullable
+    private ObjectRecycler recycler;
+    private boolean compactObjects;
+    // the new index of the object of every index, reused by the next compactions
+    @Nonnull
+    private int[] newIndexes = new int[0];
+    private boolean atSafepoint;
+
+    public AbstractHeap(@Nonnull GarbageCollector collector, @Nonnull HeapSizingPolicy sizingPolicy, boolean heapMonitor) {
+        this(collector, sizingPolicy, heapMonitor, false);
+    }
 
-    public AbstractHeap(@Nonnull GarbageCollector collector, int instancesSize, boolean heapMonitor) {
+    /**
+     * @param directHandles use the indexes of the objects as their references, the heap must not move its objects
+     */
+    public AbstractHeap(@Nonnull GarbageCollector collector,
+                        @Nonnull HeapSizingPolicy sizingPolicy,
+                        boolean heapMonitor,
+                        boolean directHandles) {
         this.collector = collector;
-        this.refTable = heapMonitor ? new ReferenceTableVolImpl(instancesSize) : new ReferenceTableImpl(instancesSize);
+        this.sizingPolicy = sizingPolicy;
+        int instancesSize = sizingPolicy.getInitialSize();
+        this.refTable = directHandles ? null :
+                heapMonitor ? new ReferenceTableVolImpl(instancesSize) : new ReferenceTableImpl(instancesSize);
         this.methodRepo = new MethodRepo();
         this.poolOfStrings = new HashMap<>();
         this.cachedStringRefs = new HashSet<>();
@@ -36,20 +62,44 @@ public abstract class AbstractHeap implements Heap {
     }
 
     public int getObjectRef(@Nonnull InstanceObject object) {
-        return refTable.getObjectReference(addInstanceObjectInternal(object));
+        int objectIndex = addInstanceObjectInternal(object);
+        int objectRef = refTable != null ? refTable.getObjectReference(objectIndex) : objectIndex;
+        collector.objectAllocated(objectRef);
+        return objectRef;
+    }
+
+    public int getObjectRefAtSafepoint(@Nonnull InstanceObject object) {
+        atSafepoint = true;
+        try {
+            return getObjectRef(object);
+        } finally {
+            atSafepoint = false;
+        }
+    }
+
+    public boolean isAtSafepoint() {
+        return atSafepoint;
     }
 
     public int changeObject(int objectRef, @Nonnull InstanceObject object) {
         if (objectRef != -1) {
-            setInstanceObjectInternal(refTable.getInstanceObjectIndex(objectRef), object);
+            setInstanceObjectInternal(refTable != null ? refTable.getInstanceObjectIndex(objectRef) : objectRef, object);
             return objectRef;
         } else {
-            return refTable.getObjectReference(addInstanceObjectInternal(object));
+            return getObjectRef(object);
         }
     }
 
     @Nonnull
     public InstanceObject getInstanceObject(int objectRef) {
+        if (refTable == null) {
+            // a single load, the slot of a removed object is empty
+            InstanceObject object = getInstanceObjectByObjInd(objectRef);
+            if (object == null) {
+                throw new RuntimeException("No such object on the heap");
+            }
+            return object;
+        }
         int objectIndex = refTable.getInstanceObjectIndex(objectRef);
         if (objectIndex == -1) {
             throw new RuntimeException("No such object on the heap");
@@ -57,17 +107,90 @@ public abstract class AbstractHeap implements Heap {
         return getInstanceObjectInternal(objectIndex);
     }
 
+    @Override
+    public int getObjectIndex(int objectRef) {
+        if (refTable != null) {
+            return refTable.getInstanceObjectIndex(objectRef);
+        }
+        return getInstanceObjectByObjInd(objectRef) != null ? objectRef : -1;
+    }
+
     @Nullable
     @Override
     public InstanceObject getInstanceObjectByObjInd(int objectIndex) {
         return getInstanceObjectInternal(objectIndex);
     }
 
-    @Nonnull
+    /**
+     * Frees the slot of the object and its reference, the next allocations reuse both of them.
+     */
+    public void removeInstanceObject(int objectRef) {
+        InstanceObject object = recycler != null ? getInstanceObject(objectRef) : null;
+        if (refTable != null) {
+            clearInstanceObject(refTable.getInstanceObjectIndex(objectRef));
+            decrementInstanceObjectSize();
+            refTable.clearObjectIndex(objectRef);
+        } else {
+            clearInstanceObject(objectRef);
+            decrementInstanceObjectSize();
+        }
+        if (object != null && object.getKlassIndex() >= 0) {
+            recycler.recycle(object, getInstanceKlass(object.getKlassIndex()).getLayout());
+        }
+    }
+
+    @Nullable
+    @Override
+    public int[] compactInstanceObjects() {
+        int capacity = getInstanceObjectCapacity();
+        if (newIndexes.length < capacity) {
+            newIndexes = new int[capacity];
+        }
+        if (!slideInstanceObjects(newIndexes)) {
+            return null;
+        }
+        if (refTable != null) {
+            int refTableSize = refTable.size();
+            for (int objectRef = 0; objectRef < refTableSize; objectRef++) {
+                int objectIndex = refTable.getInstanceObjectIndex(objectRef);
+                if (objectIndex != -1) {
+                    refTable.setInstanceObjectIndex(objectRef, newIndexes[objectIndex]);
+                }
+            }
+            return newIndexes;
+        }
+        // the strings of the pool are never removed, so they have new references
+        poolOfStrings.replaceAll((str, objectRef) -> newIndexes[objectRef]);
+        List<Integer> stringRefs = new ArrayList<>(cachedStringRefs);
+        cachedStringRefs.clear();
+        for (int objectRef : stringRefs) {
+            cachedStringRefs.add(newIndexes[objectRef]);
+        }
+        if (!nativeObjects.isEmpty()) {
+            // the native objects of removed objects are dropped
+            Map<Integer, Object> movedObjects = new HashMap<>();
+            nativeObjects.forEach((objectRef, nativeObject) -> {
+                if (objectRef < capacity && newIndexes[objectRef] != -1) {
+                    movedObjects.put(newIndexes[objectRef], nativeObject);
+                }
+            });
+            nativeObjects.clear();
+            nativeObjects.putAll(movedObjects);
+        }
+        return newIndexes;
+    }
+
+    @Nullable
     public ReferenceTable getReferenceTable() {
         return refTable;
     }
 
+    @Nonnull
+    @Override
+    public GarbageCollector getCollector() {
+        return collector;
+    }
+
     @Nonnull
     public MethodRepo getMethodRepo() {
         return methodRepo;
@@ -97,10 +220,73 @@ public abstract class AbstractHeap implements Heap {
         cachedStringRefs.add(charArrayRef);
     }
 
+    @Nullable
+    public Object getNativeObject(int objectRef) {
+        return nativeObjects.get(objectRef);
+    }
+
+    public void putNativeObject(int objectRef, @Nonnull Object nativeObject) {
+        nativeObjects.put(objectRef, nativeObject);
+    }
+
     public void disableCacheString() {
         this.enabledCacheString = false;
     }
 
+    public void enableCompactObjects() {
+        this.compactObjects = true;
+    }
+
+    public boolean isCompactObjects() {
+        return compactObjects;
+    }
+
+    public void enableObjectRecycling(int objectsPerKlass) {
+        this.recycler = new ObjectRecycler(objectsPerKlass);
+    }
+
+    @Nullable
+    public ObjectRecycler getObjectRecycler() {
+        return recycler;
+    }
+
+    @Nullable
+    public InstanceObject takeRecycledObject(int klassIndex) {
+        return recycler != null ? recycler.take(klassIndex) : null;
+    }
+
+    /**
+     * Runs the collector when it asks for a collection, by default when more than 70% of the heap is taken, and
+     * resizes the heap by the number of objects that survived, the objects allocated by finalizers while the
+     * collector runs can only fill the heap.
+     */
+    protected final void checkCapacity() {
+        if (!collector.isInProgress()
+                && collector.isCollectionNeeded(getInstanceObjectSize(), getInstanceObjectCapacity())) {
+            collector.run();
+            resize(sizingPolicy.getCapacity(getInstanceObjectCapacity(), getInstanceObjectSize()));
+        }
+        if (getInstanceObjectSize() >= getInstanceObjectCapacity()) {
+            throw new OutOfMemoryErrorJVM("Java heap space");
+        }
+    }
+
+    private void resize(int capacity) {
+        int currentCapacity = getInstanceObjectCapacity();
+        if (capacity == currentCapacity) {
+            return;
+        }
+        if (capacity < currentCapacity) {
+            // the objects are not moved, so the heap shrinks down to the highest slot in use only,
+            // the new objects take the lowest free slots and let the next collection shrink it further
+            capacity = Math.max(capacity, Math.max(refTable != null ? refTable.getUsedSize() : 0, getUsedSize()));
+        }
+        if (refTable != null) {
+            refTable.resize(capacity);
+        }
+        resizeInstanceObjects(capacity);
+    }
+
     @Nonnull
     protected abstract InstanceObject getInstanceObjectInternal(int objectIndex);
 
@@ -108,4 +294,19 @@ public abstract class AbstractHeap implements Heap {
 
     protected abstract void setInstanceObjectInternal(int objectIndex, @Nonnull InstanceObject object);
 
+    /**
+     * Returns the highest slot of an object in use plus one, the heap can not shrink below it.
+     */
+    protected abstract int getUsedSize();
+
+    protected abstract void resizeInstanceObjects(int capacity);
+
+    /**
+     * Moves the objects down to the lowest slots in the order of their slots, the next objects take the slots
+     * after them. The new slot of the object of every slot goes to the array, -1 for the free ones.
+     *
+     * @return false if no slot below the last object was free, nothing is moved then
+     */
+    protected abstract boolean slideInstanceObjects(@Nonnull int[] newIndexes);
+
 }
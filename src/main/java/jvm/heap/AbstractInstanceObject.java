@@ -21,12 +21,15 @@ public abstract class AbstractInstanceObject implements InstanceObject {
     private String arrayType;
     @Nullable
     private JVMType valueType;
+    // the elements of long and double arrays hold the whole 64-bit value without a type
+    private final boolean rawValues;
     @Nonnull
     private final Heap heap;
 
     public AbstractInstanceObject(@Nullable String staticContentKlassName, @Nonnull Heap heap, int klassIndex) {
         this.heap = heap;
         this.array = false;
+        this.rawValues = false;
         this.klassIndex = staticContentKlassName == null ? klassIndex : -1;
     }
 
@@ -35,17 +38,36 @@ public abstract class AbstractInstanceObject implements InstanceObject {
         this.klassIndex = klassIndex;
         this.array = true;
         this.valueType = getValueType(valueType);
+        this.rawValues = this.valueType.isWide();
         this.arrayType = arrayType;
     }
 
+    /**
+     * Returns the number of field values that the fields take, a long or double field takes two of them.
+     */
+    protected static int countFieldValues(@Nonnull List<String> fields) {
+        int size = 0;
+        for (String field : fields) {
+            size += getValueType(field).isWide() ? 2 : 1;
+        }
+        return size;
+    }
+
     @Nonnull
     public Map<String, Integer> getIndexByFieldNameFromStaticContent(@Nonnull String klassName, @Nullable InstanceKlass parentKlass) {
+        return getIndexByFieldNameFromStaticContent(getIndexFieldNameMap(), klassName, parentKlass);
+    }
+
+    @Nonnull
+    public static Map<String, Integer> getIndexByFieldNameFromStaticContent(@Nonnull Map<String, Integer> indexByFieldName,
+                                                                            @Nonnull String klassName,
+                                                                            @Nullable InstanceKlass parentKlass) {
         Map<String, Integer> result = new HashMap<>(parentKlass != null ? parentKlass.getIndexByFieldName() : Collections.emptyMap());
-        result.putAll(getIndexFieldNameMap().keySet()
+        result.putAll(indexByFieldName.keySet()
                 .stream()
                 .filter(klassNameField -> klassNameField.contains(klassName))
                 .collect(Collectors.toMap(field -> field.substring(field.indexOf('.') + 1),
-                        field -> getIndexFieldNameMap().get(field))));
+                        indexByFieldName::get)));
         return Collections.unmodifiableMap(result);
     }
 
@@ -54,7 +76,7 @@ public abstract class AbstractInstanceObject implements InstanceObject {
     }
 
     @Nonnull
-    public JVMType getValueType(@Nonnull String field) {
+    public static JVMType getValueType(@Nonnull String field) {
         String t = field.substring(field.indexOf(':') + 1);
         return t.startsWith("L") || t.startsWith("[") ? JVMType.valueOf("A") : JVMType.valueOf(t);
     }
@@ -63,12 +85,18 @@ public abstract class AbstractInstanceObject implements InstanceObject {
         return ((long) type << 32);
     }
 
-    private int getValueType(long value) {
+    private static int getValueType(long value) {
         int type = (int) (value >> 32);
         return type >>> 31 == 1 ? ~type : type; // if 'type >>> 31 == 1' (negative sign) type was inverted
     }
 
     public void checkType(long firstValue, long secondValue) {
+        if (!rawValues) {
+            checkValueTypes(firstValue, secondValue);
+        }
+    }
+
+    public static void checkValueTypes(long firstValue, long secondValue) {
         int first = getValueType(firstValue);
         int second = getValueType(secondValue);
         if (first == JVMType.I.ordinal() && second == JVMType.Z.ordinal() ||
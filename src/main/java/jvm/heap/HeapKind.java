@@ -0,0 +1,47 @@
+package jvm.heap;
+
+import jvm.garbage_collector.GarbageCollector;
+import jvm.heap.api.Heap;
+import jvm.heap.concurrent.HeapVolImpl;
+import jvm.heap.sequential.ArenaHeapImpl;
+import jvm.heap.sequential.HeapImpl;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The heaps a virtual machine can keep its objects in.
+ */
+public enum HeapKind {
+
+    SEQUENTIAL,
+    /**
+     * Keeps the values of the objects in atomic arrays, so the Heap Monitor can read them while the engine runs.
+     */
+    MONITORED,
+    /**
+     * Keeps all objects in the single arena of an {@link ArenaHeapImpl}, its records move, so it always has a
+     * reference table.
+     */
+    ARENA;
+
+    /**
+     * @param directHandles use the indexes of the objects as their references, without a reference table
+     */
+    @Nonnull
+    public Heap create(@Nonnull GarbageCollector collector,
+                       @Nonnull HeapSizingPolicy sizingPolicy,
+                       int klassesSize,
+                       boolean directHandles) {
+        switch (this) {
+            case MONITORED:
+                return new HeapVolImpl(collector, sizingPolicy, klassesSize, directHandles);
+            case ARENA:
+                if (directHandles) {
+                    throw new IllegalArgumentException("the arena heap moves its objects and needs a reference table");
+                }
+                return new ArenaHeapImpl(collector, sizingPolicy, klassesSize);
+            default:
+                return new HeapImpl(collector, sizingPolicy, klassesSize, directHandles);
+        }
+    }
+}
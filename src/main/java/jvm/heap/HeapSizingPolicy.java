@@ -0,0 +1,71 @@
+package jvm.heap;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Decides how many objects a heap can hold, between the initial and the maximum size. After every collection
+ * the heap grows when less than the minimum share of it is free, and shrinks when more than the maximum share
+ * of it is free, but never below the initial size.
+ */
+public final class HeapSizingPolicy {
+
+    private static final int MIN_FREE_PERCENT = 40;
+    private static final int MAX_FREE_PERCENT = 70;
+
+    private final int initialSize;
+    private final int maxSize;
+    private final int minFreePercent;
+    private final int maxFreePercent;
+
+    public HeapSizingPolicy(int initialSize, int maxSize, int minFreePercent, int maxFreePercent) {
+        if (initialSize <= 0 || maxSize < initialSize) {
+            throw new IllegalArgumentException("wrong heap sizes: " + initialSize + ", " + maxSize);
+        }
+        if (minFreePercent < 0 || maxFreePercent > 100 || minFreePercent >= 100 || minFreePercent > maxFreePercent) {
+            throw new IllegalArgumentException("wrong free heap shares: " + minFreePercent + "%, " + maxFreePercent + "%");
+        }
+        this.initialSize = initialSize;
+        this.maxSize = maxSize;
+        this.minFreePercent = minFreePercent;
+        this.maxFreePercent = maxFreePercent;
+    }
+
+    /**
+     * Returns the policy of a heap that can not change its size.
+     */
+    @Nonnull
+    public static HeapSizingPolicy fixed(int size) {
+        return new HeapSizingPolicy(size, size, 0, 100);
+    }
+
+    /**
+     * Returns the policy of a heap that keeps from 40% to 70% of itself free.
+     */
+    @Nonnull
+    public static HeapSizingPolicy growable(int initialSize, int maxSize) {
+        return new HeapSizingPolicy(initialSize, maxSize, MIN_FREE_PERCENT, MAX_FREE_PERCENT);
+    }
+
+    public int getInitialSize() {
+        return initialSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the capacity of the heap that holds the number of objects after a collection.
+     */
+    public int getCapacity(int capacity, int size) {
+        long free = capacity - size;
+        if (size >= capacity || free * 100 < (long) minFreePercent * capacity) {
+            return (int) Math.max(capacity, Math.min(maxSize, size * 100L / (100 - minFreePercent) + 1));
+        }
+        if (free * 100 > (long) maxFreePercent * capacity) {
+            return (int) Math.min(capacity, Math.max(initialSize, size * 100L / (100 - maxFreePercent) + 1));
+        }
+        return capacity;
+    }
+
+}
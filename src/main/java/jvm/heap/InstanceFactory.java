@@ -5,8 +5,7 @@ import jvm.heap.api.InstanceKlass;
 import jvm.heap.api.InstanceObject;
 import jvm.heap.concurrent.InstanceKlassVolImpl;
 import jvm.heap.concurrent.InstanceObjectVolImpl;
-import jvm.heap.sequential.InstanceKlassImpl;
-import jvm.heap.sequential.InstanceObjectImpl;
+import jvm.heap.sequential.*;
 import jvm.parser.Klass;
 
 import javax.annotation.Nonnull;
@@ -24,7 +23,7 @@ public class InstanceFactory {
 
     @Nonnull
     public static InstanceObject getInstanceObject(@Nullable InstanceObject objectFromStaticContent,
-                                                   @Nullable String staticContentKlassName,
+                                                   @Nonnull String staticContentKlassName,
                                                    @Nonnull Heap heap,
                                                    @Nonnull List<String> fields,
                                                    int klassIndex) {
@@ -38,14 +37,32 @@ public class InstanceFactory {
                                                    @Nonnull String valueType,
                                                    int size,
                                                    int klassIndex) {
-        return heapMonitor ? new InstanceObjectVolImpl(heap, arrayType, valueType, size, klassIndex)
-                : new InstanceObjectImpl(heap, arrayType, valueType, size, klassIndex);
+        if (heapMonitor) {
+            return new InstanceObjectVolImpl(heap, arrayType, valueType, size, klassIndex);
+        }
+        switch (valueType) {
+            case "I":
+            case "S":
+            case "F":
+                return new IntArrayImpl(heap, arrayType, valueType, size, klassIndex);
+            case "C":
+                return new CharArrayImpl(heap, arrayType, valueType, size, klassIndex);
+            case "B":
+                return new ByteArrayImpl(heap, arrayType, valueType, size, klassIndex);
+            case "Z":
+                return new BooleanArrayImpl(heap, arrayType, valueType, size, klassIndex);
+            default:
+                return new InstanceObjectImpl(heap, arrayType, valueType, size, klassIndex);
+        }
     }
 
     @Nonnull
-    public static InstanceObject getInstanceObject(@Nonnull Heap heap, @Nonnull List<String> fields, int klassIndex) {
-        return heapMonitor ? new InstanceObjectVolImpl(heap, fields, klassIndex)
-                : new InstanceObjectImpl(heap, fields, klassIndex);
+    public static InstanceObject getInstanceObject(@Nonnull Heap heap, @Nonnull KlassLayout layout, int klassIndex) {
+        if (heapMonitor) {
+            return new InstanceObjectVolImpl(heap, layout, klassIndex);
+        }
+        return heap.isCompactObjects() && layout.isCompact() ? new CompactInstanceObjectImpl(heap, layout, klassIndex)
+                : new InstanceObjectImpl(heap, layout, klassIndex);
     }
 
     @Nonnull
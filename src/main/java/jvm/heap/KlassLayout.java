@@ -0,0 +1,105 @@
+package jvm.heap;
+
+import jvm.JVMType;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+
+/**
+ * The layout of the instances of a klass, built once when the klass is prepared: the index of every field,
+ * the default values of a new instance and which of the values hold references. The fields of the parents
+ * come first, a long or double field takes two values. Layouts are immutable and shared by all instances
+ * of the klass.
+ */
+public final class KlassLayout {
+
+    public static final KlassLayout EMPTY = new KlassLayout(Collections.emptyMap(), new long[0], new boolean[0], true);
+
+    @Nonnull
+    private final Map<String, Integer> indexByFieldName;
+    @Nonnull
+    private final long[] defaultValues;
+    @Nonnull
+    private final boolean[] referenceFields;
+    // none of the fields is a long or a double
+    private final boolean compact;
+
+    private KlassLayout(@Nonnull Map<String, Integer> indexByFieldName,
+                        @Nonnull long[] defaultValues,
+                        @Nonnull boolean[] referenceFields,
+                        boolean compact) {
+        this.indexByFieldName = indexByFieldName;
+        this.defaultValues = defaultValues;
+        this.referenceFields = referenceFields;
+        this.compact = compact;
+    }
+
+    /**
+     * Returns the layout of a klass that adds the fields to the fields of its parent.
+     */
+    @Nonnull
+    public KlassLayout extend(@Nonnull List<String> fields) {
+        Map<String, Integer> index = new HashMap<>(indexByFieldName);
+        long[] values = Arrays.copyOf(defaultValues, defaultValues.length + AbstractInstanceObject.countFieldValues(fields));
+        boolean[] references = new boolean[values.length];
+        System.arraycopy(referenceFields, 0, references, 0, referenceFields.length);
+        int valueIndex = defaultValues.length;
+        boolean compact = this.compact;
+        for (String field : fields) {
+            JVMType type = AbstractInstanceObject.getValueType(field);
+            index.put(field, valueIndex);
+            references[valueIndex] = type == JVMType.A;
+            values[valueIndex++] = (long) type.ordinal() << 32;
+            if (type.isWide()) {
+                values[valueIndex++] = (long) type.ordinal() << 32;
+                compact = false;
+            }
+        }
+        return new KlassLayout(Collections.unmodifiableMap(index), values, references, compact);
+    }
+
+    @Nonnull
+    public Map<String, Integer> getIndexByFieldName() {
+        return indexByFieldName;
+    }
+
+    /**
+     * Returns the values of a new instance: a copy of the default values.
+     */
+    @Nonnull
+    public long[] newValues() {
+        return defaultValues.clone();
+    }
+
+    /**
+     * Copies the default values into the values of an instance.
+     */
+    public void copyDefaultValues(@Nonnull long[] values) {
+        System.arraycopy(defaultValues, 0, values, 0, defaultValues.length);
+    }
+
+    public long getDefaultValue(int index) {
+        return defaultValues[index];
+    }
+
+    /**
+     * Returns which values of the instances hold references, the array must not be changed.
+     */
+    @Nonnull
+    public boolean[] getReferenceFields() {
+        return referenceFields;
+    }
+
+    /**
+     * Returns true if every value of the instances fits into 32 bits: the default values are the types of the
+     * values then and the instances can keep the values without their types.
+     */
+    public boolean isCompact() {
+        return compact;
+    }
+
+    public int size() {
+        return defaultValues.length;
+    }
+
+}
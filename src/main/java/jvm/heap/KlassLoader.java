@@ -1,8 +1,8 @@
 package jvm.heap;
 
 import jvm.engine.ExecutionEngine;
+import jvm.engine.ReferenceMap;
 import jvm.Utils;
-import jvm.engine.StackFrame;
 import jvm.heap.api.Heap;
 import jvm.heap.api.InstanceKlass;
 import jvm.heap.api.InstanceObject;
@@ -95,7 +95,7 @@ public class KlassLoader {
 
         //init Klass from top to bottom
         for (Method clInit : clInitMethods) {
-            new ExecutionEngine(heap, new StackFrame(10000)).invoke(clInit);
+            ExecutionEngine.invokeAuxiliary(heap, clInit);
         }
     }
 
@@ -142,6 +142,8 @@ public class KlassLoader {
 
         InstanceKlass instanceKlass = getInstanceKlass(
                 object.getIndexByFieldNameFromStaticContent(constantPoolKlass.getKlassName(), parentKlass), objectRef, constantPoolKlass);
+        instanceKlass.setLayout((parentKlass != null ? parentKlass.getLayout() : KlassLayout.EMPTY)
+                .extend(constantPoolKlass.getObjectFieldNames()));
         setIndexByName(constantPoolKlass.getKlassName(), heap.setInstanceKlass(instanceKlass));
 
         Map<String, Integer> allStaticMethods = new HashMap<>(
@@ -156,6 +158,7 @@ public class KlassLoader {
                 clInit = method;
                 continue;
             }
+            method.setReferenceMap(ReferenceMap.compute(method, constantPoolKlass));
             int index = heap.getMethodRepo().setMethod(method);
             if (method.isStatic()) {
                 allStaticMethods.put(method.getNameAndType(), index);
@@ -3,22 +3,26 @@ package jvm.heap;
 import jvm.parser.Method;
 
 import javax.annotation.Nonnull;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 public class MethodRepo {
     @Nonnull
-    private final Method[] methodTable;
+    private Method[] methodTable;
     @Nonnull
     private final Map<String, Integer> indexByName;
     private int count;
 
     public MethodRepo() {
-        this.methodTable = new Method[10000];
+        this.methodTable = new Method[1000];
         this.indexByName = new HashMap<>();
     }
 
     public int setMethod(@Nonnull Method method) {
+        if (count == methodTable.length) {
+            methodTable = Arrays.copyOf(methodTable, count * 2);
+        }
         methodTable[count] = method;
         indexByName.put(method.getClassName() + "." + method.getNameAndType(), count);
         return count++;
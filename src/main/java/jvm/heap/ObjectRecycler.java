@@ -0,0 +1,102 @@
+package jvm.heap;
+
+import jvm.heap.api.InstanceObject;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * Keeps the instances of klasses that the collector removed and gives them to the next allocations of the same
+ * klass, so objects that die at a steady rate reuse their host storage. An object gets the default values of
+ * the layout of its klass when it is kept, arrays and the objects of static fields are never kept.
+ * <p>
+ * The recycler is used by the thread of the engine only, it keeps a few objects per klass.
+ */
+public final class ObjectRecycler {
+
+    public static final int DEFAULT_OBJECTS_PER_KLASS = 64;
+
+    private final int objectsPerKlass;
+    // the kept objects of a klass by its index, a stack each
+    @Nonnull
+    private InstanceObject[][] objects = new InstanceObject[0][];
+    @Nonnull
+    private int[] objectCounts = new int[0];
+    private long hits;
+    private long misses;
+    private long recycled;
+
+    public ObjectRecycler(int objectsPerKlass) {
+        if (objectsPerKlass <= 0) {
+            throw new IllegalArgumentException("number of objects per klass must be positive");
+        }
+        this.objectsPerKlass = objectsPerKlass;
+    }
+
+    /**
+     * Keeps the removed object for the next allocation of its klass, returns false if it is not kept.
+     */
+    public boolean recycle(@Nonnull InstanceObject object, @Nonnull KlassLayout layout) {
+        int klassIndex = object.getKlassIndex();
+        // the objects of static fields have maps of their own
+        if (object.isArray() || klassIndex < 0 || object.getIndexFieldNameMap() != layout.getIndexByFieldName()) {
+            return false;
+        }
+        if (klassIndex >= objects.length) {
+            int length = Math.max(klassIndex + 1, objects.length * 2);
+            objects = Arrays.copyOf(objects, length);
+            objectCounts = Arrays.copyOf(objectCounts, length);
+        }
+        if (objects[klassIndex] == null) {
+            objects[klassIndex] = new InstanceObject[objectsPerKlass];
+        }
+        if (objectCounts[klassIndex] == objectsPerKlass) {
+            return false;
+        }
+        object.resetValues(layout);
+        objects[klassIndex][objectCounts[klassIndex]++] = object;
+        recycled++;
+        return true;
+    }
+
+    /**
+     * Returns a kept object of the klass with the default values or null if there is none.
+     */
+    @Nullable
+    public InstanceObject take(int klassIndex) {
+        if (klassIndex < objectCounts.length && objectCounts[klassIndex] > 0) {
+            InstanceObject[] klassObjects = objects[klassIndex];
+            InstanceObject object = klassObjects[--objectCounts[klassIndex]];
+            klassObjects[objectCounts[klassIndex]] = null;
+            hits++;
+            return object;
+        }
+        misses++;
+        return null;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of removed objects that were kept.
+     */
+    public long getRecycled() {
+        return recycled;
+    }
+
+    /**
+     * Returns the share of allocations that got a kept object, from 0 to 1.
+     */
+    public double getHitRate() {
+        long allocations = hits + misses;
+        return allocations == 0 ? 0 : (double) hits / allocations;
+    }
+
+}
@@ -0,0 +1,107 @@
+package jvm.heap;
+
+import java.util.Arrays;
+
+/**
+ * Hands out the slots of a table in constant time: the slots that were freed are reused from a
+ * stack, the ones that were never used are taken from a bump pointer. A fresh table hands out its slots in
+ * order, so the first objects of the virtual machine get the same references as before.
+ * <p>
+ * The allocator does not check the occupancy: the heap runs the garbage collector, grows or throws
+ * {@link jvm.lang.OutOfMemoryErrorJVM} before it asks for a slot of a full table.
+ */
+public final class SlotAllocator {
+
+    private int[] freeSlots;
+    private int freeSlotCount;
+    // the slots from the bump pointer on were never used
+    private int bumpPointer;
+
+    public SlotAllocator(int size) {
+        this.freeSlots = new int[size];
+    }
+
+    public int allocate() {
+        if (freeSlotCount > 0) {
+            return freeSlots[--freeSlotCount];
+        }
+        if (bumpPointer == freeSlots.length) {
+            throw new IllegalStateException("no free slots");
+        }
+        return bumpPointer++;
+    }
+
+    public void free(int slot) {
+        freeSlots[freeSlotCount++] = slot;
+    }
+
+    /**
+     * Returns the number of slots that can be allocated.
+     */
+    public int available() {
+        return freeSlotCount + freeSlots.length - bumpPointer;
+    }
+
+    /**
+     * Returns true if slots below the bump pointer were freed, the slots in use are not all at the start then.
+     */
+    public boolean hasFreedSlots() {
+        return freeSlotCount > 0;
+    }
+
+    /**
+     * Returns the highest slot in use plus one, the table can not shrink below it.
+     */
+    public int getUsedSize() {
+        boolean[] free = new boolean[bumpPointer];
+        for (int i = 0; i < freeSlotCount; i++) {
+            free[freeSlots[i]] = true;
+        }
+        int size = bumpPointer;
+        while (size > 0 && free[size - 1]) {
+            size--;
+        }
+        return size;
+    }
+
+    /**
+     * Takes the slots below the given one as used and hands out the others from the bump pointer in order, after
+     * the objects have been moved down to the start of the table.
+     */
+    public void reset(int usedSize) {
+        if (usedSize < 0 || usedSize > freeSlots.length) {
+            throw new IllegalArgumentException("slots in use must fit the table");
+        }
+        freeSlotCount = 0;
+        bumpPointer = usedSize;
+    }
+
+    /**
+     * Changes the number of slots, the slots that are added are taken after the ones that were freed.
+     * The table is not made larger, the free slots are ordered so that the lowest ones are taken first:
+     * the objects move down to the start of the table and the next resize can remove more slots.
+     */
+    public void resize(int size) {
+        if (size < getUsedSize()) {
+            throw new IllegalArgumentException("slots in use can not be removed");
+        }
+        if (size <= freeSlots.length) {
+            int count = 0;
+            for (int i = 0; i < freeSlotCount; i++) {
+                if (freeSlots[i] < size) {
+                    freeSlots[count++] = freeSlots[i];
+                }
+            }
+            Arrays.sort(freeSlots, 0, count);
+            for (int i = 0, j = count - 1; i < j; i++, j--) {
+                int slot = freeSlots[i];
+                freeSlots[i] = freeSlots[j];
+                freeSlots[j] = slot;
+            }
+            freeSlotCount = count;
+            bumpPointer = Math.min(bumpPointer, size);
+        }
+        freeSlots = Arrays.copyOf(freeSlots, size);
+    }
+
+}
@@ -1,5 +1,6 @@
 package jvm.heap.api;
 
+import jvm.garbage_collector.GarbageCollector;
 import jvm.heap.*;
 
 import javax.annotation.Nonnull;
@@ -18,8 +19,51 @@ public interface Heap {
 
     void disableCacheString();
 
+    /**
+     * Returns the host socket or stream of the object, or null if it has none.
+     */
+    @Nullable
+    Object getNativeObject(int objectRef);
+
+    void putNativeObject(int objectRef, @Nonnull Object nativeObject);
+
+    /**
+     * Keeps the values of the new instances of klasses without long and double fields in 32 bits each.
+     */
+    void enableCompactObjects();
+
+    boolean isCompactObjects();
+
+    /**
+     * Keeps the instances of klasses that the collector removes for the next allocations of their klasses.
+     */
+    void enableObjectRecycling(int objectsPerKlass);
+
+    /**
+     * Returns null if the objects are not recycled.
+     */
+    @Nullable
+    ObjectRecycler getObjectRecycler();
+
+    /**
+     * Returns a removed instance of the klass with the default values or null if there is none.
+     */
+    @Nullable
+    InstanceObject takeRecycledObject(int klassIndex);
+
     int getObjectRef(@Nonnull InstanceObject object);
 
+    /**
+     * Adds the object like {@link #getObjectRef(InstanceObject)}, the caller holds no references but the ones of
+     * the stack frames, so the collection this allocation may run can move the objects of direct handles.
+     */
+    int getObjectRefAtSafepoint(@Nonnull InstanceObject object);
+
+    /**
+     * Returns true while an object is added by {@link #getObjectRefAtSafepoint(InstanceObject)}.
+     */
+    boolean isAtSafepoint();
+
     int changeObject(int objectRef, @Nonnull InstanceObject object);
 
     @Nonnull
@@ -30,9 +74,36 @@ public interface Heap {
 
     void clearInstanceObject(int objectIndex);
 
-    @Nonnull
+    void removeInstanceObject(int objectRef);
+
+    /**
+     * Moves the objects down to the lowest indexes in their order, the next objects are allocated after them. The
+     * reference table points the references to the new indexes. Direct handles are the indexes themselves, so the
+     * heap rewrites the references of its pool of strings and of its native objects and the caller rewrites the references of the objects
+     * and the roots with the returned indexes.
+     *
+     * @return the new index of the object of every old index, -1 for the free ones, or null if the objects are
+     * already at the start and nothing was moved
+     * @throws UnsupportedOperationException if the heap can not move its objects
+     */
+    @Nullable
+    int[] compactInstanceObjects();
+
+    /**
+     * Returns the index of the object of the reference or -1 if the reference is free. The references range
+     * from 0 to the capacity of the heap.
+     */
+    int getObjectIndex(int objectRef);
+
+    /**
+     * Returns null when the references are direct handles, the reference of an object is its index then.
+     */
+    @Nullable
     ReferenceTable getReferenceTable();
 
+    @Nonnull
+    GarbageCollector getCollector();
+
     @Nonnull
     MethodRepo getMethodRepo();
 
@@ -1,5 +1,6 @@
 package jvm.heap.api;
 
+import jvm.heap.KlassLayout;
 import jvm.parser.Klass;
 
 import javax.annotation.Nonnull;
@@ -25,6 +26,11 @@ public interface InstanceKlass {
 
     int getObjectRef();
 
+    /**
+     * Points the klass to the new reference of its object after the heap has moved the objects of direct handles.
+     */
+    void setObjectRef(int objectRef);
+
     @Nonnull
     Klass getCpKlass();
 
@@ -37,4 +43,12 @@ public interface InstanceKlass {
     int getMethodIndex(int virtualMethodIndex);
 
     int getIndexByVirtualMethodName(@Nonnull String methodName);
+
+    /**
+     * Returns the layout of the instances of the klass.
+     */
+    @Nonnull
+    KlassLayout getLayout();
+
+    void setLayout(@Nonnull KlassLayout layout);
 }
@@ -1,6 +1,7 @@
 package jvm.heap.api;
 
 import jvm.JVMType;
+import jvm.heap.KlassLayout;
 import jvm.lang.NullPointerExceptionJVM;
 
 import javax.annotation.Nonnull;
@@ -8,6 +9,8 @@ import javax.annotation.Nullable;
 import java.util.Map;
 import java.util.Set;
 
+import static java.util.Objects.requireNonNull;
+
 public interface InstanceObject {
 
     @Nonnull
@@ -31,6 +34,30 @@ public interface InstanceObject {
 
     long getValue(int fieldIndex);
 
+    /**
+     * Returns the element of an int, short, float, char, byte or boolean array without its type.
+     */
+    default int getIntValue(int index) {
+        return (int) getValue(index);
+    }
+
+    /**
+     * Sets the element of an int, short, float, char, byte or boolean array, the value is already narrowed
+     * to the type of the elements.
+     */
+    default void setIntValue(int index, int value) {
+        setValue(index, ((long) requireNonNull(getValueType()).ordinal() << 32) ^ value);
+    }
+
+    /**
+     * Gives an instance of a klass the default values of the layout, the object is reused by a new instance.
+     */
+    default void resetValues(@Nonnull KlassLayout layout) {
+        for (int i = 0; i < layout.size(); i++) {
+            setValue(i, layout.getDefaultValue(i));
+        }
+    }
+
     int getIndexByFieldName(@Nonnull String name) throws NullPointerExceptionJVM;
 
     int getKlassIndex();
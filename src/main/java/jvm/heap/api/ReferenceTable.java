@@ -8,5 +8,17 @@ public interface ReferenceTable {
 
     void clearObjectIndex(int objRef);
 
+    /**
+     * Points the reference to the new index of its object after the object has been moved.
+     */
+    void setInstanceObjectIndex(int objectRef, int objectIndex);
+
     int size();
+
+    /**
+     * Returns the highest reference in use plus one, the table can not shrink below it.
+     */
+    int getUsedSize();
+
+    void resize(int size);
 }
@@ -2,29 +2,71 @@ package jvm.heap.concurrent;
 
 import jvm.garbage_collector.GarbageCollector;
 import jvm.heap.AbstractHeap;
+import jvm.heap.HeapSizingPolicy;
 import jvm.heap.api.InstanceKlass;
 import jvm.heap.api.InstanceObject;
-import jvm.lang.OutOfMemoryErrorJVM;
 
 import javax.annotation.Nonnull;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class HeapVolImpl extends AbstractHeap {
+    // the number of slots a thread claims at once
+    static final int TLAB_SIZE = 32;
+    // the tables are replaced by larger ones when they grow, they never shrink while the monitor reads them
     @Nonnull
-    private final AtomicReferenceArray<InstanceObject> instanceObjects;
+    private volatile AtomicReferenceArray<InstanceObject> instanceObjects;
     @Nonnull
-    private final AtomicReferenceArray<InstanceKlass> instanceKlasses;
+    private volatile AtomicReferenceArray<InstanceKlass> instanceKlasses;
     @Nonnull
     private final AtomicInteger klassIndex = new AtomicInteger();
     @Nonnull
     private final AtomicInteger instanceObjectSize = new AtomicInteger();
-    private int objectIndex = 0;
+    // every thread allocates objects from its own buffer of slots, the monitor just reads them
+    @Nonnull
+    private final ThreadLocalSlotAllocator objectSlots;
 
     public HeapVolImpl(@Nonnull GarbageCollector collector, int instancesSize, int klassesSize) {
-        super(collector, instancesSize, true);
-        this.instanceObjects = new AtomicReferenceArray<>(instancesSize);
+        this(collector, HeapSizingPolicy.fixed(instancesSize), klassesSize);
+    }
+
+    public HeapVolImpl(@Nonnull GarbageCollector collector, @Nonnull HeapSizingPolicy sizingPolicy, int klassesSize) {
+        this(collector, sizingPolicy, klassesSize, false);
+    }
+
+    /**
+     * @param directHandles use the slots of the objects as their references, without a reference table
+     */
+    public HeapVolImpl(@Nonnull GarbageCollector collector,
+                       @Nonnull HeapSizingPolicy sizingPolicy,
+                       int klassesSize,
+                       boolean directHandles) {
+        super(collector, sizingPolicy, true, directHandles);
+        this.instanceObjects = new AtomicReferenceArray<>(sizingPolicy.getInitialSize());
         this.instanceKlasses = new AtomicReferenceArray<>(klassesSize);
+        this.objectSlots = new ThreadLocalSlotAllocator(sizingPolicy.getInitialSize(), TLAB_SIZE);
+    }
+
+    /**
+     * The objects of the monitored heap keep their values in atomic arrays for the monitor.
+     */
+    @Override
+    public void enableCompactObjects() {
+        throw new UnsupportedOperationException("the monitored heap can not keep compact objects");
+    }
+
+    /**
+     * The monitor reads the objects by their indexes while the engine runs, and the threads own the slots of
+     * their buffers.
+     */
+    @Override
+    public int[] compactInstanceObjects() {
+        throw new UnsupportedOperationException("the monitored heap can not move its objects");
+    }
+
+    @Override
+    protected boolean slideInstanceObjects(@Nonnull int[] newIndexes) {
+        throw new UnsupportedOperationException("the monitored heap can not move its objects");
     }
 
     @Override
@@ -46,11 +88,7 @@ public class HeapVolImpl extends AbstractHeap {
     @Override
     protected int addInstanceObjectInternal(@Nonnull InstanceObject object) {
         incrementInstanceObjectSize();
-        while (instanceObjects.get(objectIndex) != null) {
-            incrementObjectIndex();
-        }
-        int index = objectIndex;
-        incrementObjectIndex();
+        int index = objectSlots.allocate();
         instanceObjects.set(index, object);
         return index;
     }
@@ -70,12 +108,28 @@ public class HeapVolImpl extends AbstractHeap {
 
     @Override
     public void clearInstanceObject(int objectIndex) {
-        instanceObjects.set(objectIndex, null);
+        if (instanceObjects.getAndSet(objectIndex, null) != null) {
+            objectSlots.free(objectIndex);
+        }
+    }
+
+    @Override
+    protected int getUsedSize() {
+        return instanceObjects.length();
+    }
+
+    @Override
+    protected void resizeInstanceObjects(int capacity) {
+        objectSlots.resize(capacity);
+        instanceObjects = copyOf(instanceObjects, capacity);
     }
 
     @Override
     public int setInstanceKlass(@Nonnull InstanceKlass klass) {
         int index = klassIndex.getAndIncrement();
+        if (index == instanceKlasses.length()) {
+            instanceKlasses = copyOf(instanceKlasses, Math.max(1, index * 2));
+        }
         instanceKlasses.set(index, klass);
         return index;
     }
@@ -91,26 +145,18 @@ public class HeapVolImpl extends AbstractHeap {
         return instanceObjectSize.get();
     }
 
-    private void incrementObjectIndex() {
-        objectIndex = (objectIndex + 1) % instanceObjects.length();
-    }
-
     private void incrementInstanceObjectSize() {
         instanceObjectSize.incrementAndGet();
-        if (collector.isInProgress()) {
-            checkCapacity();
-        } else {
-            if (instanceObjectSize.get() > instanceObjects.length() / 10 * 7) {
-                collector.run();
-                checkCapacity();
-            }
-        }
+        checkCapacity();
     }
 
-    private void checkCapacity() {
-        if (instanceObjectSize.get() >= instanceObjects.length()) {
-            throw new OutOfMemoryErrorJVM("Java heap space");
+    @Nonnull
+    private static <T> AtomicReferenceArray<T> copyOf(@Nonnull AtomicReferenceArray<T> array, int length) {
+        AtomicReferenceArray<T> result = new AtomicReferenceArray<>(length);
+        for (int i = 0; i < Math.min(length, array.length()); i++) {
+            result.set(i, array.get(i));
         }
+        return result;
     }
 
 }
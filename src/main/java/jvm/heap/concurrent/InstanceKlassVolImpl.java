@@ -1,5 +1,6 @@
 package jvm.heap.concurrent;
 
+import jvm.heap.KlassLayout;
 import jvm.heap.api.InstanceKlass;
 import jvm.parser.Klass;
 
@@ -13,7 +14,7 @@ import static java.util.Objects.requireNonNull;
 
 public class InstanceKlassVolImpl implements InstanceKlass {
 
-    private final int objectReference;
+    private volatile int objectReference;
     @Nonnull
     private final Map<String, Integer> indexByFieldName; //fields
     @Nullable
@@ -23,6 +24,9 @@ public class InstanceKlassVolImpl implements InstanceKlass {
     @Nonnull
     private final Map<String, Integer> indexByVirtualMethodName;
 
+    @Nonnull
+    private KlassLayout layout = KlassLayout.EMPTY;
+
     @Nonnull
     private final Klass cpKlass;
     @Nonnull
@@ -72,6 +76,10 @@ public class InstanceKlassVolImpl implements InstanceKlass {
         return objectReference;
     }
 
+    public void setObjectRef(int objectRef) {
+        this.objectReference = objectRef;
+    }
+
     @Nonnull
     public Klass getCpKlass() {
         return cpKlass;
@@ -97,6 +105,15 @@ public class InstanceKlassVolImpl implements InstanceKlass {
         return indexByVirtualMethodName.get(methodName);
     }
 
+    @Nonnull
+    public KlassLayout getLayout() {
+        return layout;
+    }
+
+    public void setLayout(@Nonnull KlassLayout layout) {
+        this.layout = layout;
+    }
+
     @Override
     public String toString() {
         return name;
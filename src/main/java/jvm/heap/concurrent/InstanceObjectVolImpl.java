@@ -2,68 +2,58 @@ package jvm.heap.concurrent;
 
 import jvm.JVMType;
 import jvm.heap.AbstractInstanceObject;
+import jvm.heap.KlassLayout;
 import jvm.heap.api.Heap;
 import jvm.heap.api.InstanceObject;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLongArray;
 
 public class InstanceObjectVolImpl extends AbstractInstanceObject {
 
     @Nonnull
     private final AtomicLongArray fieldValues;
+    // unmodifiable, the instances of a klass share the map of its layout
     @Nonnull
     private final Map<String, Integer> indexByFieldName;
 
     public InstanceObjectVolImpl(@Nullable InstanceObject objectFromStaticContent,
-                                 @Nullable String staticContentKlassName,
+                                 @Nonnull String staticContentKlassName,
                                  @Nonnull Heap heap,
                                  @Nonnull List<String> fields,
                                  int klassIndex) {
         super(staticContentKlassName, heap, klassIndex);
-        if (staticContentKlassName == null) {
-            this.fieldValues = new AtomicLongArray(fields.size());
-            this.indexByFieldName = new ConcurrentHashMap<>();
-            for (int fieldIndex = 0; fieldIndex < fieldValues.length(); fieldIndex++) {
-                String field = fields.get(fieldIndex);
-                setDefaultValue(fieldIndex, getValueType(field));
-                indexByFieldName.put(field, fieldIndex);
-            }
-        } else {
-            // a chain of inherited classes for storing data in static fields contain a single InstanceObject
-            this.indexByFieldName = new ConcurrentHashMap<>(objectFromStaticContent != null ?
-                    objectFromStaticContent.getIndexFieldNameMap() : Collections.emptyMap());
-            int count = fields.size();
-            this.fieldValues = new AtomicLongArray(objectFromStaticContent != null ?
-                    objectFromStaticContent.getFieldValuesSize() + count : fields.size());
-            if (objectFromStaticContent != null) {
-                for (int i = 0; i < objectFromStaticContent.getFieldValuesSize(); i++) {
-                    this.fieldValues.set(i, objectFromStaticContent.getValue(i));
-                }
-            }
-            for (String newField : fields) {
-                int index = fieldValues.length() - count;
-                indexByFieldName.put(staticContentKlassName + "." + newField, index);
-                setDefaultValue(index, getValueType(newField));
-                count--;
-            }
+        // a chain of inherited classes for storing data in static fields contain a single InstanceObject
+        Map<String, Integer> indexByFieldName = new HashMap<>(objectFromStaticContent != null ?
+                objectFromStaticContent.getIndexFieldNameMap() : Collections.emptyMap());
+        int inherited = objectFromStaticContent != null ? objectFromStaticContent.getFieldValuesSize() : 0;
+        this.fieldValues = new AtomicLongArray(inherited + countFieldValues(fields));
+        for (int i = 0; i < inherited; i++) {
+            this.fieldValues.set(i, objectFromStaticContent.getValue(i));
         }
+        setDefaultValues(indexByFieldName, fields, inherited, staticContentKlassName + ".");
+        // the map is not changed after the construction, so the monitor can read it from its thread
+        this.indexByFieldName = Collections.unmodifiableMap(indexByFieldName);
     }
 
     public InstanceObjectVolImpl(@Nonnull Heap heap, @Nonnull String arrayType, @Nonnull String valueType, int size, int klassIndex) {
         super(heap, arrayType, valueType, klassIndex);
         this.fieldValues = new AtomicLongArray(size);
-        this.indexByFieldName = new ConcurrentHashMap<>();
-        for (int index = 0; index < size; index++) {
-            setDefaultValue(index, getValueType(valueType));
+        this.indexByFieldName = Collections.emptyMap();
+        JVMType type = getValueType(valueType);
+        if (!type.isWide()) {
+            for (int index = 0; index < size; index++) {
+                setDefaultValue(index, type);
+            }
         }
     }
 
-    public InstanceObjectVolImpl(@Nonnull Heap heap, @Nonnull List<String> fields, int klassIndex) {
-        this(null, null, heap, fields, klassIndex);
+    public InstanceObjectVolImpl(@Nonnull Heap heap, @Nonnull KlassLayout layout, int klassIndex) {
+        super(null, heap, klassIndex);
+        this.fieldValues = new AtomicLongArray(layout.newValues());
+        this.indexByFieldName = layout.getIndexByFieldName();
     }
 
     @Nonnull
@@ -94,13 +84,28 @@ public class InstanceObjectVolImpl extends AbstractInstanceObject {
 
     @Nonnull
     public Map<String, Integer> getIndexFieldNameMap() {
-        return Collections.unmodifiableMap(indexByFieldName);
+        return indexByFieldName;
     }
 
     public int getFieldValuesSize() {
         return fieldValues.length();
     }
 
+    /**
+     * Lays out the fields from the index on, a long or double field takes two values that hold its halves.
+     */
+    private void setDefaultValues(@Nonnull Map<String, Integer> indexByFieldName,
+                                  @Nonnull List<String> fields, int index, @Nonnull String prefix) {
+        for (String field : fields) {
+            JVMType type = getValueType(field);
+            indexByFieldName.put(prefix + field, index);
+            setDefaultValue(index++, type);
+            if (type.isWide()) {
+                setDefaultValue(index++, type);
+            }
+        }
+    }
+
     private void setDefaultValue(int index, @Nonnull JVMType type) {
         fieldValues.set(index, setValueType(type.ordinal()));
     }
@@ -3,18 +3,19 @@ package jvm.heap.concurrent;
 import jvm.heap.api.ReferenceTable;
 
 import javax.annotation.Nonnull;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerArray;
 
 public class ReferenceTableVolImpl implements ReferenceTable {
 
+    // replaced by a larger table when the heap grows
     @Nonnull
-    private final AtomicIntegerArray instanceTable;
+    private volatile AtomicIntegerArray instanceTable;
+    // every thread takes references from its own buffer
     @Nonnull
-    private final AtomicInteger pointer;
+    private final ThreadLocalSlotAllocator references;
 
     public ReferenceTableVolImpl(int size) {
-        pointer = new AtomicInteger();
+        this.references = new ThreadLocalSlotAllocator(size, HeapVolImpl.TLAB_SIZE);
         this.instanceTable = new AtomicIntegerArray(size);
         for (int i = 0; i < size; i++) {
             this.instanceTable.set(i, -1);
@@ -22,28 +23,39 @@ public class ReferenceTableVolImpl implements ReferenceTable {
     }
 
     public int getObjectReference(int objectIndex) {
-        while (instanceTable.get(pointer.get()) != -1) {
-            incrementPointer();
-        }
-        int objRef = pointer.get();
+        int objRef = references.allocate();
         instanceTable.set(objRef, objectIndex);
-        incrementPointer();
         return objRef;
     }
 
-    private void incrementPointer() {
-        pointer.set((pointer.get() + 1) % instanceTable.length());
-    }
-
     public int getInstanceObjectIndex(int objectRef) {
         return instanceTable.get(objectRef);
     }
 
     public void clearObjectIndex(int objRef) {
-        instanceTable.set(objRef, -1);
+        if (instanceTable.getAndSet(objRef, -1) != -1) {
+            references.free(objRef);
+        }
+    }
+
+    public void setInstanceObjectIndex(int objectRef, int objectIndex) {
+        instanceTable.set(objectRef, objectIndex);
     }
 
     public int size() {
         return instanceTable.length();
     }
+
+    public int getUsedSize() {
+        return references.getUsedSize();
+    }
+
+    public void resize(int size) {
+        references.resize(size);
+        AtomicIntegerArray table = new AtomicIntegerArray(size);
+        for (int i = 0; i < size; i++) {
+            table.set(i, i < instanceTable.length() ? instanceTable.get(i) : -1);
+        }
+        instanceTable = table;
+    }
 }
@@ -0,0 +1,108 @@
+package jvm.heap.concurrent;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out the slots of a table to many threads without locks. Every thread allocates from its own buffer:
+ * a chunk of slots it claimed with a single CAS on the shared bump pointer and a stack of the slots it freed.
+ * A thread that frees more slots than fit in its buffer passes a chunk of them to the other threads.
+ * <p>
+ * The slots in the buffers of other threads can not be taken back, so the table never shrinks, and a thread
+ * can run out of slots while a few of them are still free in the buffers of the others.
+ */
+public final class ThreadLocalSlotAllocator {
+
+    private final int chunkSize;
+    // the slots from the bump pointer on were never claimed
+    @Nonnull
+    private final AtomicInteger bumpPointer = new AtomicInteger();
+    @Nonnull
+    private final ConcurrentLinkedQueue<int[]> freeChunks = new ConcurrentLinkedQueue<>();
+    @Nonnull
+    private final ThreadLocal<Buffer> buffers;
+    private volatile int size;
+
+    public ThreadLocalSlotAllocator(int size, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunk size must be positive");
+        }
+        this.size = size;
+        this.chunkSize = chunkSize;
+        this.buffers = ThreadLocal.withInitial(() -> new Buffer(chunkSize));
+    }
+
+    public int allocate() {
+        Buffer buffer = buffers.get();
+        if (buffer.freeSlotCount == 0 && buffer.next == buffer.end) {
+            refill(buffer);
+        }
+        return buffer.freeSlotCount > 0 ? buffer.freeSlots[--buffer.freeSlotCount] : buffer.next++;
+    }
+
+    public void free(int slot) {
+        Buffer buffer = buffers.get();
+        if (buffer.freeSlotCount == buffer.freeSlots.length) {
+            // the slots at the bottom of the stack were freed first, they go to the other threads
+            int[] chunk = new int[chunkSize];
+            System.arraycopy(buffer.freeSlots, 0, chunk, 0, chunkSize);
+            System.arraycopy(buffer.freeSlots, chunkSize, buffer.freeSlots, 0, buffer.freeSlotCount - chunkSize);
+            buffer.freeSlotCount -= chunkSize;
+            freeChunks.add(chunk);
+        }
+        buffer.freeSlots[buffer.freeSlotCount++] = slot;
+    }
+
+    /**
+     * Returns the size of the table, the slots that are held by the buffers of the threads are not known.
+     */
+    public int getUsedSize() {
+        return size;
+    }
+
+    /**
+     * Adds slots to the table, the buffers of the threads claim them after the ones that were never used.
+     */
+    public void resize(int size) {
+        if (size < this.size) {
+            throw new IllegalArgumentException("slots can not be removed");
+        }
+        this.size = size;
+    }
+
+    private void refill(@Nonnull Buffer buffer) {
+        int[] chunk = freeChunks.poll();
+        if (chunk != null) {
+            System.arraycopy(chunk, 0, buffer.freeSlots, 0, chunk.length);
+            buffer.freeSlotCount = chunk.length;
+            return;
+        }
+        while (true) {
+            int start = bumpPointer.get();
+            int end = Math.min(start + chunkSize, size);
+            if (start >= end) {
+                throw new IllegalStateException("no free slots");
+            }
+            if (bumpPointer.compareAndSet(start, end)) {
+                buffer.next = start;
+                buffer.end = end;
+                return;
+            }
+        }
+    }
+
+    private static final class Buffer {
+        // the claimed slots from next to end were never used
+        int next;
+        int end;
+        @Nonnull
+        final int[] freeSlots;
+        int freeSlotCount;
+
+        Buffer(int chunkSize) {
+            this.freeSlots = new int[chunkSize * 2];
+        }
+    }
+
+}
@@ -0,0 +1,305 @@
+package jvm.heap.sequential;
+
+import jvm.JVMType;
+import jvm.garbage_collector.GarbageCollector;
+import jvm.heap.AbstractHeap;
+import jvm.heap.HeapSizingPolicy;
+import jvm.heap.api.InstanceKlass;
+import jvm.heap.api.InstanceObject;
+import jvm.heap.api.ReferenceTable;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * Keeps all objects and arrays in one {@code long[]} arena instead of an {@link InstanceObject} with its own
+ * values and field map per object. The index of an object is the offset of its record: a header with the number
+ * of values and the shape of the object, then the values. A shape holds what the objects of a klass or the arrays
+ * of a type have in common: the klass index, the array and value types and the indexes of the fields.
+ * <p>
+ * {@link #getInstanceObject(int)} returns an {@link ArenaObject} that reads and writes the values in the arena.
+ * The records of removed objects are reused by the objects with the same number of values, the arena grows when
+ * none of them fits.
+ */
+public class ArenaHeapImpl extends AbstractHeap {
+
+    private static final int FREE = -1;
+    private static final int VALUES_PER_OBJECT = 4;
+
+    @Nonnull
+    private InstanceKlass[] instanceKlasses;
+    @Nonnull
+    private final List<Shape> shapes = new ArrayList<>();
+    @Nonnull
+    private final Map<Integer, Integer> shapeByKlassIndex = new HashMap<>();
+    @Nonnull
+    private final Map<String, Integer> shapeByArrayType = new HashMap<>();
+    // number of values -> offset of the first free record, the header of a free record holds the offset of the next one
+    @Nonnull
+    private final Map<Integer, Integer> freeRecords = new HashMap<>();
+    @Nonnull
+    private long[] arena;
+    // the arena from the top on was never used
+    private int top;
+    private int capacity;
+    private int klassIndex;
+    private int instanceObjectSize;
+
+    public ArenaHeapImpl(@Nonnull GarbageCollector collector, int instancesSize, int klassesSize) {
+        this(collector, HeapSizingPolicy.fixed(instancesSize), klassesSize);
+    }
+
+    public ArenaHeapImpl(@Nonnull GarbageCollector collector, @Nonnull HeapSizingPolicy sizingPolicy, int klassesSize) {
+        super(collector, sizingPolicy, false);
+        this.instanceKlasses = new InstanceKlass[klassesSize];
+        this.arena = new long[sizingPolicy.getInitialSize() * VALUES_PER_OBJECT];
+        this.capacity = sizingPolicy.getInitialSize();
+    }
+
+    @Override
+    public int getInstanceObjectCapacity() {
+        return capacity;
+    }
+
+    @Nonnull
+    @Override
+    protected InstanceObject getInstanceObjectInternal(int objectIndex) {
+        long header = arena[objectIndex];
+        return new ArenaObject(this, objectIndex + 1, getLength(header), shapes.get(getShapeIndex(header)));
+    }
+
+    @Override
+    public int getInstanceKlassSize() {
+        return klassIndex;
+    }
+
+    @Override
+    protected int addInstanceObjectInternal(@Nonnull InstanceObject object) {
+        incrementInstanceObjectSize();
+        return addRecord(object);
+    }
+
+    /**
+     * Writes the values of the object over the record, the object has to have as many values as the record.
+     */
+    @Override
+    protected void setInstanceObjectInternal(int objectIndex, @Nonnull InstanceObject object) {
+        if (getLength(arena[objectIndex]) != object.size()) {
+            throw new IllegalStateException("the record of the object can not be resized");
+        }
+        setRecord(objectIndex, object);
+    }
+
+    /**
+     * The objects of the arena are views of its records, the records of removed objects are reused already.
+     */
+    @Override
+    public void enableObjectRecycling(int objectsPerKlass) {
+        throw new UnsupportedOperationException("the arena heap can not recycle its objects");
+    }
+
+    /**
+     * The values of all objects are copied into the arena.
+     */
+    @Override
+    public void enableCompactObjects() {
+        throw new UnsupportedOperationException("the arena heap keeps the values of its objects in the arena");
+    }
+
+    /**
+     * The objects of the arena are views of its records, the engine keeps them while it allocates.
+     */
+    @Override
+    public int[] compactInstanceObjects() {
+        throw new UnsupportedOperationException("the records of the arena heap can not be moved");
+    }
+
+    @Override
+    protected boolean slideInstanceObjects(@Nonnull int[] newIndexes) {
+        throw new UnsupportedOperationException("the records of the arena heap can not be moved");
+    }
+
+    /**
+     * Moves the object to a new record, the static fields of a klass are added to the object of its parents.
+     */
+    @Override
+    public int changeObject(int objectRef, @Nonnull InstanceObject object) {
+        if (objectRef == -1) {
+            return super.changeObject(objectRef, object);
+        }
+        // the records move, so the arena heap always has a reference table
+        ReferenceTable refTable = Objects.requireNonNull(getReferenceTable());
+        clearInstanceObject(refTable.getInstanceObjectIndex(objectRef));
+        refTable.setInstanceObjectIndex(objectRef, addRecord(object));
+        return objectRef;
+    }
+
+    @Override
+    public void decrementInstanceObjectSize() {
+        instanceObjectSize--;
+        if (instanceObjectSize < 0) {
+            throw new RuntimeException("size of instance objects can not be negative");
+        }
+    }
+
+    @Override
+    public void clearInstanceObject(int objectIndex) {
+        long header = arena[objectIndex];
+        if (getShapeIndex(header) != FREE) {
+            int length = getLength(header);
+            Integer next = freeRecords.get(length);
+            arena[objectIndex] = getHeader(next != null ? next : FREE, FREE);
+            freeRecords.put(length, objectIndex);
+        }
+    }
+
+    /**
+     * The records are not numbered, so only the reference table limits the shrinking of the heap.
+     */
+    @Override
+    protected int getUsedSize() {
+        return 0;
+    }
+
+    @Override
+    protected void resizeInstanceObjects(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public int setInstanceKlass(@Nonnull InstanceKlass klass) {
+        if (klassIndex == instanceKlasses.length) {
+            instanceKlasses = Arrays.copyOf(instanceKlasses, Math.max(1, klassIndex * 2));
+        }
+        instanceKlasses[klassIndex] = klass;
+        return klassIndex++;
+    }
+
+    @Nonnull
+    @Override
+    public InstanceKlass getInstanceKlass(int instKlassIndex) {
+        return instanceKlasses[instKlassIndex];
+    }
+
+    @Override
+    public int getInstanceObjectSize() {
+        return instanceObjectSize;
+    }
+
+    /**
+     * Returns the number of elements of the arena taken by the records, the free ones included.
+     */
+    public int getArenaSize() {
+        return top;
+    }
+
+    long getArenaValue(int address) {
+        return arena[address];
+    }
+
+    void setArenaValue(int address, long value) {
+        arena[address] = value;
+    }
+
+    @Nonnull
+    long[] copyArenaValues(int address, int length) {
+        return Arrays.copyOfRange(arena, address, address + length);
+    }
+
+    private int addRecord(@Nonnull InstanceObject object) {
+        int objectIndex = allocateRecord(object.size());
+        setRecord(objectIndex, object);
+        return objectIndex;
+    }
+
+    private void setRecord(int objectIndex, @Nonnull InstanceObject object) {
+        arena[objectIndex] = getHeader(object.size(), getShapeIndex(object));
+        System.arraycopy(object.getFieldValues(), 0, arena, objectIndex + 1, object.size());
+    }
+
+    private int allocateRecord(int length) {
+        Integer free = freeRecords.get(length);
+        if (free != null) {
+            int next = getLength(arena[free]);
+            if (next == FREE) {
+                freeRecords.remove(length);
+            } else {
+                freeRecords.put(length, next);
+            }
+            return free;
+        }
+        if (top + length + 1 > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, top + length + 1));
+        }
+        int objectIndex = top;
+        top += length + 1;
+        return objectIndex;
+    }
+
+    private int getShapeIndex(@Nonnull InstanceObject object) {
+        if (object.isArray()) {
+            String arrayType = object.getArrayType() + ' ' + object.getValueType() + ' ' + object.getKlassIndex();
+            Integer shapeIndex = shapeByArrayType.get(arrayType);
+            if (shapeIndex == null) {
+                shapeIndex = addShape(object);
+                shapeByArrayType.put(arrayType, shapeIndex);
+            }
+            return shapeIndex;
+        } else if (object.getKlassIndex() != -1) {
+            Integer shapeIndex = shapeByKlassIndex.get(object.getKlassIndex());
+            if (shapeIndex == null) {
+                shapeIndex = addShape(object);
+                shapeByKlassIndex.put(object.getKlassIndex(), shapeIndex);
+            }
+            return shapeIndex;
+        }
+        // the object with the static fields of a chain of klasses has a shape of its own
+        return addShape(object);
+    }
+
+    private int addShape(@Nonnull InstanceObject object) {
+        shapes.add(new Shape(object));
+        return shapes.size() - 1;
+    }
+
+    private static long getHeader(int length, int shapeIndex) {
+        return (long) length << 32 | (shapeIndex & 0xffffffffL);
+    }
+
+    private static int getLength(long header) {
+        return (int) (header >> 32);
+    }
+
+    private static int getShapeIndex(long header) {
+        return (int) header;
+    }
+
+    private void incrementInstanceObjectSize() {
+        instanceObjectSize++;
+        checkCapacity();
+    }
+
+    static final class Shape {
+        final int klassIndex;
+        final boolean array;
+        @Nullable
+        final JVMType valueType;
+        @Nullable
+        final String arrayType;
+        @Nonnull
+        final Map<String, Integer> indexByFieldName;
+        // the elements of long and double arrays hold the whole 64-bit value without a type
+        final boolean rawValues;
+
+        private Shape(@Nonnull InstanceObject object) {
+            this.klassIndex = object.getKlassIndex();
+            this.array = object.isArray();
+            this.valueType = object.getValueType();
+            this.arrayType = object.getArrayType();
+            this.indexByFieldName = object.getIndexFieldNameMap();
+            this.rawValues = array && valueType != null && valueType.isWide();
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+package jvm.heap.sequential;
+
+import jvm.JVMType;
+import jvm.Utils;
+import jvm.heap.AbstractInstanceObject;
+import jvm.heap.api.InstanceKlass;
+import jvm.heap.api.InstanceObject;
+import jvm.lang.NullPointerExceptionJVM;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A view of the record of an object in the arena of an {@link ArenaHeapImpl}. A view is created on every access
+ * to the object and holds nothing but the position of the record and its shape.
+ */
+final class ArenaObject implements InstanceObject {
+
+    @Nonnull
+    private final ArenaHeapImpl heap;
+    // the offset of the first value in the arena
+    private final int address;
+    private final int size;
+    @Nonnull
+    private final ArenaHeapImpl.Shape shape;
+
+    ArenaObject(@Nonnull ArenaHeapImpl heap, int address, int size, @Nonnull ArenaHeapImpl.Shape shape) {
+        this.heap = heap;
+        this.address = address;
+        this.size = size;
+        this.shape = shape;
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, Integer> getIndexByFieldNameFromStaticContent(@Nonnull String klassName, @Nullable InstanceKlass parentKlass) {
+        return AbstractInstanceObject.getIndexByFieldNameFromStaticContent(shape.indexByFieldName, klassName, parentKlass);
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> getFieldNames() {
+        return Collections.unmodifiableSet(shape.indexByFieldName.keySet());
+    }
+
+    @Override
+    public int getFieldValuesSize() {
+        return size;
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, Integer> getIndexFieldNameMap() {
+        return shape.indexByFieldName;
+    }
+
+    /**
+     * Returns a copy of the values, they are changed through {@link #setValue(int, long)} only.
+     */
+    @Override
+    public long[] getFieldValues() {
+        return heap.copyArenaValues(address, size);
+    }
+
+    @Override
+    public boolean isArray() {
+        return shape.array;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void setValue(int index, long value) {
+        int valueAddress = getValueAddress(index);
+        if (!shape.rawValues) {
+            AbstractInstanceObject.checkValueTypes(heap.getArenaValue(valueAddress), value);
+        }
+        heap.setArenaValue(valueAddress, value);
+    }
+
+    @Override
+    public long getValue(int fieldIndex) {
+        return heap.getArenaValue(getValueAddress(fieldIndex));
+    }
+
+    @Override
+    public int getIndexByFieldName(@Nonnull String name) throws NullPointerExceptionJVM {
+        Integer result = shape.indexByFieldName.get(name);
+        if (result == null) {
+            throw new NullPointerExceptionJVM();
+        }
+        return result;
+    }
+
+    @Override
+    public int getKlassIndex() {
+        return shape.klassIndex;
+    }
+
+    @Nullable
+    @Override
+    public JVMType getValueType() {
+        return shape.valueType;
+    }
+
+    @Nullable
+    @Override
+    public String getArrayType() {
+        return shape.arrayType;
+    }
+
+    // the neighbouring records are in the same arena, so every index is checked
+    private int getValueAddress(int index) {
+        if (index < 0 || index >= size) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        return address + index;
+    }
+
+    @Override
+    public String toString() {
+        String type = shape.array ? "Array" : shape.klassIndex == -1 ? "Object | Fields : "
+                : heap.getInstanceKlass(shape.klassIndex).getName() + " | Fields : ";
+        if (shape.valueType == JVMType.C) {
+            return type + " | String : " + Utils.toStringFromCharArray(getFieldValues());
+        }
+        String fields = Utils.toString(getFieldValues(), size);
+        return (shape.array ? type + " | Values : " : type) + (fields.isEmpty() ? "absence" : fields);
+    }
+
+}
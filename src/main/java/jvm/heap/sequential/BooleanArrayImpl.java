@@ -0,0 +1,34 @@
+package jvm.heap.sequential;
+
+import jvm.heap.api.Heap;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A boolean array.
+ */
+public class BooleanArrayImpl extends PrimitiveArrayImpl {
+
+    @Nonnull
+    private final boolean[] values;
+
+    public BooleanArrayImpl(@Nonnull Heap heap, @Nonnull String arrayType, @Nonnull String valueType, int size, int klassIndex) {
+        super(heap, arrayType, valueType, klassIndex);
+        this.values = new boolean[size];
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public int getIntValue(int index) {
+        return values[index] ? 1 : 0;
+    }
+
+    @Override
+    public void setIntValue(int index, int value) {
+        values[index] = value != 0;
+    }
+
+}
@@ -0,0 +1,34 @@
+package jvm.heap.sequential;
+
+import jvm.heap.api.Heap;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A byte array.
+ */
+public class ByteArrayImpl extends PrimitiveArrayImpl {
+
+    @Nonnull
+    private final byte[] values;
+
+    public ByteArrayImpl(@Nonnull Heap heap, @Nonnull String arrayType, @Nonnull String valueType, int size, int klassIndex) {
+        super(heap, arrayType, valueType, klassIndex);
+        this.values = new byte[size];
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public int getIntValue(int index) {
+        return values[index];
+    }
+
+    @Override
+    public void setIntValue(int index, int value) {
+        values[index] = (byte) value;
+    }
+
+}
@@ -0,0 +1,34 @@
+package jvm.heap.sequential;
+
+import jvm.heap.api.Heap;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A char array, the strings of the virtual machine keep their characters in them.
+ */
+public class CharArrayImpl extends PrimitiveArrayImpl {
+
+    @Nonnull
+    private final char[] values;
+
+    public CharArrayImpl(@Nonnull Heap heap, @Nonnull String arrayType, @Nonnull String valueType, int size, int klassIndex) {
+        super(heap, arrayType, valueType, klassIndex);
+        this.values = new char[size];
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public int getIntValue(int index) {
+        return values[index];
+    }
+
+    @Override
+    public void setIntValue(int index, int value) {
+        values[index] = (char) value;
+    }
+
+}
@@ -0,0 +1,87 @@
+package jvm.heap.sequential;
+
+import jvm.heap.AbstractInstanceObject;
+import jvm.heap.KlassLayout;
+import jvm.heap.api.Heap;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An instance of a klass without long and double fields that keeps its values in an {@code int[]}. The types of
+ * the values are the default values of the layout of the klass, a value gets the type of its field when it is
+ * read by {@link #getValue(int)}.
+ */
+public class CompactInstanceObjectImpl extends AbstractInstanceObject {
+
+    @Nonnull
+    private final KlassLayout layout;
+    @Nonnull
+    private final int[] values;
+
+    public CompactInstanceObjectImpl(@Nonnull Heap heap, @Nonnull KlassLayout layout, int klassIndex) {
+        super(null, heap, klassIndex);
+        if (!layout.isCompact()) {
+            throw new IllegalArgumentException("the layout has long or double fields");
+        }
+        this.layout = layout;
+        this.values = new int[layout.size()];
+    }
+
+    @Nonnull
+    public Set<String> getFieldNames() {
+        return Collections.unmodifiableSet(layout.getIndexByFieldName().keySet());
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * Returns a copy of the values with their types.
+     */
+    public long[] getFieldValues() {
+        long[] result = new long[values.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = getValue(i);
+        }
+        return result;
+    }
+
+    public void setValue(int index, long value) {
+        checkType(layout.getDefaultValue(index), value);
+        values[index] = (int) value;
+    }
+
+    public long getValue(int fieldIndex) {
+        return layout.getDefaultValue(fieldIndex) ^ values[fieldIndex];
+    }
+
+    @Override
+    public int getIntValue(int index) {
+        return values[index];
+    }
+
+    @Override
+    public void setIntValue(int index, int value) {
+        values[index] = value;
+    }
+
+    @Override
+    public void resetValues(@Nonnull KlassLayout layout) {
+        Arrays.fill(values, 0);
+    }
+
+    @Nonnull
+    public Map<String, Integer> getIndexFieldNameMap() {
+        return layout.getIndexByFieldName();
+    }
+
+    public int getFieldValuesSize() {
+        return values.length;
+    }
+
+}
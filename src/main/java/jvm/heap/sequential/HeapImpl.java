@@ -2,25 +2,43 @@ package jvm.heap.sequential;
 
 import jvm.garbage_collector.GarbageCollector;
 import jvm.heap.AbstractHeap;
+import jvm.heap.HeapSizingPolicy;
+import jvm.heap.SlotAllocator;
 import jvm.heap.api.InstanceKlass;
 import jvm.heap.api.InstanceObject;
-import jvm.lang.OutOfMemoryErrorJVM;
 
 import javax.annotation.Nonnull;
+import java.util.Arrays;
 
 public class HeapImpl extends AbstractHeap {
     @Nonnull
-    private final InstanceObject[] instanceObjects;
+    private InstanceObject[] instanceObjects;
     @Nonnull
-    private final InstanceKlass[] instanceKlasses;
+    private InstanceKlass[] instanceKlasses;
+    @Nonnull
+    private final SlotAllocator objectSlots;
     private int klassIndex;
     private int instanceObjectSize;
-    private int objectIndex;
 
     public HeapImpl(@Nonnull GarbageCollector collector, int instancesSize, int klassesSize) {
-        super(collector, instancesSize, false);
-        this.instanceObjects = new InstanceObject[instancesSize];
+        this(collector, HeapSizingPolicy.fixed(instancesSize), klassesSize);
+    }
+
+    public HeapImpl(@Nonnull GarbageCollector collector, @Nonnull HeapSizingPolicy sizingPolicy, int klassesSize) {
+        this(collector, sizingPolicy, klassesSize, false);
+    }
+
+    /**
+     * @param directHandles use the slots of the objects as their references, without a reference table
+     */
+    public HeapImpl(@Nonnull GarbageCollector collector,
+                    @Nonnull HeapSizingPolicy sizingPolicy,
+                    int klassesSize,
+                    boolean directHandles) {
+        super(collector, sizingPolicy, false, directHandles);
+        this.instanceObjects = new InstanceObject[sizingPolicy.getInitialSize()];
         this.instanceKlasses = new InstanceKlass[klassesSize];
+        this.objectSlots = new SlotAllocator(sizingPolicy.getInitialSize());
     }
 
     @Override
@@ -42,11 +60,7 @@ public class HeapImpl extends AbstractHeap {
     @Override
     public int addInstanceObjectInternal(@Nonnull InstanceObject object) {
         incrementInstanceObjectSize();
-        while (instanceObjects[objectIndex] != null) {
-            incrementObjectIndex();
-        }
-        int index = objectIndex;
-        incrementObjectIndex();
+        int index = objectSlots.allocate();
         instanceObjects[index] = object;
         return index;
     }
@@ -66,11 +80,50 @@ public class HeapImpl extends AbstractHeap {
 
     @Override
     public void clearInstanceObject(int objectIndex) {
-        instanceObjects[objectIndex] = null;
+        if (instanceObjects[objectIndex] != null) {
+            instanceObjects[objectIndex] = null;
+            objectSlots.free(objectIndex);
+        }
+    }
+
+    @Override
+    protected int getUsedSize() {
+        return objectSlots.getUsedSize();
+    }
+
+    @Override
+    protected void resizeInstanceObjects(int capacity) {
+        objectSlots.resize(capacity);
+        instanceObjects = Arrays.copyOf(instanceObjects, capacity);
+    }
+
+    @Override
+    protected boolean slideInstanceObjects(@Nonnull int[] newIndexes) {
+        if (!objectSlots.hasFreedSlots()) {
+            return false;
+        }
+        int top = 0;
+        for (int objectIndex = 0; objectIndex < instanceObjects.length; objectIndex++) {
+            InstanceObject object = instanceObjects[objectIndex];
+            if (object != null) {
+                if (objectIndex != top) {
+                    instanceObjects[top] = object;
+                    instanceObjects[objectIndex] = null;
+                }
+                newIndexes[objectIndex] = top++;
+            } else {
+                newIndexes[objectIndex] = -1;
+            }
+        }
+        objectSlots.reset(top);
+        return true;
     }
 
     @Override
     public int setInstanceKlass(@Nonnull InstanceKlass klass) {
+        if (klassIndex == instanceKlasses.length) {
+            instanceKlasses = Arrays.copyOf(instanceKlasses, Math.max(1, klassIndex * 2));
+        }
         instanceKlasses[klassIndex] = klass;
         return klassIndex++;
     }
@@ -86,26 +139,9 @@ public class HeapImpl extends AbstractHeap {
         return instanceObjectSize;
     }
 
-    private void incrementObjectIndex() {
-        objectIndex = (objectIndex + 1) % instanceObjects.length;
-    }
-
     private void incrementInstanceObjectSize() {
         instanceObjectSize++;
-        if (collector.isInProgress()) {
-            checkCapacity();
-        } else {
-            if (instanceObjectSize > instanceObjects.length / 10 * 7) {
-                collector.run();
-                checkCapacity();
-            }
-        }
-    }
-
-    private void checkCapacity() {
-        if (instanceObjectSize >= instanceObjects.length) {
-            throw new OutOfMemoryErrorJVM("Java heap space");
-        }
+        checkCapacity();
     }
 
 }
@@ -1,5 +1,6 @@
 package jvm.heap.sequential;
 
+import jvm.heap.KlassLayout;
 import jvm.heap.api.InstanceKlass;
 import jvm.parser.Klass;
 
@@ -11,7 +12,7 @@ import static java.util.Objects.requireNonNull;
 
 public class InstanceKlassImpl implements InstanceKlass {
 
-    private final int objectReference;
+    private int objectReference;
     @Nonnull
     private final Map<String, Integer> indexByFieldName; //fields
     @Nullable
@@ -21,6 +22,9 @@ public class InstanceKlassImpl implements InstanceKlass {
     @Nonnull
     private final Map<String, Integer> indexByVirtualMethodName;
 
+    @Nonnull
+    private KlassLayout layout = KlassLayout.EMPTY;
+
     @Nonnull
     private final Klass cpKlass;
     @Nonnull
@@ -70,6 +74,10 @@ public class InstanceKlassImpl implements InstanceKlass {
         return objectReference;
     }
 
+    public void setObjectRef(int objectRef) {
+        this.objectReference = objectRef;
+    }
+
     @Nonnull
     public Klass getCpKlass() {
         return cpKlass;
@@ -95,6 +103,15 @@ public class InstanceKlassImpl implements InstanceKlass {
         return indexByVirtualMethodName.get(methodName);
     }
 
+    @Nonnull
+    public KlassLayout getLayout() {
+        return layout;
+    }
+
+    public void setLayout(@Nonnull KlassLayout layout) {
+        this.layout = layout;
+    }
+
     @Override
     public String toString() {
         return name;
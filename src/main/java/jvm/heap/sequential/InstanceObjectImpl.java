@@ -2,6 +2,7 @@ package jvm.heap.sequential;
 
 import jvm.JVMType;
 import jvm.heap.AbstractInstanceObject;
+import jvm.heap.KlassLayout;
 import jvm.heap.api.Heap;
 import jvm.heap.api.InstanceObject;
 
@@ -13,55 +14,46 @@ public class InstanceObjectImpl extends AbstractInstanceObject {
 
     @Nonnull
     private final long[] fieldValues;
+    // unmodifiable, the instances of a klass share the map of its layout
     @Nonnull
     private final Map<String, Integer> indexByFieldName;
 
     public InstanceObjectImpl(@Nullable InstanceObject objectFromStaticContent,
-                              @Nullable String staticContentKlassName,
+                              @Nonnull String staticContentKlassName,
                               @Nonnull Heap heap,
                               @Nonnull List<String> fields,
                               int klassIndex) {
         super(staticContentKlassName, heap, klassIndex);
-        if (staticContentKlassName == null) {
-            this.fieldValues = new long[fields.size()];
-            this.indexByFieldName = new HashMap<>();
-            for (int fieldIndex = 0; fieldIndex < fieldValues.length; fieldIndex++) {
-                String field = fields.get(fieldIndex);
-                setDefaultValue(fieldIndex, getValueType(field));
-                indexByFieldName.put(field, fieldIndex);
-            }
-        } else {
-            // a chain of inherited classes for storing data in static fields contain a single InstanceObject
-            this.indexByFieldName = new HashMap<>(objectFromStaticContent != null ?
-                    objectFromStaticContent.getIndexFieldNameMap() : Collections.emptyMap());
-            int count = fields.size();
-            this.fieldValues = new long[objectFromStaticContent != null ?
-                    objectFromStaticContent.getFieldValuesSize() + count : fields.size()];
-            if (objectFromStaticContent != null) {
-                System.arraycopy(objectFromStaticContent.getFieldValues(), 0,
-                        this.fieldValues, 0,
-                        objectFromStaticContent.getFieldValuesSize());
-            }
-            for (String newField : fields) {
-                int index = fieldValues.length - count;
-                indexByFieldName.put(staticContentKlassName + "." + newField, index);
-                setDefaultValue(index, getValueType(newField));
-                count--;
-            }
+        // a chain of inherited classes for storing data in static fields contain a single InstanceObject
+        Map<String, Integer> indexByFieldName = new HashMap<>(objectFromStaticContent != null ?
+                objectFromStaticContent.getIndexFieldNameMap() : Collections.emptyMap());
+        int inherited = objectFromStaticContent != null ? objectFromStaticContent.getFieldValuesSize() : 0;
+        this.fieldValues = new long[inherited + countFieldValues(fields)];
+        if (objectFromStaticContent != null) {
+            System.arraycopy(objectFromStaticContent.getFieldValues(), 0,
+                    this.fieldValues, 0,
+                    inherited);
         }
+        setDefaultValues(indexByFieldName, fields, inherited, staticContentKlassName + ".");
+        this.indexByFieldName = Collections.unmodifiableMap(indexByFieldName);
     }
 
     public InstanceObjectImpl(@Nonnull Heap heap, @Nonnull String arrayType, @Nonnull String valueType, int size, int klassIndex) {
         super(heap, arrayType, valueType, klassIndex);
         this.fieldValues = new long[size];
-        this.indexByFieldName = new HashMap<>();
-        for (int index = 0; index < size; index++) {
-            setDefaultValue(index, getValueType(valueType));
+        this.indexByFieldName = Collections.emptyMap();
+        JVMType type = getValueType(valueType);
+        if (!type.isWide()) {
+            for (int index = 0; index < size; index++) {
+                setDefaultValue(index, type);
+            }
         }
     }
 
-    public InstanceObjectImpl(@Nonnull Heap heap, @Nonnull List<String> fields, int klassIndex) {
-        this(null, null, heap, fields, klassIndex);
+    public InstanceObjectImpl(@Nonnull Heap heap, @Nonnull KlassLayout layout, int klassIndex) {
+        super(null, heap, klassIndex);
+        this.fieldValues = layout.newValues();
+        this.indexByFieldName = layout.getIndexByFieldName();
     }
 
     @Nonnull
@@ -86,15 +78,35 @@ public class InstanceObjectImpl extends AbstractInstanceObject {
         return fieldValues[fieldIndex];
     }
 
+    @Override
+    public void resetValues(@Nonnull KlassLayout layout) {
+        layout.copyDefaultValues(fieldValues);
+    }
+
     @Nonnull
     public Map<String, Integer> getIndexFieldNameMap() {
-        return Collections.unmodifiableMap(indexByFieldName);
+        return indexByFieldName;
     }
 
     public int getFieldValuesSize() {
         return fieldValues.length;
     }
 
+    /**
+     * Lays out the fields from the index on, a long or double field takes two values that hold its halves.
+     */
+    private void setDefaultValues(@Nonnull Map<String, Integer> indexByFieldName,
+                                  @Nonnull List<String> fields, int index, @Nonnull String prefix) {
+        for (String field : fields) {
+            JVMType type = getValueType(field);
+            indexByFieldName.put(prefix + field, index);
+            setDefaultValue(index++, type);
+            if (type.isWide()) {
+                setDefaultValue(index++, type);
+            }
+        }
+    }
+
     private void setDefaultValue(int index, @Nonnull JVMType type) {
         fieldValues[index] = setValueType(type.ordinal());
     }
@@ -0,0 +1,34 @@
+package jvm.heap.sequential;
+
+import jvm.heap.api.Heap;
+
+import javax.annotation.Nonnull;
+
+/**
+ * An int, short or float array, a float element holds the bits of its value.
+ */
+public class IntArrayImpl extends PrimitiveArrayImpl {
+
+    @Nonnull
+    private final int[] values;
+
+    public IntArrayImpl(@Nonnull Heap heap, @Nonnull String arrayType, @Nonnull String valueType, int size, int klassIndex) {
+        super(heap, arrayType, valueType, klassIndex);
+        this.values = new int[size];
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public int getIntValue(int index) {
+        return values[index];
+    }
+
+    @Override
+    public void setIntValue(int index, int value) {
+        values[index] = value;
+    }
+
+}
@@ -0,0 +1,67 @@
+package jvm.heap.sequential;
+
+import jvm.heap.AbstractInstanceObject;
+import jvm.heap.api.Heap;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An array of int, short, float, char, byte or boolean values kept in a host array of the element type instead of
+ * a {@code long[]} of tagged values. The type of the elements is the type of the array: the elements are stored
+ * without a tag and get the tag of the array when they are read by {@link #getValue(int)}.
+ */
+public abstract class PrimitiveArrayImpl extends AbstractInstanceObject {
+
+    private final long typeTag;
+
+    protected PrimitiveArrayImpl(@Nonnull Heap heap, @Nonnull String arrayType, @Nonnull String valueType, int klassIndex) {
+        super(heap, arrayType, valueType, klassIndex);
+        this.typeTag = setValueType(requireNonNull(getValueType()).ordinal());
+    }
+
+    @Nonnull
+    public Set<String> getFieldNames() {
+        return Collections.emptySet();
+    }
+
+    @Nonnull
+    public Map<String, Integer> getIndexFieldNameMap() {
+        return Collections.emptyMap();
+    }
+
+    public int getFieldValuesSize() {
+        return size();
+    }
+
+    /**
+     * Returns a copy of the elements with their tags.
+     */
+    public long[] getFieldValues() {
+        long[] values = new long[size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = getValue(i);
+        }
+        return values;
+    }
+
+    public void setValue(int index, long value) {
+        checkType(typeTag, value);
+        setIntValue(index, (int) value);
+    }
+
+    public long getValue(int fieldIndex) {
+        return typeTag ^ getIntValue(fieldIndex);
+    }
+
+    @Override
+    public abstract int getIntValue(int index);
+
+    @Override
+    public abstract void setIntValue(int index, int value);
+
+}
@@ -1,43 +1,57 @@
 package jvm.heap.sequential;
 
+import jvm.heap.SlotAllocator;
 import jvm.heap.api.ReferenceTable;
 
 import java.util.Arrays;
 
 public class ReferenceTableImpl implements ReferenceTable {
 
-    private final int[] instanceTable;
-    private int pointer;
+    private int[] instanceTable;
+    private final SlotAllocator references;
 
     public ReferenceTableImpl(int size) {
         this.instanceTable = new int[size];
+        this.references = new SlotAllocator(size);
         Arrays.fill(instanceTable, -1);
     }
 
     public int getObjectReference(int objectIndex) {
-        while (instanceTable[pointer] != -1) {
-            incrementPointer();
-        }
-        int objRef = pointer;
+        int objRef = references.allocate();
         instanceTable[objRef] = objectIndex;
-        incrementPointer();
         return objRef;
     }
 
-    private void incrementPointer() {
-        pointer = (pointer + 1) % instanceTable.length;
-    }
-
     public int getInstanceObjectIndex(int objectRef) {
         return instanceTable[objectRef];
     }
 
     public void clearObjectIndex(int objRef) {
-        instanceTable[objRef] = -1;
+        if (instanceTable[objRef] != -1) {
+            instanceTable[objRef] = -1;
+            references.free(objRef);
+        }
+    }
+
+    public void setInstanceObjectIndex(int objectRef, int objectIndex) {
+        instanceTable[objectRef] = objectIndex;
     }
 
     public int size() {
         return instanceTable.length;
     }
 
+    public int getUsedSize() {
+        return references.getUsedSize();
+    }
+
+    public void resize(int size) {
+        references.resize(size);
+        int length = instanceTable.length;
+        instanceTable = Arrays.copyOf(instanceTable, size);
+        if (size > length) {
+            Arrays.fill(instanceTable, length, size, -1);
+        }
+    }
+
 }
@@ -0,0 +1,8 @@
+package jvm.lang;
+
+public class StackOverflowErrorJVM extends VirtualMachineErrorJVM {
+
+    public StackOverflowErrorJVM(String message) {
+        super(message);
+    }
+}
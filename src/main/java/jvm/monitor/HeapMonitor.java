@@ -4,7 +4,6 @@ import jvm.JVMType;
 import jvm.heap.api.Heap;
 import jvm.heap.api.InstanceKlass;
 import jvm.heap.api.InstanceObject;
-import jvm.heap.api.ReferenceTable;
 import processing.core.PApplet;
 
 import javax.annotation.Nonnull;
@@ -96,9 +95,8 @@ public class HeapMonitor {
 
     private void countInstanceObjectsAndInnerArrays(@Nonnull Map<Integer, Integer> objectCounts) {
         Map<Integer, Integer> innerArrays = new HashMap<>(); // object reference -> instance klass index
-        ReferenceTable refTable = heap.getReferenceTable();
-        for (int i = 0; i < refTable.size(); i++) {
-            int objectIndex = refTable.getInstanceObjectIndex(i);
+        for (int i = 0; i < heap.getInstanceObjectCapacity(); i++) {
+            int objectIndex = heap.getObjectIndex(i);
             InstanceObject object = objectIndex != -1 ? heap.getInstanceObjectByObjInd(objectIndex) : null;
             if (object != null && objectCounts.containsKey(object.getKlassIndex())) {
                 for (String fieldName : object.getFieldNames()) {
@@ -163,7 +161,7 @@ public class HeapMonitor {
         ArrayDeque<Integer> queue = new ArrayDeque<>(innerArrays.keySet());
         while (!queue.isEmpty()) {
             int objRef = queue.pop();
-            int objIndex = heap.getReferenceTable().getInstanceObjectIndex(objRef);
+            int objIndex = heap.getObjectIndex(objRef);
             InstanceObject innerObj = objIndex != -1 ? heap.getInstanceObjectByObjInd(objIndex) : null;
             if (innerObj != null && innerObj.isArray()) {
                 objectCounts.computeIfPresent(innerArrays.get(objRef), (key, value) -> value + 1);
@@ -40,6 +40,9 @@ public final class KlassParser {
         parse();
         klass.setCPItems(items);
         for (ConstantPoolEntry cpe : items) {
+            if (cpe == null) {
+                continue;
+            }
             int classIndex, nameTypeIndex;
             String className, nameAndType;
             switch (cpe.getType()) {
@@ -121,13 +124,13 @@ public final class KlassParser {
                 case LONG: // Long: a signed 64-bit two's complement number in big-endian format (takes two slots in the constant pool table)
                     int i4 = read4Bytes();
                     int i5 = read4Bytes();
-                    long l = ((long) i4 << 32) + (long) i5;
+                    long l = ((long) i4 << 32) + (i5 & 0xffffffffL);
                     item = ConstantPoolEntry.of(i, tag, l);
                     break;
                 case DOUBLE: // Double: a 64-bit double-precision IEEE 754 floating-point number (takes two slots in the constant pool table)
                     i4 = read4Bytes();
                     i5 = read4Bytes();
-                    l = ((long) i4 << 32) + (long) i5;
+                    l = ((long) i4 << 32) + (i5 & 0xffffffffL);
                     item = ConstantPoolEntry.of(i, tag, Double.longBitsToDouble(l));
                     break;
                 case CLASS: // Class reference: an uint16 within the constant pool to a UTF-8 string containing the fully qualified class name
@@ -147,6 +150,9 @@ public final class KlassParser {
                     throw new RuntimeException(new ClassNotFoundException("Reached impossible Constant Pool Tag."));
             }
             items[i - 1] = item;
+            if (tag == ConstantPoolType.LONG || tag == ConstantPoolType.DOUBLE) {
+                i++; // the next slot is unusable
+            }
         }
     }
 
@@ -1,7 +1,10 @@
 package jvm.parser;
 
 
+import jvm.engine.NodeCode;
 import jvm.engine.Opcode;
+import jvm.engine.ReferenceMap;
+import jvm.engine.jit.CompiledMethod;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -23,6 +26,20 @@ public class Method {
     private int argSize = -1;
     private String mnemonics;
     private final List<DirectRef> directRefList;
+    @Nullable
+    private int[] threadedCode;
+    @Nullable
+    private NodeCode nodeCode;
+    private boolean verificationDone;
+    @Nullable
+    private byte[] verifiedArgumentTypes;
+    @Nullable
+    private ReferenceMap referenceMap;
+    private int invocationCount;
+    private int backEdgeCount;
+    @Nullable
+    private CompiledMethod compiledMethod;
+    private boolean compilable = true;
 
     public int getOperandSize() {
         return maxStack;
@@ -88,6 +105,13 @@ public class Method {
     public void setBytecode(byte[] bytecode) {
         this.bytecode = bytecode;
         this.mnemonics = getMnemonics(bytecode);
+        this.threadedCode = null;
+        this.nodeCode = null;
+        this.verificationDone = false;
+        this.verifiedArgumentTypes = null;
+        this.referenceMap = null;
+        this.compiledMethod = null;
+        this.compilable = true;
     }
 
     public String getClassName() {
@@ -128,18 +152,30 @@ public class Method {
             char c = chars[i];
             switch (c) {
                 case '(':
+                    break;
                 case '[':
+                    // an array of any type is a single reference
+                    while (chars[i + 1] == '[') {
+                        ++i;
+                    }
+                    if (chars[i + 1] != 'L') {
+                        ++i;
+                        argSize++;
+                    }
                     break;
                 case 'Z':
                 case 'B':
                 case 'S':
                 case 'C':
                 case 'I':
-                case 'J':
                 case 'F':
-                case 'D':
                     argSize++;
                     break;
+                case 'J':
+                case 'D':
+                    // long and double take two slots
+                    argSize += 2;
+                    break;
                 case 'L':
                     while (chars[i] != ';') {
                         ++i;
@@ -163,6 +199,86 @@ public class Method {
         return mnemonics;
     }
 
+    @Nullable
+    public int[] getThreadedCode() {
+        return threadedCode;
+    }
+
+    public void setThreadedCode(@Nullable int[] threadedCode) {
+        this.threadedCode = threadedCode;
+    }
+
+    @Nullable
+    public NodeCode getNodeCode() {
+        return nodeCode;
+    }
+
+    public void setNodeCode(@Nullable NodeCode nodeCode) {
+        this.nodeCode = nodeCode;
+    }
+
+    public boolean isVerificationDone() {
+        return verificationDone;
+    }
+
+    /**
+     * Returns the types the verified code expects in the argument slots, or null if the method is not verified.
+     */
+    @Nullable
+    public byte[] getVerifiedArgumentTypes() {
+        return verifiedArgumentTypes;
+    }
+
+    public void setVerifiedArgumentTypes(@Nullable byte[] verifiedArgumentTypes) {
+        this.verifiedArgumentTypes = verifiedArgumentTypes;
+        this.verificationDone = true;
+    }
+
+    /**
+     * Returns the stack map of the references of the method, or null if it was not computed.
+     */
+    @Nullable
+    public ReferenceMap getReferenceMap() {
+        return referenceMap;
+    }
+
+    public void setReferenceMap(@Nullable ReferenceMap referenceMap) {
+        this.referenceMap = referenceMap;
+    }
+
+    public int getInvocationCount() {
+        return invocationCount;
+    }
+
+    public void incrementInvocationCount() {
+        invocationCount++;
+    }
+
+    public int getBackEdgeCount() {
+        return backEdgeCount;
+    }
+
+    public void incrementBackEdgeCount() {
+        backEdgeCount++;
+    }
+
+    @Nullable
+    public CompiledMethod getCompiledMethod() {
+        return compiledMethod;
+    }
+
+    public void setCompiledMethod(@Nullable CompiledMethod compiledMethod) {
+        this.compiledMethod = compiledMethod;
+    }
+
+    public boolean isCompilable() {
+        return compilable;
+    }
+
+    public void setCompilable(boolean compilable) {
+        this.compilable = compilable;
+    }
+
     @Override
     public String toString() {
         return "Method{" + "className=" + className + ", nameAndType=" + nameAndType + ", bytecode=" + mnemonics + ", signature=" + signature + ", flags=" + flags + ", numParams=" + argSize + '}';
@@ -182,6 +298,8 @@ public class Method {
         private final int secondIndex;
         @Nonnull
         private final String str;
+        @Nullable
+        private InlineCache inlineCache;
 
         public DirectRef(int firstIndex, int secondIndex, @Nonnull String str) {
             this.firstIndex = firstIndex;
@@ -201,6 +319,58 @@ public class Method {
         public String getString() {
             return str;
         }
+
+        /**
+         * Returns the inline cache of the call site, it is created on the first virtual call through this reference.
+         */
+        @Nonnull
+        public InlineCache getInlineCache() {
+            if (inlineCache == null) {
+                inlineCache = new InlineCache();
+            }
+            return inlineCache;
+        }
+    }
+
+    /**
+     * Receiver klasses seen at a virtual call site and the methods they were dispatched to.
+     * A site that has seen more than {@link #SIZE} klasses is megamorphic: it keeps the first ones
+     * and the calls on other klasses are always resolved through the virtual table.
+     */
+    public static class InlineCache {
+        public static final int SIZE = 4;
+
+        private final int[] klassIndexes = new int[SIZE];
+        private final Method[] methods = new Method[SIZE];
+        private int size;
+        private boolean megamorphic;
+
+        @Nullable
+        public Method lookup(int klassIndex) {
+            for (int i = 0; i < size; i++) {
+                if (klassIndexes[i] == klassIndex) {
+                    return methods[i];
+                }
+            }
+            return null;
+        }
+
+        public void add(int klassIndex, @Nonnull Method method) {
+            if (size == SIZE) {
+                megamorphic = true;
+                return;
+            }
+            klassIndexes[size] = klassIndex;
+            methods[size++] = method;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public boolean isMegamorphic() {
+            return megamorphic;
+        }
     }
 
     public class DirectRefBuilder {
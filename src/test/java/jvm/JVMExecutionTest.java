@@ -3,11 +3,13 @@ package jvm;
 import jvm.heap.*;
 import jvm.heap.api.Heap;
 import jvm.heap.api.InstanceKlass;
+import jvm.examples.NumericExample;
 import jvm.heap.api.InstanceObject;
 import jvm.lang.ClassCastExceptionJVM;
 import jvm.lang.NullPointerExceptionJVM;
 import jvm.lang.OutOfMemoryErrorJVM;
 import jvm.lang.RuntimeExceptionJVM;
+import jvm.lang.StackOverflowErrorJVM;
 import jvm.parser.Method;
 import org.junit.Test;
 
@@ -24,6 +26,7 @@ public class JVMExecutionTest {
     public static final String ARRAY = "jvm/examples/ArrayExample";
     public static final String ALGORITHM = "jvm/examples/AlgorithmExample";
     public static final String SIMPLE_OBJECT = "jvm/examples/SimpleObject";
+    public static final String NUMERIC = "jvm/examples/NumericExample";
 
     @Test
     public void simpleStaticFieldsInstanceKlassTest() throws NoSuchFieldException, IllegalAccessException {
@@ -546,6 +549,46 @@ public class JVMExecutionTest {
         checkException(".checkOutOfMemoryError:()V", OutOfMemoryErrorJVM.class, "Should throw OutOfMemoryError");
     }
 
+    @Test
+    public void checkStackOverflowError() {
+        checkException(".checkStackOverflowError:()I", StackOverflowErrorJVM.class, "Should throw StackOverflowError");
+    }
+
+    @Test
+    public void checkDeepRecursion() {
+        // 1000 nested frames grow the stack past its first chunk
+        checkMethodInInstructionClass("sumRecursively:()I", 500500);
+    }
+
+    @Test
+    public void checkLongArithmetic() {
+        checkMethod(NUMERIC, "sumOfSquares:()J", NumericExample.sumOfSquares());
+        checkMethod(NUMERIC, "longOperations:()J", NumericExample.longOperations());
+    }
+
+    @Test
+    public void checkFloatingPointArithmetic() {
+        // double and float results are returned as their bits
+        checkMethod(NUMERIC, "doubleArithmetic:()D", Double.doubleToRawLongBits(NumericExample.doubleArithmetic()));
+        checkMethod(NUMERIC, "floatArithmetic:()F", Float.floatToRawIntBits(NumericExample.floatArithmetic()));
+    }
+
+    @Test
+    public void checkConversionsAndComparisons() {
+        checkMethod(NUMERIC, "conversions:()I", NumericExample.conversions());
+        checkMethod(NUMERIC, "compare:()I", NumericExample.compare());
+    }
+
+    @Test
+    public void checkPrimitiveArrays() {
+        checkMethod(NUMERIC, "arrays:()J", NumericExample.arrays());
+    }
+
+    @Test
+    public void checkWideFieldsAndArguments() {
+        checkMethod(NUMERIC, "fields:()J", NumericExample.fields());
+    }
+
     @Test
     public void checkINSTANCEOF() {
         // check INSTANCEOF
@@ -601,6 +644,12 @@ public class JVMExecutionTest {
     }
 
     private void checkException(@Nonnull String methodName, @Nonnull Class<? extends RuntimeExceptionJVM> klass, @Nonnull String message) {
+        checkException(methodName, klass, message, false);
+        checkException(methodName, klass, message, true);
+    }
+
+    private void checkException(@Nonnull String methodName, @Nonnull Class<? extends RuntimeExceptionJVM> klass,
+                                @Nonnull String message, boolean nodeExecution) {
         VirtualMachine virtualMachine = new VirtualMachine(500, 50, 10000, false);
         Heap heap = virtualMachine.getHeap();
         virtualMachine.getKlassLoader().loadKlass(INSTRUCTION);
@@ -608,6 +657,7 @@ public class JVMExecutionTest {
         int methodIndex = heap.getMethodRepo().getIndexByName(INSTRUCTION + methodName);
         Method method = heap.getMethodRepo().getMethod(methodIndex);
         virtualMachine.getEngine().setExceptionDebugMode(true);
+        virtualMachine.getEngine().setNodeExecution(nodeExecution);
         assertThrows(message, klass, () -> virtualMachine.getEngine().invoke(method));
     }
 
@@ -628,11 +678,17 @@ public class JVMExecutionTest {
     }
 
     private void checkMethod(@Nonnull String className, @Nonnull String methodName, long expected) {
+        checkMethod(className, methodName, expected, false);
+        checkMethod(className, methodName, expected, true);
+    }
+
+    private void checkMethod(@Nonnull String className, @Nonnull String methodName, long expected, boolean nodeExecution) {
         VirtualMachine virtualMachine = new VirtualMachine(500, 50, 10000, false);
         Heap heap = virtualMachine.getHeap();
         virtualMachine.getKlassLoader().loadKlass(className);
         int methodIndex = heap.getMethodRepo().getIndexByName(className + "." + methodName);
         Method method = heap.getMethodRepo().getMethod(methodIndex);
+        virtualMachine.getEngine().setNodeExecution(nodeExecution);
         long actual = virtualMachine.getEngine().invoke(method);
         assertEquals(expected, actual);
     }
@@ -49,12 +49,18 @@ public class PuzzlersTest {
     }
 
     public void checkMethod(@Nonnull String klass, @Nonnull String methodName, int expected) {
+        checkMethod(klass, methodName, expected, false);
+        checkMethod(klass, methodName, expected, true);
+    }
+
+    private void checkMethod(@Nonnull String klass, @Nonnull String methodName, int expected, boolean nodeExecution) {
         String className = path + klass;
         VirtualMachine virtualMachine = new VirtualMachine(500, 50, 10000, false);
         Heap heap = virtualMachine.getHeap();
         virtualMachine.getKlassLoader().loadKlass(className);
         int methodIndex = heap.getMethodRepo().getIndexByName(className + "." + methodName);
         Method method = heap.getMethodRepo().getMethod(methodIndex);
+        virtualMachine.getEngine().setNodeExecution(nodeExecution);
         long actual = virtualMachine.getEngine().invoke(method);
         assertEquals(expected, actual);
     }
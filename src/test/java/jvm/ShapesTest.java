@@ -23,7 +23,7 @@ public class ShapesTest {
     }
 
     private void checkMethod(@Nonnull String methodName, long expected) {
-        VirtualMachine virtualMachine = new VirtualMachine(10000, 50, 10000);
+        VirtualMachine virtualMachine = new VirtualMachine(10000, 50, 10000, true);
         virtualMachine.getKlassLoader().loadKlass(klass);
         Heap heap = virtualMachine.getHeap();
         virtualMachine.runHeapMonitor(new HashSet<>(Arrays.asList("java/lang/String", "java/lang/StringBuilder",
@@ -0,0 +1,120 @@
+package jvm;
+
+import jvm.engine.ExecutionEngine;
+import jvm.garbage_collector.CollectorKind;
+import jvm.heap.HeapKind;
+import jvm.heap.HeapSizingPolicy;
+import jvm.heap.api.Heap;
+import jvm.parser.Method;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the example methods on the virtual machines with other heaps and collectors, they must give the results of
+ * the sequential heap with the mark and sweep collector.
+ */
+@RunWith(Parameterized.class)
+public class VirtualMachineKindsTest {
+
+    private static final String[] KLASSES = {
+            "jvm/examples/InstructionExample",
+            "jvm/examples/ArrayExample",
+            "jvm/examples/AlgorithmExample",
+            "jvm/examples/NumericExample",
+            "jvm/examples/SimpleStatic",
+            "jvm/examples/ComplexStatic",
+            "jvm/examples/PolymorphicExample",
+            "jvm/examples/puzzlers/Puzzle47",
+            "jvm/examples/puzzlers/Puzzle49",
+            "jvm/examples/puzzlers/Puzzle52",
+            "jvm/examples/util/ArrayListExample",
+            "jvm/examples/util/HashMapExample",
+            "jvm/examples/util/HashSetExample",
+            "jvm/examples/lang/StringBuilderExample",
+            "jvm/examples/garbage_collector/MarkAndSweepExample"
+    };
+
+    // the results of the sequential heap with the mark and sweep collector by the names of the methods
+    private static final Map<String, String> EXPECTED = new HashMap<>();
+
+    private final Supplier<VirtualMachine> factory;
+
+    public VirtualMachineKindsTest(@Nonnull String name, @Nonnull Supplier<VirtualMachine> factory) {
+        this.factory = factory;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> kinds() {
+        return Arrays.<Object[]>asList(
+                kind("arena heap", () -> new VirtualMachine(HeapSizingPolicy.fixed(500), 50, 10000, HeapKind.ARENA)),
+                kind("direct handles", () -> new VirtualMachine(HeapSizingPolicy.fixed(500), 50, 10000,
+                        HeapKind.SEQUENTIAL, true, CollectorKind.MARK_AND_SWEEP)),
+                kind("compact objects", () -> {
+                    VirtualMachine virtualMachine = new VirtualMachine(500, 50, 10000, false);
+                    virtualMachine.getHeap().enableCompactObjects();
+                    return virtualMachine;
+                }),
+                kind("generational", () -> createVirtualMachine(HeapKind.SEQUENTIAL, CollectorKind.GENERATIONAL)),
+                kind("concurrent mark", () -> createVirtualMachine(HeapKind.MONITORED, CollectorKind.CONCURRENT_MARK)),
+                kind("parallel mark and sweep",
+                        () -> createVirtualMachine(HeapKind.SEQUENTIAL, CollectorKind.PARALLEL_MARK_AND_SWEEP)),
+                kind("mark compact", () -> createVirtualMachine(HeapKind.SEQUENTIAL, CollectorKind.MARK_COMPACT)),
+                kind("mark compact with direct handles", () -> new VirtualMachine(HeapSizingPolicy.fixed(500), 50, 10000,
+                        HeapKind.SEQUENTIAL, true, CollectorKind.MARK_COMPACT)));
+    }
+
+    @Test
+    public void examplesGiveTheSameResults() {
+        int count = 0;
+        for (String klass : KLASSES) {
+            VirtualMachine virtualMachine = new VirtualMachine(500, 50, 10000, false);
+            virtualMachine.getKlassLoader().loadKlass(klass);
+            for (Method method : virtualMachine.getHeap().getKlassLoader().getLoadedKlassByName(klass).getMethods()) {
+                String name = method.getNameAndType();
+                if (name.matches(".*:\\(\\)[IZJFD]") && !name.startsWith("<")) {
+                    String methodName = klass + "." + name;
+                    String expected = EXPECTED.computeIfAbsent(methodName,
+                            key -> run(new VirtualMachine(500, 50, 10000, false), klass, key));
+                    assertEquals(methodName, expected, run(factory.get(), klass, methodName));
+                    count++;
+                }
+            }
+        }
+        assertTrue(count > 100);
+    }
+
+    @Nonnull
+    private static Object[] kind(@Nonnull String name, @Nonnull Supplier<VirtualMachine> factory) {
+        return new Object[]{name, factory};
+    }
+
+    @Nonnull
+    private static VirtualMachine createVirtualMachine(@Nonnull HeapKind heapKind, @Nonnull CollectorKind collectorKind) {
+        return new VirtualMachine(HeapSizingPolicy.fixed(500), 50, 10000, heapKind, false, collectorKind);
+    }
+
+    @Nonnull
+    private static String run(@Nonnull VirtualMachine virtualMachine, @Nonnull String klass, @Nonnull String methodName) {
+        virtualMachine.getKlassLoader().loadKlass(klass);
+        ExecutionEngine engine = virtualMachine.getEngine();
+        engine.setExceptionDebugMode(true);
+        Heap heap = virtualMachine.getHeap();
+        try {
+            return String.valueOf(engine.invoke(heap.getMethodRepo().getMethod(heap.getMethodRepo().getIndexByName(methodName))));
+        } catch (RuntimeException e) {
+            return e.getClass().getName();
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+package jvm.engine;
+
+import com.sun.management.ThreadMXBean;
+import jvm.VirtualMachine;
+import jvm.heap.api.Heap;
+import jvm.parser.Method;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.lang.management.ManagementFactory;
+
+import static jvm.engine.Opcode.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class AllocationTest {
+
+    private static final int SHORT_LOOP = 1000;
+    private static final int LONG_LOOP = 20000;
+    private static final int INSTRUCTIONS_PER_ITERATION = 29;
+    private static final int INVOCATIONS = 20;
+    private static final String GARBAGE = "jvm/examples/garbage_collector/MarkAndSweepExample";
+
+    /*
+     * int[] array = new int[4]; int acc = 1000;
+     * for (int i = 0; i < iterations; i++) {
+     *     acc = ((acc + 1234) * 3 - 1000) % 7;
+     *     array[i & 3] = acc;
+     *     acc = acc ^ array[0] | 0x7fff;
+     * }
+     * return acc;
+     * The accumulator stays outside of the Integer cache range, so any boxing would allocate.
+     */
+    private static final byte[] LOOP_TEMPLATE = {
+            ICONST_4.b(), NEWARRAY.b(), (byte) 10, ASTORE_0.b(),
+            SIPUSH.b(), (byte) 0x03, (byte) 0xe8, ISTORE_2.b(),
+            ICONST_0.b(), ISTORE_1.b(),
+            ILOAD_1.b(), SIPUSH.b(), (byte) 0, (byte) 0, IF_ICMPGE.b(), (byte) 0, (byte) 40,
+            ILOAD_2.b(), SIPUSH.b(), (byte) 0x04, (byte) 0xd2, IADD.b(), ICONST_3.b(), IMUL.b(),
+            SIPUSH.b(), (byte) 0x03, (byte) 0xe8, ISUB.b(), BIPUSH.b(), (byte) 7, IREM.b(), ISTORE_2.b(),
+            ALOAD_0.b(), ILOAD_1.b(), ICONST_3.b(), IAND.b(), ILOAD_2.b(), IASTORE.b(),
+            ILOAD_2.b(), ALOAD_0.b(), ICONST_0.b(), IALOAD.b(), IXOR.b(),
+            SIPUSH.b(), (byte) 0x7f, (byte) 0xff, IOR.b(), ISTORE_2.b(),
+            IINC.b(), (byte) 1, (byte) 1,
+            GOTO.b(), (byte) 0xff, (byte) 0xd7,
+            ILOAD_2.b(), IRETURN.b()};
+
+    @Test
+    public void switchDispatchDoesNotAllocate() {
+        assertNoAllocationPerInstruction(false);
+    }
+
+    @Test
+    public void threadedDispatchDoesNotAllocate() {
+        assertNoAllocationPerInstruction(true);
+    }
+
+    @Test
+    public void sameResultInBothModes() {
+        assertEquals(invoke(createEngine(false), SHORT_LOOP), invoke(createEngine(true), SHORT_LOOP));
+    }
+
+    @Test
+    public void quickNewAllocatesTheResolvedKlass() {
+        for (boolean threadedDispatch : new boolean[]{false, true}) {
+            VirtualMachine virtualMachine = new VirtualMachine(500, 50, 10000, false);
+            virtualMachine.getKlassLoader().loadKlass(GARBAGE);
+            virtualMachine.getEngine().setThreadedDispatch(threadedDispatch);
+            Method method = getMethod(virtualMachine.getHeap(), GARBAGE + ".keepLinkedObjects:()I");
+            // the first invocation resolves NEW, the next ones run NEW_QUICK
+            for (int i = 0; i < 3; i++) {
+                assertEquals(10000L, virtualMachine.getEngine().invoke(method));
+            }
+        }
+    }
+
+    private void assertNoAllocationPerInstruction(boolean threadedDispatch) {
+        ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        ExecutionEngine engine = createEngine(threadedDispatch);
+        measure(threadBean, engine, SHORT_LOOP);
+        measure(threadBean, engine, LONG_LOOP);
+        // the allocations of each invocation itself (new array, frames) are the same for both loops and cancel out
+        long allocated = measure(threadBean, engine, LONG_LOOP) - measure(threadBean, engine, SHORT_LOOP);
+        double bytesPerInstruction = (double) allocated
+                / ((long) INVOCATIONS * (LONG_LOOP - SHORT_LOOP) * INSTRUCTIONS_PER_ITERATION);
+        // a single boxed Integer per instruction would be 16 bytes
+        assertTrue("allocated " + allocated + " bytes", bytesPerInstruction < 0.01);
+    }
+
+    private long measure(@Nonnull ThreadMXBean threadBean, @Nonnull ExecutionEngine engine, int iterations) {
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < INVOCATIONS; i++) {
+            invoke(engine, iterations);
+        }
+        return threadBean.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    @Nonnull
+    private ExecutionEngine createEngine(boolean threadedDispatch) {
+        ExecutionEngine engine = new VirtualMachine(500, 50, 10000, false).getEngine();
+        engine.setThreadedDispatch(threadedDispatch);
+        return engine;
+    }
+
+    @Nonnull
+    private static Method getMethod(@Nonnull Heap heap, @Nonnull String name) {
+        return heap.getMethodRepo().getMethod(heap.getMethodRepo().getIndexByName(name));
+    }
+
+    private long invoke(@Nonnull ExecutionEngine engine, int iterations) {
+        byte[] byteCode = LOOP_TEMPLATE.clone();
+        byteCode[12] = (byte) (iterations >> 8);
+        byteCode[13] = (byte) iterations;
+        return engine.invoke(new Method("", "", "", 0, byteCode, 4, 3));
+    }
+
+}
@@ -87,6 +87,22 @@ public class ArithmeticTest {
         assertEquals(8, res);
     }
 
+    @Test
+    public void longAndDouble() {
+        // long and double values take two slots
+        byte[] byteCode = {LCONST_1.b(), DUP2.b(), LADD.b(), DUP2.b(), DUP2.b(), POP2.b(), LMUL.b(), LRETURN.b()};
+        long res = getExecutionEngine().invoke(new Method("", "", "", 0, byteCode, 6, 0));
+        assertEquals(4, res);
+
+        byte[] byteCode2 = {BIPUSH.b(), (byte) -7, I2L.b(), LCONST_1.b(), LCMP.b(), IRETURN.b()};
+        res = getExecutionEngine().invoke(new Method("", "", "", 0, byteCode2, 4, 0));
+        assertEquals(-1, res);
+
+        byte[] byteCode3 = {DCONST_1.b(), ICONST_3.b(), I2D.b(), DDIV.b(), DSTORE_0.b(), DLOAD_0.b(), DNEG.b(), DRETURN.b()};
+        res = getExecutionEngine().invoke(new Method("", "", "", 0, byteCode3, 4, 2));
+        assertEquals(Double.doubleToRawLongBits(-1.0 / 3), res);
+    }
+
     @Test
     public void IfEqual() {
         byte[] byteCode = {ICONST_1.b(), ICONST_1.b(), IADD.b(), ICONST_2.b(), IF_ICMPEQ.b(), (byte) 0, (byte) 7, ICONST_4.b(), GOTO.b(), (byte) 0, (byte) 4, ICONST_3.b(), IRETURN.b()};
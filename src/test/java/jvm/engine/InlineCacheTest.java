@@ -0,0 +1,49 @@
+package jvm.engine;
+
+import jvm.VirtualMachine;
+import jvm.heap.api.Heap;
+import jvm.parser.Method;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.Assert.assertEquals;
+
+public class InlineCacheTest {
+
+    private static final String POLYMORPHIC = "jvm/examples/PolymorphicExample";
+
+    @Test
+    public void monomorphicCallSite() {
+        // the first call resolves the call site symbolically, the second one misses for the only receiver klass
+        check("monomorphic:()I", 900, 98, 1);
+    }
+
+    @Test
+    public void polymorphicCallSite() {
+        // the first call is resolved symbolically, then one miss for each of the three receiver klasses
+        check("polymorphic:()I", 462, 95, 3);
+    }
+
+    @Test
+    public void megamorphicCallSite() {
+        // the fifth receiver klass does not fit into the cache and misses on every call
+        check("megamorphic:()I", 180, 76, 23);
+    }
+
+    private void check(@Nonnull String methodName, long expected, long hits, long misses) {
+        for (boolean nodeExecution : new boolean[]{false, true}) {
+            VirtualMachine virtualMachine = new VirtualMachine(500, 50, 10000, false);
+            Heap heap = virtualMachine.getHeap();
+            virtualMachine.getKlassLoader().loadKlass(POLYMORPHIC);
+            int methodIndex = heap.getMethodRepo().getIndexByName(POLYMORPHIC + "." + methodName);
+            Method method = heap.getMethodRepo().getMethod(methodIndex);
+            ExecutionEngine engine = virtualMachine.getEngine();
+            engine.setNodeExecution(nodeExecution);
+            assertEquals(expected, engine.invoke(method));
+            assertEquals(hits, engine.getInlineCacheHits());
+            assertEquals(misses, engine.getInlineCacheMisses());
+        }
+    }
+
+}
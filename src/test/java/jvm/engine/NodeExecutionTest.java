@@ -0,0 +1,85 @@
+package jvm.engine;
+
+import jvm.VirtualMachine;
+import jvm.heap.api.Heap;
+import jvm.parser.Klass;
+import jvm.parser.Method;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+
+import static jvm.engine.Opcode.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class NodeExecutionTest {
+
+    private static final String SIMPLE_OBJECT = "jvm/examples/SimpleObject";
+
+    @Test
+    public void loop() {
+        // int sum = 0; for (int i = 0; i < 100; i++) { sum += i; } return sum;
+        byte[] byteCode = {
+                ICONST_0.b(), ISTORE_0.b(), ICONST_0.b(), ISTORE_1.b(),
+                ILOAD_1.b(), BIPUSH.b(), (byte) 100, IF_ICMPGE.b(), (byte) 0, (byte) 13,
+                ILOAD_0.b(), ILOAD_1.b(), IADD.b(), ISTORE_0.b(), IINC.b(), (byte) 1, (byte) 1,
+                GOTO.b(), (byte) 0xff, (byte) 0xf3,
+                ILOAD_0.b(), IRETURN.b()};
+        assertEquals(4950, invokeNodes(new Method("", "", "", 0, byteCode, 2, 2)));
+    }
+
+    @Test
+    public void operandStackBounds() {
+        byte[] byteCode = {ICONST_1.b(), ICONST_1.b(), ICONST_1.b(), IRETURN.b()};
+        assertThrows(RuntimeException.class, () -> invokeNodes(new Method("", "", "", 0, byteCode, 2, 0)));
+
+        byte[] byteCode2 = {IADD.b(), IRETURN.b()};
+        assertThrows(RuntimeException.class, () -> invokeNodes(new Method("", "", "", 0, byteCode2, 2, 0)));
+    }
+
+    @Test
+    public void quickenedInstructionsAreBound() {
+        VirtualMachine virtualMachine = new VirtualMachine(500, 50, 10000, false);
+        Heap heap = virtualMachine.getHeap();
+        virtualMachine.getKlassLoader().loadKlass(SIMPLE_OBJECT);
+        Klass klass = heap.getKlassLoader().getLoadedKlassByName(SIMPLE_OBJECT);
+        ExecutionEngine engine = virtualMachine.getEngine();
+        engine.setNodeExecution(true);
+        int quickInstructions = 0;
+        for (Method method : klass.getMethods()) {
+            String name = method.getNameAndType();
+            if (!name.endsWith(":()I") || name.startsWith("<")) {
+                continue;
+            }
+            // the first invocation quickens the method, the second one runs the rebuilt nodes
+            engine.invoke(method);
+            engine.invoke(method);
+            NodeCode nodeCode = method.getNodeCode();
+            assertNotNull(nodeCode);
+            byte[] byteCode = method.getBytecode();
+            for (int pc = 0; pc < byteCode.length; pc++) {
+                if (nodeCode.nodes[pc] != null && isQuick(byteCode[pc])) {
+                    assertFalse(name + " at " + pc, nodeCode.nodes[pc] instanceof NodeCode.DelegateNode);
+                    quickInstructions++;
+                }
+            }
+        }
+        assertTrue(quickInstructions > 0);
+    }
+
+    private static boolean isQuick(byte opcode) {
+        return opcode == GETFIELD_QUICK.b() || opcode == PUTFIELD_QUICK.b()
+                || opcode == INVOKESPECIAL_QUICK.b() || opcode == INVOKEVIRTUAL_QUICK.b()
+                || opcode == INVOKESTATIC_QUICK.b() || opcode == NEW_QUICK.b();
+    }
+
+    private long invokeNodes(@Nonnull Method method) {
+        ExecutionEngine engine = new VirtualMachine(500, 50, 10000, false).getEngine();
+        engine.setNodeExecution(true);
+        return engine.invoke(method);
+    }
+
+}
@@ -0,0 +1,45 @@
+package jvm.engine;
+
+import jvm.VirtualMachine;
+import jvm.heap.api.Heap;
+import jvm.parser.Klass;
+import jvm.parser.Method;
+import org.junit.Test;
+
+import static jvm.engine.Opcode.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ReferenceMapTest {
+
+    private static final String EXAMPLE = "jvm/examples/garbage_collector/MarkAndSweepExample";
+
+    @Test
+    public void referencesAtInvocations() {
+        VirtualMachine virtualMachine = new VirtualMachine(500, 50, 10000, false);
+        virtualMachine.getKlassLoader().loadKlass(EXAMPLE);
+        Heap heap = virtualMachine.getHeap();
+        Method method = heap.getMethodRepo().getMethod(
+                heap.getMethodRepo().getIndexByName(EXAMPLE + ".keepObjectsInCallers:()I"));
+        ReferenceMap referenceMap = method.getReferenceMap();
+        assertNotNull(referenceMap);
+        // the inner constructor of new GarbageObj(new GarbageObj()), the local variable is not assigned yet
+        assertArrayEquals(new boolean[]{false, true, true, true}, referenceMap.getReferences(11));
+        assertArrayEquals(new boolean[]{false, true}, referenceMap.getReferences(14));
+        // allocate(local, 30) with the object that is passed to count below the arguments
+        assertArrayEquals(new boolean[]{true, true}, referenceMap.getReferences(29));
+        assertNull(referenceMap.getReferences(12));
+    }
+
+    @Test
+    public void unknownInstructions() {
+        Klass klass = new Klass("", "");
+        byte[] byteCode = {ICONST_0.b(), IRETURN.b()};
+        assertNotNull(ReferenceMap.compute(new Method("", "()I", "", 0, byteCode, 1, 1), klass));
+
+        byte[] unknown = {JSR.b(), (byte) 0, (byte) 3, RETURN.b()};
+        assertNull(ReferenceMap.compute(new Method("", "()V", "", 0, unknown, 1, 1), klass));
+    }
+
+}
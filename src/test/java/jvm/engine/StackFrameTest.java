@@ -1,10 +1,12 @@
 package jvm.engine;
 
 import jvm.engine.StackFrame;
+import jvm.lang.StackOverflowErrorJVM;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
 public class StackFrameTest {
 
@@ -135,5 +137,42 @@ public class StackFrameTest {
         assertThrows(IndexOutOfBoundsException.class, stack::pop); // check operand stack is empty
     }
 
+    @Test
+    public void growAndShrinkInChunks() {
+        StackFrame stack = new StackFrame(100000);
+        stack.init(0, 1);
+        assertEquals(StackFrame.CHUNK_SIZE, stack.getCapacity());
+        stack.push(0);
+        for (int i = 1; i <= 1000; i++) {
+            stack.initNewMethodStack(1, 2, 1);
+            assertEquals(i - 1, stack.getLocalVar(0));
+            stack.setLocalVar(1, i);
+            stack.push(i);
+        }
+        int capacity = stack.getCapacity();
+        assertEquals(0, capacity % StackFrame.CHUNK_SIZE);
+        assertTrue(capacity > stack.getSize());
+        assertTrue(capacity > StackFrame.CHUNK_SIZE);
+        for (int i = 1000; i >= 1; i--) {
+            assertEquals(i, stack.getLocalVar(1));
+            stack.destroyCurrentMethodStack(i == 1 ? 0 : 2, 1, true);
+            assertEquals(i, stack.pop());
+            stack.push(i - 1);
+        }
+        assertEquals(StackFrame.CHUNK_SIZE, stack.getCapacity());
+    }
+
+    @Test
+    public void stackOverflow() {
+        StackFrame stack = new StackFrame(2000);
+        stack.init(0, 1);
+        stack.push(0);
+        assertThrows(StackOverflowErrorJVM.class, () -> {
+            while (true) {
+                stack.initNewMethodStack(1, 1, 1);
+                stack.push(0);
+            }
+        });
+    }
 
-}
\ No newline at end of file
+}
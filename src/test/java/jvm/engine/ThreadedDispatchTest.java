@@ -0,0 +1,150 @@
+package jvm.engine;
+
+import jvm.VirtualMachine;
+import jvm.heap.api.Heap;
+import jvm.parser.Klass;
+import jvm.parser.Method;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static jvm.engine.Opcode.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class ThreadedDispatchTest {
+
+    private static final String[] KLASSES = {
+            "jvm/examples/InstructionExample",
+            "jvm/examples/ArrayExample",
+            "jvm/examples/AlgorithmExample",
+            "jvm/examples/NumericExample",
+            "jvm/examples/SimpleStatic",
+            "jvm/examples/ComplexStatic",
+            "jvm/examples/puzzlers/Puzzle47",
+            "jvm/examples/puzzlers/Puzzle49",
+            "jvm/examples/puzzlers/Puzzle52"
+    };
+
+    private long fusedFieldLoads;
+
+    @Test
+    public void arithmetic() {
+        byte[] byteCode = {BIPUSH.b(), (byte) 17, BIPUSH.b(), (byte) 5, IREM.b(), ICONST_M1.b(), IMUL.b(), IRETURN.b()};
+        assertEquals(-2, invokeThreaded(new Method("", "", "", 0, byteCode, 2, 0)));
+
+        byte[] byteCode2 = {SIPUSH.b(), (byte) 0x7f, (byte) 0xff, ICONST_3.b(), ISHL.b(), ICONST_5.b(), IXOR.b(), IRETURN.b()};
+        assertEquals((0x7fff << 3) ^ 5, invokeThreaded(new Method("", "", "", 0, byteCode2, 2, 0)));
+    }
+
+    @Test
+    public void loop() {
+        // int sum = 0; for (int i = 0; i < 100; i++) { sum += i; } return sum;
+        byte[] byteCode = {
+                ICONST_0.b(), ISTORE_0.b(), ICONST_0.b(), ISTORE_1.b(),
+                ILOAD_1.b(), BIPUSH.b(), (byte) 100, IF_ICMPGE.b(), (byte) 0, (byte) 13,
+                ILOAD_0.b(), ILOAD_1.b(), IADD.b(), ISTORE_0.b(), IINC.b(), (byte) 1, (byte) 1,
+                GOTO.b(), (byte) 0xff, (byte) 0xf3,
+                ILOAD_0.b(), IRETURN.b()};
+        assertEquals(4950, invokeThreaded(new Method("", "", "", 0, byteCode, 2, 2)));
+    }
+
+    @Test
+    public void superinstructions() {
+        // the same loop as above, every iteration is executed by three superinstructions
+        byte[] byteCode = {
+                ICONST_0.b(), ISTORE_0.b(), ICONST_0.b(), ISTORE_1.b(),
+                ILOAD_1.b(), BIPUSH.b(), (byte) 100, IF_ICMPGE.b(), (byte) 0, (byte) 13,
+                ILOAD_0.b(), ILOAD_1.b(), IADD.b(), ISTORE_0.b(), IINC.b(), (byte) 1, (byte) 1,
+                GOTO.b(), (byte) 0xff, (byte) 0xf3,
+                ILOAD_0.b(), IRETURN.b()};
+        ExecutionEngine engine = new VirtualMachine(500, 50, 10000, false).getEngine();
+        engine.setThreadedDispatch(true);
+        assertEquals(4950, engine.invoke(new Method("", "", "", 0, byteCode, 2, 2)));
+        Map<String, Long> histogram = engine.getSuperinstructionHistogram();
+        assertEquals(Long.valueOf(101), histogram.get("ILOAD+BIPUSH+IF_ICMPGE"));
+        assertEquals(Long.valueOf(100), histogram.get("ILOAD+ILOAD+IADD+ISTORE"));
+        assertEquals(Long.valueOf(100), histogram.get("IINC+GOTO"));
+
+        // a branch into the middle of a fused sequence executes the rest of it unfused
+        byte[] byteCode2 = {
+                ICONST_1.b(), ISTORE_0.b(), ICONST_2.b(), ISTORE_1.b(), ICONST_5.b(), GOTO.b(), (byte) 0, (byte) 4,
+                ILOAD_0.b(), ILOAD_1.b(), IADD.b(), ISTORE_0.b(), ILOAD_0.b(), IRETURN.b()};
+        assertEquals(7, invokeThreaded(new Method("", "", "", 0, byteCode2, 2, 2)));
+    }
+
+    @Test
+    public void operandStackBounds() {
+        byte[] byteCode = {ICONST_1.b(), ICONST_1.b(), ICONST_1.b(), IRETURN.b()};
+        assertThrows(RuntimeException.class, () -> invokeThreaded(new Method("", "", "", 0, byteCode, 2, 0)));
+
+        byte[] byteCode2 = {IADD.b(), IRETURN.b()};
+        assertThrows(RuntimeException.class, () -> invokeThreaded(new Method("", "", "", 0, byteCode2, 2, 0)));
+
+        // DUP on an empty operand stack would copy the slot below it, here the local variable
+        byte[] byteCode3 = {DUP.b(), POP.b(), ICONST_1.b(), IRETURN.b()};
+        assertThrows(RuntimeException.class, () -> invokeThreaded(new Method("", "", "", 0, byteCode3, 2, 1)));
+    }
+
+    @Test
+    public void sameResultsAsSwitchDispatch() {
+        int count = 0;
+        for (String klass : KLASSES) {
+            for (String methodName : getMethodNames(klass)) {
+                String expected = run(klass, methodName, false, false);
+                assertEquals(klass + "." + methodName, expected, run(klass, methodName, true, false));
+                assertEquals(klass + "." + methodName, expected, run(klass, methodName, true, true));
+                count++;
+            }
+        }
+        assertTrue(count > 50);
+        assertTrue(fusedFieldLoads > 0);
+    }
+
+    @Nonnull
+    private List<String> getMethodNames(@Nonnull String klass) {
+        VirtualMachine virtualMachine = new VirtualMachine(500, 50, 10000, false);
+        virtualMachine.getKlassLoader().loadKlass(klass);
+        Klass cpKlass = virtualMachine.getHeap().getKlassLoader().getLoadedKlassByName(klass);
+        List<String> result = new ArrayList<>();
+        for (Method method : cpKlass.getMethods()) {
+            String name = method.getNameAndType();
+            if (name.matches(".*:\\(\\)[IZJFD]") && !name.startsWith("<")) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
+    @Nonnull
+    private String run(@Nonnull String klass, @Nonnull String methodName, boolean threadedDispatch, boolean jitCompilation) {
+        VirtualMachine virtualMachine = new VirtualMachine(500, 50, 10000, false);
+        Heap heap = virtualMachine.getHeap();
+        virtualMachine.getKlassLoader().loadKlass(klass);
+        int methodIndex = heap.getMethodRepo().getIndexByName(klass + "." + methodName);
+        Method method = heap.getMethodRepo().getMethod(methodIndex);
+        ExecutionEngine engine = virtualMachine.getEngine();
+        engine.setExceptionDebugMode(true);
+        engine.setThreadedDispatch(threadedDispatch);
+        engine.setJitCompilation(jitCompilation);
+        engine.setJitThreshold(0);
+        try {
+            return String.valueOf(engine.invoke(method));
+        } catch (RuntimeException e) {
+            return e.getClass().getName();
+        } finally {
+            fusedFieldLoads += engine.getSuperinstructionHistogram().get("ALOAD+GETFIELD_QUICK");
+        }
+    }
+
+    private long invokeThreaded(@Nonnull Method method) {
+        ExecutionEngine engine = new VirtualMachine(500, 50, 10000, false).getEngine();
+        engine.setThreadedDispatch(true);
+        return engine.invoke(method);
+    }
+
+}
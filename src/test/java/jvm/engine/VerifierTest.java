@@ -0,0 +1,122 @@
+package jvm.engine;
+
+import jvm.VirtualMachine;
+import jvm.heap.MethodRepo;
+import jvm.parser.Method;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+
+import static jvm.engine.Opcode.*;
+import static jvm.parser.ParserConstants.ACC_STATIC;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class VerifierTest {
+
+    private static final String SIMPLE_OBJECT = "jvm/examples/SimpleObject";
+    private static final String INSTRUCTIONS = "jvm/examples/InstructionExample";
+
+    // int sum = 0; for (int i = 0; i < 100; i++) { sum += i; } return sum;
+    private static final byte[] LOOP = {
+            ICONST_0.b(), ISTORE_0.b(), ICONST_0.b(), ISTORE_1.b(),
+            ILOAD_1.b(), BIPUSH.b(), (byte) 100, IF_ICMPGE.b(), (byte) 0, (byte) 13,
+            ILOAD_0.b(), ILOAD_1.b(), IADD.b(), ISTORE_0.b(), IINC.b(), (byte) 1, (byte) 1,
+            GOTO.b(), (byte) 0xff, (byte) 0xf3,
+            ILOAD_0.b(), IRETURN.b()};
+
+    @Test
+    public void verifiesLoop() {
+        byte[] argumentTypes = Verifier.verify(new Method("", "", "", 0, LOOP, 2, 2));
+        assertNotNull(argumentTypes);
+        // the receiver slot is overwritten before it is read
+        assertArrayEquals(new byte[]{Verifier.TOP}, argumentTypes);
+    }
+
+    @Test
+    public void rejectsUnprovableCode() {
+        // overflow of the operand stack
+        assertNull(verify(new byte[]{ICONST_1.b(), ICONST_1.b(), ICONST_1.b(), IRETURN.b()}, 2, 0));
+        // underflow of the operand stack
+        assertNull(verify(new byte[]{IADD.b(), IRETURN.b()}, 2, 0));
+        // a reference used as an int
+        assertNull(verify(new byte[]{ACONST_NULL.b(), ICONST_1.b(), IADD.b(), IRETURN.b()}, 2, 0));
+        // a local variable that holds an int on one path and a reference on the other one
+        assertNull(verify(new byte[]{
+                ICONST_0.b(), IFEQ.b(), (byte) 0, (byte) 8, ICONST_1.b(), ISTORE_0.b(), GOTO.b(), (byte) 0, (byte) 5,
+                ACONST_NULL.b(), ASTORE_0.b(), ILOAD_0.b(), IRETURN.b()}, 2, 1));
+        // a local variable index out of maxLocal
+        assertNull(verify(new byte[]{ICONST_1.b(), ISTORE_2.b(), RETURN.b()}, 2, 1));
+        // a branch into the middle of an instruction
+        assertNull(verify(new byte[]{BIPUSH.b(), (byte) 1, GOTO.b(), (byte) 0xff, (byte) 0xff, IRETURN.b()}, 2, 0));
+        // an instruction that is not verified
+        assertNull(verify(new byte[]{ICONST_1.b(), I2L.b(), POP2.b(), RETURN.b()}, 2, 0));
+        // a field without the constant pool of a klass
+        assertNull(verify(new byte[]{ALOAD_0.b(), GETFIELD.b(), (byte) 0, (byte) 1, IRETURN.b()}, 2, 1));
+    }
+
+    @Test
+    public void argumentTypes() {
+        // static int m(int a, Object b, char c) { return a; }
+        Method method = new Method("", "(ILjava/lang/Object;C)I", "m:(ILjava/lang/Object;C)I", ACC_STATIC,
+                new byte[]{ILOAD_0.b(), IRETURN.b()}, 1, 3);
+        assertArrayEquals(new byte[]{Verifier.INT, Verifier.TOP, Verifier.TOP}, Verifier.verify(method));
+
+        // a char argument keeps its own tag, so it cannot be proven to be an int
+        Method charMethod = new Method("", "(C)I", "m:(C)I", ACC_STATIC, new byte[]{ILOAD_0.b(), IRETURN.b()}, 1, 1);
+        assertNull(Verifier.verify(charMethod));
+    }
+
+    @Test
+    public void sameResultsWithAndWithoutVerification() {
+        for (boolean verification : new boolean[]{false, true}) {
+            ExecutionEngine engine = new VirtualMachine(500, 50, 10000, false).getEngine();
+            engine.setVerification(verification);
+            assertEquals(4950, engine.invoke(new Method("", "", "", 0, LOOP, 2, 2)));
+        }
+    }
+
+    @Test
+    public void verifiesInvocationsAndFields() {
+        for (boolean verification : new boolean[]{false, true}) {
+            VirtualMachine virtualMachine = new VirtualMachine(500, 50, 10000, false);
+            virtualMachine.getKlassLoader().loadKlass(SIMPLE_OBJECT);
+            virtualMachine.getKlassLoader().loadKlass(INSTRUCTIONS);
+            ExecutionEngine engine = virtualMachine.getEngine();
+            engine.setVerification(verification);
+            assertEquals(148, engine.invoke(getMethod(virtualMachine, SIMPLE_OBJECT + ".m3:()I")));
+            assertEquals(500500, engine.invoke(getMethod(virtualMachine, INSTRUCTIONS + ".sumRecursively:()I")));
+            if (verification) {
+                // fields, the constructor of the superclass and recursive static invocations
+                assertNotNull(getMethod(virtualMachine, SIMPLE_OBJECT + ".getSum:(II)I").getVerifiedArgumentTypes());
+                assertNotNull(getMethod(virtualMachine, SIMPLE_OBJECT + ".<init>:(III)V").getVerifiedArgumentTypes());
+                assertNotNull(getMethod(virtualMachine, INSTRUCTIONS + ".sum:(I)I").getVerifiedArgumentTypes());
+                // the method allocates an object
+                assertNull(getMethod(virtualMachine, SIMPLE_OBJECT + ".m3:()I").getVerifiedArgumentTypes());
+            }
+        }
+    }
+
+    @Test
+    public void unverifiedMethodsAreChecked() {
+        ExecutionEngine engine = new VirtualMachine(500, 50, 10000, false).getEngine();
+        RuntimeException e = assertThrows(RuntimeException.class, () -> engine.invoke(
+                new Method("", "", "", 0, new byte[]{ACONST_NULL.b(), ICONST_1.b(), IADD.b(), IRETURN.b()}, 2, 0)));
+        assertTrue(e.getMessage().contains("Wrong types"));
+    }
+
+    @Nonnull
+    private static Method getMethod(@Nonnull VirtualMachine virtualMachine, @Nonnull String methodName) {
+        MethodRepo methodRepo = virtualMachine.getHeap().getMethodRepo();
+        return methodRepo.getMethod(methodRepo.getIndexByName(methodName));
+    }
+
+    private static byte[] verify(@Nonnull byte[] byteCode, int maxStack, int maxLocal) {
+        return Verifier.verify(new Method("", "", "", ACC_STATIC, byteCode, maxStack, maxLocal));
+    }
+
+}
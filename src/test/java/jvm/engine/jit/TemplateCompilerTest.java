@@ -0,0 +1,91 @@
+package jvm.engine.jit;
+
+import jvm.VirtualMachine;
+import jvm.engine.ExecutionEngine;
+import jvm.parser.Method;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+
+import static jvm.engine.Opcode.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class TemplateCompilerTest {
+
+    // int sum = 0; for (int i = 0; i < 100; i++) { sum += i; } return sum;
+    private static final byte[] LOOP = {
+            ICONST_0.b(), ISTORE_0.b(), ICONST_0.b(), ISTORE_1.b(),
+            ILOAD_1.b(), BIPUSH.b(), (byte) 100, IF_ICMPGE.b(), (byte) 0, (byte) 13,
+            ILOAD_0.b(), ILOAD_1.b(), IADD.b(), ISTORE_0.b(), IINC.b(), (byte) 1, (byte) 1,
+            GOTO.b(), (byte) 0xff, (byte) 0xf3,
+            ILOAD_0.b(), IRETURN.b()};
+
+    @Test
+    public void compiledLoop() {
+        Method method = new Method("", "", "", 0, LOOP, 2, 2);
+        assertEquals(4950, invoke(method, 0));
+        CompiledMethod compiledMethod = method.getCompiledMethod();
+        assertNotNull(compiledMethod);
+
+        // the compiled code runs the whole loop and stops at IRETURN with the sum on the operand stack
+        long[] stack = new long[10];
+        long state = compiledMethod.run(stack, 0, 2, 2, 0);
+        assertEquals(21, state >>> 32);
+        assertEquals(3, (int) state);
+        assertEquals(4950, (int) stack[2]);
+    }
+
+    @Test
+    public void methodIsCompiledWhenHot() {
+        Method method = new Method("", "", "", 0, LOOP, 2, 2);
+        assertEquals(4950, invoke(method, 50));
+        assertNotNull(method.getCompiledMethod());
+        assertEquals(1, method.getInvocationCount());
+        // compiled once the counters reach the threshold, the rest of the loop does not go through the interpreter
+        assertEquals(49, method.getBackEdgeCount());
+
+        Method coldMethod = new Method("", "", "", 0, LOOP, 2, 2);
+        assertEquals(4950, invoke(coldMethod, 1000));
+        assertNull(coldMethod.getCompiledMethod());
+    }
+
+    @Test
+    public void unsupportedInstructionsAreInterpreted() {
+        // int[] array = new int[1]; for (int i = 0; i < 100; i++) { array[0] += i; } return array[0];
+        byte[] byteCode = {
+                ICONST_1.b(), NEWARRAY.b(), (byte) 10, ASTORE_0.b(), ICONST_0.b(), ISTORE_1.b(),
+                ILOAD_1.b(), BIPUSH.b(), (byte) 100, IF_ICMPGE.b(), (byte) 0, (byte) 17,
+                ALOAD_0.b(), ICONST_0.b(), ALOAD_0.b(), ICONST_0.b(), IALOAD.b(), ILOAD_1.b(), IADD.b(), IASTORE.b(),
+                IINC.b(), (byte) 1, (byte) 1,
+                GOTO.b(), (byte) 0xff, (byte) 0xef,
+                ALOAD_0.b(), ICONST_0.b(), IALOAD.b(), IRETURN.b()};
+        Method method = new Method("", "", "", 0, byteCode, 4, 2);
+        assertEquals(4950, invoke(method, 0));
+        assertNotNull(method.getCompiledMethod());
+    }
+
+    @Test
+    public void errorsAreReportedByInterpreter() {
+        byte[] byteCode = {ICONST_1.b(), ASTORE_0.b(), ICONST_0.b(), IRETURN.b()};
+        Method method = new Method("", "", "", 0, byteCode, 1, 1);
+        RuntimeException e = assertThrows(RuntimeException.class, () -> invoke(method, 0));
+        assertTrue(e.getMessage().contains("Wrong types"));
+
+        byte[] byteCode2 = {ICONST_1.b(), ICONST_0.b(), IDIV.b(), IRETURN.b()};
+        Method method2 = new Method("", "", "", 0, byteCode2, 2, 0);
+        e = assertThrows(RuntimeException.class, () -> invoke(method2, 0));
+        assertTrue(e.getMessage().contains("cannot divide 0"));
+    }
+
+    private long invoke(@Nonnull Method method, int threshold) {
+        ExecutionEngine engine = new VirtualMachine(500, 50, 10000, false).getEngine();
+        engine.setJitCompilation(true);
+        engine.setJitThreshold(threshold);
+        return engine.invoke(method);
+    }
+
+}
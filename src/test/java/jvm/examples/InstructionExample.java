@@ -400,4 +400,16 @@ public class InstructionExample {
         return 0;
     }
 
+    public int sumRecursively() {
+        return sum(1000);
+    }
+
+    public int checkStackOverflowError() {
+        return sum(100000);
+    }
+
+    private static int sum(int n) {
+        return n == 0 ? 0 : n + sum(n - 1);
+    }
+
 }
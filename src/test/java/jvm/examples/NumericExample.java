@@ -0,0 +1,117 @@
+package jvm.examples;
+
+public class NumericExample {
+
+    private static long counter = 10_000_000_000L;
+
+    private long total;
+    private int count;
+    private double mean;
+    private float scale = 1.5f;
+
+    public static long sumOfSquares() {
+        long sum = 0;
+        for (int i = 1; i <= 100000; i++) {
+            sum += (long) i * i;
+        }
+        return sum;
+    }
+
+    public static long longOperations() {
+        long a = 0x1234_5678_9abc_def0L;
+        long b = -987_654_321_012L;
+        long result = (a / 7) ^ (b % 1000);
+        result += (a >> 5) - (b >>> 60) + (b << 3);
+        result |= a & 0xff00;
+        result = -result;
+        return result < b ? result : result * 3;
+    }
+
+    public static double doubleArithmetic() {
+        double x = 0.5;
+        double sum = 0;
+        for (int i = 0; i < 20; i++) {
+            sum += x * i / 3 - 1.25;
+            x = -x % 7.5;
+        }
+        return sum;
+    }
+
+    public static float floatArithmetic() {
+        float velocity = 2.5f;
+        float position = 0;
+        for (int i = 0; i < 10; i++) {
+            position += velocity * 0.1f;
+            velocity -= 0.98f;
+        }
+        return position / 3 % 100;
+    }
+
+    public static int conversions() {
+        long l = 3_000_000_000L;
+        double d = l * 1.5;
+        float f = (float) d;
+        int i = (int) l + (int) d + (int) (f / 1000) + (int) (long) f;
+        return i + (byte) i + (short) i + (int) (double) (long) Double.NaN;
+    }
+
+    public static int compare() {
+        double nan = 0.0 / 0.0;
+        float fnan = (float) nan;
+        int result = 0;
+        if (nan < 1) {
+            result += 1;
+        }
+        if (nan > 1) {
+            result += 2;
+        }
+        if (fnan <= 1) {
+            result += 4;
+        }
+        if (fnan >= 1) {
+            result += 8;
+        }
+        if (2.5 > 1.5f && -1L < 1L && 5L == 5L) {
+            result += 16;
+        }
+        return result;
+    }
+
+    public static long arrays() {
+        long[] longs = new long[10];
+        double[] doubles = new double[10];
+        float[] floats = new float[10];
+        short[] shorts = new short[10];
+        for (int i = 0; i < longs.length; i++) {
+            longs[i] = (long) i << 40;
+            doubles[i] = i * 0.25;
+            floats[i] = i * 0.5f;
+            shorts[i] = (short) (i * 10000);
+        }
+        long sum = 0;
+        for (int i = 0; i < longs.length; i++) {
+            sum += longs[i] + (long) (doubles[i] * 4) + (long) floats[i] + shorts[i];
+        }
+        return sum;
+    }
+
+    public static long fields() {
+        NumericExample example = new NumericExample();
+        for (int i = 1; i <= 5; i++) {
+            example.add(counter * i, i);
+        }
+        counter += example.total;
+        return counter + (long) (example.mean * example.scale) + example.count;
+    }
+
+    private void add(long value, int weight) {
+        total += value * weight;
+        count += weight;
+        mean = average(total, count, mean);
+    }
+
+    private static double average(long total, int count, double previous) {
+        return count == 0 ? previous : (double) total / count;
+    }
+
+}
@@ -0,0 +1,93 @@
+package jvm.examples;
+
+public class PolymorphicExample {
+
+    public static int monomorphic() {
+        Figure figure = new Square(3);
+        int sum = 0;
+        for (int i = 0; i < 100; i++) {
+            sum += figure.area();
+        }
+        return sum;
+    }
+
+    public static int polymorphic() {
+        Figure[] figures = {new Square(2), new Rectangle(2, 3), new Triangle(4, 2)};
+        int sum = 0;
+        for (int i = 0; i < 99; i++) {
+            sum += figures[i % 3].area();
+        }
+        return sum;
+    }
+
+    public static int megamorphic() {
+        Figure[] figures = {new Square(1), new Rectangle(1, 2), new Triangle(2, 3), new Circle(1), new Figure()};
+        int sum = 0;
+        for (int i = 0; i < 100; i++) {
+            sum += figures[i % 5].area();
+        }
+        return sum;
+    }
+}
+
+class Figure {
+    int area() {
+        return 0;
+    }
+}
+
+class Square extends Figure {
+    private final int side;
+
+    Square(int side) {
+        this.side = side;
+    }
+
+    @Override
+    int area() {
+        return side * side;
+    }
+}
+
+class Rectangle extends Figure {
+    private final int width;
+    private final int height;
+
+    Rectangle(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    int area() {
+        return width * height;
+    }
+}
+
+class Triangle extends Figure {
+    private final int base;
+    private final int height;
+
+    Triangle(int base, int height) {
+        this.base = base;
+        this.height = height;
+    }
+
+    @Override
+    int area() {
+        return base * height / 2;
+    }
+}
+
+class Circle extends Figure {
+    private final int radius;
+
+    Circle(int radius) {
+        this.radius = radius;
+    }
+
+    @Override
+    int area() {
+        return 3 * radius * radius;
+    }
+}
@@ -0,0 +1,11 @@
+package jvm.examples.garbage_collector;
+
+public class FinalizedObj {
+
+    static int finalized;
+
+    @Override
+    protected void finalize() {
+        finalized++;
+    }
+}
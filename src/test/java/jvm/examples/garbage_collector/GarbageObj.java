@@ -14,4 +14,8 @@ public class GarbageObj {
     public void setObj(GarbageObj obj) {
         this.obj = obj;
     }
+
+    public GarbageObj getObj() {
+        return obj;
+    }
 }
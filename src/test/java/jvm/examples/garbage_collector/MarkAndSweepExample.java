@@ -2,6 +2,9 @@ package jvm.examples.garbage_collector;
 
 public class MarkAndSweepExample {
 
+    private static GarbageObj last;
+    private static GarbageObj oldObjects;
+
     public Object createObjects() {
         GarbageObj[] objects = new GarbageObj[4];
         for (int i = 0; i < objects.length; i++) {
@@ -22,4 +25,66 @@ public class MarkAndSweepExample {
         return objects;
     }
 
+    public static int keepObjectsInCallers() {
+        GarbageObj local = new GarbageObj(new GarbageObj());
+        // the new object stays on the operand stack while the garbage is allocated
+        return count(new GarbageObj(local), allocate(local, 30));
+    }
+
+    public static int keepLinkedObjects() {
+        GarbageObj first = null;
+        for (int i = 0; i < 100; i++) {
+            first = new GarbageObj(first);
+        }
+        return count(first, 0);
+    }
+
+    public static int countFinalizedObjects() {
+        for (int i = 0; i < 100; i++) {
+            new FinalizedObj();
+        }
+        return FinalizedObj.finalized;
+    }
+
+    public static int keepYoungObjectsInOldObjects() {
+        GarbageObj[] objects = new GarbageObj[20];
+        GarbageObj holder = new GarbageObj();
+        for (int i = 0; i < 2000; i++) {
+            // the array and the holder get old while the new objects are stored into them
+            objects[i % objects.length] = new GarbageObj(new GarbageObj());
+            holder.setObj(new GarbageObj());
+            last = new GarbageObj(new GarbageObj());
+            new GarbageObj(new GarbageObj());
+        }
+        int count = 0;
+        for (GarbageObj object : objects) {
+            count += count(object, 0);
+        }
+        return count + count(holder, 0) + count(last, 0);
+    }
+
+    public static int keepOldObjects() {
+        for (int i = 0; i < 5000; i++) {
+            oldObjects = new GarbageObj(oldObjects);
+        }
+        return count(oldObjects, 0);
+    }
+
+    private static int allocate(GarbageObj argument, int count) {
+        if (count == 0) {
+            return 0;
+        }
+        new GarbageObj(new GarbageObj());
+        return allocate(argument, count - 1) + 1;
+    }
+
+    private static int count(GarbageObj obj, int allocated) {
+        int count = allocated;
+        while (obj != null) {
+            count += 100;
+            obj = obj.getObj();
+        }
+        return count;
+    }
+
 }
@@ -0,0 +1,20 @@
+package jvm.examples.garbage_collector;
+
+public class StaticInitExample {
+
+    private static final int COUNT;
+
+    static {
+        // the object stays in a local variable of the class initializer while the garbage is allocated
+        GarbageObj local = new GarbageObj(new GarbageObj());
+        for (int i = 0; i < 1000; i++) {
+            new GarbageObj(new GarbageObj());
+        }
+        COUNT = local.getObj() != null ? 2 : 1;
+    }
+
+    public static int getCount() {
+        return COUNT;
+    }
+
+}
@@ -0,0 +1,95 @@
+package jvm.garbage_collector;
+
+import jvm.JVMType;
+import jvm.VirtualMachine;
+import jvm.engine.StackFrame;
+import jvm.heap.HeapKind;
+import jvm.heap.HeapSizingPolicy;
+import jvm.heap.InstanceFactory;
+import jvm.heap.api.Heap;
+import jvm.parser.Method;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentMarkCollectorTest {
+
+    private static final String GARBAGE = "jvm/examples/garbage_collector/MarkAndSweepExample";
+
+    @Test
+    public void objectsStoredWhileTheMarkerRunsSurvive() {
+        VirtualMachine virtualMachine = createVirtualMachine(HeapSizingPolicy.fixed(300), CollectorKind.CONCURRENT_MARK);
+        virtualMachine.getKlassLoader().loadKlass(GARBAGE);
+        Heap heap = virtualMachine.getHeap();
+        ConcurrentMarkCollector collector = (ConcurrentMarkCollector) heap.getCollector();
+        Method youngObjects = getMethod(heap, GARBAGE + ".keepYoungObjectsInOldObjects:()I");
+        for (int i = 0; i < 10; i++) {
+            assertEquals(4400, virtualMachine.getEngine().invoke(youngObjects));
+        }
+        assertTrue(collector.getCycles() > 10);
+    }
+
+    @Test
+    public void writeBarrierMarksStoredObjects() {
+        StackFrame stackFrame = new StackFrame(1, 0);
+        ConcurrentMarkCollector collector = new ConcurrentMarkCollector(stackFrame, 50);
+        Heap heap = createVirtualMachine(HeapSizingPolicy.fixed(100), CollectorKind.MARK_AND_SWEEP).getHeap();
+        collector.setHeap(heap);
+        int holderRef = allocate(heap, collector, 0);
+        stackFrame.setLocalVar(0, setRefValueType(holderRef));
+        int childRef = allocate(heap, collector, 0);
+        int storedRef = allocate(heap, collector, childRef);
+        int garbageRef = allocate(heap, collector, 0);
+
+        collector.run();
+        assertTrue(collector.isCycleActive());
+        int newRef = allocate(heap, collector, 0);
+        heap.getInstanceObject(holderRef).setValue(0, setRefValueType(storedRef));
+        collector.writeBarrier(holderRef, setRefValueType(storedRef));
+        collector.run();
+        assertFalse(collector.isCycleActive());
+        assertEquals(-1, heap.getObjectIndex(garbageRef));
+        // the stored object is traced, the new one is kept until the next cycle
+        assertNotEquals(-1, heap.getObjectIndex(storedRef));
+        assertNotEquals(-1, heap.getObjectIndex(childRef));
+        assertNotEquals(-1, heap.getObjectIndex(newRef));
+
+        collector.run();
+        collector.run();
+        assertEquals(-1, heap.getObjectIndex(newRef));
+        assertNotEquals(-1, heap.getObjectIndex(childRef));
+        assertEquals(2, collector.getCycles());
+    }
+
+    @Test
+    public void concurrentCollectorNeedsTheHeapMonitorHeap() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new VirtualMachine(HeapSizingPolicy.fixed(100), 4, 100, HeapKind.SEQUENTIAL, false, CollectorKind.CONCURRENT_MARK));
+        assertThrows(IllegalArgumentException.class, () -> new ConcurrentMarkCollector(new StackFrame(1, 0), 80));
+    }
+
+    private static int allocate(@Nonnull Heap heap, @Nonnull GarbageCollector collector, int objectRef) {
+        int reference = heap.getObjectRef(InstanceFactory.getInstanceObject(heap, "[Ljava/lang/Object;", JVMType.A.name(), 1, -1));
+        heap.getInstanceObject(reference).setValue(0, setRefValueType(objectRef));
+        collector.objectAllocated(reference);
+        return reference;
+    }
+
+    @Nonnull
+    private static VirtualMachine createVirtualMachine(@Nonnull HeapSizingPolicy sizingPolicy,
+                                                       @Nonnull CollectorKind collectorKind) {
+        return new VirtualMachine(sizingPolicy, 50, 10000, HeapKind.MONITORED, false, collectorKind);
+    }
+
+    @Nonnull
+    private Method getMethod(@Nonnull Heap heap, @Nonnull String name) {
+        return heap.getMethodRepo().getMethod(heap.getMethodRepo().getIndexByName(name));
+    }
+
+    private static long setRefValueType(int value) {
+        return ((long) JVMType.A.ordinal() << 32) ^ value;
+    }
+
+}
@@ -0,0 +1,109 @@
+package jvm.garbage_collector;
+
+import jvm.JVMType;
+import jvm.VirtualMachine;
+import jvm.engine.ExecutionEngine;
+import jvm.engine.StackFrame;
+import jvm.heap.HeapKind;
+import jvm.heap.HeapSizingPolicy;
+import jvm.heap.InstanceFactory;
+import jvm.heap.api.Heap;
+import jvm.parser.Method;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.Assert.*;
+
+public class GenerationalCollectorTest {
+
+    private static final String GARBAGE = "jvm/examples/garbage_collector/MarkAndSweepExample";
+
+    @Test
+    public void youngObjectsStoredIntoOldOnesSurvive() {
+        VirtualMachine virtualMachine = createVirtualMachine(HeapSizingPolicy.fixed(300), true);
+        virtualMachine.getKlassLoader().loadKlass(GARBAGE);
+        Heap heap = virtualMachine.getHeap();
+        GenerationalCollector collector = (GenerationalCollector) heap.getCollector();
+        assertEquals(4400, virtualMachine.getEngine().invoke(getMethod(heap, GARBAGE + ".keepYoungObjectsInOldObjects:()I")));
+        assertTrue(collector.getMinorCollections() > 100);
+        // the objects that lived long enough to be promoted fill the heap now and then
+        assertTrue(collector.getMajorCollections() < collector.getMinorCollections() / 4);
+    }
+
+    @Test
+    public void wholeHeapIsCollectedWhenOldObjectsFillIt() {
+        VirtualMachine virtualMachine = createVirtualMachine(HeapSizingPolicy.fixed(300), true);
+        virtualMachine.getKlassLoader().loadKlass(GARBAGE);
+        Heap heap = virtualMachine.getHeap();
+        GenerationalCollector collector = (GenerationalCollector) heap.getCollector();
+        ExecutionEngine engine = virtualMachine.getEngine();
+        Method linkedObjects = getMethod(heap, GARBAGE + ".keepLinkedObjects:()I");
+        for (int i = 0; i < 20; i++) {
+            assertEquals(10000, engine.invoke(linkedObjects));
+        }
+        assertTrue(collector.getMajorCollections() > 0);
+        assertEquals(330, engine.invoke(getMethod(heap, GARBAGE + ".keepObjectsInCallers:()I")));
+    }
+
+    @Test
+    public void writeBarrierRemembersOldObjectsWithYoungReferences() {
+        StackFrame stackFrame = new StackFrame(1, 0);
+        GenerationalCollector collector = new GenerationalCollector(stackFrame, 50, 1);
+        Heap heap = new VirtualMachine(100, 4, 100, false).getHeap();
+        collector.setHeap(heap);
+        int holderRef = allocate(heap, collector);
+        stackFrame.setLocalVar(0, setRefValueType(holderRef));
+        collector.run();
+        assertFalse(collector.isYoung(holderRef));
+        assertEquals(0, collector.getNurserySize());
+
+        int youngRef = allocate(heap, collector);
+        int garbageRef = allocate(heap, collector);
+        assertTrue(collector.isYoung(youngRef));
+        heap.getInstanceObject(holderRef).setValue(0, setRefValueType(youngRef));
+        collector.writeBarrier(holderRef, setRefValueType(youngRef));
+        assertEquals(1, collector.getRememberedSize());
+        collector.run();
+        assertEquals(-1, heap.getObjectIndex(garbageRef));
+        assertNotEquals(-1, heap.getObjectIndex(youngRef));
+        // the young object was promoted, so the holder refers to old objects only
+        assertFalse(collector.isYoung(youngRef));
+        assertEquals(0, collector.getRememberedSize());
+
+        // the values of other types are not references
+        int otherRef = allocate(heap, collector);
+        collector.writeBarrier(holderRef, ((long) JVMType.I.ordinal() << 32) ^ otherRef);
+        assertEquals(0, collector.getRememberedSize());
+        assertThrows(IllegalArgumentException.class, () -> new GenerationalCollector(stackFrame, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new GenerationalCollector(stackFrame, 25, 0));
+    }
+
+    @Test
+    public void generationalCollectorIsUsedByOneThread() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new VirtualMachine(HeapSizingPolicy.fixed(100), 4, 100, HeapKind.MONITORED, false, CollectorKind.GENERATIONAL));
+    }
+
+    private static int allocate(@Nonnull Heap heap, @Nonnull GarbageCollector collector) {
+        int objectRef = heap.getObjectRef(InstanceFactory.getInstanceObject(heap, "[Ljava/lang/Object;", JVMType.A.name(), 1, -1));
+        collector.objectAllocated(objectRef);
+        return objectRef;
+    }
+
+    @Nonnull
+    private static VirtualMachine createVirtualMachine(@Nonnull HeapSizingPolicy sizingPolicy, boolean generational) {
+        return new VirtualMachine(sizingPolicy, 50, 10000, HeapKind.SEQUENTIAL, false,
+                generational ? CollectorKind.GENERATIONAL : CollectorKind.MARK_AND_SWEEP);
+    }
+
+    @Nonnull
+    private Method getMethod(@Nonnull Heap heap, @Nonnull String name) {
+        return heap.getMethodRepo().getMethod(heap.getMethodRepo().getIndexByName(name));
+    }
+
+    private static long setRefValueType(int value) {
+        return ((long) JVMType.A.ordinal() << 32) ^ value;
+    }
+
+}
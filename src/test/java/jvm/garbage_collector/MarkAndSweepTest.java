@@ -3,12 +3,18 @@ package jvm.garbage_collector;
 import jvm.JVMType;
 import jvm.VirtualMachine;
 import jvm.engine.StackFrame;
+import com.sun.management.ThreadMXBean;
+import jvm.heap.InstanceFactory;
 import jvm.heap.api.Heap;
+import jvm.heap.api.InstanceObject;
 import jvm.parser.Method;
 import org.junit.Test;
 
+import javax.annotation.Nonnull;
+import java.lang.management.ManagementFactory;
 
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
 public class MarkAndSweepTest {
 
@@ -35,6 +41,80 @@ public class MarkAndSweepTest {
         assertEquals(systemObjectSize + 5, heap.getInstanceObjectSize());
     }
 
+    @Test
+    public void callerFramesAreRoots() {
+        // the objects of the callers are found through the reference maps of their methods
+        VirtualMachine virtualMachine = new VirtualMachine(20, 4, 1000, false);
+        virtualMachine.getKlassLoader().loadKlass(klass);
+        Heap heap = virtualMachine.getHeap();
+        int methodIndex = heap.getMethodRepo().getIndexByName(klass + ".keepObjectsInCallers:()I");
+        Method method = heap.getMethodRepo().getMethod(methodIndex);
+        assertEquals(330, virtualMachine.getEngine().invoke(method));
+    }
+
+    @Test
+    public void classInitializerFramesAreRoots() {
+        // the class initializer keeps an object in its local variable while the heap is collected many times
+        String staticInit = "jvm/examples/garbage_collector/StaticInitExample";
+        VirtualMachine virtualMachine = new VirtualMachine(50, 4, 1000, false);
+        virtualMachine.getKlassLoader().loadKlass(staticInit);
+        Heap heap = virtualMachine.getHeap();
+        int methodIndex = heap.getMethodRepo().getIndexByName(staticInit + ".getCount:()I");
+        assertEquals(2, virtualMachine.getEngine().invoke(heap.getMethodRepo().getMethod(methodIndex)));
+    }
+
+    @Test
+    public void overriddenFinalizersAreInvoked() {
+        VirtualMachine virtualMachine = new VirtualMachine(50, 4, 1000, false);
+        virtualMachine.getKlassLoader().loadKlass(klass);
+        Heap heap = virtualMachine.getHeap();
+        int methodIndex = heap.getMethodRepo().getIndexByName(klass + ".countFinalizedObjects:()I");
+        Method method = heap.getMethodRepo().getMethod(methodIndex);
+        assertTrue((int) virtualMachine.getEngine().invoke(method) > 50);
+    }
+
+    @Test
+    public void largeHeapIsMarkedWithoutAllocations() {
+        ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        int count = 120000;
+        VirtualMachine virtualMachine = new VirtualMachine(count * 2, 4, 100, false);
+        Heap heap = virtualMachine.getHeap();
+        int systemObjectSize = heap.getInstanceObjectSize();
+        GarbageCollector garbageCollector = new MarkAndSweep(createLinkedObjects(heap, count));
+        for (int i = 0; i < 1000; i++) {
+            heap.getObjectRef(InstanceFactory.getInstanceObject(heap, "[I", "I", 1, -1));
+        }
+        garbageCollector.setHeap(heap);
+        garbageCollector.run();
+        assertEquals(systemObjectSize + count, heap.getInstanceObjectSize());
+
+        // the marks and the work stack of the first collection are reused
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        garbageCollector.run();
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+        assertEquals(systemObjectSize + count, heap.getInstanceObjectSize());
+        assertTrue(allocated + " bytes allocated by the collection", allocated < 64 * 1024);
+    }
+
+    /**
+     * Links the reference arrays into a list and returns a stack frame with its head.
+     */
+    @Nonnull
+    private StackFrame createLinkedObjects(@Nonnull Heap heap, int count) {
+        long head = setRefValueType(0);
+        for (int i = 0; i < count; i++) {
+            InstanceObject object = InstanceFactory.getInstanceObject(heap, "[Ljava/lang/Object;", JVMType.A.name(), 1, -1);
+            object.setValue(0, head);
+            head = setRefValueType(heap.getObjectRef(object));
+        }
+        StackFrame stackFrame = new StackFrame(1, 0);
+        stackFrame.setLocalVar(0, head);
+        return stackFrame;
+    }
+
     private long setRefValueType(int value) {
         return setValueType(JVMType.A.ordinal()) ^ value;
     }
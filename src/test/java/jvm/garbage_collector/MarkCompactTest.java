@@ -0,0 +1,139 @@
+package jvm.garbage_collector;
+
+import jvm.JVMType;
+import jvm.VirtualMachine;
+import jvm.engine.ExecutionEngine;
+import jvm.engine.StackFrame;
+import jvm.heap.HeapKind;
+import jvm.heap.HeapSizingPolicy;
+import jvm.heap.InstanceFactory;
+import jvm.heap.api.Heap;
+import jvm.heap.api.InstanceObject;
+import jvm.parser.Method;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.Assert.*;
+
+public class MarkCompactTest {
+
+    private static final String GARBAGE = "jvm/examples/garbage_collector/MarkAndSweepExample";
+    private static final String STATIC_INIT = "jvm/examples/garbage_collector/StaticInitExample";
+
+    @Test
+    public void liveObjectsAreMovedToTheStartOfTheHeap() {
+        int count = 1000;
+        Heap heap = new VirtualMachine(count * 4, 4, 100, false).getHeap();
+        int systemObjectSize = heap.getInstanceObjectSize();
+        StackFrame stackFrame = new StackFrame(1, 0);
+        InstanceObject array = createArray(heap, count);
+        int arrayRef = heap.getObjectRef(array);
+        int[] aliveRefs = new int[count];
+        for (int i = 0; i < count; i++) {
+            heap.getObjectRef(createArray(heap, 1));
+            aliveRefs[i] = heap.getObjectRef(createArray(heap, 1));
+            array.setValue(i, setRefValueType(aliveRefs[i]));
+        }
+        InstanceObject last = heap.getInstanceObject(aliveRefs[count - 1]);
+        stackFrame.setLocalVar(0, setRefValueType(arrayRef));
+        MarkCompact collector = new MarkCompact(stackFrame);
+        collector.setHeap(heap);
+        collector.run();
+
+        int size = systemObjectSize + 1 + count;
+        assertEquals(size, heap.getInstanceObjectSize());
+        for (int objectIndex = 0; objectIndex < heap.getInstanceObjectCapacity(); objectIndex++) {
+            assertEquals(objectIndex < size, heap.getInstanceObjectByObjInd(objectIndex) != null);
+        }
+        // the references stay, the objects keep their order
+        assertSame(last, heap.getInstanceObject(aliveRefs[count - 1]));
+        for (int i = 1; i < count; i++) {
+            assertTrue(heap.getObjectIndex(aliveRefs[i - 1]) < heap.getObjectIndex(aliveRefs[i]));
+        }
+        assertEquals(size, heap.getObjectIndex(heap.getObjectRef(createArray(heap, 1))));
+        assertEquals(size + 1, heap.getObjectIndex(heap.getObjectRef(createArray(heap, 1))));
+        assertEquals(1, collector.getCompactions());
+    }
+
+    @Test
+    public void referencesOfDirectHandlesAreRewritten() {
+        VirtualMachine virtualMachine = new VirtualMachine(HeapSizingPolicy.fixed(300), 50, 1000, HeapKind.SEQUENTIAL,
+                true, CollectorKind.MARK_COMPACT);
+        virtualMachine.getKlassLoader().loadKlass(GARBAGE);
+        Heap heap = virtualMachine.getHeap();
+        ExecutionEngine engine = virtualMachine.getEngine();
+        MarkCompact collector = (MarkCompact) heap.getCollector();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(10000, engine.invoke(getMethod(heap, GARBAGE + ".keepLinkedObjects:()I")));
+            assertEquals(330, engine.invoke(getMethod(heap, GARBAGE + ".keepObjectsInCallers:()I")));
+        }
+        assertTrue(collector.getCompactions() > 0);
+        assertNull(heap.getReferenceTable());
+    }
+
+    @Test
+    public void classInitializersDoNotMoveObjects() {
+        VirtualMachine virtualMachine = new VirtualMachine(HeapSizingPolicy.fixed(300), 50, 1000, HeapKind.SEQUENTIAL,
+                true, CollectorKind.MARK_COMPACT);
+        Heap heap = virtualMachine.getHeap();
+        MarkCompact collector = (MarkCompact) heap.getCollector();
+        // the class initializer allocates in the middle of the loading, its objects are collected but not moved
+        virtualMachine.getKlassLoader().loadKlass(STATIC_INIT);
+        assertEquals(0, collector.getCompactions());
+        assertEquals(2, virtualMachine.getEngine().invoke(getMethod(heap, STATIC_INIT + ".getCount:()I")));
+    }
+
+    @Test
+    public void nativeObjectsMoveWithTheirHeap() {
+        Heap compacted = new VirtualMachine(HeapSizingPolicy.fixed(100), 4, 100, HeapKind.SEQUENTIAL, true,
+                CollectorKind.MARK_COMPACT).getHeap();
+        Heap other = new VirtualMachine(HeapSizingPolicy.fixed(100), 4, 100, HeapKind.SEQUENTIAL, true,
+                CollectorKind.MARK_COMPACT).getHeap();
+        int garbageRef = compacted.getObjectRef(createArray(compacted, 1));
+        int socketRef = compacted.getObjectRef(createArray(compacted, 1));
+        compacted.putNativeObject(garbageRef, "garbage");
+        compacted.putNativeObject(socketRef, "socket");
+        other.putNativeObject(socketRef, "other socket");
+        compacted.removeInstanceObject(garbageRef);
+        int[] newIndexes = compacted.compactInstanceObjects();
+
+        assertNotNull(newIndexes);
+        assertEquals(garbageRef, newIndexes[socketRef]);
+        assertEquals("socket", compacted.getNativeObject(garbageRef));
+        assertNull(compacted.getNativeObject(socketRef));
+        // the references of the other heap are not moved
+        assertEquals("other socket", other.getNativeObject(socketRef));
+        assertNull(other.getNativeObject(garbageRef));
+    }
+
+    @Test
+    public void onlyTheSequentialHeapIsCompacted() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new VirtualMachine(HeapSizingPolicy.fixed(100), 4, 100, HeapKind.ARENA, false, CollectorKind.MARK_COMPACT));
+        assertThrows(IllegalArgumentException.class,
+                () -> new VirtualMachine(HeapSizingPolicy.fixed(100), 4, 100, HeapKind.MONITORED, false, CollectorKind.MARK_COMPACT));
+    }
+
+    @Test
+    public void heapWithoutFreedSlotsIsNotCompacted() {
+        Heap heap = new VirtualMachine(100, 4, 100, false).getHeap();
+        heap.getObjectRef(createArray(heap, 1));
+        assertNull(heap.compactInstanceObjects());
+    }
+
+    @Nonnull
+    private static Method getMethod(@Nonnull Heap heap, @Nonnull String methodName) {
+        return heap.getMethodRepo().getMethod(heap.getMethodRepo().getIndexByName(methodName));
+    }
+
+    @Nonnull
+    private static InstanceObject createArray(@Nonnull Heap heap, int size) {
+        return InstanceFactory.getInstanceObject(heap, "[Ljava/lang/Object;", JVMType.A.name(), size, -1);
+    }
+
+    private static long setRefValueType(int value) {
+        return ((long) JVMType.A.ordinal() << 32) ^ value;
+    }
+
+}
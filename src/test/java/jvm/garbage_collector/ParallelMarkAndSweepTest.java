@@ -0,0 +1,72 @@
+package jvm.garbage_collector;
+
+import jvm.JVMType;
+import jvm.VirtualMachine;
+import jvm.engine.StackFrame;
+import jvm.heap.InstanceFactory;
+import jvm.heap.api.Heap;
+import jvm.heap.api.InstanceObject;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.Assert.*;
+
+public class ParallelMarkAndSweepTest {
+
+    @Test
+    public void threadsMarkAndSweepALargeHeap() {
+        int count = 50000;
+        Heap heap = new VirtualMachine(count * 6, 4, 100, false).getHeap();
+        int systemObjectSize = heap.getInstanceObjectSize();
+        StackFrame stackFrame = new StackFrame(1, 0);
+        int[] garbage = new int[count];
+        stackFrame.setLocalVar(0, setRefValueType(createObjects(heap, count, garbage)));
+        GarbageCollector collector = new ParallelMarkAndSweep(stackFrame, 4);
+        collector.setHeap(heap);
+        collector.run();
+        // the array, its elements and the objects of the elements
+        assertEquals(systemObjectSize + 1 + count * 2, heap.getInstanceObjectSize());
+        for (int objectRef : garbage) {
+            assertEquals(-1, heap.getObjectIndex(objectRef));
+        }
+        collector.run();
+        assertEquals(systemObjectSize + 1 + count * 2, heap.getInstanceObjectSize());
+        stackFrame.setLocalVar(0, setRefValueType(0));
+        collector.run();
+        assertEquals(systemObjectSize, heap.getInstanceObjectSize());
+    }
+
+    @Test
+    public void numberOfThreadsIsChecked() {
+        assertEquals(3, new ParallelMarkAndSweep(new StackFrame(1, 0), 3).getThreads());
+        assertThrows(IllegalArgumentException.class, () -> new ParallelMarkAndSweep(new StackFrame(1, 0), 0));
+    }
+
+    /**
+     * Returns the reference of an array whose elements refer to objects with a reference each, the references of
+     * the garbage go to the given array.
+     */
+    private static int createObjects(@Nonnull Heap heap, int count, @Nonnull int[] garbage) {
+        InstanceObject array = createArray(heap, count);
+        int arrayRef = heap.getObjectRef(array);
+        for (int i = 0; i < count; i++) {
+            InstanceObject leaf = createArray(heap, 1);
+            InstanceObject element = createArray(heap, 1);
+            element.setValue(0, setRefValueType(heap.getObjectRef(leaf)));
+            array.setValue(i, setRefValueType(heap.getObjectRef(element)));
+            garbage[i] = heap.getObjectRef(createArray(heap, 1));
+        }
+        return arrayRef;
+    }
+
+    @Nonnull
+    private static InstanceObject createArray(@Nonnull Heap heap, int size) {
+        return InstanceFactory.getInstanceObject(heap, "[Ljava/lang/Object;", JVMType.A.name(), size, -1);
+    }
+
+    private static long setRefValueType(int value) {
+        return ((long) JVMType.A.ordinal() << 32) ^ value;
+    }
+
+}
@@ -0,0 +1,69 @@
+package jvm.heap;
+
+import jvm.JVMType;
+import jvm.VirtualMachine;
+import jvm.engine.StackFrame;
+import jvm.garbage_collector.CollectorKind;
+import jvm.garbage_collector.GarbageCollector;
+import jvm.garbage_collector.MarkAndSweep;
+import jvm.heap.api.Heap;
+import jvm.heap.sequential.ArenaHeapImpl;
+import jvm.parser.Method;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class ArenaHeapTest {
+
+    private static final String GARBAGE = "jvm/examples/garbage_collector/MarkAndSweepExample";
+
+    @Test
+    public void removedObjectsLeaveTheirRecordsToNewObjects() {
+        VirtualMachine virtualMachine = new VirtualMachine(HeapSizingPolicy.fixed(100), 4, 100, HeapKind.ARENA);
+        virtualMachine.getKlassLoader().loadKlass(GARBAGE);
+        virtualMachine.getKlassLoader().loadKlass("jvm/examples/garbage_collector/GarbageObj");
+        ArenaHeapImpl heap = (ArenaHeapImpl) virtualMachine.getHeap();
+        int systemObjectSize = heap.getInstanceObjectSize();
+        Method method = getMethod(heap, GARBAGE + ".createObjects:()Ljava/lang/Object;");
+        int arenaSize = heap.getArenaSize();
+        int reference = (int) virtualMachine.getEngine().invoke(method);
+        assertEquals(systemObjectSize + 8, heap.getInstanceObjectSize());
+        int createdSize = heap.getArenaSize() - arenaSize;
+
+        StackFrame stackFrame = new StackFrame(1, 0);
+        stackFrame.setLocalVar(0, ((long) JVMType.A.ordinal() << 32) ^ reference);
+        GarbageCollector garbageCollector = new MarkAndSweep(stackFrame);
+        garbageCollector.setHeap(heap);
+        garbageCollector.run();
+        assertEquals(systemObjectSize + 4, heap.getInstanceObjectSize());
+
+        // the four removed objects take a header and a field each
+        arenaSize = heap.getArenaSize();
+        virtualMachine.getEngine().invoke(method);
+        assertEquals(systemObjectSize + 12, heap.getInstanceObjectSize());
+        assertEquals(createdSize - 4 * 2, heap.getArenaSize() - arenaSize);
+    }
+
+    @Test
+    public void objectsSurviveTheGrowthOfTheArena() {
+        VirtualMachine virtualMachine = new VirtualMachine(HeapSizingPolicy.fixed(20), 4, 1000, HeapKind.ARENA);
+        virtualMachine.getKlassLoader().loadKlass(GARBAGE);
+        Heap heap = virtualMachine.getHeap();
+        assertEquals(330, virtualMachine.getEngine().invoke(getMethod(heap, GARBAGE + ".keepObjectsInCallers:()I")));
+    }
+
+    @Test
+    public void arenaHeapNeedsAReferenceTable() {
+        assertThrows(IllegalArgumentException.class, () -> new VirtualMachine(HeapSizingPolicy.fixed(100), 4, 100,
+                HeapKind.ARENA, true, CollectorKind.MARK_AND_SWEEP));
+    }
+
+    @Nonnull
+    private Method getMethod(@Nonnull Heap heap, @Nonnull String name) {
+        return heap.getMethodRepo().getMethod(heap.getMethodRepo().getIndexByName(name));
+    }
+
+}
@@ -0,0 +1,92 @@
+package jvm.heap;
+
+import com.sun.management.ThreadMXBean;
+import jvm.JVMType;
+import jvm.VirtualMachine;
+import jvm.heap.api.Heap;
+import jvm.heap.api.InstanceObject;
+import jvm.heap.sequential.CompactInstanceObjectImpl;
+import jvm.heap.sequential.InstanceObjectImpl;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class CompactObjectsTest {
+
+    @Test
+    public void valuesGetTheTypesOfTheirFields() {
+        Heap heap = new VirtualMachine(100, 4, 100, false).getHeap();
+        heap.enableCompactObjects();
+        KlassLayout layout = KlassLayout.EMPTY.extend(Arrays.asList("count:I", "flag:Z", "next:Ljava/lang/Object;", "letter:C"));
+        InstanceObject object = InstanceFactory.getInstanceObject(heap, layout, 0);
+        assertTrue(object instanceof CompactInstanceObjectImpl);
+        assertArrayEquals(layout.newValues(), object.getFieldValues());
+
+        object.setValue(0, tag(JVMType.I) ^ -5);
+        object.setValue(2, tag(JVMType.A) ^ 42);
+        object.setIntValue(3, 'x');
+        assertEquals(tag(JVMType.I) ^ -5, object.getValue(0));
+        assertEquals(-5, object.getIntValue(0));
+        assertEquals(tag(JVMType.A) ^ 42, object.getValue(2));
+        assertEquals(tag(JVMType.C) ^ 'x', object.getValue(3));
+        // an int can be stored into a boolean field, it is read with the type of the field
+        object.setValue(1, tag(JVMType.I) ^ 1);
+        assertEquals(tag(JVMType.Z) ^ 1, object.getValue(1));
+        assertThrows(RuntimeException.class, () -> object.setValue(2, tag(JVMType.I) ^ 1));
+
+        KlassLayout wideLayout = layout.extend(Arrays.asList("total:J"));
+        assertFalse(wideLayout.isCompact());
+        assertTrue(InstanceFactory.getInstanceObject(heap, wideLayout, 0) instanceof InstanceObjectImpl);
+    }
+
+    @Test
+    public void compactObjectsTakeLessMemory() {
+        ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        List<String> fields = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            fields.add("field" + i + ":I");
+        }
+        KlassLayout layout = KlassLayout.EMPTY.extend(fields);
+        Heap heap = new VirtualMachine(100, 4, 100, false).getHeap();
+        measure(threadBean, heap, layout);
+        long values = measure(threadBean, heap, layout);
+        heap.enableCompactObjects();
+        measure(threadBean, heap, layout);
+        long compactValues = measure(threadBean, heap, layout);
+        assertTrue(compactValues + " bytes for compact objects, " + values + " bytes for objects",
+                compactValues < values * 0.8);
+    }
+
+    @Test
+    public void heapsThatCopyTheValuesDoNotKeepCompactObjects() {
+        Heap arenaHeap = new VirtualMachine(HeapSizingPolicy.fixed(100), 4, 100, HeapKind.ARENA).getHeap();
+        assertThrows(UnsupportedOperationException.class, arenaHeap::enableCompactObjects);
+        Heap monitoredHeap = new VirtualMachine(100, 4, 100, true).getHeap();
+        assertThrows(UnsupportedOperationException.class, monitoredHeap::enableCompactObjects);
+        assertFalse(monitoredHeap.isCompactObjects());
+    }
+
+    private static long measure(@Nonnull ThreadMXBean threadBean, @Nonnull Heap heap, @Nonnull KlassLayout layout) {
+        InstanceObject[] objects = new InstanceObject[10000];
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < objects.length; i++) {
+            objects[i] = InstanceFactory.getInstanceObject(heap, layout, 0);
+        }
+        return threadBean.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    private static long tag(@Nonnull JVMType type) {
+        return (long) type.ordinal() << 32;
+    }
+
+}
@@ -0,0 +1,70 @@
+package jvm.heap;
+
+import jvm.JVMType;
+import jvm.VirtualMachine;
+import jvm.engine.StackFrame;
+import jvm.garbage_collector.CollectorKind;
+import jvm.garbage_collector.GarbageCollector;
+import jvm.garbage_collector.MarkAndSweep;
+import jvm.heap.api.Heap;
+import jvm.heap.api.InstanceObject;
+import jvm.parser.Method;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.Assert.*;
+
+public class DirectHandlesTest {
+
+    private static final String GARBAGE = "jvm/examples/garbage_collector/MarkAndSweepExample";
+
+    @Test
+    public void referencesAreTheIndexesOfTheObjects() {
+        VirtualMachine virtualMachine = createVirtualMachine(HeapSizingPolicy.fixed(100), true);
+        virtualMachine.getKlassLoader().loadKlass(GARBAGE);
+        virtualMachine.getKlassLoader().loadKlass("jvm/examples/garbage_collector/GarbageObj");
+        Heap heap = virtualMachine.getHeap();
+        assertNull(heap.getReferenceTable());
+        int systemObjectSize = heap.getInstanceObjectSize();
+
+        int reference = (int) virtualMachine.getEngine().invoke(getMethod(heap, GARBAGE + ".createObjects:()Ljava/lang/Object;"));
+        assertEquals(systemObjectSize + 8, heap.getInstanceObjectSize());
+        assertEquals(reference, heap.getObjectIndex(reference));
+        InstanceObject objects = heap.getInstanceObject(reference);
+        assertSame(objects, heap.getInstanceObjectByObjInd(reference));
+
+        StackFrame stackFrame = new StackFrame(1, 0);
+        stackFrame.setLocalVar(0, ((long) JVMType.A.ordinal() << 32) ^ reference);
+        GarbageCollector garbageCollector = new MarkAndSweep(stackFrame);
+        garbageCollector.setHeap(heap);
+        garbageCollector.run();
+        assertEquals(systemObjectSize + 4, heap.getInstanceObjectSize());
+        assertSame(objects, heap.getInstanceObject(reference));
+        // the third and the fourth elements were cleared before the method returned
+        int removed = reference + 3;
+        assertEquals(-1, heap.getObjectIndex(removed));
+        assertThrows(RuntimeException.class, () -> heap.getInstanceObject(removed));
+    }
+
+    @Test
+    public void heapWithDirectHandlesGrows() {
+        VirtualMachine virtualMachine = createVirtualMachine(HeapSizingPolicy.growable(20, 2000), true);
+        virtualMachine.getKlassLoader().loadKlass(GARBAGE);
+        Heap heap = virtualMachine.getHeap();
+        assertEquals(10000, virtualMachine.getEngine().invoke(getMethod(heap, GARBAGE + ".keepLinkedObjects:()I")));
+        assertTrue(heap.getInstanceObjectCapacity() > 100);
+        assertEquals(330, virtualMachine.getEngine().invoke(getMethod(heap, GARBAGE + ".keepObjectsInCallers:()I")));
+    }
+
+    @Nonnull
+    private static VirtualMachine createVirtualMachine(@Nonnull HeapSizingPolicy sizingPolicy, boolean directHandles) {
+        return new VirtualMachine(sizingPolicy, 50, 10000, HeapKind.SEQUENTIAL, directHandles, CollectorKind.MARK_AND_SWEEP);
+    }
+
+    @Nonnull
+    private Method getMethod(@Nonnull Heap heap, @Nonnull String name) {
+        return heap.getMethodRepo().getMethod(heap.getMethodRepo().getIndexByName(name));
+    }
+
+}
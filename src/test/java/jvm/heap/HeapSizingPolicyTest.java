@@ -0,0 +1,76 @@
+package jvm.heap;
+
+import jvm.VirtualMachine;
+import jvm.heap.api.Heap;
+import jvm.lang.OutOfMemoryErrorJVM;
+import jvm.parser.Method;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.Assert.*;
+
+public class HeapSizingPolicyTest {
+
+    private static final String INSTRUCTION = "jvm/examples/InstructionExample";
+    private static final String GARBAGE = "jvm/examples/garbage_collector/MarkAndSweepExample";
+
+    @Test
+    public void fixedHeapKeepsItsSize() {
+        HeapSizingPolicy policy = HeapSizingPolicy.fixed(100);
+        assertEquals(100, policy.getCapacity(100, 100));
+        assertEquals(100, policy.getCapacity(100, 90));
+        assertEquals(100, policy.getCapacity(100, 1));
+    }
+
+    @Test
+    public void growableHeapKeepsPartOfItselfFree() {
+        HeapSizingPolicy policy = HeapSizingPolicy.growable(100, 1000);
+        assertEquals(100, policy.getCapacity(100, 50));
+        assertEquals(151, policy.getCapacity(100, 90));
+        assertEquals(1000, policy.getCapacity(900, 890));
+        assertEquals(334, policy.getCapacity(1000, 100));
+        assertEquals(100, policy.getCapacity(1000, 1));
+        assertThrows(IllegalArgumentException.class, () -> new HeapSizingPolicy(100, 50, 40, 70));
+        assertThrows(IllegalArgumentException.class, () -> new HeapSizingPolicy(100, 200, 80, 70));
+    }
+
+    @Test
+    public void heapGrowsWithLiveObjectsAndShrinksAfterThem() {
+        VirtualMachine virtualMachine = new VirtualMachine(HeapSizingPolicy.growable(20, 2000), 4, 1000, HeapKind.SEQUENTIAL);
+        virtualMachine.getKlassLoader().loadKlass(GARBAGE);
+        Heap heap = virtualMachine.getHeap();
+        assertEquals(20, heap.getInstanceObjectCapacity());
+
+        assertEquals(10000, virtualMachine.getEngine().invoke(getMethod(heap, GARBAGE + ".keepLinkedObjects:()I")));
+        int grownCapacity = heap.getInstanceObjectCapacity();
+        assertTrue(grownCapacity > 100);
+        assertEquals(grownCapacity, heap.getReferenceTable().size());
+
+        // the linked objects are garbage now, so the collections make the heap smaller
+        Method method = getMethod(heap, GARBAGE + ".keepObjectsInCallers:()I");
+        for (int i = 0; i < 20; i++) {
+            assertEquals(330, virtualMachine.getEngine().invoke(method));
+        }
+        assertTrue(heap.getInstanceObjectCapacity() < grownCapacity);
+        assertTrue(heap.getInstanceObjectCapacity() >= 20);
+        assertEquals(heap.getInstanceObjectCapacity(), heap.getReferenceTable().size());
+    }
+
+    @Test
+    public void heapThrowsOutOfMemoryErrorAtTheMaximumSize() {
+        VirtualMachine virtualMachine = new VirtualMachine(HeapSizingPolicy.growable(20, 2000), 4, 1000, HeapKind.SEQUENTIAL);
+        virtualMachine.getKlassLoader().loadKlass(INSTRUCTION);
+        virtualMachine.getEngine().setExceptionDebugMode(true);
+        Heap heap = virtualMachine.getHeap();
+        Method method = getMethod(heap, INSTRUCTION + ".checkOutOfMemoryError:()V");
+        assertThrows(OutOfMemoryErrorJVM.class, () -> virtualMachine.getEngine().invoke(method));
+        assertEquals(2000, heap.getInstanceObjectCapacity());
+    }
+
+    @Nonnull
+    private Method getMethod(@Nonnull Heap heap, @Nonnull String name) {
+        return heap.getMethodRepo().getMethod(heap.getMethodRepo().getIndexByName(name));
+    }
+
+}
@@ -0,0 +1,34 @@
+package jvm.heap;
+
+import jvm.JVMType;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class KlassLayoutTest {
+
+    @Test
+    public void fieldsOfTheParentComeFirst() {
+        KlassLayout parent = KlassLayout.EMPTY.extend(Arrays.asList("next:Ljava/lang/Object;", "total:J"));
+        KlassLayout layout = parent.extend(Arrays.asList("count:I", "values:[C"));
+
+        assertEquals(5, layout.size());
+        assertEquals(Integer.valueOf(0), layout.getIndexByFieldName().get("next:Ljava/lang/Object;"));
+        assertEquals(Integer.valueOf(1), layout.getIndexByFieldName().get("total:J"));
+        assertEquals(Integer.valueOf(3), layout.getIndexByFieldName().get("count:I"));
+        assertEquals(Integer.valueOf(4), layout.getIndexByFieldName().get("values:[C"));
+        assertArrayEquals(new boolean[]{true, false, false, false, true}, layout.getReferenceFields());
+
+        long[] values = layout.newValues();
+        assertEquals((long) JVMType.A.ordinal() << 32, values[0]);
+        assertEquals((long) JVMType.J.ordinal() << 32, values[2]);
+        assertEquals((long) JVMType.I.ordinal() << 32, values[3]);
+        values[3] = 42;
+        assertNotSame(values, layout.newValues());
+        assertEquals((long) JVMType.I.ordinal() << 32, layout.newValues()[3]);
+        assertEquals(3, parent.size());
+    }
+
+}
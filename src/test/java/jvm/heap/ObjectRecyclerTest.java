@@ -0,0 +1,82 @@
+package jvm.heap;
+
+import jvm.JVMType;
+import jvm.VirtualMachine;
+import jvm.heap.api.Heap;
+import jvm.heap.api.InstanceObject;
+import jvm.parser.Method;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+
+import static java.util.Objects.requireNonNull;
+import static org.junit.Assert.*;
+
+public class ObjectRecyclerTest {
+
+    private static final String GARBAGE = "jvm/examples/garbage_collector/MarkAndSweepExample";
+    private static final String GARBAGE_OBJ = "jvm/examples/garbage_collector/GarbageObj";
+
+    @Test
+    public void recycledObjectsGetTheDefaultValues() {
+        VirtualMachine virtualMachine = new VirtualMachine(100, 4, 100, false);
+        Heap heap = virtualMachine.getHeap();
+        int klassIndex = heap.getKlassLoader().getInstanceKlassIndexByName(GARBAGE_OBJ, true);
+        KlassLayout layout = heap.getInstanceKlass(klassIndex).getLayout();
+        InstanceObject object = InstanceFactory.getInstanceObject(heap, layout, klassIndex);
+        object.setValue(0, ((long) JVMType.A.ordinal() << 32) ^ 5);
+
+        ObjectRecycler recycler = new ObjectRecycler(1);
+        assertNull(recycler.take(klassIndex));
+        assertTrue(recycler.recycle(object, layout));
+        assertFalse(recycler.recycle(InstanceFactory.getInstanceObject(heap, layout, klassIndex), layout));
+        assertFalse(recycler.recycle(InstanceFactory.getInstanceObject(heap, "[I", "I", 1, -1), layout));
+        assertSame(object, recycler.take(klassIndex));
+        assertArrayEquals(layout.newValues(), object.getFieldValues());
+        assertNull(recycler.take(klassIndex));
+
+        assertEquals(1, recycler.getHits());
+        assertEquals(2, recycler.getMisses());
+        assertEquals(1, recycler.getRecycled());
+        assertEquals(1.0 / 3, recycler.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void newInstancesReuseRemovedObjects() {
+        VirtualMachine virtualMachine = new VirtualMachine(100, 4, 1000, false);
+        virtualMachine.getKlassLoader().loadKlass(GARBAGE);
+        Heap heap = virtualMachine.getHeap();
+        heap.enableObjectRecycling(ObjectRecycler.DEFAULT_OBJECTS_PER_KLASS);
+        Method method = getMethod(heap, GARBAGE + ".keepObjectsInCallers:()I");
+        for (int i = 0; i < 10; i++) {
+            assertEquals(330, virtualMachine.getEngine().invoke(method));
+        }
+        ObjectRecycler recycler = heap.getObjectRecycler();
+        assertNotNull(recycler);
+        assertTrue(recycler.getRecycled() > 0);
+        assertTrue(recycler.getHitRate() > 0.5);
+    }
+
+    @Test
+    public void recycledObjectsAreFinalizedFirst() {
+        VirtualMachine virtualMachine = new VirtualMachine(50, 4, 1000, false);
+        virtualMachine.getKlassLoader().loadKlass(GARBAGE);
+        Heap heap = virtualMachine.getHeap();
+        heap.enableObjectRecycling(ObjectRecycler.DEFAULT_OBJECTS_PER_KLASS);
+        assertTrue((int) virtualMachine.getEngine().invoke(getMethod(heap, GARBAGE + ".countFinalizedObjects:()I")) > 50);
+        assertTrue(requireNonNull(heap.getObjectRecycler()).getHits() > 0);
+    }
+
+    @Test
+    public void arenaHeapDoesNotRecycleObjects() {
+        Heap heap = new VirtualMachine(HeapSizingPolicy.fixed(100), 4, 100, HeapKind.ARENA).getHeap();
+        assertThrows(UnsupportedOperationException.class, () -> heap.enableObjectRecycling(1));
+        assertNull(heap.getObjectRecycler());
+    }
+
+    @Nonnull
+    private Method getMethod(@Nonnull Heap heap, @Nonnull String name) {
+        return heap.getMethodRepo().getMethod(heap.getMethodRepo().getIndexByName(name));
+    }
+
+}
@@ -0,0 +1,56 @@
+package jvm.heap;
+
+import jvm.JVMType;
+import jvm.VirtualMachine;
+import jvm.heap.api.Heap;
+import jvm.heap.api.InstanceObject;
+import jvm.heap.sequential.BooleanArrayImpl;
+import jvm.heap.sequential.ByteArrayImpl;
+import jvm.heap.sequential.CharArrayImpl;
+import jvm.heap.sequential.IntArrayImpl;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PrimitiveArrayTest {
+
+    private final Heap heap = new VirtualMachine(500, 50, 10000, false).getHeap();
+
+    @Test
+    public void elementsGetTheTagOfTheArray() {
+        InstanceObject chars = InstanceFactory.getInstanceObject(heap, "[C", "C", 2, -1);
+        assertTrue(chars instanceof CharArrayImpl);
+        chars.setIntValue(1, 'x');
+        assertEquals('x', chars.getIntValue(1));
+        assertEquals(tag(JVMType.C) ^ 'x', chars.getValue(1));
+        assertArrayEquals(new long[]{tag(JVMType.C), tag(JVMType.C) ^ 'x'}, chars.getFieldValues());
+        assertThrows(RuntimeException.class, () -> chars.setValue(0, tag(JVMType.I) ^ 'y'));
+
+        InstanceObject ints = InstanceFactory.getInstanceObject(heap, "[I", "I", 1, -1);
+        assertTrue(ints instanceof IntArrayImpl);
+        ints.setValue(0, tag(JVMType.I) ^ -5);
+        assertEquals(-5, ints.getIntValue(0));
+        assertEquals(tag(JVMType.I) ^ -5, ints.getValue(0));
+    }
+
+    @Test
+    public void bytesAndBooleansKeepTheirHostTypes() {
+        InstanceObject bytes = InstanceFactory.getInstanceObject(heap, "[B", "B", 1, -1);
+        assertTrue(bytes instanceof ByteArrayImpl);
+        bytes.setIntValue(0, (byte) 200);
+        assertEquals((byte) 200, bytes.getIntValue(0));
+
+        InstanceObject booleans = InstanceFactory.getInstanceObject(heap, "[Z", "Z", 3, -1);
+        assertTrue(booleans instanceof BooleanArrayImpl);
+        booleans.setIntValue(2, 1);
+        assertEquals(0, booleans.getIntValue(0));
+        assertEquals(1, booleans.getIntValue(2));
+        assertEquals(3, booleans.size());
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> booleans.getIntValue(3));
+    }
+
+    private static long tag(JVMType type) {
+        return (long) type.ordinal() << 32;
+    }
+
+}
@@ -0,0 +1,60 @@
+package jvm.heap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class SlotAllocatorTest {
+
+    @Test
+    public void allocateInOrderAndReuseFreedSlots() {
+        SlotAllocator slots = new SlotAllocator(4);
+        assertEquals(0, slots.allocate());
+        assertEquals(1, slots.allocate());
+        assertEquals(2, slots.allocate());
+        slots.free(0);
+        slots.free(2);
+        assertEquals(3, slots.available());
+        assertEquals(2, slots.allocate());
+        assertEquals(0, slots.allocate());
+        assertEquals(3, slots.allocate());
+        assertEquals(0, slots.available());
+        assertThrows(IllegalStateException.class, slots::allocate);
+    }
+
+    @Test
+    public void resizeKeepsTheSlotsInUse() {
+        SlotAllocator slots = new SlotAllocator(2);
+        assertEquals(0, slots.allocate());
+        assertEquals(1, slots.allocate());
+        slots.resize(4);
+        assertEquals(2, slots.available());
+        assertEquals(2, slots.allocate());
+        slots.free(1);
+        slots.free(2);
+        assertEquals(1, slots.getUsedSize());
+        assertThrows(IllegalArgumentException.class, () -> slots.resize(0));
+        slots.resize(1);
+        assertEquals(0, slots.available());
+        slots.resize(3);
+        assertEquals(1, slots.allocate());
+        assertEquals(2, slots.allocate());
+    }
+
+    @Test
+    public void resetHandsOutTheSlotsAfterTheUsedOnes() {
+        SlotAllocator slots = new SlotAllocator(4);
+        slots.allocate();
+        slots.allocate();
+        slots.allocate();
+        slots.free(0);
+        slots.reset(2);
+        assertEquals(2, slots.getUsedSize());
+        assertEquals(2, slots.available());
+        assertEquals(2, slots.allocate());
+        assertEquals(3, slots.allocate());
+        assertThrows(IllegalArgumentException.class, () -> slots.reset(5));
+    }
+
+}
@@ -0,0 +1,143 @@
+package jvm.heap.concurrent;
+
+import jvm.VirtualMachine;
+import jvm.garbage_collector.CollectorKind;
+import jvm.heap.HeapKind;
+import jvm.heap.HeapSizingPolicy;
+import jvm.heap.InstanceFactory;
+import jvm.heap.api.Heap;
+import jvm.heap.api.InstanceObject;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.BitSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ThreadLocalSlotAllocatorTest {
+
+    private static final int THREADS = 8;
+
+    @Test
+    public void slotsOfOneThreadAreHandedOutInOrder() {
+        ThreadLocalSlotAllocator slots = new ThreadLocalSlotAllocator(10, 4);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, slots.allocate());
+        }
+        assertThrows(IllegalStateException.class, slots::allocate);
+        slots.free(3);
+        assertEquals(3, slots.allocate());
+        slots.resize(12);
+        assertEquals(10, slots.allocate());
+        assertThrows(IllegalArgumentException.class, () -> slots.resize(11));
+    }
+
+    @Test
+    public void freedSlotsPassToOtherThreads() throws InterruptedException {
+        ThreadLocalSlotAllocator slots = new ThreadLocalSlotAllocator(8, 2);
+        for (int i = 0; i < 8; i++) {
+            slots.allocate();
+        }
+        for (int i = 0; i < 8; i++) {
+            slots.free(i);
+        }
+        // the buffer keeps two chunks, the first four slots went to the other threads
+        BitSet allocated = new BitSet();
+        runInThreads(1, thread -> {
+            for (int i = 0; i < 4; i++) {
+                allocated.set(slots.allocate());
+            }
+            assertThrows(IllegalStateException.class, slots::allocate);
+        });
+        assertEquals(4, allocated.cardinality());
+        assertEquals(4, allocated.nextClearBit(0));
+    }
+
+    @Test
+    public void threadsNeverGetTheSameSlot() throws InterruptedException {
+        int count = 10000;
+        ThreadLocalSlotAllocator slots = new ThreadLocalSlotAllocator(THREADS * count, 16);
+        int[][] allocated = new int[THREADS][count];
+        runInThreads(THREADS, thread -> {
+            for (int i = 0; i < count; i++) {
+                allocated[thread][i] = slots.allocate();
+                if (i % 3 == 0) {
+                    slots.free(allocated[thread][i]);
+                    allocated[thread][i] = slots.allocate();
+                }
+            }
+        });
+        BitSet used = new BitSet();
+        for (int[] threadSlots : allocated) {
+            for (int slot : threadSlots) {
+                assertFalse("slot " + slot + " was handed out twice", used.get(slot));
+                used.set(slot);
+            }
+        }
+        assertEquals(THREADS * count, used.cardinality());
+    }
+
+    @Test
+    public void threadsAllocateObjectsOnTheMonitoredHeap() throws InterruptedException {
+        checkConcurrentAllocation(false);
+        checkConcurrentAllocation(true);
+    }
+
+    private void checkConcurrentAllocation(boolean directHandles) throws InterruptedException {
+        int count = 5000;
+        VirtualMachine virtualMachine = new VirtualMachine(HeapSizingPolicy.fixed(100000), 50, 1000, HeapKind.MONITORED,
+                directHandles, CollectorKind.MARK_AND_SWEEP);
+        Heap heap = virtualMachine.getHeap();
+        int systemObjectSize = heap.getInstanceObjectSize();
+        int[][] references = new int[THREADS][count];
+        InstanceObject[][] objects = new InstanceObject[THREADS][count];
+        runInThreads(THREADS, thread -> {
+            for (int i = 0; i < count; i++) {
+                objects[thread][i] = InstanceFactory.getInstanceObject(heap, "[I", "I", 1, -1);
+                references[thread][i] = heap.getObjectRef(objects[thread][i]);
+            }
+        });
+        assertEquals(systemObjectSize + THREADS * count, heap.getInstanceObjectSize());
+        BitSet used = new BitSet();
+        for (int thread = 0; thread < THREADS; thread++) {
+            for (int i = 0; i < count; i++) {
+                int reference = references[thread][i];
+                assertFalse("reference " + reference + " was handed out twice", used.get(reference));
+                used.set(reference);
+                assertSame(objects[thread][i], heap.getInstanceObject(reference));
+            }
+        }
+    }
+
+    private interface ThreadBody {
+        void run(int thread);
+    }
+
+    private static void runInThreads(int count, @Nonnull ThreadBody body) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[count];
+        for (int i = 0; i < count; i++) {
+            int thread = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                    body.run(thread);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
+}